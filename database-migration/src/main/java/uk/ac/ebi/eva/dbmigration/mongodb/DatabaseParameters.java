@@ -15,7 +15,11 @@
  */
 package uk.ac.ebi.eva.dbmigration.mongodb;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Properties;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
 
 /**
  * Container of credentials for a connection to mongo.
@@ -43,6 +47,12 @@ public class DatabaseParameters {
     static final String DB_NAME = "db.name";
     private String dbName;
 
+    static final String DB_NAMES = "db.names";
+    private List<String> dbNames;
+
+    static final String DB_NAME_PATTERN = "db.name-pattern";
+    private Pattern dbNamePattern;
+
     static final String DB_COLLECTIONS_VARIANTS_NAME = "db.collections.variants.name";
     private String dbCollectionsVariantsName;
 
@@ -61,19 +71,74 @@ public class DatabaseParameters {
     static final String DB_COLLECTIONS_ANNOTATION_METADATA_NAME = "db.collections.annotation-metadata.name";
     private String dbCollectionsAnnotationMetadataName;
 
+    static final String DB_COLLECTIONS_MIGRATION_PROGRESS_NAME = "db.collections.migration-progress.name";
+    private String dbCollectionsMigrationProgressName;
+
     static final String VEP_VERSION = "vep.version";
     private String vepVersion;
 
     static final String VEP_CACHE_VERSION = "vep.cache.version";
     private String vepCacheVersion;
 
+    static final String MIGRATION_THREADS = "migration.threads";
+    private int migrationThreads;
+
+    static final String MIGRATION_FUSED = "migration.fused";
+    private boolean migrationFused;
+
+    static final String MIGRATION_VERIFY = "migration.verify";
+    private boolean migrationVerify;
+
+    static final String MIGRATION_VERIFY_SAMPLE_PERCENTAGE = "migration.verify.sample-percentage";
+    private int migrationVerifySamplePercentage;
+
+    static final String MIGRATION_DRY_RUN = "migration.dry-run";
+    private boolean migrationDryRun;
+
+    static final String MIGRATION_DRY_RUN_SAMPLE_SIZE = "migration.dry-run.sample-size";
+    private int migrationDryRunSampleSize;
+
+    static final String MIGRATION_DRY_RUN_WRITE_BYTES_PER_SECOND = "migration.dry-run.write-bytes-per-second";
+    private int migrationDryRunWriteBytesPerSecond;
+
+    static final String MIGRATION_DEFERRED_INDEXES = "migration.deferred-indexes";
+    private boolean migrationDeferredIndexes;
+
+    static final String MIGRATION_CURSOR_BATCH_SIZE = "migration.cursor-batch-size";
+    private int migrationCursorBatchSize;
+
+    static final String MIGRATION_BULK_SIZE = "migration.bulk-size";
+    private int migrationBulkSize;
+
+    static final String MIGRATION_BULK_MAX_BYTES = "migration.bulk-max-bytes";
+    private int migrationBulkMaxBytes;
+
+    static final String MIGRATION_MAX_WRITE_LATENCY_MILLIS = "migration.max-write-latency-millis";
+    private int migrationMaxWriteLatencyMillis;
+
+    static final String MIGRATION_MAX_REPLICATION_LAG_SECONDS = "migration.max-replication-lag-seconds";
+    private int migrationMaxReplicationLagSeconds;
+
+    static final String MIGRATION_DATABASE_THREADS = "migration.database-threads";
+    private int migrationDatabaseThreads;
+
+    private static final int DEFAULT_BULK_SIZE = 1000;
+
+    private static final int DEFAULT_BULK_MAX_BYTES = 8 * 1024 * 1024;
+
+    private static final int DEFAULT_DRY_RUN_SAMPLE_SIZE = 1000;
+
+    private static final int DEFAULT_VERIFY_SAMPLE_PERCENTAGE = 100;
+
+    private static final String DEFAULT_MIGRATION_PROGRESS_NAME = "migrationProgress";
+
     public void load(Properties properties) {
         getRequiredProperties(properties);
         getOptionalProperties(properties);
     }
 
     private void getRequiredProperties(Properties properties) {
-        dbName = getRequiredProperty(properties, DB_NAME);
+        getDatabaseNames(properties);
         dbCollectionsVariantsName = getRequiredProperty(properties, DB_COLLECTIONS_VARIANTS_NAME);
         dbCollectionsAnnotationsName = getRequiredProperty(properties, DB_COLLECTIONS_ANNOTATIONS_NAME);
         dbCollectionsAnnotationMetadataName = getRequiredProperty(properties, DB_COLLECTIONS_ANNOTATION_METADATA_NAME);
@@ -82,6 +147,37 @@ public class DatabaseParameters {
         dbReadPreference = getRequiredProperty(properties, DB_READ_PREFERENCE);
     }
 
+    /**
+     * At least one of db.name, db.names (comma separated) or db.name-pattern (a regular expression) is required
+     */
+    private void getDatabaseNames(Properties properties) {
+        dbName = properties.getProperty(DB_NAME);
+        dbNames = new ArrayList<>();
+        if (dbName != null && !dbName.isEmpty()) {
+            dbNames.add(dbName);
+        }
+        String names = properties.getProperty(DB_NAMES);
+        if (names != null) {
+            for (String name : names.split(",")) {
+                if (!name.trim().isEmpty() && !dbNames.contains(name.trim())) {
+                    dbNames.add(name.trim());
+                }
+            }
+        }
+        String pattern = properties.getProperty(DB_NAME_PATTERN);
+        if (pattern != null && !pattern.isEmpty()) {
+            try {
+                dbNamePattern = Pattern.compile(pattern);
+            } catch (PatternSyntaxException e) {
+                throw new IllegalArgumentException(
+                        "Parameter " + DB_NAME_PATTERN + " is not a valid regular expression", e);
+            }
+        }
+        if (dbNames.isEmpty() && dbNamePattern == null) {
+            throw new IllegalArgumentException("Parameter " + DB_NAME + " is required");
+        }
+    }
+
     private String getRequiredProperty(Properties properties, String propertyKey) {
         String property = properties.getProperty(propertyKey);
         if (property == null || property.isEmpty()) {
@@ -90,12 +186,73 @@ public class DatabaseParameters {
         return property;
     }
 
+    private int getPositiveIntProperty(Properties properties, String propertyKey, int defaultValue) {
+        String property = properties.getProperty(propertyKey);
+        if (property == null || property.isEmpty()) {
+            return defaultValue;
+        }
+        try {
+            int value = Integer.parseInt(property.trim());
+            if (value > 0) {
+                return value;
+            }
+        } catch (NumberFormatException e) {
+            // reported below
+        }
+        throw new IllegalArgumentException("Parameter " + propertyKey + " must be a positive integer");
+    }
+
+    private int getNonNegativeIntProperty(Properties properties, String propertyKey) {
+        return getNonNegativeIntProperty(properties, propertyKey, 0);
+    }
+
+    private int getNonNegativeIntProperty(Properties properties, String propertyKey, int defaultValue) {
+        String property = properties.getProperty(propertyKey);
+        if (property == null || property.isEmpty()) {
+            return defaultValue;
+        }
+        try {
+            int value = Integer.parseInt(property.trim());
+            if (value >= 0) {
+                return value;
+            }
+        } catch (NumberFormatException e) {
+            // reported below
+        }
+        throw new IllegalArgumentException("Parameter " + propertyKey + " must be a non-negative integer");
+    }
+
     private void getOptionalProperties(Properties properties) {
         dbHosts = properties.getProperty(DB_HOSTS);
         dbPort = properties.getProperty(DB_PORT);
         dbAuthenticationDatabase = properties.getProperty(DB_AUTHENTICATION_DATABASE);
         dbUsername = properties.getProperty(DB_USERNAME);
         dbPassword = properties.getProperty(DB_PASSWORD);
+        dbCollectionsMigrationProgressName = properties.getProperty(DB_COLLECTIONS_MIGRATION_PROGRESS_NAME,
+                                                                    DEFAULT_MIGRATION_PROGRESS_NAME);
+        migrationThreads = getPositiveIntProperty(properties, MIGRATION_THREADS, 1);
+        migrationFused = Boolean.parseBoolean(properties.getProperty(MIGRATION_FUSED, "false").trim());
+        migrationVerify = Boolean.parseBoolean(properties.getProperty(MIGRATION_VERIFY, "false").trim());
+        migrationVerifySamplePercentage = getNonNegativeIntProperty(properties, MIGRATION_VERIFY_SAMPLE_PERCENTAGE,
+                                                                    DEFAULT_VERIFY_SAMPLE_PERCENTAGE);
+        if (migrationVerifySamplePercentage > 100) {
+            throw new IllegalArgumentException("Parameter " + MIGRATION_VERIFY_SAMPLE_PERCENTAGE
+                                                       + " must be a percentage between 0 and 100");
+        }
+        migrationDryRun = Boolean.parseBoolean(properties.getProperty(MIGRATION_DRY_RUN, "false").trim());
+        migrationDryRunSampleSize = getPositiveIntProperty(properties, MIGRATION_DRY_RUN_SAMPLE_SIZE,
+                                                           DEFAULT_DRY_RUN_SAMPLE_SIZE);
+        migrationDryRunWriteBytesPerSecond = getNonNegativeIntProperty(properties,
+                                                                       MIGRATION_DRY_RUN_WRITE_BYTES_PER_SECOND);
+        migrationDeferredIndexes = Boolean.parseBoolean(
+                properties.getProperty(MIGRATION_DEFERRED_INDEXES, "false").trim());
+        migrationCursorBatchSize = getPositiveIntProperty(properties, MIGRATION_CURSOR_BATCH_SIZE, DEFAULT_BULK_SIZE);
+        migrationBulkSize = getPositiveIntProperty(properties, MIGRATION_BULK_SIZE, DEFAULT_BULK_SIZE);
+        migrationBulkMaxBytes = getPositiveIntProperty(properties, MIGRATION_BULK_MAX_BYTES, DEFAULT_BULK_MAX_BYTES);
+        migrationDatabaseThreads = getPositiveIntProperty(properties, MIGRATION_DATABASE_THREADS, 1);
+        migrationMaxWriteLatencyMillis = getNonNegativeIntProperty(properties, MIGRATION_MAX_WRITE_LATENCY_MILLIS);
+        migrationMaxReplicationLagSeconds = getNonNegativeIntProperty(properties,
+                                                                      MIGRATION_MAX_REPLICATION_LAG_SECONDS);
 
         // Not used at the moment
         dbCollectionsFilesName = properties.getProperty(DB_COLLECTIONS_FILES_NAME);
@@ -131,6 +288,20 @@ public class DatabaseParameters {
         return dbName;
     }
 
+    /**
+     * @return The names of the databases listed in db.name and db.names
+     */
+    public List<String> getDbNames() {
+        return dbNames;
+    }
+
+    /**
+     * @return The pattern of the names of other databases to migrate, or null
+     */
+    public Pattern getDbNamePattern() {
+        return dbNamePattern;
+    }
+
     public String getDbCollectionsVariantsName() {
         return dbCollectionsVariantsName;
     }
@@ -155,6 +326,10 @@ public class DatabaseParameters {
         return dbCollectionsAnnotationMetadataName;
     }
 
+    public String getDbCollectionsMigrationProgressName() {
+        return dbCollectionsMigrationProgressName;
+    }
+
     public String getVepVersion() {
         return vepVersion;
     }
@@ -162,4 +337,60 @@ public class DatabaseParameters {
     public String getVepCacheVersion() {
         return vepCacheVersion;
     }
+
+    public int getMigrationThreads() {
+        return migrationThreads;
+    }
+
+    public boolean isMigrationFused() {
+        return migrationFused;
+    }
+
+    public boolean isMigrationVerify() {
+        return migrationVerify;
+    }
+
+    public int getMigrationVerifySamplePercentage() {
+        return migrationVerifySamplePercentage;
+    }
+
+    public boolean isMigrationDryRun() {
+        return migrationDryRun;
+    }
+
+    public int getMigrationDryRunSampleSize() {
+        return migrationDryRunSampleSize;
+    }
+
+    public int getMigrationDryRunWriteBytesPerSecond() {
+        return migrationDryRunWriteBytesPerSecond;
+    }
+
+    public boolean isMigrationDeferredIndexes() {
+        return migrationDeferredIndexes;
+    }
+
+    public int getMigrationCursorBatchSize() {
+        return migrationCursorBatchSize;
+    }
+
+    public int getMigrationBulkSize() {
+        return migrationBulkSize;
+    }
+
+    public int getMigrationBulkMaxBytes() {
+        return migrationBulkMaxBytes;
+    }
+
+    public int getMigrationDatabaseThreads() {
+        return migrationDatabaseThreads;
+    }
+
+    public int getMigrationMaxWriteLatencyMillis() {
+        return migrationMaxWriteLatencyMillis;
+    }
+
+    public int getMigrationMaxReplicationLagSeconds() {
+        return migrationMaxReplicationLagSeconds;
+    }
 }
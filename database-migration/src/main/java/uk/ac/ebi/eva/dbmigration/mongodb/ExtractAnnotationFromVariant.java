@@ -17,13 +17,16 @@ package uk.ac.ebi.eva.dbmigration.mongodb;
 
 import com.github.mongobee.changeset.ChangeLog;
 import com.github.mongobee.changeset.ChangeSet;
-import com.mongodb.bulk.BulkWriteResult;
+import com.mongodb.ErrorCategory;
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.MongoWriteException;
+import com.mongodb.bulk.BulkWriteError;
 import com.mongodb.client.MongoCollection;
-import com.mongodb.client.MongoCursor;
 import com.mongodb.client.MongoDatabase;
 import com.mongodb.client.model.BulkWriteOptions;
-import com.mongodb.client.model.IndexOptions;
+import com.mongodb.client.model.Filters;
 import com.mongodb.client.model.InsertOneModel;
+import com.mongodb.client.model.Projections;
 import com.mongodb.client.model.UpdateOneModel;
 import com.mongodb.client.model.Updates;
 import com.mongodb.client.result.UpdateResult;
@@ -33,16 +36,17 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.util.Assert;
 
+import uk.ac.ebi.eva.dbmigration.mongodb.MigrationEstimator.MigrationEstimate;
+import uk.ac.ebi.eva.dbmigration.mongodb.MigrationVerification.RangeChecksum;
+import uk.ac.ebi.eva.dbmigration.mongodb.PartitionedMigration.MigrationCounts;
+
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Set;
 import java.util.TreeSet;
 
-import static java.util.stream.Collectors.toList;
-
 /**
  * Script that executes the following steps using mongobee (https://github.com/mongobee/mongobee/wiki/How-to-use-mongobee):
  * - Extracts the 'annot' field from a variant stored in MongoDB into a new annotations collection
@@ -50,14 +54,30 @@ import static java.util.stream.Collectors.toList;
  * - Leaves only some fields in the variants collection
  * - update the annotationMetadata collection with the VEP versions provided
  * - creates the new indexes in the variants and annotations collections
+ *
+ * With the parameter migration.fused the annotation is extracted and reduced in the same scan of the variants
+ * collection: each bulk of annotations is inserted and then the same variants are reduced, so the 'annot' field is only
+ * removed from variants whose annotation was inserted.
+ *
+ * The progress of the scans is kept in the migration progress collection, so a changeset that fails halfway resumes
+ * after the last bulk written when it runs again. The writes can be throttled to keep their latency and the
+ * replication lag under the migration.max-write-latency-millis and migration.max-replication-lag-seconds targets.
+ *
+ * With the parameter migration.deferred-indexes, the indexes created at the end (see {@link MigrationIndexes}) are
+ * dropped before the annotation is migrated if they already exist, so they are not updated by every write.
+ *
+ * With the parameter migration.verify, the annotations inserted are compared range by range with the 'annot' field of
+ * the variants before it is reduced, and the ranges that don't match are reported. This is not possible in the fused
+ * scan, where the annotations are checked by count in each bulk.
+ *
+ * With the parameter migration.dry-run, no changeset is run: the migration is estimated from a sample of the variants
+ * (see {@link MigrationEstimator}) and nothing is written.
  */
 @ChangeLog
 public class ExtractAnnotationFromVariant {
 
     private static final Logger logger = LoggerFactory.getLogger(ExtractAnnotationFromVariant.class);
 
-    private final static int BULK_SIZE = 1000;
-
     static final String ID_FIELD = "_id";
 
     static final String CHROMOSOME_FIELD = "chr";
@@ -90,44 +110,68 @@ public class ExtractAnnotationFromVariant {
 
     private static final String LEGACY_ANNOTATION_XREF_ID_INDEX = "annot.xrefs.id_1";
 
+    private static final List<String> LEGACY_ANNOTATION_INDEXES = Arrays.asList(LEGACY_ANNOTATION_CT_SO_INDEX,
+                                                                                LEGACY_ANNOTATION_XREF_ID_INDEX);
+
     private static final Document EXISTS = new Document("$exists", true);
 
+    private static final Document NOT_EXISTS = new Document("$exists", false);
+
+    /**
+     * A reduced 'annot' field is an array, so this skips the variants reduced before a migration was interrupted
+     */
+    private static final Document ANNOTATED_VARIANTS_NOT_REDUCED = new Document(ANNOT_FIELD, EXISTS)
+            .append(ANNOT_FIELD + ".0", NOT_EXISTS);
+
+    private static final Bson ANNOTATION_MIGRATION_FIELDS = Projections.include(
+            ID_FIELD, CHROMOSOME_FIELD, START_FIELD, END_FIELD, ANNOT_FIELD);
+
+    private static final Bson ANNOTATION_REDUCTION_FIELDS = Projections.include(ID_FIELD, ANNOT_FIELD);
+
     public static final String DEFAULT_VERSION_FIELD = "is_default";
 
     private static DatabaseParameters databaseParameters;
 
+    private static ReplicationLagMonitor replicationLagMonitor;
+
     public static void setDatabaseParameters(DatabaseParameters databaseParameters) {
         ExtractAnnotationFromVariant.databaseParameters = databaseParameters;
     }
 
+    public static void setReplicationLagMonitor(ReplicationLagMonitor replicationLagMonitor) {
+        ExtractAnnotationFromVariant.replicationLagMonitor = replicationLagMonitor;
+    }
+
     @ChangeSet(order = "001", id = "migrateAnnotation", author = "EVA")
     public void migrateAnnotation(MongoDatabase mongoDatabase) {
         final MongoCollection<Document> variantsCollection = mongoDatabase.getCollection(
                 databaseParameters.getDbCollectionsVariantsName());
         final MongoCollection<Document> annotationCollection = mongoDatabase.getCollection(
                 databaseParameters.getDbCollectionsAnnotationsName());
+        if (databaseParameters.isMigrationDeferredIndexes()) {
+            MigrationIndexes.dropIndexes(mongoDatabase, MigrationIndexes.getIndexes(databaseParameters));
+            if (databaseParameters.isMigrationFused()) {
+                // the fused scan also updates the 'annot' field of the variants
+                MigrationIndexes.dropIndexes(variantsCollection, LEGACY_ANNOTATION_INDEXES);
+            }
+        }
+        if (databaseParameters.isMigrationFused()) {
+            if (databaseParameters.isMigrationVerify()) {
+                logger.warn("The annotation can't be verified when it's reduced in the same scan");
+            }
+            migrateAndReduceAnnotation(mongoDatabase, variantsCollection, annotationCollection);
+            return;
+        }
         logger.info("1) migrate annotation from collection {}", variantsCollection.getNamespace());
 
-        long annotationsReadCount = 0;
-        long annotationsWrittenCount = 0;
         BulkWriteOptions unorderedBulk = new BulkWriteOptions().ordered(false);
         Document onlyAnnotatedVariants = new Document(ANNOT_FIELD, EXISTS);
-        try (MongoCursor<Document> cursor = variantsCollection.find(onlyAnnotatedVariants).iterator()) {
-            while (true) {
-                List<InsertOneModel<Document>> annotationsToInsert = getBatch(cursor, BULK_SIZE)
-                        .stream()
-                        .map(this::buildInsertionDocument)
-                        .collect(toList());
-
-                if (annotationsToInsert.isEmpty()) {
-                    break;
-                }
-
-                annotationsReadCount += annotationsToInsert.size();
-                BulkWriteResult bulkInsert = annotationCollection.bulkWrite(annotationsToInsert, unorderedBulk);
-                annotationsWrittenCount += bulkInsert.getInsertedCount();
-            }
-        }
+        MigrationCounts counts = buildPartitionedMigration(mongoDatabase, "migrateAnnotation").run(
+                mongoDatabase, variantsCollection, onlyAnnotatedVariants, ANNOTATION_MIGRATION_FIELDS,
+                this::buildInsertionDocument,
+                annotationsToInsert -> insertAnnotations(annotationCollection, annotationsToInsert, unorderedBulk));
+        long annotationsReadCount = counts.getReadCount();
+        long annotationsWrittenCount = counts.getWrittenCount();
 
         //before executing the next changeSet check that the count of read and written annotation documents match
         if (annotationsReadCount != annotationsWrittenCount) {
@@ -137,28 +181,164 @@ public class ExtractAnnotationFromVariant {
                             + "). The '" + ANNOT_FIELD + "' field will not be removed from the "
                             + variantsCollection.getNamespace() + " collection.");
         }
+        if (databaseParameters.isMigrationVerify()) {
+            verifyAnnotation(mongoDatabase, variantsCollection, annotationCollection, onlyAnnotatedVariants);
+        }
+    }
+
+    /**
+     * Compares the annotations in the annotations collection with those in the variants, before they are reduced
+     */
+    private void verifyAnnotation(MongoDatabase mongoDatabase, MongoCollection<Document> variantsCollection,
+                                  MongoCollection<Document> annotationCollection, Bson onlyAnnotatedVariants) {
+        MigrationVerification verification = new MigrationVerification(
+                databaseParameters.getMigrationThreads(), databaseParameters.getMigrationBulkSize(),
+                databaseParameters.getMigrationVerifySamplePercentage());
+        Bson currentVersionAnnotations = Filters.and(
+                Filters.eq(VEP_VERSION_FIELD, databaseParameters.getVepVersion()),
+                Filters.eq(CACHE_VERSION_FIELD, databaseParameters.getVepCacheVersion()));
+        // the annotation ids keep the order of the variant ids, except when a variant id is a prefix of a range bound,
+        // which can only move an annotation to a neighbouring range and make both be compared document by document
+        List<RangeChecksum> mismatches = verification.verify(
+                mongoDatabase, variantsCollection, onlyAnnotatedVariants, ANNOTATION_MIGRATION_FIELDS,
+                variant -> buildInsertionDocument(variant).getDocument(), annotationCollection,
+                range -> range.map(variantId -> buildAnnotationId(variantId)).restrict(currentVersionAnnotations),
+                START_FIELD);
+        if (!mismatches.isEmpty()) {
+            for (RangeChecksum mismatch : mismatches) {
+                logger.error("Annotations of {} don't match the variants in {}", annotationCollection.getNamespace(),
+                             mismatch);
+            }
+            throw new RuntimeException(
+                    mismatches.size() + " ranges of variants have annotations that don't match those in "
+                            + annotationCollection.getNamespace() + ". The '" + ANNOT_FIELD + "' field will not be "
+                            + "removed from the " + variantsCollection.getNamespace() + " collection.");
+        }
     }
 
     /**
-     * Return a batch of elements, advancing the Iterator provided.
-     * @param iterator won't be closed, please close it outside this function.
-     * @param bulkSize maximum size for the batch. The list returned can be smaller.
-     * @return A list with elements, or an empty list if there are no more elements in the iterator.
+     * Estimates the cost of migrating the annotation of this database from a sample of the variants, without writing
+     * anything
      */
-    private <T> List<T> getBatch(Iterator<T> iterator, int bulkSize) {
-        List<T> batch = new ArrayList<>();
-        int counter = 0;
-        while (iterator.hasNext()) {
-            T element = iterator.next();
-            if (element != null) {
-                counter++;
-                batch.add(element);
-                if (counter % bulkSize == 0) {
-                    return batch;
+    MigrationEstimate estimateMigration(MongoDatabase mongoDatabase) {
+        MongoCollection<Document> variantsCollection = mongoDatabase.getCollection(
+                databaseParameters.getDbCollectionsVariantsName());
+        MigrationEstimator estimator = new MigrationEstimator(
+                databaseParameters.getMigrationDryRunSampleSize(),
+                databaseParameters.getMigrationDryRunWriteBytesPerSecond());
+        // the update is built first because building the insertion adds fields to the 'annot' subdocument
+        return estimator.estimate(mongoDatabase, variantsCollection,
+                                  databaseParameters.getDbCollectionsAnnotationsName(),
+                                  variant -> variant.get(ANNOT_FIELD) instanceof Document,
+                                  variant -> buildInsertionDocument(variant).getDocument(),
+                                  variant -> buildUpdateDocument(variant).getUpdate(),
+                                  MigrationIndexes.getIndexes(databaseParameters), LEGACY_ANNOTATION_INDEXES);
+    }
+
+    private void migrateAndReduceAnnotation(MongoDatabase mongoDatabase,
+                                            MongoCollection<Document> variantsCollection,
+                                            MongoCollection<Document> annotationCollection) {
+        logger.info("1) migrate and reduce annotation from collection {} in a single scan",
+                    variantsCollection.getNamespace());
+
+        BulkWriteOptions unorderedBulk = new BulkWriteOptions().ordered(false);
+        MigrationCounts counts = buildPartitionedMigration(mongoDatabase, "migrateAndReduceAnnotation").run(
+                mongoDatabase, variantsCollection, ANNOTATED_VARIANTS_NOT_REDUCED, ANNOTATION_MIGRATION_FIELDS,
+                AnnotationWrites::new,
+                writes -> writeAnnotationBulk(writes, variantsCollection, annotationCollection, unorderedBulk));
+        long annotationsReadCount = counts.getReadCount();
+        long annotationsUpdatedCount = counts.getWrittenCount();
+        if (annotationsReadCount != annotationsUpdatedCount) {
+            throw new RuntimeException(
+                    "The number of processed Variants (" + annotationsReadCount + ") is different from the number of "
+                            + "annotation updated (" + annotationsUpdatedCount + ").");
+        }
+    }
+
+    /**
+     * Inserts the annotations of a bulk and then reduces them in their variants, checking both counts so the reduced
+     * variants of a bulk always have their annotation in the annotations collection.
+     *
+     * @return The number of variants reduced
+     */
+    private long writeAnnotationBulk(List<AnnotationWrites> writes, MongoCollection<Document> variantsCollection,
+                                     MongoCollection<Document> annotationCollection, BulkWriteOptions options) {
+        List<InsertOneModel<Document>> annotationsToInsert = new ArrayList<>(writes.size());
+        List<UpdateOneModel<Document>> annotationsToUpdate = new ArrayList<>(writes.size());
+        for (AnnotationWrites write : writes) {
+            annotationsToInsert.add(write.insertion);
+            annotationsToUpdate.add(write.update);
+        }
+
+        long insertedCount = insertAnnotations(annotationCollection, annotationsToInsert, options);
+        if (insertedCount != writes.size()) {
+            throw new RuntimeException(
+                    "The number of processed Variants (" + writes.size()
+                            + ") is different from the number of new annotation inserted (" + insertedCount
+                            + "). The '" + ANNOT_FIELD + "' field of this bulk will not be removed from the "
+                            + variantsCollection.getNamespace() + " collection.");
+        }
+        return variantsCollection.bulkWrite(annotationsToUpdate, options).getModifiedCount();
+    }
+
+    /**
+     * The annotations of a bulk that was being written when a previous run was interrupted may be in the collection
+     * already. In that case the bulk is inserted again one annotation at a time, counting the duplicates as inserted,
+     * because servers don't agree on whether the rest of an unordered bulk is written after a duplicate key.
+     *
+     * @return The number of annotations inserted, now or in a previous run
+     */
+    private long insertAnnotations(MongoCollection<Document> annotationCollection,
+                                   List<InsertOneModel<Document>> annotationsToInsert, BulkWriteOptions options) {
+        try {
+            return annotationCollection.bulkWrite(annotationsToInsert, options).getInsertedCount();
+        } catch (MongoBulkWriteException e) {
+            for (BulkWriteError error : e.getWriteErrors()) {
+                if (ErrorCategory.fromErrorCode(error.getCode()) != ErrorCategory.DUPLICATE_KEY) {
+                    throw e;
+                }
+            }
+        }
+
+        long insertedCount = 0;
+        long duplicatedCount = 0;
+        for (InsertOneModel<Document> annotationToInsert : annotationsToInsert) {
+            try {
+                annotationCollection.insertOne(annotationToInsert.getDocument());
+                insertedCount++;
+            } catch (MongoWriteException e) {
+                if (ErrorCategory.fromErrorCode(e.getCode()) != ErrorCategory.DUPLICATE_KEY) {
+                    throw e;
                 }
+                duplicatedCount++;
             }
         }
-        return batch;
+        logger.info("{} annotations were already in collection {}, {} were inserted", duplicatedCount,
+                    annotationCollection.getNamespace(), insertedCount);
+        return insertedCount + duplicatedCount;
+    }
+
+    private PartitionedMigration buildPartitionedMigration(MongoDatabase mongoDatabase, String migrationId) {
+        MongoCollection<Document> progressCollection = mongoDatabase.getCollection(
+                databaseParameters.getDbCollectionsMigrationProgressName());
+        return new PartitionedMigration(databaseParameters.getMigrationThreads(),
+                                        databaseParameters.getMigrationCursorBatchSize(),
+                                        databaseParameters.getMigrationBulkSize(),
+                                        databaseParameters.getMigrationBulkMaxBytes(),
+                                        new MigrationProgress(progressCollection, migrationId),
+                                        buildThrottle());
+    }
+
+    private MigrationThrottle buildThrottle() {
+        if (databaseParameters.getMigrationMaxWriteLatencyMillis() == 0
+                && (databaseParameters.getMigrationMaxReplicationLagSeconds() == 0 || replicationLagMonitor == null)) {
+            return null;
+        }
+        return new MigrationThrottle(databaseParameters.getMigrationThreads(),
+                                     databaseParameters.getMigrationBulkSize(),
+                                     databaseParameters.getMigrationMaxWriteLatencyMillis(),
+                                     databaseParameters.getMigrationMaxReplicationLagSeconds(),
+                                     replicationLagMonitor);
     }
 
     private InsertOneModel<Document> buildInsertionDocument(Document variantDocument) {
@@ -175,7 +355,11 @@ public class ExtractAnnotationFromVariant {
     }
 
     private String buildAnnotationId(Document variantDocument) {
-        return variantDocument.get("_id")
+        return buildAnnotationId(variantDocument.get("_id"));
+    }
+
+    private String buildAnnotationId(Object variantId) {
+        return variantId
                 + "_" + databaseParameters.getVepVersion()
                 + "_" + databaseParameters.getVepCacheVersion();
     }
@@ -187,35 +371,28 @@ public class ExtractAnnotationFromVariant {
                 databaseParameters.getDbCollectionsVariantsName());
         logger.info("2) drop indexes from annot field from collection {}", variantsCollection.getNamespace());
 
-        variantsCollection.dropIndex(LEGACY_ANNOTATION_CT_SO_INDEX);
-        variantsCollection.dropIndex(LEGACY_ANNOTATION_XREF_ID_INDEX);
+        MigrationIndexes.dropIndexes(variantsCollection, LEGACY_ANNOTATION_INDEXES);
     }
 
     @ChangeSet(order = "003", id = "reduceAnnotationFromVariants", author = "EVA")
     public void reduceAnnotationFromVariants(MongoDatabase mongoDatabase) {
         final MongoCollection<Document> variantsCollection = mongoDatabase.getCollection(
                 databaseParameters.getDbCollectionsVariantsName());
+        if (databaseParameters.isMigrationFused()) {
+            logger.info("3) annotation field from collection {} already reduced while migrating it",
+                        variantsCollection.getNamespace());
+            return;
+        }
         logger.info("3) reduce annotation field from collection {}", variantsCollection.getNamespace());
 
-        long annotationsReadCount = 0;
-        long annotationsUpdatedCount = 0;
         BulkWriteOptions unorderedBulk = new BulkWriteOptions().ordered(false);
-        Document onlyAnnotatedVariants = new Document(ANNOT_FIELD, EXISTS);
-        try (MongoCursor<Document> cursor = variantsCollection.find(onlyAnnotatedVariants).iterator()) {
-            while (true) {
-                List<UpdateOneModel<Document>> annotationsToUpdate = getBatch(cursor, BULK_SIZE)
-                        .stream()
-                        .map(this::buildUpdateDocument)
-                        .collect(toList());
-
-                if (annotationsToUpdate.isEmpty()) {
-                    break;
-                }
-                annotationsReadCount += annotationsToUpdate.size();
-                BulkWriteResult bulkInsert = variantsCollection.bulkWrite(annotationsToUpdate, unorderedBulk);
-                annotationsUpdatedCount += bulkInsert.getModifiedCount();
-            }
-        }
+        MigrationCounts counts = buildPartitionedMigration(mongoDatabase, "reduceAnnotationFromVariants").run(
+                mongoDatabase, variantsCollection, ANNOTATED_VARIANTS_NOT_REDUCED, ANNOTATION_REDUCTION_FIELDS,
+                this::buildUpdateDocument,
+                annotationsToUpdate -> variantsCollection.bulkWrite(annotationsToUpdate, unorderedBulk)
+                                                         .getModifiedCount());
+        long annotationsReadCount = counts.getReadCount();
+        long annotationsUpdatedCount = counts.getWrittenCount();
         if (annotationsReadCount != annotationsUpdatedCount) {
             throw new RuntimeException(
                     "The number of processed Variants (" + annotationsReadCount + ") is different from the number of annotation "
@@ -339,15 +516,9 @@ public class ExtractAnnotationFromVariant {
         logger.info("5) create indexes collections {} and {}",
                     annotationsCollection.getNamespace(), variantsCollection.getNamespace());
 
-        IndexOptions background = new IndexOptions().background(true);
-        variantsCollection.createIndex(new Document(ANNOT_FIELD + "." + XREFS_FIELD, 1), background);
-        variantsCollection.createIndex(new Document(ANNOT_FIELD + "." + SO_FIELD, 1), background);
-
-        annotationsCollection.createIndex(new Document(CONSEQUENCE_TYPE_FIELD + "." + SO_FIELD, 1), background);
-        annotationsCollection.createIndex(new Document(XREFS_FIELD + "." + XREF_ID_FIELD, 1), background);
-        annotationsCollection.createIndex(new Document(CHROMOSOME_FIELD, 1).append(START_FIELD, 1).append(END_FIELD, 1),
-                                          background);
+        MigrationIndexes.createIndexes(mongoDatabase, MigrationIndexes.getIndexes(databaseParameters));
     }
+
     @ChangeSet(order = "006", id = "addDefaultVersionInAnnotationMetadata", author = "EVA")
     public void addDefaultVersion(MongoDatabase mongoDatabase) {
         final MongoCollection<Document> annotationMetadataCollection = mongoDatabase.getCollection(
@@ -364,4 +535,20 @@ public class ExtractAnnotationFromVariant {
         UpdateResult updateResult = annotationMetadataCollection.updateOne(defaultVersionDocument, setDefaultToTrue);
         Assert.state(updateResult.getModifiedCount() == 1, "Only one modification was expected");
     }
+
+    /**
+     * The annotation to insert and the reduced annotation to update for a variant, built from the same 'annot' field
+     */
+    private class AnnotationWrites {
+
+        private final UpdateOneModel<Document> update;
+
+        private final InsertOneModel<Document> insertion;
+
+        AnnotationWrites(Document variantDocument) {
+            // the update is built first because building the insertion modifies the 'annot' subdocument
+            this.update = buildUpdateDocument(variantDocument);
+            this.insertion = buildInsertionDocument(variantDocument);
+        }
+    }
 }
@@ -0,0 +1,100 @@
+/*
+ * Copyright 2018 EMBL - European Bioinformatics Institute
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.ac.ebi.eva.dbmigration.mongodb;
+
+import com.mongodb.client.model.Filters;
+import org.bson.conversions.Bson;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Range of document ids of a collection, from a lower bound (inclusive) to an upper bound (exclusive). A null bound
+ * means that the range is open at that side.
+ */
+class IdRange {
+
+    private static final String ID_FIELD = "_id";
+
+    private final Object lowerBound;
+
+    private final Object upperBound;
+
+    IdRange(Object lowerBound, Object upperBound) {
+        this.lowerBound = lowerBound;
+        this.upperBound = upperBound;
+    }
+
+    /**
+     * @return A range covering the whole collection
+     */
+    static IdRange all() {
+        return new IdRange(null, null);
+    }
+
+    /**
+     * @param boundaries Sorted ids where a range ends and the next one starts
+     * @return Consecutive ranges that cover the whole collection
+     */
+    static List<IdRange> fromBoundaries(List<?> boundaries) {
+        List<IdRange> ranges = new ArrayList<>(boundaries.size() + 1);
+        Object lowerBound = null;
+        for (Object boundary : boundaries) {
+            ranges.add(new IdRange(lowerBound, boundary));
+            lowerBound = boundary;
+        }
+        ranges.add(new IdRange(lowerBound, null));
+        return ranges;
+    }
+
+    /**
+     * @return The filter restricted to the documents of this range
+     */
+    Bson restrict(Bson filter) {
+        List<Bson> filters = new ArrayList<>(3);
+        filters.add(filter);
+        if (lowerBound != null) {
+            filters.add(Filters.gte(ID_FIELD, lowerBound));
+        }
+        if (upperBound != null) {
+            filters.add(Filters.lt(ID_FIELD, upperBound));
+        }
+        return filters.size() == 1 ? filter : Filters.and(filters);
+    }
+
+    /**
+     * @param boundMapper Maps an id to the id of another collection, keeping the order of the ids
+     * @return The range between the mapped bounds
+     */
+    IdRange map(Function<Object, Object> boundMapper) {
+        return new IdRange(lowerBound == null ? null : boundMapper.apply(lowerBound),
+                           upperBound == null ? null : boundMapper.apply(upperBound));
+    }
+
+    Object getLowerBound() {
+        return lowerBound;
+    }
+
+    Object getUpperBound() {
+        return upperBound;
+    }
+
+    @Override
+    public String toString() {
+        return "[" + (lowerBound == null ? "" : lowerBound) + ", " + (upperBound == null ? "" : upperBound) + ")";
+    }
+}
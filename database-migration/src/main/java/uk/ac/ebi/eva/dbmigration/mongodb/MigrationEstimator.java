@@ -0,0 +1,355 @@
+/*
+ * Copyright 2018 EMBL - European Bioinformatics Institute
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.ac.ebi.eva.dbmigration.mongodb;
+
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoDatabase;
+import com.mongodb.client.model.Aggregates;
+import com.mongodb.client.model.IndexModel;
+import org.bson.BsonDocument;
+import org.bson.BsonDocumentReader;
+import org.bson.Document;
+import org.bson.RawBsonDocument;
+import org.bson.codecs.Codec;
+import org.bson.codecs.DecoderContext;
+import org.bson.codecs.configuration.CodecRegistry;
+import org.bson.conversions.Bson;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * Estimates the cost of a migration without writing anything: a sample of the documents is read and transformed in
+ * memory, and the measures are projected to the whole collection with its stats.
+ * <p>
+ * The estimate includes the time to read and transform the collection, the bytes that would be inserted and updated,
+ * and the size of the new indexes. The reads of a random sample are slower than a scan of the collection, so the time
+ * is only an order of magnitude. The writes are not measured: their time is only estimated if the write throughput of
+ * the server is given, dividing the bytes to insert, update and index by it. Index sizes assume a fixed overhead per
+ * entry and ignore compression.
+ */
+class MigrationEstimator {
+
+    private static final Logger logger = LoggerFactory.getLogger(MigrationEstimator.class);
+
+    /**
+     * Approximate bytes of an index entry besides its key: record id and B-tree bookkeeping
+     */
+    static final int INDEX_ENTRY_OVERHEAD_BYTES = 16;
+
+    /**
+     * Bytes of a document {"": value} that are not the value: length, type, empty name and terminator
+     */
+    private static final int SINGLE_VALUE_DOCUMENT_OVERHEAD_BYTES = 7;
+
+    private static final String SET_OPERATOR = "$set";
+
+    private final int sampleSize;
+
+    private final long writeBytesPerSecond;
+
+    /**
+     * @param writeBytesPerSecond Write throughput of the server, or 0 if unknown, which leaves the writes out of the
+     *                            estimated time
+     */
+    MigrationEstimator(int sampleSize, long writeBytesPerSecond) {
+        if (sampleSize < 1) {
+            throw new IllegalArgumentException("The sample size must be a positive number");
+        }
+        if (writeBytesPerSecond < 0) {
+            throw new IllegalArgumentException("The write throughput can not be negative");
+        }
+        this.sampleSize = sampleSize;
+        this.writeBytesPerSecond = writeBytesPerSecond;
+    }
+
+    /**
+     * @param migrated       Whether a document would be migrated
+     * @param insertion      Builds the document that would be inserted in the target collection
+     * @param update         Builds the update that would be applied to the source document
+     * @param indexes        Indexes that would be built in the target and the source collection, by collection name
+     * @param droppedIndexes Names of the indexes of the source collection that would be dropped
+     */
+    MigrationEstimate estimate(MongoDatabase database, MongoCollection<Document> source, String targetName,
+                               Predicate<Document> migrated, Function<Document, Document> insertion,
+                               Function<Document, Bson> update, Map<String, List<IndexModel>> indexes,
+                               List<String> droppedIndexes) {
+        CodecRegistry codecRegistry = source.getCodecRegistry();
+        Codec<Document> documentCodec = codecRegistry.get(Document.class);
+
+        long readStart = System.nanoTime();
+        List<Document> sample = sample(source);
+        long readNanos = System.nanoTime() - readStart;
+
+        MigrationEstimate estimate = new MigrationEstimate();
+        estimate.sampledDocuments = sample.size();
+        long sampleBytes = 0;
+        long migratedDocuments = 0;
+        long insertedBytes = 0;
+        long updatedBytes = 0;
+        long targetIndexBytes = 0;
+        long sourceIndexBytes = 0;
+        long transformNanos = 0;
+        for (Document document : sample) {
+            sampleBytes += new RawBsonDocument(document, documentCodec).getByteBuffer().remaining();
+            if (!migrated.test(document)) {
+                continue;
+            }
+            migratedDocuments++;
+            long transformStart = System.nanoTime();
+            Bson documentUpdate = update.apply(document);
+            Document insertedDocument = insertion.apply(document);
+            transformNanos += System.nanoTime() - transformStart;
+
+            insertedBytes += new RawBsonDocument(insertedDocument, documentCodec).getByteBuffer().remaining();
+            BsonDocument updateDocument = documentUpdate.toBsonDocument(Document.class, codecRegistry);
+            updatedBytes += new RawBsonDocument(updateDocument, codecRegistry.get(BsonDocument.class))
+                    .getByteBuffer().remaining();
+            targetIndexBytes += estimateIndexBytes(insertedDocument, indexes.get(targetName), codecRegistry);
+            Document updatedFields = documentCodec.decode(
+                    new BsonDocumentReader(updateDocument.getDocument(SET_OPERATOR)), DecoderContext.builder().build());
+            sourceIndexBytes += estimateIndexBytes(updatedFields,
+                                                   indexes.get(source.getNamespace().getCollectionName()),
+                                                   codecRegistry);
+        }
+
+        CollectionStats stats = getStats(database, source, sample.size(), sampleBytes);
+        double migratedFraction = sample.isEmpty() ? 0 : (double) migratedDocuments / sample.size();
+        double perMigratedDocument = migratedDocuments == 0 ? 0 : 1.0 / migratedDocuments;
+        estimate.documents = stats.count;
+        estimate.collectionBytes = stats.size;
+        estimate.migratedDocuments = Math.round(stats.count * migratedFraction);
+        estimate.insertedBytes = Math.round(estimate.migratedDocuments * insertedBytes * perMigratedDocument);
+        estimate.updatedBytes = Math.round(estimate.migratedDocuments * updatedBytes * perMigratedDocument);
+        estimate.targetIndexBytes = Math.round(estimate.migratedDocuments * targetIndexBytes * perMigratedDocument);
+        estimate.sourceIndexBytes = Math.round(estimate.migratedDocuments * sourceIndexBytes * perMigratedDocument);
+        estimate.droppedIndexBytes = 0;
+        for (String droppedIndex : droppedIndexes) {
+            estimate.droppedIndexBytes += stats.indexSizes.getOrDefault(droppedIndex, 0L);
+        }
+        estimate.readBytesPerSecond = readNanos == 0 ? 0 : sampleBytes * 1e9 / readNanos;
+        estimate.transformedDocumentsPerSecond = transformNanos == 0 ? 0 : migratedDocuments * 1e9 / transformNanos;
+        double readSeconds = estimate.readBytesPerSecond == 0 ? 0 : stats.size / estimate.readBytesPerSecond;
+        double transformSeconds = estimate.transformedDocumentsPerSecond == 0
+                ? 0 : estimate.migratedDocuments / estimate.transformedDocumentsPerSecond;
+        estimate.readAndTransformSeconds = readSeconds + transformSeconds;
+        estimate.writeBytesPerSecond = writeBytesPerSecond;
+        estimate.writeSeconds = writeBytesPerSecond == 0 ? 0 : (double) (estimate.insertedBytes + estimate.updatedBytes
+                + estimate.targetIndexBytes + estimate.sourceIndexBytes) / writeBytesPerSecond;
+
+        logger.info("Dry run of the migration of collection {}: {}", source.getNamespace(), estimate);
+        return estimate;
+    }
+
+    /**
+     * @return A random sample of the collection, or its first documents if the server can't take random samples
+     */
+    private List<Document> sample(MongoCollection<Document> collection) {
+        try {
+            return collection.aggregate(Collections.singletonList(Aggregates.sample(sampleSize)))
+                             .into(new ArrayList<>(sampleSize));
+        } catch (RuntimeException e) {
+            logger.info("$sample is not available ({}), taking the first {} documents instead", e.getMessage(),
+                        sampleSize);
+            return collection.find().limit(sampleSize).into(new ArrayList<>(sampleSize));
+        }
+    }
+
+    private CollectionStats getStats(MongoDatabase database, MongoCollection<Document> collection, int sampleSize,
+                                     long sampleBytes) {
+        CollectionStats stats = new CollectionStats();
+        try {
+            Document collStats = database.runCommand(
+                    new Document("collStats", collection.getNamespace().getCollectionName()));
+            stats.count = ((Number) collStats.get("count")).longValue();
+            stats.size = ((Number) collStats.get("size")).longValue();
+            Document indexSizes = (Document) collStats.get("indexSizes");
+            if (indexSizes != null) {
+                for (Map.Entry<String, Object> indexSize : indexSizes.entrySet()) {
+                    stats.indexSizes.put(indexSize.getKey(), ((Number) indexSize.getValue()).longValue());
+                }
+            }
+        } catch (RuntimeException e) {
+            logger.info("collStats is not available ({}), estimating the size from the sample", e.getMessage());
+            stats.count = collection.count();
+            stats.size = sampleSize == 0 ? 0 : stats.count * sampleBytes / sampleSize;
+        }
+        return stats;
+    }
+
+    private long estimateIndexBytes(Document document, List<IndexModel> indexes, CodecRegistry codecRegistry) {
+        if (indexes == null) {
+            return 0;
+        }
+        Codec<Document> documentCodec = codecRegistry.get(Document.class);
+        long bytes = 0;
+        for (IndexModel index : indexes) {
+            long keyBytes = 0;
+            long entries = 1;
+            for (String field : index.getKeys().toBsonDocument(Document.class, codecRegistry).keySet()) {
+                List<Object> values = new ArrayList<>();
+                collectValues(document, field.split("\\."), 0, values);
+                if (values.isEmpty()) {
+                    values.add(null);
+                }
+                // a compound index has an entry per combination, but at most one of its fields can be an array
+                entries *= values.size();
+                long valueBytes = 0;
+                for (Object value : values) {
+                    valueBytes += new RawBsonDocument(new Document("", value), documentCodec).getByteBuffer()
+                                                                                            .remaining()
+                            - SINGLE_VALUE_DOCUMENT_OVERHEAD_BYTES;
+                }
+                keyBytes += valueBytes / values.size();
+            }
+            bytes += entries * (keyBytes + INDEX_ENTRY_OVERHEAD_BYTES);
+        }
+        return bytes;
+    }
+
+    /**
+     * Collects the values of a dotted path, going through the arrays as an index does
+     */
+    private static void collectValues(Object value, String[] path, int position, List<Object> values) {
+        if (value instanceof List) {
+            for (Object element : (List<?>) value) {
+                collectValues(element, path, position, values);
+            }
+        } else if (position == path.length) {
+            values.add(value);
+        } else if (value instanceof Document) {
+            Document document = (Document) value;
+            if (document.containsKey(path[position])) {
+                collectValues(document.get(path[position]), path, position + 1, values);
+            }
+        }
+    }
+
+    private static class CollectionStats {
+
+        private long count;
+
+        private long size;
+
+        private final Map<String, Long> indexSizes = new HashMap<>();
+    }
+
+    /**
+     * Projection of the cost of a migration to the whole collection
+     */
+    static class MigrationEstimate {
+
+        private long sampledDocuments;
+
+        private long documents;
+
+        private long collectionBytes;
+
+        private long migratedDocuments;
+
+        private long insertedBytes;
+
+        private long updatedBytes;
+
+        private long targetIndexBytes;
+
+        private long sourceIndexBytes;
+
+        private long droppedIndexBytes;
+
+        private double readBytesPerSecond;
+
+        private double transformedDocumentsPerSecond;
+
+        private double readAndTransformSeconds;
+
+        private long writeBytesPerSecond;
+
+        private double writeSeconds;
+
+        long getSampledDocuments() {
+            return sampledDocuments;
+        }
+
+        long getDocuments() {
+            return documents;
+        }
+
+        long getMigratedDocuments() {
+            return migratedDocuments;
+        }
+
+        long getInsertedBytes() {
+            return insertedBytes;
+        }
+
+        long getUpdatedBytes() {
+            return updatedBytes;
+        }
+
+        long getTargetIndexBytes() {
+            return targetIndexBytes;
+        }
+
+        long getSourceIndexBytes() {
+            return sourceIndexBytes;
+        }
+
+        long getDroppedIndexBytes() {
+            return droppedIndexBytes;
+        }
+
+        double getReadAndTransformSeconds() {
+            return readAndTransformSeconds;
+        }
+
+        /**
+         * @return Time to write the inserted, updated and index bytes, or 0 if the write throughput is unknown
+         */
+        double getWriteSeconds() {
+            return writeSeconds;
+        }
+
+        double getEstimatedSeconds() {
+            return readAndTransformSeconds + writeSeconds;
+        }
+
+        @Override
+        public String toString() {
+            double megabyte = 1024 * 1024;
+            return String.format("%d documents sampled out of %d (%.1f MB); %d documents to migrate; "
+                                         + "%.1f MB to insert and %.1f MB of updates; %.1f MB of new indexes in the "
+                                         + "target and %.1f MB in the source, %.1f MB of indexes dropped; "
+                                         + "%.1f MB/s read and %.0f documents/s transformed in the sample; "
+                                         + "about %.0f s to read and transform, %s",
+                                 sampledDocuments, documents, collectionBytes / megabyte, migratedDocuments,
+                                 insertedBytes / megabyte, updatedBytes / megabyte, targetIndexBytes / megabyte,
+                                 sourceIndexBytes / megabyte, droppedIndexBytes / megabyte,
+                                 readBytesPerSecond / megabyte, transformedDocumentsPerSecond, readAndTransformSeconds,
+                                 writeBytesPerSecond == 0
+                                         ? "without the writes, whose throughput is unknown"
+                                         : String.format("and %.0f s to write at %.1f MB/s", writeSeconds,
+                                                         writeBytesPerSecond / megabyte));
+        }
+    }
+}
@@ -0,0 +1,158 @@
+/*
+ * Copyright 2018 EMBL - European Bioinformatics Institute
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.ac.ebi.eva.dbmigration.mongodb;
+
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoDatabase;
+import com.mongodb.client.model.IndexModel;
+import com.mongodb.client.model.IndexOptions;
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static uk.ac.ebi.eva.dbmigration.mongodb.ExtractAnnotationFromVariant.ANNOT_FIELD;
+import static uk.ac.ebi.eva.dbmigration.mongodb.ExtractAnnotationFromVariant.CHROMOSOME_FIELD;
+import static uk.ac.ebi.eva.dbmigration.mongodb.ExtractAnnotationFromVariant.CONSEQUENCE_TYPE_FIELD;
+import static uk.ac.ebi.eva.dbmigration.mongodb.ExtractAnnotationFromVariant.END_FIELD;
+import static uk.ac.ebi.eva.dbmigration.mongodb.ExtractAnnotationFromVariant.SO_FIELD;
+import static uk.ac.ebi.eva.dbmigration.mongodb.ExtractAnnotationFromVariant.START_FIELD;
+import static uk.ac.ebi.eva.dbmigration.mongodb.ExtractAnnotationFromVariant.XREFS_FIELD;
+import static uk.ac.ebi.eva.dbmigration.mongodb.ExtractAnnotationFromVariant.XREF_ID_FIELD;
+
+/**
+ * Indexes that the migration leaves in the variants and annotations collections, declared once so they can be dropped
+ * before the bulk load and built again after it.
+ * <p>
+ * The indexes of each collection are built with a single createIndexes command, and the collections are indexed at
+ * the same time.
+ */
+class MigrationIndexes {
+
+    private static final Logger logger = LoggerFactory.getLogger(MigrationIndexes.class);
+
+    private static final List<IndexModel> VARIANTS_INDEXES = Arrays.asList(
+            buildIndex(new Document(ANNOT_FIELD + "." + XREFS_FIELD, 1)),
+            buildIndex(new Document(ANNOT_FIELD + "." + SO_FIELD, 1)));
+
+    private static final List<IndexModel> ANNOTATIONS_INDEXES = Arrays.asList(
+            buildIndex(new Document(CONSEQUENCE_TYPE_FIELD + "." + SO_FIELD, 1)),
+            buildIndex(new Document(XREFS_FIELD + "." + XREF_ID_FIELD, 1)),
+            buildIndex(new Document(CHROMOSOME_FIELD, 1).append(START_FIELD, 1).append(END_FIELD, 1)));
+
+    private MigrationIndexes() {
+    }
+
+    /**
+     * The indexes are named explicitly, with the same name the server would give them, so they can be dropped by name
+     */
+    private static IndexModel buildIndex(Document keys) {
+        StringBuilder name = new StringBuilder();
+        for (Map.Entry<String, Object> key : keys.entrySet()) {
+            if (name.length() > 0) {
+                name.append("_");
+            }
+            name.append(key.getKey()).append("_").append(key.getValue());
+        }
+        return new IndexModel(keys, new IndexOptions().background(true).name(name.toString()));
+    }
+
+    /**
+     * @return The indexes of each collection, by the collection names in the database parameters
+     */
+    static Map<String, List<IndexModel>> getIndexes(DatabaseParameters databaseParameters) {
+        Map<String, List<IndexModel>> indexes = new LinkedHashMap<>();
+        indexes.put(databaseParameters.getDbCollectionsVariantsName(), VARIANTS_INDEXES);
+        indexes.put(databaseParameters.getDbCollectionsAnnotationsName(), ANNOTATIONS_INDEXES);
+        return indexes;
+    }
+
+    /**
+     * Drops the indexes that already exist, so the bulk load doesn't have to update them
+     */
+    static void dropIndexes(MongoDatabase database, Map<String, List<IndexModel>> indexes) {
+        for (Map.Entry<String, List<IndexModel>> collectionIndexes : indexes.entrySet()) {
+            List<String> names = new ArrayList<>();
+            for (IndexModel index : collectionIndexes.getValue()) {
+                names.add(index.getOptions().getName());
+            }
+            dropIndexes(database.getCollection(collectionIndexes.getKey()), names);
+        }
+    }
+
+    /**
+     * Drops the indexes with the given names, skipping those that don't exist
+     */
+    static void dropIndexes(MongoCollection<Document> collection, List<String> names) {
+        Set<String> existingIndexes = new HashSet<>();
+        for (Document index : collection.listIndexes()) {
+            existingIndexes.add(index.getString("name"));
+        }
+        for (String name : names) {
+            if (existingIndexes.contains(name)) {
+                logger.info("Dropping index {} of collection {}", name, collection.getNamespace());
+                collection.dropIndex(name);
+            }
+        }
+    }
+
+    /**
+     * Builds the indexes of all the collections at the same time and logs how long each collection took
+     */
+    static void createIndexes(MongoDatabase database, Map<String, List<IndexModel>> indexes) {
+        ExecutorService executor = Executors.newFixedThreadPool(indexes.size());
+        try {
+            List<Future<?>> futures = new ArrayList<>(indexes.size());
+            for (Map.Entry<String, List<IndexModel>> collectionIndexes : indexes.entrySet()) {
+                MongoCollection<Document> collection = database.getCollection(collectionIndexes.getKey());
+                futures.add(executor.submit(() -> createIndexes(collection, collectionIndexes.getValue())));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while creating the indexes", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new RuntimeException("Could not create the indexes", cause);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static void createIndexes(MongoCollection<Document> collection, List<IndexModel> indexes) {
+        long start = System.nanoTime();
+        List<String> names = collection.createIndexes(indexes);
+        logger.info("Created indexes {} of collection {} in {} ms", names, collection.getNamespace(),
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+    }
+}
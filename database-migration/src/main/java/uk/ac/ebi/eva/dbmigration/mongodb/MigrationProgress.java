@@ -0,0 +1,157 @@
+/*
+ * Copyright 2018 EMBL - European Bioinformatics Institute
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.ac.ebi.eva.dbmigration.mongodb;
+
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.Sorts;
+import com.mongodb.client.model.Updates;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Progress of a {@link PartitionedMigration}, kept in a collection so an interrupted migration can resume where it
+ * stopped.
+ * <p>
+ * There is one document per range, with the boundaries of the range, the last id migrated (the watermark) and whether
+ * the range is done. The ranges are stored when the migration starts, so a resumed migration uses the same ranges even
+ * if the collection would be split differently. The documents are removed once every range is done.
+ */
+class MigrationProgress {
+
+    private static final String ID_FIELD = "_id";
+
+    static final String MIGRATION_FIELD = "migration";
+
+    static final String RANGE_FIELD = "range";
+
+    static final String LOWER_BOUND_FIELD = "lower";
+
+    static final String UPPER_BOUND_FIELD = "upper";
+
+    static final String LAST_ID_FIELD = "last";
+
+    static final String DONE_FIELD = "done";
+
+    private final MongoCollection<Document> progressCollection;
+
+    private final String migrationId;
+
+    MigrationProgress(MongoCollection<Document> progressCollection, String migrationId) {
+        this.progressCollection = progressCollection;
+        this.migrationId = migrationId;
+    }
+
+    /**
+     * @return The ranges of a previous run of this migration, or an empty list if there was none
+     */
+    List<RangeProgress> load() {
+        List<RangeProgress> ranges = new ArrayList<>();
+        for (Document document : progressCollection.find(Filters.eq(MIGRATION_FIELD, migrationId))
+                                                   .sort(Sorts.ascending(RANGE_FIELD))) {
+            IdRange range = new IdRange(document.get(LOWER_BOUND_FIELD), document.get(UPPER_BOUND_FIELD));
+            ranges.add(new RangeProgress(document.getInteger(RANGE_FIELD), range, document.get(LAST_ID_FIELD),
+                                         document.getBoolean(DONE_FIELD, false)));
+        }
+        return ranges;
+    }
+
+    List<RangeProgress> start(List<IdRange> ranges) {
+        List<RangeProgress> rangesProgress = new ArrayList<>(ranges.size());
+        List<Document> documents = new ArrayList<>(ranges.size());
+        for (int i = 0; i < ranges.size(); i++) {
+            IdRange range = ranges.get(i);
+            rangesProgress.add(new RangeProgress(i, range, null, false));
+            documents.add(new Document(ID_FIELD, buildId(i))
+                                  .append(MIGRATION_FIELD, migrationId)
+                                  .append(RANGE_FIELD, i)
+                                  .append(LOWER_BOUND_FIELD, range.getLowerBound())
+                                  .append(UPPER_BOUND_FIELD, range.getUpperBound())
+                                  .append(DONE_FIELD, false));
+        }
+        progressCollection.insertMany(documents);
+        return rangesProgress;
+    }
+
+    void update(RangeProgress range, Object lastId) {
+        progressCollection.updateOne(Filters.eq(ID_FIELD, buildId(range.getIndex())),
+                                     Updates.set(LAST_ID_FIELD, lastId));
+    }
+
+    void complete(RangeProgress range) {
+        progressCollection.updateOne(Filters.eq(ID_FIELD, buildId(range.getIndex())), Updates.set(DONE_FIELD, true));
+    }
+
+    void clear() {
+        progressCollection.deleteMany(Filters.eq(MIGRATION_FIELD, migrationId));
+    }
+
+    private String buildId(int range) {
+        return migrationId + "_" + range;
+    }
+
+    String getMigrationId() {
+        return migrationId;
+    }
+
+    /**
+     * A range of a migration and how far it got
+     */
+    static class RangeProgress {
+
+        private final int index;
+
+        private final IdRange range;
+
+        private final Object lastId;
+
+        private final boolean done;
+
+        RangeProgress(int index, IdRange range, Object lastId, boolean done) {
+            this.index = index;
+            this.range = range;
+            this.lastId = lastId;
+            this.done = done;
+        }
+
+        /**
+         * @return The filter restricted to the documents of the range that were not migrated yet
+         */
+        Bson restrict(Bson filter) {
+            Bson rangeFilter = range.restrict(filter);
+            return lastId == null ? rangeFilter : Filters.and(rangeFilter, Filters.gt(ID_FIELD, lastId));
+        }
+
+        int getIndex() {
+            return index;
+        }
+
+        IdRange getRange() {
+            return range;
+        }
+
+        Object getLastId() {
+            return lastId;
+        }
+
+        boolean isDone() {
+            return done;
+        }
+    }
+}
@@ -0,0 +1,182 @@
+/*
+ * Copyright 2018 EMBL - European Bioinformatics Institute
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.ac.ebi.eva.dbmigration.mongodb;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Adapts the rate of the bulk writes of a migration so the replica set keeps serving reads: the latency of each bulk
+ * write and the replication lag of the secondaries are compared to their targets, and the number of concurrent writes,
+ * the bulk size and a pause between writes are adjusted accordingly.
+ * <p>
+ * When a target is exceeded, the concurrency is halved first, then the bulk size, and when both are at their minimum
+ * the writes are paused for increasing times. When the latency and the lag are under half their targets, the same
+ * steps are undone one at a time, in the opposite order. A target of 0 is not checked.
+ * <p>
+ * Every adjustment starts a new generation. The writes that were acquired in a previous generation ran at the old
+ * rate, so their latency is ignored: otherwise all the slow writes in flight would halve the rate one after another.
+ */
+class MigrationThrottle {
+
+    private static final Logger logger = LoggerFactory.getLogger(MigrationThrottle.class);
+
+    static final int MIN_BULK_SIZE = 10;
+
+    private static final long MIN_PAUSE_MILLIS = 100;
+
+    private static final long MAX_PAUSE_MILLIS = 30000;
+
+    private final int maxConcurrency;
+
+    private final int maxBulkSize;
+
+    private final long targetLatencyMillis;
+
+    private final long maxReplicationLagSeconds;
+
+    private final LongSupplier replicationLagSeconds;
+
+    private int concurrency;
+
+    private int bulkSize;
+
+    private long pauseMillis;
+
+    private int activeWrites;
+
+    private long generation;
+
+    /**
+     * @param replicationLagSeconds Current replication lag, or null if it can't be known
+     */
+    MigrationThrottle(int maxConcurrency, int maxBulkSize, long targetLatencyMillis, long maxReplicationLagSeconds,
+                      LongSupplier replicationLagSeconds) {
+        if (maxConcurrency < 1 || maxBulkSize < 1 || targetLatencyMillis < 0 || maxReplicationLagSeconds < 0) {
+            throw new IllegalArgumentException("The throttle limits must be positive numbers and the targets must "
+                                                       + "not be negative");
+        }
+        this.maxConcurrency = maxConcurrency;
+        this.maxBulkSize = maxBulkSize;
+        this.targetLatencyMillis = targetLatencyMillis;
+        this.maxReplicationLagSeconds = replicationLagSeconds == null ? 0 : maxReplicationLagSeconds;
+        this.replicationLagSeconds = replicationLagSeconds;
+        this.concurrency = maxConcurrency;
+        this.bulkSize = maxBulkSize;
+        this.pauseMillis = 0;
+        this.activeWrites = 0;
+        this.generation = 0;
+    }
+
+    /**
+     * Waits until a bulk can be written. Each call must be followed by a call to {@link #release(long, long)}.
+     *
+     * @return Generation of the rate the bulk is written with, to be passed to {@link #release(long, long)}
+     */
+    long acquire() throws InterruptedException {
+        long pause;
+        long acquiredGeneration;
+        synchronized (this) {
+            while (activeWrites >= concurrency) {
+                wait();
+            }
+            activeWrites++;
+            pause = pauseMillis;
+            acquiredGeneration = generation;
+        }
+        if (pause > 0) {
+            Thread.sleep(pause);
+        }
+        return acquiredGeneration;
+    }
+
+    /**
+     * @param acquiredGeneration Value returned by the call to {@link #acquire()} before the bulk write
+     * @param latencyNanos How long the bulk write took
+     */
+    void release(long acquiredGeneration, long latencyNanos) {
+        long latencyMillis = TimeUnit.NANOSECONDS.toMillis(latencyNanos);
+        long lagSeconds = maxReplicationLagSeconds > 0 ? replicationLagSeconds.getAsLong() : 0;
+        synchronized (this) {
+            activeWrites--;
+            if (acquiredGeneration == generation) {
+                if (isOverloaded(latencyMillis, lagSeconds)) {
+                    slowDown(latencyMillis, lagSeconds);
+                } else if (isUnderloaded(latencyMillis, lagSeconds)) {
+                    speedUp(latencyMillis, lagSeconds);
+                }
+            }
+            notifyAll();
+        }
+    }
+
+    private boolean isOverloaded(long latencyMillis, long lagSeconds) {
+        return (targetLatencyMillis > 0 && latencyMillis > targetLatencyMillis)
+                || (maxReplicationLagSeconds > 0 && lagSeconds > maxReplicationLagSeconds);
+    }
+
+    private boolean isUnderloaded(long latencyMillis, long lagSeconds) {
+        return (targetLatencyMillis == 0 || latencyMillis < targetLatencyMillis / 2)
+                && (maxReplicationLagSeconds == 0 || lagSeconds < maxReplicationLagSeconds / 2.0);
+    }
+
+    private void slowDown(long latencyMillis, long lagSeconds) {
+        if (concurrency > 1) {
+            concurrency = Math.max(1, concurrency / 2);
+        } else if (bulkSize > Math.min(MIN_BULK_SIZE, maxBulkSize)) {
+            bulkSize = Math.max(Math.min(MIN_BULK_SIZE, maxBulkSize), bulkSize / 2);
+        } else {
+            pauseMillis = Math.min(MAX_PAUSE_MILLIS, Math.max(MIN_PAUSE_MILLIS, pauseMillis * 2));
+        }
+        generation++;
+        logRate("Slowing down", latencyMillis, lagSeconds);
+    }
+
+    private void speedUp(long latencyMillis, long lagSeconds) {
+        if (pauseMillis > 0) {
+            pauseMillis = pauseMillis / 2 < MIN_PAUSE_MILLIS ? 0 : pauseMillis / 2;
+        } else if (bulkSize < maxBulkSize) {
+            bulkSize = Math.min(maxBulkSize, bulkSize + Math.max(1, maxBulkSize / 10));
+        } else if (concurrency < maxConcurrency) {
+            concurrency++;
+        } else {
+            return;
+        }
+        generation++;
+        logRate("Speeding up", latencyMillis, lagSeconds);
+    }
+
+    private void logRate(String change, long latencyMillis, long lagSeconds) {
+        logger.info("{} migration writes to {} concurrent bulks of {} documents with a pause of {} ms "
+                            + "(last bulk took {} ms, replication lag {} s)", change, concurrency, bulkSize,
+                    pauseMillis, latencyMillis, lagSeconds);
+    }
+
+    synchronized int getConcurrency() {
+        return concurrency;
+    }
+
+    synchronized int getBulkSize() {
+        return bulkSize;
+    }
+
+    synchronized long getPauseMillis() {
+        return pauseMillis;
+    }
+}
@@ -0,0 +1,310 @@
+/*
+ * Copyright 2018 EMBL - European Bioinformatics Institute
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.ac.ebi.eva.dbmigration.mongodb;
+
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoCursor;
+import com.mongodb.client.MongoDatabase;
+import com.mongodb.client.model.Accumulators;
+import com.mongodb.client.model.Aggregates;
+import com.mongodb.client.model.Filters;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Function;
+
+/**
+ * Checks that a migration wrote the expected documents, range by range of source ids, in parallel.
+ * <p>
+ * By default every range is compared document by document on the client, with a checksum of the contents of its
+ * documents. A reduced mode, chosen with a sample percentage below 100, first checks each range on the server: an
+ * aggregation counts the documents of the range in the source and in the target collections, and sums a numeric field
+ * that the migration copies unchanged. Then only the ranges where these don't match, plus a sample of the others, are
+ * compared on the client, so the contents of the ranges that are not sampled are not checked. If the server can't run
+ * the aggregation, every range is compared on the client.
+ * <p>
+ * The client checksum of a range is the sum of a hash of each document, so it doesn't depend on the order they are
+ * read in. The hash of a document doesn't depend on the order of its fields either, because the server may reorder
+ * them (the _id is always moved first). The target documents are looked up by id, one bulk of source documents at a
+ * time.
+ */
+class MigrationVerification {
+
+    private static final Logger logger = LoggerFactory.getLogger(MigrationVerification.class);
+
+    private static final String ID_FIELD = "_id";
+
+    private static final String COUNT_FIELD = "count";
+
+    private static final String SUM_FIELD = "sum";
+
+    private final int threads;
+
+    private final int bulkSize;
+
+    private final int samplePercentage;
+
+    /**
+     * @param samplePercentage Percentage of the ranges that are compared document by document even if they match on the
+     *                         server
+     */
+    MigrationVerification(int threads, int bulkSize, int samplePercentage) {
+        if (threads < 1 || bulkSize < 1) {
+            throw new IllegalArgumentException("The number of threads and the bulk size must be positive numbers");
+        }
+        if (samplePercentage < 0 || samplePercentage > 100) {
+            throw new IllegalArgumentException("The sample percentage must be between 0 and 100");
+        }
+        this.threads = threads;
+        this.bulkSize = bulkSize;
+        this.samplePercentage = samplePercentage;
+    }
+
+    /**
+     * @param expectedDocument Builds the document that the migration should have written for a source document
+     * @param targetRangeFilter Selects the target documents written for the source documents of a range
+     * @param summedField Numeric field that has the same value in a source document and in its target document
+     * @return The checksums of the ranges that don't match
+     */
+    List<RangeChecksum> verify(MongoDatabase database, MongoCollection<Document> source, Bson filter,
+                               Bson projection, Function<Document, Document> expectedDocument,
+                               MongoCollection<Document> target, Function<IdRange, Bson> targetRangeFilter,
+                               String summedField) {
+        List<IdRange> ranges = new PartitionedMigration(threads, bulkSize, bulkSize, Long.MAX_VALUE).split(database,
+                                                                                                           source);
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(threads, ranges.size()));
+        try {
+            List<Future<RangeChecksum>> futures = new ArrayList<>(ranges.size());
+            for (int i = 0; i < ranges.size(); i++) {
+                IdRange range = ranges.get(i);
+                boolean sampled = isSampled(i);
+                futures.add(executor.submit(() -> {
+                    if (!sampled && matchesOnServer(source, range.restrict(filter), target,
+                                                    targetRangeFilter.apply(range), summedField)) {
+                        return null;
+                    }
+                    return compareDocuments(source, filter, projection, range, expectedDocument, target);
+                }));
+            }
+            List<RangeChecksum> mismatches = new ArrayList<>();
+            long comparedRanges = 0;
+            long comparedDocuments = 0;
+            for (Future<RangeChecksum> future : futures) {
+                RangeChecksum checksum = future.get();
+                if (checksum == null) {
+                    continue;
+                }
+                comparedRanges++;
+                comparedDocuments += checksum.getSourceDocuments();
+                if (!checksum.matches()) {
+                    mismatches.add(checksum);
+                }
+            }
+            logger.info("Verified collection {} against {} in {} ranges, {} ranges ({} documents) compared document " +
+                                "by document, {} ranges don't match", source.getNamespace(), target.getNamespace(),
+                        ranges.size(), comparedRanges, comparedDocuments, mismatches.size());
+            return mismatches;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while verifying collection " + target.getNamespace(), e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new RuntimeException("Could not verify collection " + target.getNamespace(), cause);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Spreads the sampled ranges evenly, so a percentage of 100 samples all of them and 0 none
+     */
+    private boolean isSampled(int rangeIndex) {
+        return (rangeIndex + 1) * samplePercentage / 100 > rangeIndex * samplePercentage / 100;
+    }
+
+    private boolean matchesOnServer(MongoCollection<Document> source, Bson sourceFilter,
+                                    MongoCollection<Document> target, Bson targetFilter, String summedField) {
+        try {
+            Document sourceSummary = summarize(source, sourceFilter, summedField);
+            Document targetSummary = summarize(target, targetFilter, summedField);
+            return equalNumbers(sourceSummary.get(COUNT_FIELD), targetSummary.get(COUNT_FIELD))
+                    && equalNumbers(sourceSummary.get(SUM_FIELD), targetSummary.get(SUM_FIELD));
+        } catch (RuntimeException e) {
+            logger.debug("Could not summarize a range on the server, comparing it document by document: {}",
+                         e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * @return The number of documents and the sum of the field, or an empty document if there are no documents
+     */
+    private Document summarize(MongoCollection<Document> collection, Bson filter, String summedField) {
+        Document summary = collection.aggregate(Arrays.asList(
+                Aggregates.match(filter),
+                Aggregates.group(null, Accumulators.sum(COUNT_FIELD, 1), Accumulators.sum(SUM_FIELD, "$" + summedField))
+        )).first();
+        return summary == null ? new Document() : summary;
+    }
+
+    private static boolean equalNumbers(Object first, Object second) {
+        if (first == null || second == null) {
+            return first == second;
+        }
+        Number firstNumber = (Number) first;
+        Number secondNumber = (Number) second;
+        return firstNumber.longValue() == secondNumber.longValue()
+                && Double.compare(firstNumber.doubleValue(), secondNumber.doubleValue()) == 0;
+    }
+
+    private RangeChecksum compareDocuments(MongoCollection<Document> source, Bson filter, Bson projection,
+                                           IdRange range, Function<Document, Document> expectedDocument,
+                                           MongoCollection<Document> target) {
+        MessageDigest digest = newDigest();
+        RangeChecksum checksum = new RangeChecksum(range);
+        try (MongoCursor<Document> cursor = source.find(range.restrict(filter)).projection(projection)
+                                                  .batchSize(bulkSize).iterator()) {
+            List<Object> targetIds = new ArrayList<>(bulkSize);
+            while (cursor.hasNext()) {
+                Document expected = expectedDocument.apply(cursor.next());
+                checksum.addSource(hash(expected, digest));
+                targetIds.add(expected.get(ID_FIELD));
+                if (targetIds.size() == bulkSize) {
+                    addTargetDocuments(target, targetIds, checksum, digest);
+                    targetIds.clear();
+                }
+            }
+            if (!targetIds.isEmpty()) {
+                addTargetDocuments(target, targetIds, checksum, digest);
+            }
+        }
+        return checksum;
+    }
+
+    private void addTargetDocuments(MongoCollection<Document> target, List<Object> ids, RangeChecksum checksum,
+                                    MessageDigest digest) {
+        for (Document document : target.find(Filters.in(ID_FIELD, ids))) {
+            checksum.addTarget(hash(document, digest));
+        }
+    }
+
+    static long hash(Document document, MessageDigest digest) {
+        byte[] json = new Document(canonicalize(document)).toJson().getBytes(StandardCharsets.UTF_8);
+        return ByteBuffer.wrap(digest.digest(json)).getLong();
+    }
+
+    /**
+     * @return The same value, with the fields of every document sorted by name
+     */
+    private static Map<String, Object> canonicalize(Map<String, Object> document) {
+        Map<String, Object> sorted = new TreeMap<>();
+        for (Map.Entry<String, Object> field : document.entrySet()) {
+            sorted.put(field.getKey(), canonicalizeValue(field.getValue()));
+        }
+        return sorted;
+    }
+
+    private static Object canonicalizeValue(Object value) {
+        if (value instanceof Map) {
+            return new Document(canonicalize((Map<String, Object>) value));
+        } else if (value instanceof List) {
+            List<Object> list = new ArrayList<>(((List<?>) value).size());
+            for (Object element : (List<?>) value) {
+                list.add(canonicalizeValue(element));
+            }
+            return list;
+        }
+        return value;
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-1 should be available in every JVM", e);
+        }
+    }
+
+    /**
+     * Checksums of the expected and of the actual documents of a range
+     */
+    static class RangeChecksum {
+
+        private final IdRange range;
+
+        private long sourceDocuments;
+
+        private long sourceChecksum;
+
+        private long targetDocuments;
+
+        private long targetChecksum;
+
+        RangeChecksum(IdRange range) {
+            this.range = range;
+        }
+
+        void addSource(long hash) {
+            sourceDocuments++;
+            sourceChecksum += hash;
+        }
+
+        void addTarget(long hash) {
+            targetDocuments++;
+            targetChecksum += hash;
+        }
+
+        boolean matches() {
+            return sourceDocuments == targetDocuments && sourceChecksum == targetChecksum;
+        }
+
+        IdRange getRange() {
+            return range;
+        }
+
+        long getSourceDocuments() {
+            return sourceDocuments;
+        }
+
+        long getTargetDocuments() {
+            return targetDocuments;
+        }
+
+        @Override
+        public String toString() {
+            return "range " + range + ": " + sourceDocuments + " expected documents, " + targetDocuments + " found"
+                    + (sourceDocuments == targetDocuments ? " with different contents" : "");
+        }
+    }
+}
@@ -17,10 +17,14 @@ package uk.ac.ebi.eva.dbmigration.mongodb;
 
 import com.github.mongobee.Mongobee;
 import com.github.mongobee.exception.MongobeeException;
+import com.mongodb.MongoClient;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import uk.ac.ebi.eva.dbmigration.mongodb.MultiDatabaseMigration.DatabaseMigrationResult;
+
 import java.io.FileInputStream;
+import java.util.List;
 import java.util.Properties;
 
 import static java.lang.System.exit;
@@ -34,12 +38,18 @@ import static java.lang.System.exit;
  * Usage:
  * java -jar database-migration-0.1-jar-with-dependencies.jar your_migration.properties
  *
- * In src/main/resources/example-mongodb.properties there's an example of how to fill this properties file.
+ * In src/main/resources/example-mongodb.properties there's an example of how to fill this properties file. Several
+ * databases are migrated if db.names or db.name-pattern are provided. With migration.dry-run, the cost of the
+ * migration of each database is estimated and logged, and nothing is written.
  */
 public class MongoMigrationMain {
 
     private static final Logger logger = LoggerFactory.getLogger(MongoMigrationMain.class);
 
+    private static final String ADMIN_DATABASE = "admin";
+
+    private static final String CHANGELOGS_PACKAGE = "uk.ac.ebi.eva.dbmigration.mongodb";
+
     public static void main(String[] args) throws MongobeeException {
         if (args.length != 1) {
             logger.error("Please provide the path to a properties file with the MongoDB connection details");
@@ -55,10 +65,41 @@ public class MongoMigrationMain {
             exit(1);
         }
         ExtractAnnotationFromVariant.setDatabaseParameters(databaseParameters);
-        Mongobee runner = MongobeeHelper.buildMongobee(databaseParameters);
-        runner.setChangeLogsScanPackage("uk.ac.ebi.eva.dbmigration.mongodb"); // package to scan for changesets
+        MongoClient mongoClient = MongobeeHelper.buildMongoClient(databaseParameters);
+        ExtractAnnotationFromVariant.setReplicationLagMonitor(
+                new ReplicationLagMonitor(mongoClient.getDatabase(ADMIN_DATABASE)));
+        if (databaseParameters.isMigrationDryRun()) {
+            estimateMigration(mongoClient, databaseParameters);
+            return;
+        }
+        if (databaseParameters.getDbNames().size() > 1 || databaseParameters.getDbNamePattern() != null) {
+            migrateDatabases(mongoClient, databaseParameters);
+            return;
+        }
+        Mongobee runner = MongobeeHelper.buildMongobee(mongoClient, databaseParameters);
+        runner.setChangeLogsScanPackage(CHANGELOGS_PACKAGE); // package to scan for changesets
         runner.setEnabled(true);         // optional: default is true
         runner.execute();
     }
 
+    private static void migrateDatabases(MongoClient mongoClient, DatabaseParameters databaseParameters) {
+        MultiDatabaseMigration migration = new MultiDatabaseMigration(mongoClient, databaseParameters,
+                                                                      CHANGELOGS_PACKAGE);
+        List<DatabaseMigrationResult> results = migration.run(migration.findDatabases());
+        for (DatabaseMigrationResult result : results) {
+            if (!result.isSuccessful()) {
+                exit(1);
+            }
+        }
+    }
+
+    private static void estimateMigration(MongoClient mongoClient, DatabaseParameters databaseParameters) {
+        MultiDatabaseMigration migration = new MultiDatabaseMigration(mongoClient, databaseParameters,
+                                                                      CHANGELOGS_PACKAGE);
+        ExtractAnnotationFromVariant changeLog = new ExtractAnnotationFromVariant();
+        for (String database : migration.findDatabases()) {
+            changeLog.estimateMigration(mongoClient.getDatabase(database));
+        }
+    }
+
 }
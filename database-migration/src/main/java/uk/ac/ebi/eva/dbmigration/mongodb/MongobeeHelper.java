@@ -31,14 +31,30 @@ import static org.springframework.util.StringUtils.hasText;
 
 public class MongobeeHelper {
 
+    private static final String ADMIN_DATABASE = "admin";
+
     public static Mongobee buildMongobee(DatabaseParameters databaseParameters) {
+        return buildMongobee(buildMongoClient(databaseParameters), databaseParameters);
+    }
+
+    public static Mongobee buildMongobee(MongoClient mongoClient, DatabaseParameters databaseParameters) {
+        return buildMongobee(mongoClient, databaseParameters.getDbName());
+    }
+
+    /**
+     * Mongobee keeps its changelog and lock in the database it migrates, so each database is migrated independently
+     */
+    public static Mongobee buildMongobee(MongoClient mongoClient, String dbName) {
+        Mongobee mongobee = new Mongobee(mongoClient);
+        mongobee.setDbName(dbName);
+        return mongobee;
+    }
+
+    public static MongoClient buildMongoClient(DatabaseParameters databaseParameters) {
         List<ServerAddress> servers = getServers(databaseParameters);
         List<MongoCredential> credentials = getCredentials(databaseParameters);
         MongoClientOptions options = getOptions(databaseParameters);
-
-        Mongobee mongobee = new Mongobee(new MongoClient(servers, credentials, options));
-        mongobee.setDbName(databaseParameters.getDbName());
-        return mongobee;
+        return new MongoClient(servers, credentials, options);
     }
 
     private static List<ServerAddress> getServers(DatabaseParameters databaseParameters) {
@@ -65,7 +81,8 @@ public class MongobeeHelper {
         if (hasText(databaseParameters.getDbUsername()) && hasText(databaseParameters.getDbPassword())) {
             String authenticationDatabase = databaseParameters.getDbAuthenticationDatabase();
             if (!hasText(authenticationDatabase)) {
-                authenticationDatabase = databaseParameters.getDbName();
+                authenticationDatabase = hasText(databaseParameters.getDbName()) ? databaseParameters.getDbName()
+                                                                                 : ADMIN_DATABASE;
             }
 
             MongoCredential mongoCredential = MongoCredential.createCredential(
@@ -0,0 +1,188 @@
+/*
+ * Copyright 2018 EMBL - European Bioinformatics Institute
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.ac.ebi.eva.dbmigration.mongodb;
+
+import com.github.mongobee.Mongobee;
+import com.mongodb.MongoClient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * Runs the mongobee changesets in several databases, some of them at the same time, sharing a single MongoClient.
+ * <p>
+ * The databases are those listed in db.name and db.names, plus those in the server whose name matches
+ * db.name-pattern. Each database has its own mongobee lock and changelog, so a database that fails doesn't stop the
+ * migration of the others, and it can be migrated again later. The outcome and duration of each migration are logged
+ * at the end.
+ * <p>
+ * Mongobee returns without running any changeset when another process holds the lock of a database, so the lock is
+ * checked first and a locked database is reported as failed instead of migrated.
+ */
+class MultiDatabaseMigration {
+
+    private static final Logger logger = LoggerFactory.getLogger(MultiDatabaseMigration.class);
+
+    /**
+     * Collection where mongobee keeps the lock of a database, with a single document while the lock is held
+     */
+    static final String MONGOBEE_LOCK_COLLECTION = "mongobeelock";
+
+    private final MongoClient mongoClient;
+
+    private final DatabaseParameters databaseParameters;
+
+    private final String changeLogsScanPackage;
+
+    MultiDatabaseMigration(MongoClient mongoClient, DatabaseParameters databaseParameters,
+                           String changeLogsScanPackage) {
+        this.mongoClient = mongoClient;
+        this.databaseParameters = databaseParameters;
+        this.changeLogsScanPackage = changeLogsScanPackage;
+    }
+
+    List<String> findDatabases() {
+        TreeSet<String> databases = new TreeSet<>(databaseParameters.getDbNames());
+        Pattern pattern = databaseParameters.getDbNamePattern();
+        if (pattern != null) {
+            for (String database : mongoClient.listDatabaseNames()) {
+                if (pattern.matcher(database).matches()) {
+                    databases.add(database);
+                }
+            }
+        }
+        return new ArrayList<>(databases);
+    }
+
+    /**
+     * @return The outcome of the migration of each database, in the same order
+     */
+    List<DatabaseMigrationResult> run(List<String> databases) {
+        int threads = Math.min(databaseParameters.getMigrationDatabaseThreads(), Math.max(databases.size(), 1));
+        logger.info("Migrating {} databases with {} threads: {}", databases.size(), threads, databases);
+        long start = System.nanoTime();
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<DatabaseMigrationResult>> futures = new ArrayList<>(databases.size());
+            for (String database : databases) {
+                futures.add(executor.submit(() -> migrate(database)));
+            }
+            List<DatabaseMigrationResult> results = new ArrayList<>(databases.size());
+            for (Future<DatabaseMigrationResult> future : futures) {
+                results.add(future.get());
+            }
+            logReport(results, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+            return results;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while migrating the databases", e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException("Could not migrate the databases", e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private DatabaseMigrationResult migrate(String database) {
+        logger.info("Starting migration of database {}", database);
+        long start = System.nanoTime();
+        try {
+            if (isLocked(database)) {
+                throw new IllegalStateException("Migration already in progress, the mongobee lock is held");
+            }
+            Mongobee mongobee = MongobeeHelper.buildMongobee(mongoClient, database);
+            mongobee.setChangeLogsScanPackage(changeLogsScanPackage);
+            mongobee.setEnabled(true);
+            mongobee.execute();
+            long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            logger.info("Finished migration of database {} in {} ms", database, elapsedMillis);
+            return new DatabaseMigrationResult(database, elapsedMillis, null);
+        } catch (Exception e) {
+            long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            logger.error("Migration of database " + database + " failed", e);
+            return new DatabaseMigrationResult(database, elapsedMillis, e);
+        }
+    }
+
+    private boolean isLocked(String database) {
+        return mongoClient.getDatabase(database).getCollection(MONGOBEE_LOCK_COLLECTION).count() > 0;
+    }
+
+    /**
+     * @param elapsedMillis Wall time of the whole run; the databases are migrated concurrently, so it can be less than
+     * the sum of their times
+     */
+    private void logReport(List<DatabaseMigrationResult> results, long elapsedMillis) {
+        StringBuilder report = new StringBuilder("Migration report:");
+        int failed = 0;
+        for (DatabaseMigrationResult result : results) {
+            report.append(String.format("%n  %-40s %-9s %10.1f s", result.getDatabase(),
+                                        result.isSuccessful() ? "OK" : "FAILED", result.getElapsedMillis() / 1000.0));
+            if (!result.isSuccessful()) {
+                failed++;
+                Exception error = result.getError();
+                report.append("  ").append(error.getMessage() != null ? error.getMessage()
+                                                                      : error.getClass().getName());
+            }
+        }
+        report.append(String.format("%n%d databases migrated, %d failed, %.1f s elapsed", results.size() - failed,
+                                    failed, elapsedMillis / 1000.0));
+        logger.info(report.toString());
+    }
+
+    /**
+     * Outcome of the migration of a database
+     */
+    static class DatabaseMigrationResult {
+
+        private final String database;
+
+        private final long elapsedMillis;
+
+        private final Exception error;
+
+        DatabaseMigrationResult(String database, long elapsedMillis, Exception error) {
+            this.database = database;
+            this.elapsedMillis = elapsedMillis;
+            this.error = error;
+        }
+
+        String getDatabase() {
+            return database;
+        }
+
+        long getElapsedMillis() {
+            return elapsedMillis;
+        }
+
+        boolean isSuccessful() {
+            return error == null;
+        }
+
+        Exception getError() {
+            return error;
+        }
+    }
+}
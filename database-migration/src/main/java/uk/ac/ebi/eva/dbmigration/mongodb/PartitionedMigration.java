@@ -0,0 +1,375 @@
+/*
+ * Copyright 2018 EMBL - European Bioinformatics Institute
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.ac.ebi.eva.dbmigration.mongodb;
+
+import com.mongodb.MongoException;
+import com.mongodb.client.FindIterable;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoCursor;
+import com.mongodb.client.MongoDatabase;
+import com.mongodb.client.model.Projections;
+import com.mongodb.client.model.Sorts;
+import org.bson.Document;
+import org.bson.RawBsonDocument;
+import org.bson.codecs.Codec;
+import org.bson.conversions.Bson;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import uk.ac.ebi.eva.dbmigration.mongodb.MigrationProgress.RangeProgress;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Function;
+import java.util.function.ToLongFunction;
+
+/**
+ * Applies a migration to the documents of a collection that match a filter, splitting the collection into ranges of
+ * ids that are processed in parallel, each with its own cursor and bulk writes.
+ * <p>
+ * The boundaries of the ranges are taken from the splitVector command, which uses the index on _id. If the command is
+ * not available (for instance through a mongos), the boundaries are sampled by skipping through the sorted ids. A
+ * single thread processes the whole collection as one range, without looking for boundaries.
+ * <p>
+ * Only the projected fields are read. A bulk is written when it reaches either a number of documents or a number of
+ * bytes read, so collections of big documents are written in smaller bulks. The throughput of the migration is logged
+ * at the end, in documents per second and in megabytes read per second.
+ * <p>
+ * If a {@link MigrationProgress} is given, each range is read in order of id and its watermark is stored after every
+ * bulk, so a migration that is interrupted resumes after the last bulk written. The bulk that was being written may be
+ * written again, so the writes have to be idempotent.
+ * <p>
+ * If a {@link MigrationThrottle} is given, it decides how many bulks are written at the same time and how big they are.
+ */
+class PartitionedMigration {
+
+    private static final Logger logger = LoggerFactory.getLogger(PartitionedMigration.class);
+
+    private static final String ID_FIELD = "_id";
+
+    /**
+     * There are more ranges than threads, so a thread that finishes a sparse range can take another one
+     */
+    static final int RANGES_PER_THREAD = 4;
+
+    private final int threads;
+
+    private final int cursorBatchSize;
+
+    private final int maxBulkSize;
+
+    private final long maxBulkBytes;
+
+    private final MigrationProgress progress;
+
+    private final MigrationThrottle throttle;
+
+    PartitionedMigration(int threads, int cursorBatchSize, int maxBulkSize, long maxBulkBytes) {
+        this(threads, cursorBatchSize, maxBulkSize, maxBulkBytes, null, null);
+    }
+
+    /**
+     * @param progress Where the ranges and their watermarks are kept, or null if the migration is not resumable
+     * @param throttle Limits the rate of the writes, or null to write as fast as possible
+     */
+    PartitionedMigration(int threads, int cursorBatchSize, int maxBulkSize, long maxBulkBytes,
+                         MigrationProgress progress, MigrationThrottle throttle) {
+        if (threads < 1 || cursorBatchSize < 1 || maxBulkSize < 1 || maxBulkBytes < 1) {
+            throw new IllegalArgumentException(
+                    "The number of threads, the cursor batch size and the bulk limits must be positive numbers");
+        }
+        this.threads = threads;
+        this.cursorBatchSize = cursorBatchSize;
+        this.maxBulkSize = maxBulkSize;
+        this.maxBulkBytes = maxBulkBytes;
+        this.progress = progress;
+        this.throttle = throttle;
+    }
+
+    /**
+     * @param projection Fields that the mapper needs, or null to read whole documents
+     * @param mapper     Builds the write for a document read
+     * @param bulkWriter Writes a bulk and returns how many documents were written
+     * @return The documents read and written, added across all the ranges
+     */
+    <T> MigrationCounts run(MongoDatabase database, MongoCollection<Document> collection, Bson filter,
+                            Bson projection, Function<Document, T> mapper, ToLongFunction<List<T>> bulkWriter) {
+        long start = System.nanoTime();
+        MigrationCounts counts = migrate(database, collection, filter, projection, mapper, bulkWriter);
+        logThroughput(collection, counts, System.nanoTime() - start);
+        return counts;
+    }
+
+    private <T> MigrationCounts migrate(MongoDatabase database, MongoCollection<Document> collection, Bson filter,
+                                        Bson projection, Function<Document, T> mapper,
+                                        ToLongFunction<List<T>> bulkWriter) {
+        List<RangeProgress> ranges = getRanges(database, collection);
+        if (ranges.size() == 1) {
+            MigrationCounts counts = migrateRange(collection, filter, projection, ranges.get(0), mapper, bulkWriter);
+            clearProgress();
+            return counts;
+        }
+
+        logger.info("Migrating {} ranges of collection {} with {} threads", ranges.size(), collection.getNamespace(),
+                    threads);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<MigrationCounts>> futures = new ArrayList<>(ranges.size());
+            for (RangeProgress range : ranges) {
+                futures.add(executor.submit(() -> migrateRange(collection, filter, projection, range, mapper,
+                                                                bulkWriter)));
+            }
+            MigrationCounts total = new MigrationCounts(0, 0, 0);
+            for (Future<MigrationCounts> future : futures) {
+                total = total.add(future.get());
+            }
+            clearProgress();
+            return total;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while migrating collection " + collection.getNamespace(), e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new RuntimeException("Could not migrate collection " + collection.getNamespace(), cause);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * @return The ranges of an interrupted run of the migration, or the collection split into new ranges
+     */
+    private List<RangeProgress> getRanges(MongoDatabase database, MongoCollection<Document> collection) {
+        if (progress == null) {
+            List<IdRange> ranges = split(database, collection);
+            List<RangeProgress> rangesProgress = new ArrayList<>(ranges.size());
+            for (int i = 0; i < ranges.size(); i++) {
+                rangesProgress.add(new RangeProgress(i, ranges.get(i), null, false));
+            }
+            return rangesProgress;
+        }
+
+        List<RangeProgress> previousRanges = progress.load();
+        if (previousRanges.isEmpty()) {
+            return progress.start(split(database, collection));
+        }
+        logger.info("Resuming migration {} of collection {} from the watermarks of {} ranges",
+                    progress.getMigrationId(), collection.getNamespace(), previousRanges.size());
+        return previousRanges;
+    }
+
+    private void clearProgress() {
+        if (progress != null) {
+            progress.clear();
+        }
+    }
+
+    private <T> MigrationCounts migrateRange(MongoCollection<Document> collection, Bson filter, Bson projection,
+                                             RangeProgress range, Function<Document, T> mapper,
+                                             ToLongFunction<List<T>> bulkWriter) {
+        if (range.isDone()) {
+            logger.debug("Range {} of collection {} was already migrated", range.getRange(),
+                         collection.getNamespace());
+            return new MigrationCounts(0, 0, 0);
+        }
+        // raw documents tell how many bytes were read, and are decoded with the same codec the collection would use
+        Codec<Document> documentCodec = collection.getCodecRegistry().get(Document.class);
+        long readCount = 0;
+        long writtenCount = 0;
+        long readBytes = 0;
+        FindIterable<RawBsonDocument> documents = collection.find(range.restrict(filter), RawBsonDocument.class)
+                                                            .projection(projection)
+                                                            .batchSize(cursorBatchSize);
+        if (progress != null) {
+            // the watermark is the last id written, so the range has to be read in order
+            documents.sort(Sorts.ascending(ID_FIELD));
+        }
+        try (MongoCursor<RawBsonDocument> cursor = documents.iterator()) {
+            List<T> bulk = new ArrayList<>(maxBulkSize);
+            long bulkBytes = 0;
+            Object lastId = null;
+            while (cursor.hasNext()) {
+                RawBsonDocument rawDocument = cursor.next();
+                bulkBytes += rawDocument.getByteBuffer().remaining();
+                Document document = rawDocument.decode(documentCodec);
+                lastId = document.get(ID_FIELD);
+                bulk.add(mapper.apply(document));
+                if (bulk.size() >= getBulkSize() || bulkBytes >= maxBulkBytes) {
+                    readCount += bulk.size();
+                    readBytes += bulkBytes;
+                    writtenCount += writeBulk(bulk, bulkWriter);
+                    updateProgress(range, lastId);
+                    bulk = new ArrayList<>(maxBulkSize);
+                    bulkBytes = 0;
+                }
+            }
+            if (!bulk.isEmpty()) {
+                readCount += bulk.size();
+                readBytes += bulkBytes;
+                writtenCount += writeBulk(bulk, bulkWriter);
+            }
+        }
+        if (progress != null) {
+            progress.complete(range);
+        }
+        logger.debug("Range {} of collection {}: {} documents read, {} written", range.getRange(),
+                     collection.getNamespace(), readCount, writtenCount);
+        return new MigrationCounts(readCount, writtenCount, readBytes);
+    }
+
+    private int getBulkSize() {
+        return throttle == null ? maxBulkSize : throttle.getBulkSize();
+    }
+
+    private <T> long writeBulk(List<T> bulk, ToLongFunction<List<T>> bulkWriter) {
+        if (throttle == null) {
+            return bulkWriter.applyAsLong(bulk);
+        }
+        long generation;
+        try {
+            generation = throttle.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting to write a bulk", e);
+        }
+        long start = System.nanoTime();
+        try {
+            return bulkWriter.applyAsLong(bulk);
+        } finally {
+            throttle.release(generation, System.nanoTime() - start);
+        }
+    }
+
+    private void updateProgress(RangeProgress range, Object lastId) {
+        if (progress != null) {
+            progress.update(range, lastId);
+        }
+    }
+
+    private void logThroughput(MongoCollection<Document> collection, MigrationCounts counts, long elapsedNanos) {
+        double seconds = Math.max(elapsedNanos, 1) / 1e9;
+        double megabyte = 1024 * 1024;
+        logger.info("Collection {} migrated in {} s: {} documents read ({} docs/s, {} MB/s), {} written ({} docs/s)",
+                    collection.getNamespace(), String.format("%.1f", seconds), counts.getReadCount(),
+                    String.format("%.0f", counts.getReadCount() / seconds),
+                    String.format("%.2f", counts.getReadBytes() / megabyte / seconds), counts.getWrittenCount(),
+                    String.format("%.0f", counts.getWrittenCount() / seconds));
+    }
+
+    List<IdRange> split(MongoDatabase database, MongoCollection<Document> collection) {
+        if (threads == 1) {
+            return Collections.singletonList(IdRange.all());
+        }
+        int ranges = threads * RANGES_PER_THREAD;
+        List<Object> boundaries;
+        try {
+            boundaries = getSplitVectorBoundaries(database, collection, ranges);
+        } catch (RuntimeException e) {
+            // servers and test doubles without the commands don't always fail with a MongoException
+            logger.info("splitVector is not available ({}), sampling the boundaries of the ranges instead",
+                        e.getMessage());
+            boundaries = sampleBoundaries(collection, ranges);
+        }
+        return IdRange.fromBoundaries(boundaries);
+    }
+
+    private List<Object> getSplitVectorBoundaries(MongoDatabase database, MongoCollection<Document> collection,
+                                                  int ranges) {
+        String collectionName = collection.getNamespace().getCollectionName();
+        Document stats = database.runCommand(new Document("collStats", collectionName));
+        long size = ((Number) stats.get("size")).longValue();
+        long maxChunkSizeBytes = Math.max(size / ranges, 1);
+        Document splitVector = database.runCommand(
+                new Document("splitVector", collection.getNamespace().getFullName())
+                        .append("keyPattern", new Document(ID_FIELD, 1))
+                        .append("maxChunkSizeBytes", maxChunkSizeBytes));
+        List<Document> splitKeys = (List<Document>) splitVector.get("splitKeys");
+        if (splitKeys == null) {
+            throw new MongoException("splitVector didn't return any splitKeys");
+        }
+
+        // the chunks are approximate, so there may be more boundaries than needed
+        List<Object> boundaries = new ArrayList<>(ranges - 1);
+        double step = Math.max(1.0, (double) (splitKeys.size() + 1) / ranges);
+        for (double position = step - 1; position < splitKeys.size(); position += step) {
+            boundaries.add(splitKeys.get((int) position).get(ID_FIELD));
+        }
+        return boundaries;
+    }
+
+    private List<Object> sampleBoundaries(MongoCollection<Document> collection, int ranges) {
+        long count = collection.count();
+        List<Object> boundaries = new ArrayList<>(ranges - 1);
+        for (int i = 1; i < ranges; i++) {
+            int skip = (int) (count * i / ranges);
+            Document boundary = collection.find()
+                                          .projection(Projections.include(ID_FIELD))
+                                          .sort(Sorts.ascending(ID_FIELD))
+                                          .skip(skip)
+                                          .limit(1)
+                                          .first();
+            if (boundary != null && (boundaries.isEmpty()
+                    || !boundary.get(ID_FIELD).equals(boundaries.get(boundaries.size() - 1)))) {
+                boundaries.add(boundary.get(ID_FIELD));
+            }
+        }
+        return boundaries;
+    }
+
+    /**
+     * Documents read and written by a migration. Only the bytes read are counted, because the size of the writes
+     * depends on what the bulk writer sends to the server.
+     */
+    static class MigrationCounts {
+
+        private final long readCount;
+
+        private final long writtenCount;
+
+        private final long readBytes;
+
+        MigrationCounts(long readCount, long writtenCount, long readBytes) {
+            this.readCount = readCount;
+            this.writtenCount = writtenCount;
+            this.readBytes = readBytes;
+        }
+
+        MigrationCounts add(MigrationCounts other) {
+            return new MigrationCounts(readCount + other.readCount, writtenCount + other.writtenCount,
+                                       readBytes + other.readBytes);
+        }
+
+        long getReadCount() {
+            return readCount;
+        }
+
+        long getWrittenCount() {
+            return writtenCount;
+        }
+
+        long getReadBytes() {
+            return readBytes;
+        }
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright 2018 EMBL - European Bioinformatics Institute
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.ac.ebi.eva.dbmigration.mongodb;
+
+import com.mongodb.MongoException;
+import com.mongodb.client.MongoDatabase;
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Replication lag of the most delayed secondary of the replica set, taken from the replSetGetStatus command. The
+ * command is run at most once every few seconds, and if it fails (the server is not part of a replica set, or the
+ * user is not allowed to run it) the lag is reported as 0 from then on.
+ */
+public class ReplicationLagMonitor implements LongSupplier {
+
+    private static final Logger logger = LoggerFactory.getLogger(ReplicationLagMonitor.class);
+
+    private static final long CHECK_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(5);
+
+    private static final int PRIMARY_STATE = 1;
+
+    private static final int SECONDARY_STATE = 2;
+
+    private final MongoDatabase adminDatabase;
+
+    private boolean available;
+
+    private long lastCheckNanos;
+
+    private long lagSeconds;
+
+    public ReplicationLagMonitor(MongoDatabase adminDatabase) {
+        this.adminDatabase = adminDatabase;
+        this.available = true;
+        this.lastCheckNanos = 0;
+        this.lagSeconds = 0;
+    }
+
+    /**
+     * @return The replication lag in seconds
+     */
+    @Override
+    public synchronized long getAsLong() {
+        long now = System.nanoTime();
+        if (available && (lastCheckNanos == 0 || now - lastCheckNanos > CHECK_INTERVAL_NANOS)) {
+            lastCheckNanos = now;
+            try {
+                lagSeconds = computeLagSeconds(adminDatabase.runCommand(new Document("replSetGetStatus", 1)));
+            } catch (MongoException e) {
+                logger.warn("The replication lag will not be monitored: {}", e.getMessage());
+                available = false;
+                lagSeconds = 0;
+            }
+        }
+        return lagSeconds;
+    }
+
+    static long computeLagSeconds(Document replicaSetStatus) {
+        List<Document> members = (List<Document>) replicaSetStatus.get("members");
+        Date primaryOptime = null;
+        Date oldestSecondaryOptime = null;
+        for (Document member : members) {
+            Date optime = member.getDate("optimeDate");
+            int state = member.getInteger("state");
+            if (state == PRIMARY_STATE) {
+                primaryOptime = optime;
+            } else if (state == SECONDARY_STATE && (oldestSecondaryOptime == null
+                    || optime.before(oldestSecondaryOptime))) {
+                oldestSecondaryOptime = optime;
+            }
+        }
+        if (primaryOptime == null || oldestSecondaryOptime == null) {
+            return 0;
+        }
+        return Math.max(0, TimeUnit.MILLISECONDS.toSeconds(primaryOptime.getTime()
+                                                                   - oldestSecondaryOptime.getTime()));
+    }
+}
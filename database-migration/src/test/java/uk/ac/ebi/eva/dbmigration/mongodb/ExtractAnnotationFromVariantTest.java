@@ -242,6 +242,192 @@ public class ExtractAnnotationFromVariantTest {
         assertEquals(computePolyphen(originalAnnotField), newAnnotElement.get(POLYPHEN_FIELD));
     }
 
+    @Test
+    public void annotationsAreMigratedInParallelRanges() {
+        // given
+        String dbName = "annotationsInParallelRanges";
+
+        Properties properties = new Properties();
+        properties.put(DatabaseParameters.VEP_VERSION, VEP_VERSION);
+        properties.put(DatabaseParameters.VEP_CACHE_VERSION, CACHE_VERSION);
+        properties.put(DatabaseParameters.DB_NAME, dbName);
+        properties.put(DatabaseParameters.DB_COLLECTIONS_VARIANTS_NAME, VARIANT_COLLECTION_NAME);
+        properties.put(DatabaseParameters.DB_COLLECTIONS_ANNOTATIONS_NAME, ANNOTATION_COLLECTION_NAME);
+        properties.put(DatabaseParameters.DB_COLLECTIONS_ANNOTATION_METADATA_NAME, ANNOTATION_METADATA_COLLECTION_NAME);
+        properties.put(DatabaseParameters.DB_READ_PREFERENCE, READ_PREFERENCE);
+        properties.put(DatabaseParameters.MIGRATION_THREADS, "3");
+        properties.put(DatabaseParameters.MIGRATION_VERIFY, "true");
+        DatabaseParameters databaseParameters = new DatabaseParameters();
+        databaseParameters.load(properties);
+        ExtractAnnotationFromVariant.setDatabaseParameters(databaseParameters);
+
+        MongoDatabase database = new Fongo("testServer").getMongo().getDatabase(dbName);
+        MongoCollection<Document> variantsCollection = database.getCollection(VARIANT_COLLECTION_NAME);
+        MongoCollection<Document> annotationCollection = database.getCollection(ANNOTATION_COLLECTION_NAME);
+
+        int annotatedVariants = 50;
+        for (int i = 0; i < annotatedVariants; i++) {
+            Document variantWithAnnot = Document.parse(VariantData.VARIANT_WITH_ANNOT_2);
+            variantWithAnnot.put(ID_FIELD, String.format("20_%08d_A_T", i));
+            variantsCollection.insertOne(variantWithAnnot);
+        }
+        Document variantWithoutAnnot = Document.parse(VariantData.VARIANT_WITHOUT_ANNOT);
+        variantsCollection.insertOne(variantWithoutAnnot);
+
+        // when
+        extractAnnotationFromVariant.migrateAnnotation(database);
+        extractAnnotationFromVariant.reduceAnnotationFromVariants(database);
+
+        // then
+        assertEquals(annotatedVariants, annotationCollection.count());
+        assertEquals(annotatedVariants, variantsCollection.count(
+                new Document(ANNOT_FIELD + "." + VEP_VERSION_FIELD, VEP_VERSION)));
+        assertNull(variantsCollection.find(new Document(ID_FIELD, variantWithoutAnnot.get(ID_FIELD))).first()
+                                     .get(ANNOT_FIELD));
+    }
+
+    @Test
+    public void annotationIsMigratedAndReducedInASingleScan() {
+        // given
+        String dbName = "annotationInASingleScan";
+
+        Properties properties = new Properties();
+        properties.put(DatabaseParameters.VEP_VERSION, VEP_VERSION);
+        properties.put(DatabaseParameters.VEP_CACHE_VERSION, CACHE_VERSION);
+        properties.put(DatabaseParameters.DB_NAME, dbName);
+        properties.put(DatabaseParameters.DB_COLLECTIONS_VARIANTS_NAME, VARIANT_COLLECTION_NAME);
+        properties.put(DatabaseParameters.DB_COLLECTIONS_ANNOTATIONS_NAME, ANNOTATION_COLLECTION_NAME);
+        properties.put(DatabaseParameters.DB_COLLECTIONS_ANNOTATION_METADATA_NAME, ANNOTATION_METADATA_COLLECTION_NAME);
+        properties.put(DatabaseParameters.DB_READ_PREFERENCE, READ_PREFERENCE);
+        properties.put(DatabaseParameters.MIGRATION_FUSED, "true");
+        DatabaseParameters databaseParameters = new DatabaseParameters();
+        databaseParameters.load(properties);
+        ExtractAnnotationFromVariant.setDatabaseParameters(databaseParameters);
+
+        MongoDatabase database = new Fongo("testServer").getMongo().getDatabase(dbName);
+        MongoCollection<Document> variantsCollection = database.getCollection(VARIANT_COLLECTION_NAME);
+        MongoCollection<Document> annotationCollection = database.getCollection(ANNOTATION_COLLECTION_NAME);
+
+        Document variantWithAnnot = Document.parse(VariantData.VARIANT_WITH_ANNOT_2);
+        variantsCollection.insertOne(variantWithAnnot);
+        Document variantWithoutAnnot = Document.parse(VariantData.VARIANT_WITHOUT_ANNOT);
+        variantsCollection.insertOne(variantWithoutAnnot);
+        Document originalAnnotField = (Document) variantWithAnnot.get(ANNOT_FIELD);
+
+        // when
+        extractAnnotationFromVariant.migrateAnnotation(database);
+        extractAnnotationFromVariant.reduceAnnotationFromVariants(database);
+
+        // then
+        assertEquals(1, annotationCollection.count());
+        Document annotation = annotationCollection.find().first();
+        String versionSuffix = "_" + VEP_VERSION + "_" + CACHE_VERSION;
+        assertEquals(variantWithAnnot.get(ID_FIELD) + versionSuffix, annotation.get(ID_FIELD));
+        assertEquals(originalAnnotField.get(CONSEQUENCE_TYPE_FIELD), annotation.get(CONSEQUENCE_TYPE_FIELD));
+
+        Document variant = variantsCollection.find(new Document(ID_FIELD, variantWithAnnot.get(ID_FIELD))).first();
+        List newAnnotField = (List) variant.get(ANNOT_FIELD);
+        assertEquals(1, newAnnotField.size());
+        Document newAnnotElement = (Document) newAnnotField.get(0);
+        assertEquals(VEP_VERSION, newAnnotElement.get(VEP_VERSION_FIELD));
+        assertEquals(CACHE_VERSION, newAnnotElement.get(CACHE_VERSION_FIELD));
+        assertEquals(computeSo(originalAnnotField), new TreeSet<>((List<Integer>) newAnnotElement.get(SO_FIELD)));
+        assertNull(variantsCollection.find(new Document(ID_FIELD, variantWithoutAnnot.get(ID_FIELD))).first()
+                                     .get(ANNOT_FIELD));
+    }
+
+    @Test
+    public void annotationsMigratedBeforeAnInterruptionAreNotDuplicated() {
+        // given
+        String dbName = "annotationsBeforeAnInterruption";
+
+        Properties properties = new Properties();
+        properties.put(DatabaseParameters.VEP_VERSION, VEP_VERSION);
+        properties.put(DatabaseParameters.VEP_CACHE_VERSION, CACHE_VERSION);
+        properties.put(DatabaseParameters.DB_NAME, dbName);
+        properties.put(DatabaseParameters.DB_COLLECTIONS_VARIANTS_NAME, VARIANT_COLLECTION_NAME);
+        properties.put(DatabaseParameters.DB_COLLECTIONS_ANNOTATIONS_NAME, ANNOTATION_COLLECTION_NAME);
+        properties.put(DatabaseParameters.DB_COLLECTIONS_ANNOTATION_METADATA_NAME, ANNOTATION_METADATA_COLLECTION_NAME);
+        properties.put(DatabaseParameters.DB_READ_PREFERENCE, READ_PREFERENCE);
+        DatabaseParameters databaseParameters = new DatabaseParameters();
+        databaseParameters.load(properties);
+        ExtractAnnotationFromVariant.setDatabaseParameters(databaseParameters);
+
+        MongoDatabase database = new Fongo("testServer").getMongo().getDatabase(dbName);
+        MongoCollection<Document> variantsCollection = database.getCollection(VARIANT_COLLECTION_NAME);
+        MongoCollection<Document> annotationCollection = database.getCollection(ANNOTATION_COLLECTION_NAME);
+
+        int annotatedVariants = 10;
+        for (int i = 0; i < annotatedVariants; i++) {
+            Document variantWithAnnot = Document.parse(VariantData.VARIANT_WITH_ANNOT_2);
+            variantWithAnnot.put(ID_FIELD, String.format("20_%08d_A_T", i));
+            variantsCollection.insertOne(variantWithAnnot);
+        }
+
+        // when
+        // an interrupted run of the first changeset inserted some annotations
+        String versionSuffix = "_" + VEP_VERSION + "_" + CACHE_VERSION;
+        for (int i = 0; i < 3; i++) {
+            annotationCollection.insertOne(new Document(ID_FIELD, String.format("20_%08d_A_T", i) + versionSuffix));
+        }
+        extractAnnotationFromVariant.migrateAnnotation(database);
+
+        // an interrupted run of the third changeset reduced some variants
+        Document reducedAnnotation = new Document(VEP_VERSION_FIELD, VEP_VERSION)
+                .append(CACHE_VERSION_FIELD, CACHE_VERSION);
+        variantsCollection.updateOne(new Document(ID_FIELD, String.format("20_%08d_A_T", 0)),
+                                     new Document("$set", new Document(ANNOT_FIELD,
+                                                                       Arrays.asList(reducedAnnotation))));
+        extractAnnotationFromVariant.reduceAnnotationFromVariants(database);
+
+        // then
+        assertEquals(annotatedVariants, annotationCollection.count());
+        assertEquals(annotatedVariants, variantsCollection.count(
+                new Document(ANNOT_FIELD + "." + VEP_VERSION_FIELD, VEP_VERSION)));
+        assertEquals(0, database.getCollection(databaseParameters.getDbCollectionsMigrationProgressName()).count());
+    }
+
+    @Test
+    public void indexesAreBuiltAfterADeferredMigration() {
+        // given
+        String dbName = "deferredIndexes";
+
+        Properties properties = new Properties();
+        properties.put(DatabaseParameters.VEP_VERSION, VEP_VERSION);
+        properties.put(DatabaseParameters.VEP_CACHE_VERSION, CACHE_VERSION);
+        properties.put(DatabaseParameters.DB_NAME, dbName);
+        properties.put(DatabaseParameters.DB_COLLECTIONS_VARIANTS_NAME, VARIANT_COLLECTION_NAME);
+        properties.put(DatabaseParameters.DB_COLLECTIONS_ANNOTATIONS_NAME, ANNOTATION_COLLECTION_NAME);
+        properties.put(DatabaseParameters.DB_COLLECTIONS_ANNOTATION_METADATA_NAME, ANNOTATION_METADATA_COLLECTION_NAME);
+        properties.put(DatabaseParameters.DB_READ_PREFERENCE, READ_PREFERENCE);
+        properties.put(DatabaseParameters.MIGRATION_DEFERRED_INDEXES, "true");
+        properties.put(DatabaseParameters.MIGRATION_FUSED, "true");
+        DatabaseParameters databaseParameters = new DatabaseParameters();
+        databaseParameters.load(properties);
+        ExtractAnnotationFromVariant.setDatabaseParameters(databaseParameters);
+
+        MongoDatabase database = new Fongo("testServer").getMongo().getDatabase(dbName);
+        MongoCollection<Document> variantsCollection = database.getCollection(VARIANT_COLLECTION_NAME);
+        MongoCollection<Document> annotationsCollection = database.getCollection(ANNOTATION_COLLECTION_NAME);
+        variantsCollection.insertOne(Document.parse(VariantData.VARIANT_WITH_ANNOT_1));
+
+        // when
+        extractAnnotationFromVariant.migrateAnnotation(database);
+        extractAnnotationFromVariant.reduceAnnotationFromVariants(database);
+
+        // then
+        assertEquals(1, annotationsCollection.listIndexes().into(new ArrayList<>()).size());
+
+        extractAnnotationFromVariant.createIndexes(database);
+        ArrayList<Document> variantsIndexes = variantsCollection.listIndexes().into(new ArrayList<>());
+        assertIndexNameExists(variantsIndexes, ANNOT_FIELD + "." + SO_FIELD + "_1");
+        assertIndexNameExists(variantsIndexes, ANNOT_FIELD + "." + XREFS_FIELD + "_1");
+        ArrayList<Document> annotationsIndexes = annotationsCollection.listIndexes().into(new ArrayList<>());
+        assertEquals(4, annotationsIndexes.size());
+        assertIndexNameExists(annotationsIndexes,
+                              String.join("_", CHROMOSOME_FIELD, "1", START_FIELD, "1", END_FIELD, "1"));
+    }
+
     private Set<Integer> computeSo(Document originalAnnotField) {
         Set<Integer> soSet = new TreeSet<>();
 
@@ -455,6 +641,55 @@ public class ExtractAnnotationFromVariantTest {
         }
     }
 
+    @Test
+    public void dryRunEstimatesTheMigrationWithoutWriting() {
+        // given
+        String dbName = "dryRunMigration";
+
+        Properties properties = new Properties();
+        properties.put(DatabaseParameters.VEP_VERSION, VEP_VERSION);
+        properties.put(DatabaseParameters.VEP_CACHE_VERSION, CACHE_VERSION);
+        properties.put(DatabaseParameters.DB_NAME, dbName);
+        properties.put(DatabaseParameters.DB_COLLECTIONS_VARIANTS_NAME, VARIANT_COLLECTION_NAME);
+        properties.put(DatabaseParameters.DB_COLLECTIONS_ANNOTATIONS_NAME, ANNOTATION_COLLECTION_NAME);
+        properties.put(DatabaseParameters.DB_COLLECTIONS_ANNOTATION_METADATA_NAME, ANNOTATION_METADATA_COLLECTION_NAME);
+        properties.put(DatabaseParameters.DB_READ_PREFERENCE, READ_PREFERENCE);
+        properties.put(DatabaseParameters.MIGRATION_DRY_RUN, "true");
+        properties.put(DatabaseParameters.MIGRATION_DRY_RUN_SAMPLE_SIZE, "10");
+        properties.put(DatabaseParameters.MIGRATION_DRY_RUN_WRITE_BYTES_PER_SECOND, "1000");
+        DatabaseParameters databaseParameters = new DatabaseParameters();
+        databaseParameters.load(properties);
+        ExtractAnnotationFromVariant.setDatabaseParameters(databaseParameters);
+
+        MongoDatabase database = new Fongo("testServer").getDatabase(dbName);
+        MongoCollection<Document> variantsCollection = database.getCollection(VARIANT_COLLECTION_NAME);
+        MongoCollection<Document> annotationCollection = database.getCollection(ANNOTATION_COLLECTION_NAME);
+
+        variantsCollection.insertOne(Document.parse(VariantData.VARIANT_WITHOUT_ANNOT));
+        variantsCollection.insertOne(Document.parse(VariantData.VARIANT_WITH_ANNOT_1));
+        variantsCollection.insertOne(Document.parse(VariantData.VARIANT_WITH_ANNOT_2));
+
+        // when
+        MigrationEstimator.MigrationEstimate estimate = extractAnnotationFromVariant.estimateMigration(database);
+
+        // then
+        assertEquals(3, estimate.getSampledDocuments());
+        assertEquals(3, estimate.getDocuments());
+        assertEquals(2, estimate.getMigratedDocuments());
+        assertTrue(estimate.getInsertedBytes() > 0);
+        assertTrue(estimate.getUpdatedBytes() > 0);
+        assertTrue(estimate.getTargetIndexBytes() > 0);
+        double writtenBytes = estimate.getInsertedBytes() + estimate.getUpdatedBytes() + estimate.getTargetIndexBytes()
+                + estimate.getSourceIndexBytes();
+        assertEquals(writtenBytes / 1000, estimate.getWriteSeconds(), 0.001);
+        assertEquals(estimate.getReadAndTransformSeconds() + estimate.getWriteSeconds(), estimate.getEstimatedSeconds(),
+                     0.001);
+
+        assertEquals(0, annotationCollection.count());
+        assertEquals(2, variantsCollection.count(new Document(ANNOT_FIELD + "." + CONSEQUENCE_TYPE_FIELD,
+                                                              new Document("$exists", true))));
+    }
+
     @Test
     public void testDefaultAnnotationVersionNotFound() throws Exception {
         String dbName = "defaultAnnotation";
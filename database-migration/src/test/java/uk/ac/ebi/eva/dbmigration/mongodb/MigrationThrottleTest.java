@@ -0,0 +1,105 @@
+/*
+ * Copyright 2018 EMBL - European Bioinformatics Institute
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.ac.ebi.eva.dbmigration.mongodb;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test {@link MigrationThrottle}
+ */
+public class MigrationThrottleTest {
+
+    private static final long TARGET_LATENCY_MILLIS = 1000;
+
+    private static final long SLOW_WRITE_NANOS = TimeUnit.MILLISECONDS.toNanos(TARGET_LATENCY_MILLIS * 2);
+
+    private static final long FAST_WRITE_NANOS = TimeUnit.MILLISECONDS.toNanos(TARGET_LATENCY_MILLIS / 10);
+
+    @Test
+    public void slowWritesReduceConcurrencyThenBulkSizeThenPause() throws Exception {
+        MigrationThrottle throttle = new MigrationThrottle(4, 1000, TARGET_LATENCY_MILLIS, 0, null);
+
+        write(throttle, SLOW_WRITE_NANOS);
+        assertEquals(2, throttle.getConcurrency());
+        write(throttle, SLOW_WRITE_NANOS);
+        assertEquals(1, throttle.getConcurrency());
+        assertEquals(1000, throttle.getBulkSize());
+
+        write(throttle, SLOW_WRITE_NANOS);
+        assertEquals(500, throttle.getBulkSize());
+        for (int i = 0; i < 10; i++) {
+            write(throttle, SLOW_WRITE_NANOS);
+        }
+        assertEquals(MigrationThrottle.MIN_BULK_SIZE, throttle.getBulkSize());
+        assertTrue(throttle.getPauseMillis() > 0);
+    }
+
+    @Test
+    public void fastWritesRecoverTheRate() throws Exception {
+        MigrationThrottle throttle = new MigrationThrottle(2, 100, TARGET_LATENCY_MILLIS, 0, null);
+        write(throttle, SLOW_WRITE_NANOS);
+        write(throttle, SLOW_WRITE_NANOS);
+        assertEquals(1, throttle.getConcurrency());
+        assertEquals(50, throttle.getBulkSize());
+
+        for (int i = 0; i < 6; i++) {
+            write(throttle, FAST_WRITE_NANOS);
+        }
+        assertEquals(100, throttle.getBulkSize());
+        assertEquals(2, throttle.getConcurrency());
+    }
+
+    @Test
+    public void replicationLagSlowsDownTheWrites() throws Exception {
+        AtomicLong lagSeconds = new AtomicLong(30);
+        MigrationThrottle throttle = new MigrationThrottle(2, 100, 0, 10, lagSeconds::get);
+
+        write(throttle, FAST_WRITE_NANOS);
+        assertEquals(1, throttle.getConcurrency());
+
+        lagSeconds.set(0);
+        write(throttle, FAST_WRITE_NANOS);
+        assertEquals(2, throttle.getConcurrency());
+    }
+
+    @Test
+    public void slowWritesInFlightOnlySlowDownOnce() throws Exception {
+        MigrationThrottle throttle = new MigrationThrottle(4, 1000, TARGET_LATENCY_MILLIS, 0, null);
+        long[] generations = new long[4];
+        for (int i = 0; i < generations.length; i++) {
+            generations[i] = throttle.acquire();
+        }
+        for (long generation : generations) {
+            throttle.release(generation, SLOW_WRITE_NANOS);
+        }
+        assertEquals(2, throttle.getConcurrency());
+        assertEquals(1000, throttle.getBulkSize());
+
+        write(throttle, SLOW_WRITE_NANOS);
+        assertEquals(1, throttle.getConcurrency());
+    }
+
+    private void write(MigrationThrottle throttle, long latencyNanos) throws InterruptedException {
+        long generation = throttle.acquire();
+        throttle.release(generation, latencyNanos);
+    }
+}
@@ -0,0 +1,139 @@
+/*
+ * Copyright 2018 EMBL - European Bioinformatics Institute
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.ac.ebi.eva.dbmigration.mongodb;
+
+import com.github.fakemongo.Fongo;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoDatabase;
+import org.bson.Document;
+import org.junit.Before;
+import org.junit.Test;
+
+import uk.ac.ebi.eva.dbmigration.mongodb.MigrationVerification.RangeChecksum;
+
+import java.security.MessageDigest;
+import java.util.List;
+import java.util.Properties;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test {@link MigrationVerification}
+ */
+public class MigrationVerificationTest {
+
+    private static final String ID_FIELD = "_id";
+
+    private static final String VALUE_FIELD = "value";
+
+    private static final String SOURCE_ID_FIELD = "source";
+
+    private static final int DOCUMENTS = 100;
+
+    private MongoDatabase database;
+
+    private MongoCollection<Document> source;
+
+    private MongoCollection<Document> target;
+
+    @Before
+    public void setUp() {
+        database = new Fongo("testServer").getMongo().getDatabase("migrationVerification");
+        source = database.getCollection("source");
+        target = database.getCollection("target");
+        source.drop();
+        target.drop();
+        for (int i = 0; i < DOCUMENTS; i++) {
+            String id = String.format("id_%03d", i);
+            source.insertOne(new Document(ID_FIELD, id).append(VALUE_FIELD, i));
+            // the fields are written in a different order than the expected document
+            target.insertOne(new Document(SOURCE_ID_FIELD, id).append(VALUE_FIELD, i).append(ID_FIELD, id + "_t"));
+        }
+    }
+
+    @Test
+    public void migratedDocumentsMatch() {
+        List<RangeChecksum> mismatches = verify(new MigrationVerification(3, 7, 0));
+
+        assertTrue(mismatches.isEmpty());
+    }
+
+    @Test
+    public void sampledRangesMatch() {
+        List<RangeChecksum> mismatches = verify(new MigrationVerification(3, 7, 100));
+
+        assertTrue(mismatches.isEmpty());
+    }
+
+    @Test
+    public void rangesWithDifferentDocumentsAreReported() {
+        target.updateOne(new Document(ID_FIELD, "id_010_t"), new Document("$set", new Document(VALUE_FIELD, -1)));
+        target.deleteOne(new Document(ID_FIELD, "id_090_t"));
+
+        List<RangeChecksum> mismatches = verify(new MigrationVerification(3, 7, 0));
+
+        assertEquals(2, mismatches.size());
+        RangeChecksum changed = mismatches.get(0);
+        assertEquals(changed.getSourceDocuments(), changed.getTargetDocuments());
+        RangeChecksum missing = mismatches.get(1);
+        assertEquals(missing.getSourceDocuments() - 1, missing.getTargetDocuments());
+    }
+
+    @Test
+    public void differentFieldsThatAreNotSummedAreFoundByDefault() {
+        target.updateOne(new Document(ID_FIELD, "id_010_t"),
+                         new Document("$set", new Document(SOURCE_ID_FIELD, "id_011")));
+        Properties properties = new Properties();
+        properties.put(DatabaseParameters.DB_NAME, "migrationVerification");
+        properties.put(DatabaseParameters.DB_COLLECTIONS_VARIANTS_NAME, "source");
+        properties.put(DatabaseParameters.DB_COLLECTIONS_ANNOTATIONS_NAME, "target");
+        properties.put(DatabaseParameters.DB_COLLECTIONS_ANNOTATION_METADATA_NAME, "metadata");
+        properties.put(DatabaseParameters.VEP_VERSION, "88");
+        properties.put(DatabaseParameters.VEP_CACHE_VERSION, "90");
+        properties.put(DatabaseParameters.DB_READ_PREFERENCE, "primary");
+        DatabaseParameters databaseParameters = new DatabaseParameters();
+        databaseParameters.load(properties);
+
+        List<RangeChecksum> mismatches = verify(
+                new MigrationVerification(3, 7, databaseParameters.getMigrationVerifySamplePercentage()));
+
+        assertEquals(1, mismatches.size());
+        assertEquals(mismatches.get(0).getSourceDocuments(), mismatches.get(0).getTargetDocuments());
+    }
+
+    @Test
+    public void hashDoesNotDependOnFieldOrder() throws Exception {
+        MessageDigest digest = MessageDigest.getInstance("SHA-1");
+        Document document = new Document("a", 1).append("b", new Document("c", "x").append("d", 2.5));
+        Document reordered = new Document("b", new Document("d", 2.5).append("c", "x")).append("a", 1);
+        Document changed = new Document("a", 1).append("b", new Document("c", "x").append("d", 3.5));
+
+        assertEquals(MigrationVerification.hash(document, digest), MigrationVerification.hash(reordered, digest));
+        assertTrue(MigrationVerification.hash(document, digest) != MigrationVerification.hash(changed, digest));
+    }
+
+    private List<RangeChecksum> verify(MigrationVerification verification) {
+        return verification.verify(database, source, new Document(), null, this::buildExpectedDocument, target,
+                                   range -> range.map(id -> id + "_t").restrict(new Document()), VALUE_FIELD);
+    }
+
+    private Document buildExpectedDocument(Document sourceDocument) {
+        String id = sourceDocument.getString(ID_FIELD);
+        return new Document(ID_FIELD, id + "_t").append(SOURCE_ID_FIELD, id)
+                                                .append(VALUE_FIELD, sourceDocument.get(VALUE_FIELD));
+    }
+}
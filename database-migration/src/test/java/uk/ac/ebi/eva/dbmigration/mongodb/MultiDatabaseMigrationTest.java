@@ -0,0 +1,139 @@
+/*
+ * Copyright 2018 EMBL - European Bioinformatics Institute
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.ac.ebi.eva.dbmigration.mongodb;
+
+import com.github.fakemongo.Fongo;
+import com.mongodb.MongoClient;
+import org.bson.Document;
+import org.junit.Before;
+import org.junit.Test;
+
+import uk.ac.ebi.eva.dbmigration.mongodb.MultiDatabaseMigration.DatabaseMigrationResult;
+import uk.ac.ebi.eva.dbmigration.mongodb.multidatabase.TestChangeLog;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test {@link MultiDatabaseMigration}
+ */
+public class MultiDatabaseMigrationTest {
+
+    private static final String CHANGELOGS_PACKAGE = "uk.ac.ebi.eva.dbmigration.mongodb.multidatabase";
+
+    private MongoClient mongoClient;
+
+    @Before
+    public void setUp() {
+        mongoClient = new Fongo("testServer").getMongo();
+        for (String database : Arrays.asList("eva_hsapiens_grch37", "eva_failing_species", "eva_mmusculus_grcm38",
+                                             "other_database")) {
+            mongoClient.getDatabase(database).getCollection("variants").insertOne(new Document());
+        }
+    }
+
+    @Test
+    public void databasesAreFoundByListAndPattern() {
+        Properties properties = buildProperties();
+        properties.put(DatabaseParameters.DB_NAMES, "other_database, eva_hsapiens_grch37");
+        properties.put(DatabaseParameters.DB_NAME_PATTERN, "eva_.*_grc.*");
+
+        List<String> databases = new MultiDatabaseMigration(mongoClient, loadParameters(properties),
+                                                            CHANGELOGS_PACKAGE).findDatabases();
+
+        assertEquals(Arrays.asList("eva_hsapiens_grch37", "eva_mmusculus_grcm38", "other_database"), databases);
+    }
+
+    @Test
+    public void failedDatabaseDoesNotStopTheOthers() {
+        Properties properties = buildProperties();
+        properties.put(DatabaseParameters.DB_NAME_PATTERN, "eva_.*");
+        properties.put(DatabaseParameters.MIGRATION_DATABASE_THREADS, "2");
+        MultiDatabaseMigration migration = new MultiDatabaseMigration(mongoClient, loadParameters(properties),
+                                                                      CHANGELOGS_PACKAGE);
+
+        List<DatabaseMigrationResult> results = migration.run(migration.findDatabases());
+
+        assertEquals(3, results.size());
+        for (DatabaseMigrationResult result : results) {
+            boolean failing = result.getDatabase().equals("eva_failing_species");
+            assertEquals(!failing, result.isSuccessful());
+            long migrated = mongoClient.getDatabase(result.getDatabase())
+                                       .getCollection(TestChangeLog.MIGRATED_COLLECTION).count();
+            assertEquals(failing ? 0 : 1, migrated);
+        }
+    }
+
+    @Test
+    public void migratedDatabasesAreNotMigratedAgain() {
+        Properties properties = buildProperties();
+        properties.put(DatabaseParameters.DB_NAMES, "eva_hsapiens_grch37,eva_mmusculus_grcm38");
+        MultiDatabaseMigration migration = new MultiDatabaseMigration(mongoClient, loadParameters(properties),
+                                                                      CHANGELOGS_PACKAGE);
+
+        migration.run(migration.findDatabases());
+        List<DatabaseMigrationResult> results = migration.run(migration.findDatabases());
+
+        assertEquals(2, results.size());
+        for (DatabaseMigrationResult result : results) {
+            assertTrue(result.isSuccessful());
+            assertEquals(1, mongoClient.getDatabase(result.getDatabase())
+                                       .getCollection(TestChangeLog.MIGRATED_COLLECTION).count());
+        }
+    }
+
+    @Test
+    public void lockedDatabaseIsReportedAsFailed() {
+        mongoClient.getDatabase("eva_hsapiens_grch37").getCollection(MultiDatabaseMigration.MONGOBEE_LOCK_COLLECTION)
+                   .insertOne(new Document("key", "LOCK").append("status", "LOCK_HELD"));
+        Properties properties = buildProperties();
+        properties.put(DatabaseParameters.DB_NAMES, "eva_hsapiens_grch37,eva_mmusculus_grcm38");
+        MultiDatabaseMigration migration = new MultiDatabaseMigration(mongoClient, loadParameters(properties),
+                                                                      CHANGELOGS_PACKAGE);
+
+        List<DatabaseMigrationResult> results = migration.run(migration.findDatabases());
+
+        assertEquals(2, results.size());
+        assertFalse(results.get(0).isSuccessful());
+        assertEquals(0, mongoClient.getDatabase("eva_hsapiens_grch37")
+                                   .getCollection(TestChangeLog.MIGRATED_COLLECTION).count());
+        assertTrue(results.get(1).isSuccessful());
+        assertEquals(1, mongoClient.getDatabase("eva_mmusculus_grcm38")
+                                   .getCollection(TestChangeLog.MIGRATED_COLLECTION).count());
+    }
+
+    private Properties buildProperties() {
+        Properties properties = new Properties();
+        properties.put(DatabaseParameters.VEP_VERSION, "88");
+        properties.put(DatabaseParameters.VEP_CACHE_VERSION, "90");
+        properties.put(DatabaseParameters.DB_COLLECTIONS_VARIANTS_NAME, "variants");
+        properties.put(DatabaseParameters.DB_COLLECTIONS_ANNOTATIONS_NAME, "annotations");
+        properties.put(DatabaseParameters.DB_COLLECTIONS_ANNOTATION_METADATA_NAME, "annotationMetadata");
+        properties.put(DatabaseParameters.DB_READ_PREFERENCE, "primary");
+        return properties;
+    }
+
+    private DatabaseParameters loadParameters(Properties properties) {
+        DatabaseParameters databaseParameters = new DatabaseParameters();
+        databaseParameters.load(properties);
+        return databaseParameters;
+    }
+}
@@ -0,0 +1,184 @@
+/*
+ * Copyright 2018 EMBL - European Bioinformatics Institute
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.ac.ebi.eva.dbmigration.mongodb;
+
+import com.github.fakemongo.Fongo;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoDatabase;
+import com.mongodb.client.model.Projections;
+import org.bson.Document;
+import org.bson.RawBsonDocument;
+import org.bson.codecs.DocumentCodec;
+import org.junit.Before;
+import org.junit.Test;
+
+import uk.ac.ebi.eva.dbmigration.mongodb.MigrationProgress.RangeProgress;
+import uk.ac.ebi.eva.dbmigration.mongodb.PartitionedMigration.MigrationCounts;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Test {@link PartitionedMigration}
+ */
+public class PartitionedMigrationTest {
+
+    private static final String ID_FIELD = "_id";
+
+    private static final String VALUE_FIELD = "value";
+
+    private static final int DOCUMENTS = 100;
+
+    private MongoDatabase database;
+
+    private MongoCollection<Document> collection;
+
+    @Before
+    public void setUp() {
+        database = new Fongo("testServer").getMongo().getDatabase("partitionedMigration");
+        collection = database.getCollection("documents");
+        collection.drop();
+        for (int i = 0; i < DOCUMENTS; i++) {
+            collection.insertOne(new Document(ID_FIELD, String.format("id_%03d", i)).append(VALUE_FIELD, i % 2));
+        }
+    }
+
+    @Test
+    public void singleThreadUsesOneRange() {
+        List<IdRange> ranges = new PartitionedMigration(1, 10, 10, Long.MAX_VALUE).split(database, collection);
+        assertEquals(1, ranges.size());
+    }
+
+    @Test
+    public void rangesCoverEveryDocumentOnce() {
+        List<IdRange> ranges = new PartitionedMigration(3, 10, 10, Long.MAX_VALUE).split(database, collection);
+        assertTrue(ranges.size() > 1);
+
+        List<Object> ids = new ArrayList<>();
+        Document everyDocument = new Document();
+        for (IdRange range : ranges) {
+            for (Document document : collection.find(range.restrict(everyDocument))) {
+                ids.add(document.get(ID_FIELD));
+            }
+        }
+        assertEquals(DOCUMENTS, ids.size());
+        assertEquals(DOCUMENTS, new HashSet<>(ids).size());
+    }
+
+    @Test
+    public void countsAreAddedAcrossRanges() {
+        Set<Object> written = Collections.synchronizedSet(new HashSet<>());
+        MigrationCounts counts = new PartitionedMigration(4, 5, 7, Long.MAX_VALUE).run(
+                database, collection, new Document(VALUE_FIELD, 1), null, document -> document.get(ID_FIELD),
+                bulk -> {
+                    written.addAll(bulk);
+                    return bulk.size();
+                });
+
+        assertEquals(DOCUMENTS / 2, counts.getReadCount());
+        assertEquals(DOCUMENTS / 2, counts.getWrittenCount());
+        assertEquals(DOCUMENTS / 2, written.size());
+    }
+
+    @Test
+    public void onlyProjectedFieldsAreRead() {
+        List<Document> read = Collections.synchronizedList(new ArrayList<>());
+        new PartitionedMigration(1, 10, 10, Long.MAX_VALUE).run(
+                database, collection, new Document(), Projections.include(ID_FIELD), document -> document,
+                bulk -> {
+                    read.addAll(bulk);
+                    return bulk.size();
+                });
+
+        assertEquals(DOCUMENTS, read.size());
+        for (Document document : read) {
+            assertEquals(Collections.singleton(ID_FIELD), document.keySet());
+        }
+    }
+
+    @Test
+    public void bulksAreLimitedByBytes() {
+        long documentBytes = new RawBsonDocument(collection.find().first(), new DocumentCodec())
+                .getByteBuffer().remaining();
+        List<Integer> bulkSizes = Collections.synchronizedList(new ArrayList<>());
+        MigrationCounts counts = new PartitionedMigration(1, 10, 50, documentBytes * 3).run(
+                database, collection, new Document(), null, document -> document,
+                bulk -> {
+                    bulkSizes.add(bulk.size());
+                    return bulk.size();
+                });
+
+        assertEquals(DOCUMENTS, counts.getReadCount());
+        assertEquals(DOCUMENTS * documentBytes, counts.getReadBytes());
+        assertEquals(34, bulkSizes.size());
+        for (int bulkSize : bulkSizes) {
+            assertTrue(bulkSize <= 3);
+        }
+    }
+
+    @Test
+    public void interruptedMigrationResumesAfterTheWatermark() {
+        MongoCollection<Document> progressCollection = database.getCollection("progress");
+        progressCollection.drop();
+        MigrationProgress progress = new MigrationProgress(progressCollection, "migration");
+        List<RangeProgress> ranges = progress.start(Collections.singletonList(IdRange.all()));
+        progress.update(ranges.get(0), String.format("id_%03d", 59));
+
+        List<Object> written = new ArrayList<>();
+        MigrationCounts counts = new PartitionedMigration(1, 10, 10, Long.MAX_VALUE, progress, null).run(
+                database, collection, new Document(), null, document -> document.get(ID_FIELD),
+                bulk -> {
+                    written.addAll(bulk);
+                    return bulk.size();
+                });
+
+        assertEquals(40, counts.getReadCount());
+        assertEquals(String.format("id_%03d", 60), written.get(0));
+        assertEquals(0, progressCollection.count());
+    }
+
+    @Test
+    public void watermarksAreStoredAfterEachBulk() {
+        MongoCollection<Document> progressCollection = database.getCollection("progress");
+        progressCollection.drop();
+        MigrationProgress progress = new MigrationProgress(progressCollection, "migration");
+
+        try {
+            new PartitionedMigration(1, 10, 10, Long.MAX_VALUE, progress, null).run(
+                    database, collection, new Document(), null, document -> document.get(ID_FIELD),
+                    bulk -> {
+                        if (bulk.contains(String.format("id_%03d", 25))) {
+                            throw new IllegalStateException("Mongo is down");
+                        }
+                        return bulk.size();
+                    });
+            fail("The migration should have been interrupted");
+        } catch (IllegalStateException e) {
+            List<RangeProgress> ranges = progress.load();
+            assertEquals(1, ranges.size());
+            assertEquals(String.format("id_%03d", 19), ranges.get(0).getLastId());
+            assertFalse(ranges.get(0).isDone());
+        }
+    }
+}
@@ -0,0 +1,38 @@
+/*
+ * Copyright 2018 EMBL - European Bioinformatics Institute
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.ac.ebi.eva.dbmigration.mongodb.multidatabase;
+
+import com.github.mongobee.changeset.ChangeLog;
+import com.github.mongobee.changeset.ChangeSet;
+import com.mongodb.client.MongoDatabase;
+import org.bson.Document;
+
+/**
+ * Changelog used to test the migration of several databases. It fails in the databases whose name contains "failing".
+ */
+@ChangeLog
+public class TestChangeLog {
+
+    public static final String MIGRATED_COLLECTION = "migrated";
+
+    @ChangeSet(order = "001", id = "markAsMigrated", author = "EVA")
+    public void markAsMigrated(MongoDatabase mongoDatabase) {
+        if (mongoDatabase.getName().contains("failing")) {
+            throw new IllegalStateException("Database " + mongoDatabase.getName() + " can't be migrated");
+        }
+        mongoDatabase.getCollection(MIGRATED_COLLECTION).insertOne(new Document("migrated", true));
+    }
+}
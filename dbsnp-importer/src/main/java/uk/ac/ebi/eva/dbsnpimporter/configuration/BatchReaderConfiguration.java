@@ -24,8 +24,6 @@ import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
 import uk.ac.ebi.eva.dbsnpimporter.io.readers.BatchReader;
-import uk.ac.ebi.eva.dbsnpimporter.io.readers.SampleReader;
-import uk.ac.ebi.eva.dbsnpimporter.io.readers.WindingItemStreamReader;
 import uk.ac.ebi.eva.dbsnpimporter.models.DbsnpBatch;
 import uk.ac.ebi.eva.dbsnpimporter.parameters.DbsnpDatasource;
 import uk.ac.ebi.eva.dbsnpimporter.parameters.Parameters;
@@ -45,6 +43,7 @@ public class BatchReaderConfiguration {
     ItemStreamReader<DbsnpBatch> batchReader(Parameters parameters, DbsnpDatasource dbsnpDatasource) throws Exception {
         logger.info("Injecting BatchReader with parameters: {}, {}", parameters, dbsnpDatasource);
         DataSource dataSource = dbsnpDatasource.getDatasource();
-        return new BatchReader(parameters.getBatchId(), dataSource, parameters.getPageSize());
+        return new BatchReader(parameters.getBatchId(), dataSource, parameters.getPageSize(),
+                               parameters.isStreamSamples());
     }
 }
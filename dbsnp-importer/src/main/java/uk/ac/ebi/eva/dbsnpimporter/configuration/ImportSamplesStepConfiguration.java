@@ -41,6 +41,7 @@ import uk.ac.ebi.eva.dbsnpimporter.models.DbsnpBatch;
 import uk.ac.ebi.eva.dbsnpimporter.parameters.Parameters;
 
 import static uk.ac.ebi.eva.dbsnpimporter.configuration.BatchReaderConfiguration.BATCH_READER;
+import static uk.ac.ebi.eva.dbsnpimporter.configuration.ListenersConfiguration.POOL_STATISTICS_LISTENER;
 import static uk.ac.ebi.eva.dbsnpimporter.configuration.VariantSourceWriterConfiguration.VARIANT_SOURCE_WRITER;
 
 @Configuration
@@ -69,6 +70,10 @@ public class ImportSamplesStepConfiguration {
     @Autowired
     private StepListenerSupport<DbsnpBatch, IVariantSource> listenerLogger;
 
+    @Autowired
+    @Qualifier(POOL_STATISTICS_LISTENER)
+    private StepExecutionListener poolStatisticsListener;
+
     @Bean
     public SimpleCompletionPolicy chunkSizecompletionPolicy(Parameters parameters) {
         return new SimpleCompletionPolicy(parameters.getChunkSize());
@@ -88,6 +93,7 @@ public class ImportSamplesStepConfiguration {
                 .listener((ChunkListener) listenerLogger)
                 .listener((ItemReadListener) listenerLogger)
                 .listener((ItemWriteListener) listenerLogger)
+                .listener(poolStatisticsListener)
                 .build();
     }
 
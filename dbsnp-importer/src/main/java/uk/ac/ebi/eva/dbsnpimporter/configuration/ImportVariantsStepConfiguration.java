@@ -37,10 +37,15 @@ import org.springframework.context.annotation.Import;
 
 import uk.ac.ebi.eva.commons.core.models.IVariant;
 import uk.ac.ebi.eva.dbsnpimporter.configuration.processors.VariantsProcessorConfiguration;
+import uk.ac.ebi.eva.dbsnpimporter.metrics.ImportMetricsListener;
 import uk.ac.ebi.eva.dbsnpimporter.parameters.Parameters;
 import uk.ac.ebi.eva.dbsnpimporter.models.SubSnpCoreFields;
 import uk.ac.ebi.eva.dbsnpimporter.parameters.Parameters;
 
+import static uk.ac.ebi.eva.dbsnpimporter.configuration.ListenersConfiguration.POOL_STATISTICS_LISTENER;
+import static uk.ac.ebi.eva.dbsnpimporter.configuration.MetricsConfiguration.IMPORT_METRICS_LISTENER;
+import static uk.ac.ebi.eva.dbsnpimporter.configuration.RejectedVariantsWriterConfiguration
+        .REJECTED_VARIANTS_STEP_LISTENER;
 import static uk.ac.ebi.eva.dbsnpimporter.configuration.processors.VariantsProcessorConfiguration.VARIANTS_PROCESSOR;
 import static uk.ac.ebi.eva.dbsnpimporter.configuration.VariantsReaderConfiguration.VARIANTS_READER;
 import static uk.ac.ebi.eva.dbsnpimporter.configuration.VariantsWriterConfiguration.VARIANTS_WRITER;
@@ -50,7 +55,7 @@ import static uk.ac.ebi.eva.dbsnpimporter.configuration.processors.AssemblyCheck
 @Configuration
 @EnableBatchProcessing
 @Import({VariantsReaderConfiguration.class, VariantsProcessorConfiguration.class, VariantsWriterConfiguration.class,
-        ListenersConfiguration.class})
+        ListenersConfiguration.class, MetricsConfiguration.class})
 public class ImportVariantsStepConfiguration {
 
     private static final Logger logger = LoggerFactory.getLogger(ImportVariantsStepConfiguration.class);
@@ -74,10 +79,22 @@ public class ImportVariantsStepConfiguration {
     @Autowired
     private StepListenerSupport<SubSnpCoreFields, IVariant> listenerLogger;
 
+    @Autowired
+    @Qualifier(POOL_STATISTICS_LISTENER)
+    private StepExecutionListener poolStatisticsListener;
+
     @Autowired
     @Qualifier(ASSEMBLY_CHECK_STEP_LISTENER)
     private StepExecutionListener assemblyCheckStepListener;
 
+    @Autowired
+    @Qualifier(REJECTED_VARIANTS_STEP_LISTENER)
+    private StepExecutionListener rejectedVariantsStepListener;
+
+    @Autowired
+    @Qualifier(IMPORT_METRICS_LISTENER)
+    private ImportMetricsListener importMetricsListener;
+
     @Bean
     public SimpleCompletionPolicy chunkSizecompletionPolicy(Parameters parameters) {
         return new SimpleCompletionPolicy(parameters.getChunkSize());
@@ -98,6 +115,10 @@ public class ImportVariantsStepConfiguration {
                 .listener((ItemReadListener) listenerLogger)
                 .listener((ItemWriteListener) listenerLogger)
                 .listener(assemblyCheckStepListener)
+                .listener(rejectedVariantsStepListener)
+                .listener(poolStatisticsListener)
+                .listener((StepExecutionListener) importMetricsListener)
+                .listener((ItemReadListener) importMetricsListener)
                 .build();
     }
 
@@ -43,7 +43,18 @@ public class JobParametersConfiguration {
         addParameter("variantsCollection", parameters.getVariantsCollection());
         addParameter("filesCollection", parameters.getFilesCollection());
         addParameter("contigMappingUrl", parameters.getContigMappingUrl());
+        addNonIdentifyingParameter("contigMappingCache", parameters.getContigMappingCache());
         addParameter("referenceFastaFile", parameters.getReferenceFastaFile());
+        addNonIdentifyingParameter("copyReader", Boolean.toString(parameters.isCopyReader()));
+        addNonIdentifyingParameter("writesInFlight", Integer.toString(parameters.getWritesInFlight()));
+        addNonIdentifyingParameter("writeConcern", parameters.getWriteConcern());
+        addNonIdentifyingParameter("streamSamples", Boolean.toString(parameters.isStreamSamples()));
+        addNonIdentifyingParameter("metricsSummary", parameters.getMetricsSummary());
+        addNonIdentifyingParameter("rejectedVariantsDirectory", parameters.getRejectedVariantsDirectory());
+        if (parameters.isDryRun()) {
+            // a dry run must not complete the job instance of the real import
+            addParameter("dryRun", Boolean.toString(true));
+        }
 
         addParameter("driverClassName", dbsnpDatasource.getDriverClassName());
         addParameter("url", dbsnpDatasource.getUrl());
@@ -20,8 +20,11 @@ import org.slf4j.LoggerFactory;
 import org.springframework.batch.core.ExitStatus;
 import org.springframework.batch.core.ItemWriteListener;
 import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.StepExecutionListener;
+import org.springframework.batch.core.listener.StepExecutionListenerSupport;
 import org.springframework.batch.core.listener.StepListenerSupport;
 import org.springframework.batch.core.scope.context.ChunkContext;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
@@ -29,13 +32,22 @@ import uk.ac.ebi.eva.commons.core.models.IVariant;
 import uk.ac.ebi.eva.commons.core.models.IVariantSource;
 import uk.ac.ebi.eva.dbsnpimporter.models.Sample;
 import uk.ac.ebi.eva.dbsnpimporter.models.SubSnpCoreFields;
+import uk.ac.ebi.eva.dbsnpimporter.parameters.DbsnpDatasource;
 import uk.ac.ebi.eva.dbsnpimporter.parameters.Parameters;
 
 import java.util.List;
 
 @Configuration
+@EnableConfigurationProperties({Parameters.class, DbsnpDatasource.class})
 public class ListenersConfiguration {
 
+    public static final String POOL_STATISTICS_LISTENER = "POOL_STATISTICS_LISTENER";
+
+    @Bean(POOL_STATISTICS_LISTENER)
+    public StepExecutionListener poolStatisticsListener(DbsnpDatasource dbsnpDatasource) {
+        return new PoolStatisticsListener(dbsnpDatasource);
+    }
+
     @Bean
     public StepListenerSupport<SubSnpCoreFields, IVariant> variantImportListener(Parameters parameters) {
         return new VariantImportListener(parameters);
@@ -186,4 +198,26 @@ public class ListenersConfiguration {
             return stepExecution.getExitStatus();
         }
     }
+
+    /**
+     * Logs the usage of the dbSNP connection pool at the end of each step. A high number of waiting threads means that
+     * the pool size should be increased.
+     */
+    private static class PoolStatisticsListener extends StepExecutionListenerSupport {
+
+        private static final Logger logger = LoggerFactory.getLogger(PoolStatisticsListener.class);
+
+        private DbsnpDatasource dbsnpDatasource;
+
+        public PoolStatisticsListener(DbsnpDatasource dbsnpDatasource) {
+            this.dbsnpDatasource = dbsnpDatasource;
+        }
+
+        @Override
+        public ExitStatus afterStep(StepExecution stepExecution) {
+            logger.info("{}: dbSNP connection pool statistics = {}", stepExecution.getStepName(),
+                        dbsnpDatasource.getPoolStatistics());
+            return stepExecution.getExitStatus();
+        }
+    }
 }
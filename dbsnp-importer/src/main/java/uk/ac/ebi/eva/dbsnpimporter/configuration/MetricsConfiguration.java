@@ -0,0 +1,50 @@
+/*
+ * Copyright 2018 EMBL - European Bioinformatics Institute
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.ac.ebi.eva.dbsnpimporter.configuration;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import uk.ac.ebi.eva.dbsnpimporter.metrics.ImportMetrics;
+import uk.ac.ebi.eva.dbsnpimporter.metrics.ImportMetricsListener;
+import uk.ac.ebi.eva.dbsnpimporter.parameters.Parameters;
+
+@Configuration
+@EnableConfigurationProperties(Parameters.class)
+public class MetricsConfiguration {
+
+    public static final String IMPORT_METRICS_LISTENER = "IMPORT_METRICS_LISTENER";
+
+    @Bean
+    @ConditionalOnMissingBean(MeterRegistry.class)
+    public MeterRegistry meterRegistry() {
+        return new SimpleMeterRegistry();
+    }
+
+    @Bean
+    public ImportMetrics importMetrics(MeterRegistry meterRegistry) {
+        return new ImportMetrics(meterRegistry);
+    }
+
+    @Bean(IMPORT_METRICS_LISTENER)
+    public ImportMetricsListener importMetricsListener(ImportMetrics importMetrics, Parameters parameters) {
+        return new ImportMetricsListener(importMetrics, parameters.getMetricsSummary());
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright 2018 EMBL - European Bioinformatics Institute
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.ac.ebi.eva.dbsnpimporter.configuration;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.batch.core.ExitStatus;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.listener.StepListenerSupport;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import uk.ac.ebi.eva.dbsnpimporter.io.writers.RejectedVariantsWriter;
+import uk.ac.ebi.eva.dbsnpimporter.parameters.Parameters;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Paths;
+
+@Configuration
+@EnableConfigurationProperties(Parameters.class)
+public class RejectedVariantsWriterConfiguration {
+
+    private static final Logger logger = LoggerFactory.getLogger(RejectedVariantsWriterConfiguration.class);
+
+    public static final String REJECTED_VARIANTS_STEP_LISTENER = "REJECTED_VARIANTS_STEP_LISTENER";
+
+    public static final String REJECTED_VARIANTS_FILE_PREFIX = "rejected_variants_batch_";
+
+    public static final String REJECTED_VARIANTS_FILE_SUFFIX = ".jsonl.gz";
+
+    @Bean
+    RejectedVariantsWriter rejectedVariantsWriter(Parameters parameters) {
+        if (parameters.getRejectedVariantsDirectory() == null) {
+            return new RejectedVariantsWriter(null);
+        }
+        String fileName = REJECTED_VARIANTS_FILE_PREFIX + parameters.getBatchId() + REJECTED_VARIANTS_FILE_SUFFIX;
+        return new RejectedVariantsWriter(Paths.get(parameters.getRejectedVariantsDirectory(), fileName));
+    }
+
+    @Bean(REJECTED_VARIANTS_STEP_LISTENER)
+    StepListenerSupport rejectedVariantsStepListener(RejectedVariantsWriter rejectedVariantsWriter) {
+        return new StepListenerSupport() {
+            @Override
+            public void beforeStep(StepExecution stepExecution) {
+                try {
+                    rejectedVariantsWriter.open();
+                } catch (IOException e) {
+                    throw new UncheckedIOException("Could not open the rejected variants file", e);
+                }
+            }
+
+            @Override
+            public ExitStatus afterStep(StepExecution stepExecution) {
+                try {
+                    rejectedVariantsWriter.close();
+                } catch (IOException e) {
+                    logger.warn("Error writing the rejected variants file: {}", e.getMessage());
+                }
+                return stepExecution.getExitStatus();
+            }
+        };
+    }
+}
@@ -18,16 +18,23 @@ package uk.ac.ebi.eva.dbsnpimporter.configuration;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.batch.core.configuration.annotation.StepScope;
+import org.springframework.batch.item.ItemWriter;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.data.mongodb.core.MongoOperations;
 
+import uk.ac.ebi.eva.commons.core.models.IVariantSource;
 import uk.ac.ebi.eva.commons.mongodb.writers.VariantSourceMongoWriter;
+import uk.ac.ebi.eva.dbsnpimporter.configuration.mongo.MongoConfiguration;
+import uk.ac.ebi.eva.dbsnpimporter.io.readers.SampleReader;
+import uk.ac.ebi.eva.dbsnpimporter.io.writers.DiscardingItemWriter;
+import uk.ac.ebi.eva.dbsnpimporter.io.writers.StreamingSamplesWriter;
+import uk.ac.ebi.eva.dbsnpimporter.parameters.DbsnpDatasource;
 import uk.ac.ebi.eva.dbsnpimporter.parameters.Parameters;
 
 @Configuration
-@EnableConfigurationProperties(Parameters.class)
+@EnableConfigurationProperties({Parameters.class, DbsnpDatasource.class})
 public class VariantSourceWriterConfiguration {
 
     private static final Logger logger = LoggerFactory.getLogger(VariantSourceWriterConfiguration.class);
@@ -36,9 +43,26 @@ public class VariantSourceWriterConfiguration {
 
     @Bean(name = VARIANT_SOURCE_WRITER)
     @StepScope
-    VariantSourceMongoWriter variantSourceWriter(Parameters parameters, MongoOperations mongoOperations) throws Exception {
+    ItemWriter<IVariantSource> variantSourceWriter(Parameters parameters, DbsnpDatasource dbsnpDatasource,
+                                                   MongoOperations mongoOperations) throws Exception {
+        if (parameters.isDryRun()) {
+            logger.info("Dry run: the variant sources will be discarded instead of written into MongoDB");
+            return new DiscardingItemWriter<>();
+        }
         logger.debug("Injecting VariantSourceMongoWriter");
-        return new VariantSourceMongoWriter(mongoOperations, parameters.getFilesCollection());
+        VariantSourceMongoWriter variantSourceMongoWriter = new VariantSourceMongoWriter(
+                mongoOperations, parameters.getFilesCollection());
+        if (!parameters.isStreamSamples()) {
+            return variantSourceMongoWriter;
+        }
+
+        logger.debug("Streaming the samples into the variant sources");
+        SampleReader sampleReader = new SampleReader(parameters.getBatchId(), dbsnpDatasource.getDatasource(),
+                                                     parameters.getPageSize());
+        sampleReader.afterPropertiesSet();
+        return new StreamingSamplesWriter(variantSourceMongoWriter, mongoOperations, parameters.getFilesCollection(),
+                                          sampleReader, parameters.getPageSize(),
+                                          MongoConfiguration.MAP_KEY_DOT_REPLACEMENT);
     }
 
     @Bean
@@ -18,16 +18,25 @@ package uk.ac.ebi.eva.dbsnpimporter.configuration;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.batch.core.configuration.annotation.StepScope;
+import org.springframework.batch.item.ItemStreamReader;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
+import uk.ac.ebi.eva.commons.core.models.IVariant;
+import uk.ac.ebi.eva.dbsnpimporter.io.readers.WriteBehindCheckpointReader;
+import uk.ac.ebi.eva.dbsnpimporter.io.writers.WriteBehindItemWriter;
 import uk.ac.ebi.eva.dbsnpimporter.parameters.DbsnpDatasource;
 import uk.ac.ebi.eva.dbsnpimporter.parameters.Parameters;
+import uk.ac.ebi.eva.dbsnpimporter.io.readers.SubSnpCoreFieldsCopyReader;
 import uk.ac.ebi.eva.dbsnpimporter.io.readers.SubSnpCoreFieldsReader;
+import uk.ac.ebi.eva.dbsnpimporter.models.SubSnpCoreFields;
 
 import javax.sql.DataSource;
 
+import static uk.ac.ebi.eva.dbsnpimporter.configuration.VariantsWriterConfiguration.VARIANTS_WRITER;
+
 @Configuration
 @EnableConfigurationProperties({Parameters.class, DbsnpDatasource.class})
 public class VariantsReaderConfiguration {
@@ -38,12 +47,21 @@ public class VariantsReaderConfiguration {
 
     @Bean(name = VARIANTS_READER)
     @StepScope
-    SubSnpCoreFieldsReader subSnpCoreFieldsReader(Parameters parameters,
-                                                  DbsnpDatasource dbsnpDatasource) throws Exception {
-        logger.info("Injecting SubSnpCoreFieldsReader with parameters: {}, {}", parameters, dbsnpDatasource);
+    ItemStreamReader<SubSnpCoreFields> subSnpCoreFieldsReader(
+            Parameters parameters, DbsnpDatasource dbsnpDatasource,
+            @Qualifier(VARIANTS_WRITER) WriteBehindItemWriter<IVariant> variantsWriter) throws Exception {
         DataSource dataSource = dbsnpDatasource.getDatasource();
-        return new SubSnpCoreFieldsReader(parameters.getBatchId(), parameters.getAssembly(), dataSource,
-                                          parameters.getPageSize());
+        ItemStreamReader<SubSnpCoreFields> reader;
+        if (parameters.isCopyReader()) {
+            logger.info("Injecting SubSnpCoreFieldsCopyReader with parameters: {}, {}", parameters, dbsnpDatasource);
+            reader = new SubSnpCoreFieldsCopyReader(parameters.getBatchId(), parameters.getAssembly(), dataSource);
+        } else {
+            logger.info("Injecting SubSnpCoreFieldsReader with parameters: {}, {}", parameters, dbsnpDatasource);
+            reader = new SubSnpCoreFieldsReader(parameters.getBatchId(), parameters.getAssembly(), dataSource,
+                                                parameters.getPageSize());
+        }
+        // the restart point must not get ahead of the chunks written to Mongo
+        return new WriteBehindCheckpointReader<>(reader, variantsWriter);
     }
 }
 
@@ -21,9 +21,18 @@ import org.springframework.batch.core.configuration.annotation.StepScope;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import com.mongodb.WriteConcern;
+import org.springframework.data.mongodb.MongoDbFactory;
 import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.convert.MappingMongoConverter;
 
+import uk.ac.ebi.eva.commons.core.models.IVariant;
 import uk.ac.ebi.eva.commons.mongodb.writers.VariantMongoWriter;
+import uk.ac.ebi.eva.dbsnpimporter.io.writers.DiscardingItemWriter;
+import uk.ac.ebi.eva.dbsnpimporter.io.writers.MergingVariantWriter;
+import uk.ac.ebi.eva.dbsnpimporter.io.writers.WriteBehindItemWriter;
+import uk.ac.ebi.eva.dbsnpimporter.metrics.ImportMetrics;
 import uk.ac.ebi.eva.dbsnpimporter.parameters.Parameters;
 
 @Configuration
@@ -36,12 +45,39 @@ public class VariantsWriterConfiguration {
 
     @Bean(name = VARIANTS_WRITER)
     @StepScope
-    VariantMongoWriter variantMongoWriter(Parameters parameters, MongoOperations mongoOperations) throws Exception {
-        logger.debug("Injecting VariantMongoWriter");
+    WriteBehindItemWriter<IVariant> variantMongoWriter(Parameters parameters, MongoOperations mongoOperations,
+                                                       MongoDbFactory mongoDbFactory,
+                                                       MappingMongoConverter mappingMongoConverter,
+                                                       ImportMetrics importMetrics) throws Exception {
+        if (parameters.isDryRun()) {
+            logger.info("Dry run: the variants will be discarded instead of written into MongoDB");
+            return new WriteBehindItemWriter<>(new MergingVariantWriter(new DiscardingItemWriter<>()),
+                                               parameters.getWritesInFlight(), importMetrics);
+        }
+        logger.debug("Injecting VariantMongoWriter with {} writes in flight and write concern {}",
+                     parameters.getWritesInFlight(), parameters.getWriteConcern());
+        if (parameters.getWriteConcern() != null) {
+            MongoTemplate mongoTemplate = new MongoTemplate(mongoDbFactory, mappingMongoConverter);
+            mongoTemplate.setWriteConcern(parseWriteConcern(parameters.getWriteConcern()));
+            mongoOperations = mongoTemplate;
+        }
         boolean includeSamples = true;
         boolean includeStats = true;
-        return new VariantMongoWriter(parameters.getVariantsCollection(), mongoOperations,
-                                      includeStats, includeSamples);
+        VariantMongoWriter variantMongoWriter = new VariantMongoWriter(parameters.getVariantsCollection(),
+                                                                       mongoOperations, includeStats, includeSamples);
+        return new WriteBehindItemWriter<>(new MergingVariantWriter(variantMongoWriter),
+                                           parameters.getWritesInFlight(), importMetrics);
+    }
+
+    /**
+     * @param writeConcern Name of a write concern, like "w1" or "majority", case insensitive
+     */
+    static WriteConcern parseWriteConcern(String writeConcern) {
+        WriteConcern parsedWriteConcern = WriteConcern.valueOf(writeConcern);
+        if (parsedWriteConcern == null) {
+            throw new IllegalArgumentException("Unknown write concern: " + writeConcern);
+        }
+        return parsedWriteConcern;
     }
 
 }
@@ -30,13 +30,15 @@ import org.springframework.data.mongodb.core.mapping.MongoMappingContext;
 @Configuration
 public class MongoConfiguration {
 
+    public static final String MAP_KEY_DOT_REPLACEMENT = "£";
+
     @Bean
     public MappingMongoConverter mappingMongoConverter(MongoDbFactory factory, MongoMappingContext context,
                                                        BeanFactory beanFactory, CustomConversions conversions) {
         DbRefResolver dbRefResolver = new DefaultDbRefResolver(factory);
         MappingMongoConverter mappingConverter = new MappingMongoConverter(dbRefResolver, context);
         mappingConverter.setCustomConversions(conversions);
-        mappingConverter.setMapKeyDotReplacement("£");
+        mappingConverter.setMapKeyDotReplacement(MAP_KEY_DOT_REPLACEMENT);
         return mappingConverter;
     }
 }
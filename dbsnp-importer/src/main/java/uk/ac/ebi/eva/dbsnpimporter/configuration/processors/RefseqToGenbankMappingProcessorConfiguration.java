@@ -33,7 +33,8 @@ public class RefseqToGenbankMappingProcessorConfiguration {
     @Bean
     @Profile(NOT_TEST_PROFILE)
     RefseqToGenbankMappingProcessor refseqToGenbankMappingProcessor(Parameters parameters) throws Exception {
-        ContigMapping contigMapping = new ContigMapping(parameters.getContigMappingUrl());
+        ContigMapping contigMapping = new ContigMapping(parameters.getContigMappingUrl(),
+                                                        parameters.getContigMappingCache());
         return new RefseqToGenbankMappingProcessor(contigMapping);
     }
 }
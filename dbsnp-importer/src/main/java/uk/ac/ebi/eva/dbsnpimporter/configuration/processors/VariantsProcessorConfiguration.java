@@ -29,7 +29,11 @@ import org.springframework.context.annotation.Import;
 import uk.ac.ebi.eva.commons.core.models.IVariant;
 import uk.ac.ebi.eva.dbsnpimporter.configuration.ImportEvaSubmittedVariantsJobConfiguration;
 import uk.ac.ebi.eva.dbsnpimporter.configuration.ImportVariantsJobConfiguration;
+import uk.ac.ebi.eva.dbsnpimporter.configuration.MetricsConfiguration;
+import uk.ac.ebi.eva.dbsnpimporter.configuration.RejectedVariantsWriterConfiguration;
+import uk.ac.ebi.eva.dbsnpimporter.io.writers.RejectedVariantsWriter;
 import uk.ac.ebi.eva.dbsnpimporter.jobs.steps.processors.AssemblyCheckFilterProcessor;
+import uk.ac.ebi.eva.dbsnpimporter.jobs.steps.processors.FilteringItemProcessor;
 import uk.ac.ebi.eva.dbsnpimporter.jobs.steps.processors.MatchingAllelesFilterProcessor;
 import uk.ac.ebi.eva.dbsnpimporter.jobs.steps.processors.MissingCoordinatesFilterProcessor;
 import uk.ac.ebi.eva.dbsnpimporter.jobs.steps.processors.RefseqToGenbankMappingProcessor;
@@ -37,6 +41,7 @@ import uk.ac.ebi.eva.dbsnpimporter.jobs.steps.processors.RenormalizationProcesso
 import uk.ac.ebi.eva.dbsnpimporter.jobs.steps.processors.SubSnpCoreFieldsToEvaSubmittedVariantProcessor;
 import uk.ac.ebi.eva.dbsnpimporter.jobs.steps.processors.SubSnpCoreFieldsToVariantProcessor;
 import uk.ac.ebi.eva.dbsnpimporter.jobs.steps.processors.UnambiguousAllelesFilterProcessor;
+import uk.ac.ebi.eva.dbsnpimporter.metrics.ImportMetrics;
 import uk.ac.ebi.eva.dbsnpimporter.models.SubSnpCoreFields;
 import uk.ac.ebi.eva.dbsnpimporter.parameters.Parameters;
 
@@ -48,7 +53,8 @@ import static uk.ac.ebi.eva.dbsnpimporter.parameters.Parameters.JOB;
 @Configuration
 @EnableConfigurationProperties(Parameters.class)
 @Import({RefseqToGenbankMappingProcessorConfiguration.class, AssemblyCheckFilterProcessorConfiguration.class,
-        RenormalizationProcessorConfiguration.class})
+        RenormalizationProcessorConfiguration.class, MetricsConfiguration.class,
+        RejectedVariantsWriterConfiguration.class})
 public class VariantsProcessorConfiguration {
 
     private static final Logger logger = LoggerFactory.getLogger(VariantsProcessorConfiguration.class);
@@ -64,18 +70,25 @@ public class VariantsProcessorConfiguration {
     @Autowired
     private RenormalizationProcessor renormalizationProcessor;
 
+    @Autowired
+    private ImportMetrics importMetrics;
+
+    @Autowired
+    private RejectedVariantsWriter rejectedVariantsWriter;
+
     @Bean(name = VARIANTS_PROCESSOR)
     @ConditionalOnProperty(name = JOB, havingValue = ImportVariantsJobConfiguration.IMPORT_VARIANTS_JOB)
     ItemProcessor<SubSnpCoreFields, IVariant> subSnpCoreFieldsToVariantProcessor(Parameters parameters) {
         logger.debug("Injecting SubSnpCoreFieldsToVariantProcessor");
         List<ItemProcessor<?, ?>> delegates = Arrays.asList(
-                new MissingCoordinatesFilterProcessor(),
-                new UnambiguousAllelesFilterProcessor(),
-                new MatchingAllelesFilterProcessor(),
-                refseqToGenbankMappingProcessor,
-                assemblyCheckFilterProcessor,
-                new SubSnpCoreFieldsToVariantProcessor(parameters.getDbsnpBuild()),
-                renormalizationProcessor);
+                instrument("missingCoordinates", new MissingCoordinatesFilterProcessor()),
+                instrument("unambiguousAlleles", new UnambiguousAllelesFilterProcessor()),
+                instrument("matchingAlleles", new MatchingAllelesFilterProcessor()),
+                instrument("refseqToGenbankMapping", refseqToGenbankMappingProcessor),
+                instrument("assemblyCheck", assemblyCheckFilterProcessor),
+                instrument("subSnpCoreFieldsToVariant",
+                           new SubSnpCoreFieldsToVariantProcessor(parameters.getDbsnpBuild())),
+                importMetrics.meter("renormalization", renormalizationProcessor));
         CompositeItemProcessor<SubSnpCoreFields, IVariant> compositeProcessor = new CompositeItemProcessor<>();
         compositeProcessor.setDelegates(delegates);
         return compositeProcessor;
@@ -87,17 +100,28 @@ public class VariantsProcessorConfiguration {
     ItemProcessor<SubSnpCoreFields, IVariant> subSnpCoreFieldsToEvaSubmittedVariantProcessor() {
         logger.debug("Injecting SubSnpCoreFieldsToEvaSubmittedVariantProcessor");
         List<ItemProcessor<?, ?>> delegates = Arrays.asList(
-                new MissingCoordinatesFilterProcessor(),
-                new UnambiguousAllelesFilterProcessor(),
-                new MatchingAllelesFilterProcessor(),
-                refseqToGenbankMappingProcessor,
-                assemblyCheckFilterProcessor,
-                new SubSnpCoreFieldsToEvaSubmittedVariantProcessor(),
-                renormalizationProcessor);
+                instrument("missingCoordinates", new MissingCoordinatesFilterProcessor()),
+                instrument("unambiguousAlleles", new UnambiguousAllelesFilterProcessor()),
+                instrument("matchingAlleles", new MatchingAllelesFilterProcessor()),
+                instrument("refseqToGenbankMapping", refseqToGenbankMappingProcessor),
+                instrument("assemblyCheck", assemblyCheckFilterProcessor),
+                instrument("subSnpCoreFieldsToEvaSubmittedVariant",
+                           new SubSnpCoreFieldsToEvaSubmittedVariantProcessor()),
+                importMetrics.meter("renormalization", renormalizationProcessor));
         CompositeItemProcessor<SubSnpCoreFields, IVariant> compositeProcessor = new CompositeItemProcessor<>();
         compositeProcessor.setDelegates(delegates);
         return compositeProcessor;
     }
 
+    /**
+     * Meters a processor of the submitted variants, and writes the variants it filters out into the rejected
+     * variants file
+     */
+    private <O> ItemProcessor<SubSnpCoreFields, O> instrument(String stage,
+                                                              ItemProcessor<SubSnpCoreFields, O> processor) {
+        if (rejectedVariantsWriter.isEnabled() && processor instanceof FilteringItemProcessor) {
+            ((FilteringItemProcessor<SubSnpCoreFields, O>) processor).addRejectionListener(rejectedVariantsWriter);
+        }
+        return importMetrics.meter(stage, processor);
+    }
 }
-
@@ -15,6 +15,7 @@
  */
 package uk.ac.ebi.eva.dbsnpimporter.contig;
 
+import java.nio.file.Paths;
 import java.util.Map;
 
 public class ContigMapping {
@@ -29,6 +30,15 @@ public class ContigMapping {
         this(new RefseqAssemblyReportParser(mappingUrl).getContigMap());
     }
 
+    /**
+     * @param cacheDirectory Local directory where the assembly report is kept between runs, see
+     *                       {@link ContigMappingCache}. If null, the report is always downloaded.
+     */
+    public ContigMapping(String mappingUrl, String cacheDirectory) throws Exception {
+        this(cacheDirectory == null ? new RefseqAssemblyReportParser(mappingUrl).getContigMap()
+                     : new ContigMappingCache(Paths.get(cacheDirectory)).getContigMap(mappingUrl));
+    }
+
     public String getGenbankOrDefault(String refseqContig) {
         return contigMap.getOrDefault(refseqContig, refseqContig);
     }
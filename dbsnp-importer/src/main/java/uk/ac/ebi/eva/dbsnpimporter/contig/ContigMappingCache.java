@@ -0,0 +1,244 @@
+/*
+ * Copyright 2018 EMBL - European Bioinformatics Institute
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.ac.ebi.eva.dbsnpimporter.contig;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.io.UrlResource;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * Keeps a local copy of the assembly reports and of the contig maps parsed from them, so a job doesn't download and
+ * parse the report again if it didn't change, and it can run offline.
+ * <p>
+ * The cache directory contains:
+ * <ul>
+ * <li>sha256.assembly_report.txt: the reports, named by the SHA-256 of their contents</li>
+ * <li>sha256.contig_map: the contig map parsed from each report, in a binary format with a CRC32 checksum</li>
+ * <li>sha256_of_url.url: the SHA-256 of the last report downloaded from a URL, and its last modification time</li>
+ * </ul>
+ * A cached report is used if the modification time of the remote one didn't change, or if it can't be known (for
+ * instance via FTP, where the reports are versioned in their path, so they don't change). If the remote report can't be
+ * reached at all, the cached one is used too.
+ */
+public class ContigMappingCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(ContigMappingCache.class);
+
+    private static final String REPORT_SUFFIX = ".assembly_report.txt";
+
+    private static final String CONTIG_MAP_SUFFIX = ".contig_map";
+
+    private static final String URL_SUFFIX = ".url";
+
+    private static final int CONTIG_MAP_MAGIC = 0x45564143;
+
+    private static final int CONTIG_MAP_VERSION = 1;
+
+    private static final long UNKNOWN_LAST_MODIFIED = 0;
+
+    private final Path cacheDirectory;
+
+    public ContigMappingCache(Path cacheDirectory) {
+        this.cacheDirectory = cacheDirectory;
+    }
+
+    public Map<String, String> getContigMap(String mappingUrl) throws Exception {
+        Files.createDirectories(cacheDirectory);
+        Path urlFile = cacheDirectory.resolve(sha256(mappingUrl.getBytes(StandardCharsets.UTF_8)) + URL_SUFFIX);
+        CachedUrl cachedUrl = readCachedUrl(urlFile);
+
+        long remoteLastModified;
+        try {
+            remoteLastModified = new UrlResource(mappingUrl).lastModified();
+        } catch (IOException e) {
+            if (cachedUrl != null) {
+                Map<String, String> contigMap = readContigMap(cachedUrl.reportHash);
+                if (contigMap != null) {
+                    logger.warn("Could not reach {} ({}), using the cached contig mapping", mappingUrl,
+                                e.getMessage());
+                    return contigMap;
+                }
+            }
+            throw e;
+        }
+
+        if (cachedUrl != null && (remoteLastModified == UNKNOWN_LAST_MODIFIED
+                || remoteLastModified == cachedUrl.lastModified)) {
+            Map<String, String> contigMap = readContigMap(cachedUrl.reportHash);
+            if (contigMap != null) {
+                logger.debug("Using cached contig mapping of {}", mappingUrl);
+                return contigMap;
+            }
+        }
+
+        return download(mappingUrl, urlFile, remoteLastModified);
+    }
+
+    private Map<String, String> download(String mappingUrl, Path urlFile, long lastModified) throws Exception {
+        logger.info("Downloading assembly report {} into {}", mappingUrl, cacheDirectory);
+        Path temporaryReport = Files.createTempFile(cacheDirectory, "download", REPORT_SUFFIX);
+        try {
+            MessageDigest digest = newSha256();
+            try (InputStream input = new DigestInputStream(new UrlResource(mappingUrl).getInputStream(), digest)) {
+                Files.copy(input, temporaryReport, StandardCopyOption.REPLACE_EXISTING);
+            }
+            String reportHash = toHex(digest.digest());
+            Path report = cacheDirectory.resolve(reportHash + REPORT_SUFFIX);
+            Files.move(temporaryReport, report, StandardCopyOption.REPLACE_EXISTING);
+
+            Map<String, String> contigMap = new RefseqAssemblyReportParser(report.toUri().toString()).getContigMap();
+            writeAtomically(cacheDirectory.resolve(reportHash + CONTIG_MAP_SUFFIX), serializeContigMap(contigMap));
+            String urlContents = reportHash + "\t" + lastModified + "\t" + mappingUrl + "\n";
+            writeAtomically(urlFile, urlContents.getBytes(StandardCharsets.UTF_8));
+            return contigMap;
+        } finally {
+            Files.deleteIfExists(temporaryReport);
+        }
+    }
+
+    private CachedUrl readCachedUrl(Path urlFile) throws IOException {
+        if (!Files.exists(urlFile)) {
+            return null;
+        }
+        List<String> lines = Files.readAllLines(urlFile, StandardCharsets.UTF_8);
+        String[] columns = lines.isEmpty() ? new String[0] : lines.get(0).split("\t", -1);
+        if (columns.length < 2) {
+            logger.warn("Ignoring malformed cache file {}", urlFile);
+            return null;
+        }
+        return new CachedUrl(columns[0], Long.parseLong(columns[1]));
+    }
+
+    /**
+     * @return the contig map, or null if it's not in the cache or it's corrupted
+     */
+    private Map<String, String> readContigMap(String reportHash) throws IOException {
+        Path contigMapFile = cacheDirectory.resolve(reportHash + CONTIG_MAP_SUFFIX);
+        if (!Files.exists(contigMapFile)) {
+            return null;
+        }
+        byte[] bytes = Files.readAllBytes(contigMapFile);
+        if (bytes.length < Long.BYTES) {
+            logger.warn("Ignoring truncated cache file {}", contigMapFile);
+            return null;
+        }
+        int contentsLength = bytes.length - Long.BYTES;
+        CRC32 crc = new CRC32();
+        crc.update(bytes, 0, contentsLength);
+        DataInputStream input = new DataInputStream(new ByteArrayInputStream(bytes));
+        input.skipBytes(contentsLength);
+        if (input.readLong() != crc.getValue()) {
+            logger.warn("Ignoring cache file {} because its checksum doesn't match", contigMapFile);
+            return null;
+        }
+
+        input = new DataInputStream(new ByteArrayInputStream(bytes, 0, contentsLength));
+        if (input.readInt() != CONTIG_MAP_MAGIC || input.readInt() != CONTIG_MAP_VERSION) {
+            logger.warn("Ignoring cache file {} written in an unknown format", contigMapFile);
+            return null;
+        }
+        int size = input.readInt();
+        Map<String, String> contigMap = new HashMap<>(size * 4 / 3 + 1);
+        for (int i = 0; i < size; i++) {
+            contigMap.put(input.readUTF(), input.readUTF());
+        }
+        return contigMap;
+    }
+
+    private static byte[] serializeContigMap(Map<String, String> contigMap) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream output = new DataOutputStream(bytes);
+        output.writeInt(CONTIG_MAP_MAGIC);
+        output.writeInt(CONTIG_MAP_VERSION);
+        output.writeInt(contigMap.size());
+        for (Map.Entry<String, String> entry : contigMap.entrySet()) {
+            output.writeUTF(entry.getKey());
+            output.writeUTF(entry.getValue());
+        }
+        CRC32 crc = new CRC32();
+        crc.update(bytes.toByteArray());
+        output.writeLong(crc.getValue());
+        output.flush();
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Several jobs may share the cache directory, so files are written aside and moved into place
+     */
+    private void writeAtomically(Path file, byte[] contents) throws IOException {
+        Path temporaryFile = Files.createTempFile(cacheDirectory, file.getFileName().toString(), ".tmp");
+        try {
+            try (OutputStream output = new BufferedOutputStream(Files.newOutputStream(temporaryFile))) {
+                output.write(contents);
+            }
+            Files.move(temporaryFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temporaryFile);
+        }
+    }
+
+    private static String sha256(byte[] bytes) {
+        return toHex(newSha256().digest(bytes));
+    }
+
+    private static MessageDigest newSha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 should be available in every JVM", e);
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            hex.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+        }
+        return hex.toString();
+    }
+
+    private static class CachedUrl {
+
+        private final String reportHash;
+
+        private final long lastModified;
+
+        CachedUrl(String reportHash, long lastModified) {
+            this.reportHash = reportHash;
+            this.lastModified = lastModified;
+        }
+    }
+}
@@ -25,37 +25,93 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 /**
  * Reads regions from a given FASTA file, and also creates the associated index and dictionary files if they do not
  * exist.
+ * <p>
+ * If a {@link PackedReferenceFile} generated from the FASTA file is found next to it, and it is not older than the
+ * FASTA, the sequences are read from the memory-mapped packed reference instead.
+ * <p>
+ * Instances are thread-safe: regions are read from the FASTA file using its index and positional reads on a
+ * {@link FileChannel}, which don't depend on a shared file position, so one reader can be used by several threads
+ * (e.g. in multi-threaded or partitioned steps). Interrupting a thread while it reads closes the channel for all the
+ * threads, so it is opened again and the reads of the other threads are retried.
  */
 public class FastaSequenceReader {
 
     private static final Logger logger = LoggerFactory.getLogger(FastaSequenceReader.class);
 
-    private ReferenceSequenceFile fastaSequenceFile;
+    private Path fastaPath;
+
+    private volatile FileChannel fastaChannel;
+
+    private volatile boolean closed;
+
+    private Map<String, FastaIndexEntry> fastaIndex;
 
     private SAMSequenceDictionary sequenceDictionary;
 
+    private PackedReferenceFile packedReferenceFile;
+
     public FastaSequenceReader(Path fastaPath) throws IOException {
-        fastaSequenceFile = ReferenceSequenceFileFactory.getReferenceSequenceFile(fastaPath, true);
-        sequenceDictionary = fastaSequenceFile.getSequenceDictionary();
+        Path packedReferencePath = PackedReferenceFile.getPackedReferencePath(fastaPath);
+        if (PackedReferenceFile.isUpToDate(packedReferencePath, fastaPath)) {
+            logger.info("Reading sequences from packed reference {}", packedReferencePath);
+            packedReferenceFile = new PackedReferenceFile(packedReferencePath);
+            return;
+        }
+
+        try (ReferenceSequenceFile fastaSequenceFile = ReferenceSequenceFileFactory.getReferenceSequenceFile(fastaPath,
+                                                                                                           true)) {
+            sequenceDictionary = fastaSequenceFile.getSequenceDictionary();
 
-        if (sequenceDictionary == null) {
-            logger.info("Sequence dictionary file not found - creating one...");
-            sequenceDictionary = createSequenceDictionary(fastaSequenceFile);
+            if (sequenceDictionary == null) {
+                logger.info("Sequence dictionary file not found - creating one...");
+                sequenceDictionary = createSequenceDictionary(fastaSequenceFile);
+            }
+            if (!fastaSequenceFile.isIndexed()) {
+                logger.info("Sequence index file not found - creating one...");
+                FastaSequenceIndexCreator.create(fastaPath, true);
+            }
         }
-        if (!fastaSequenceFile.isIndexed()) {
-            logger.info("Sequence index file not found - creating one...");
-            FastaSequenceIndexCreator.create(fastaPath, true);
-            fastaSequenceFile = ReferenceSequenceFileFactory.getReferenceSequenceFile(fastaPath, true);
+        fastaIndex = readFastaIndex(ReferenceSequenceFileFactory.getFastaIndexFileName(fastaPath));
+        this.fastaPath = fastaPath;
+        fastaChannel = FileChannel.open(fastaPath, StandardOpenOption.READ);
+    }
+
+    /**
+     * Reads the FASTA index, whose entries are not accessible from the htsjdk API. Each line contains the sequence
+     * name, its length, the offset of its first base, the bases per line and the bytes per line.
+     */
+    private static Map<String, FastaIndexEntry> readFastaIndex(Path indexPath) throws IOException {
+        Map<String, FastaIndexEntry> index = new HashMap<>();
+        for (String line : Files.readAllLines(indexPath)) {
+            if (line.isEmpty()) {
+                continue;
+            }
+            String[] fields = line.split("\t");
+            if (fields.length < 5) {
+                throw new IllegalArgumentException("Malformed line in FASTA index " + indexPath + ": " + line);
+            }
+            index.put(fields[0], new FastaIndexEntry(Long.parseLong(fields[2]), Integer.parseInt(fields[3]),
+                                                     Integer.parseInt(fields[4])));
         }
+        return index;
     }
 
     /**
@@ -93,7 +149,74 @@ public class FastaSequenceReader {
     public String getSequence(String contig, long start, long end) throws IllegalArgumentException {
         checkArguments(contig, start, end);
 
-        return fastaSequenceFile.getSubsequenceAt(contig, start, end).getBaseString();
+        if (packedReferenceFile != null) {
+            return packedReferenceFile.getSequence(contig, start, end);
+        }
+        return readFromFasta(contig, start, end);
+    }
+
+    private String readFromFasta(String contig, long start, long end) {
+        FastaIndexEntry indexEntry = fastaIndex.get(contig);
+        if (indexEntry == null) {
+            throw new IllegalArgumentException("Sequence " + contig + " not found in reference FASTA index");
+        }
+        long startOffset = indexEntry.getOffset(start);
+        long endOffset = indexEntry.getOffset(end) + 1;
+
+        ByteBuffer buffer = ByteBuffer.allocate(Math.toIntExact(endOffset - startOffset));
+        readFully(buffer, startOffset, contig);
+
+        // the region can span several lines, so the line terminators have to be skipped
+        byte[] bytes = buffer.array();
+        char[] bases = new char[(int) (end - start + 1)];
+        int basesRead = 0;
+        for (byte b : bytes) {
+            if (b != '\n' && b != '\r') {
+                bases[basesRead++] = (char) b;
+            }
+        }
+        return new String(bases, 0, basesRead);
+    }
+
+    private void readFully(ByteBuffer buffer, long offset, String contig) {
+        while (true) {
+            FileChannel channel = fastaChannel;
+            try {
+                while (buffer.hasRemaining()) {
+                    if (channel.read(buffer, offset + buffer.position()) < 0) {
+                        throw new IllegalStateException("Unexpected end of FASTA file reading sequence " + contig);
+                    }
+                }
+                return;
+            } catch (ClosedByInterruptException e) {
+                // this thread was interrupted, so it gives up, but the other threads can keep reading
+                reopen(channel);
+                throw new UncheckedIOException("Interrupted while reading sequence " + contig + " from FASTA file", e);
+            } catch (ClosedChannelException e) {
+                if (closed) {
+                    throw new UncheckedIOException("FASTA file closed while reading sequence " + contig, e);
+                }
+                // closed by the interruption of another thread: the bases already read are kept and the read resumes
+                reopen(channel);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Could not read sequence " + contig + " from FASTA file", e);
+            }
+        }
+    }
+
+    /**
+     * Opens the FASTA file again, unless another thread already did it after the channel was closed
+     */
+    private synchronized void reopen(FileChannel closedChannel) {
+        if (closed || fastaChannel != closedChannel) {
+            return;
+        }
+        try {
+            logger.warn("FASTA file {} was closed by an interrupted read, opening it again", fastaPath);
+            fastaChannel = FileChannel.open(fastaPath, StandardOpenOption.READ);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not open FASTA file " + fastaPath + " again", e);
+        }
     }
 
     private void checkArguments(String contig, long start, long end) throws IllegalArgumentException {
@@ -104,7 +227,7 @@ public class FastaSequenceReader {
         } else if (!doesContigExist(contig)) {
             throw new IllegalArgumentException("Sequence " + contig + " not found in reference FASTA file");
         } else {
-            int sequenceLengthInFastaFile = sequenceDictionary.getSequence(contig).getSequenceLength();
+            long sequenceLengthInFastaFile = getSequenceLength(contig);
             if (end > sequenceLengthInFastaFile) {
                 throw new IllegalArgumentException(
                         "Variant coordinate " + end + " greater than end of chromosome " + contig + ": " +
@@ -113,7 +236,21 @@ public class FastaSequenceReader {
         }
     }
 
+    /**
+     * @param contig Sequence contig or chromosome, which must exist in the reference
+     * @return Number of bases of the contig
+     */
+    public long getSequenceLength(String contig) {
+        if (packedReferenceFile != null) {
+            return packedReferenceFile.getSequenceLength(contig);
+        }
+        return sequenceDictionary.getSequence(contig).getSequenceLength();
+    }
+
     public boolean doesContigExist(String contig) {
+        if (packedReferenceFile != null) {
+            return packedReferenceFile.containsSequence(contig);
+        }
         return sequenceDictionary.getSequence(contig) != null;
     }
 
@@ -121,7 +258,35 @@ public class FastaSequenceReader {
      * Close the underlying FASTA file
      * @throws Exception If the file cannot be closed
      */
-    public void close() throws Exception {
-        fastaSequenceFile.close();
+    public synchronized void close() throws Exception {
+        closed = true;
+        if (packedReferenceFile != null) {
+            packedReferenceFile.close();
+        } else {
+            fastaChannel.close();
+        }
+    }
+
+    private static class FastaIndexEntry {
+
+        private final long location;
+
+        private final int basesPerLine;
+
+        private final int bytesPerLine;
+
+        FastaIndexEntry(long location, int basesPerLine, int bytesPerLine) {
+            this.location = location;
+            this.basesPerLine = basesPerLine;
+            this.bytesPerLine = bytesPerLine;
+        }
+
+        /**
+         * @return Offset in the FASTA file of the base at the given 1-based position of the sequence
+         */
+        long getOffset(long position) {
+            long basesBefore = position - 1;
+            return location + (basesBefore / basesPerLine) * bytesPerLine + basesBefore % basesPerLine;
+        }
     }
 }
@@ -0,0 +1,275 @@
+/*
+ * Copyright 2018 EMBL - European Bioinformatics Institute
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.ac.ebi.eva.dbsnpimporter.io;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Read-only, memory-mapped view of a reference genome in which every base is stored in 2 bits.
+ * <p>
+ * The file is generated from a FASTA file by {@link PackedReferenceWriter}. Bases other than A, C, G and T (Ns and
+ * IUPAC ambiguity codes) are kept in a table of runs, as well as the soft-masked (lowercase) regions, so the sequences
+ * returned are identical to the ones in the original FASTA file.
+ * <p>
+ * Lookups only use absolute reads on the mapped buffers and never modify any state, so a single instance can be safely
+ * shared between threads.
+ */
+public class PackedReferenceFile implements AutoCloseable {
+
+    public static final String PACKED_REFERENCE_EXTENSION = ".packed";
+
+    static final byte[] MAGIC = {'E', 'V', 'A', 'P', 'A', 'C', 'K', 'R'};
+
+    static final int VERSION = 1;
+
+    static final char[] BASES = {'A', 'C', 'G', 'T'};
+
+    private final Path path;
+
+    private final FileChannel channel;
+
+    private final Map<String, PackedSequence> sequences;
+
+    public PackedReferenceFile(Path path) throws IOException {
+        this.path = path;
+        this.channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            this.sequences = readSequences();
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Path of the packed file that would be generated for a given FASTA file
+     *
+     * @param fastaPath FASTA file
+     * @return Path of the packed reference, in the same folder as the FASTA file
+     */
+    public static Path getPackedReferencePath(Path fastaPath) {
+        return fastaPath.resolveSibling(fastaPath.getFileName().toString() + PACKED_REFERENCE_EXTENSION);
+    }
+
+    /**
+     * Checks whether a packed file exists for a FASTA file and is not older than the last modification of the FASTA
+     *
+     * @param packedPath Packed reference file
+     * @param fastaPath  FASTA file the packed reference was generated from
+     * @return true if the packed file can be used instead of the FASTA file
+     */
+    public static boolean isUpToDate(Path packedPath, Path fastaPath) throws IOException {
+        return Files.isRegularFile(packedPath) &&
+                Files.getLastModifiedTime(packedPath).compareTo(Files.getLastModifiedTime(fastaPath)) >= 0;
+    }
+
+    private Map<String, PackedSequence> readSequences() throws IOException {
+        long fileSize = channel.size();
+        if (fileSize < MAGIC.length + Integer.BYTES + Long.BYTES) {
+            throw new IOException("File " + path + " is too short to be a packed reference");
+        }
+        ByteBuffer header = ByteBuffer.allocate(MAGIC.length + Integer.BYTES);
+        readFully(header, 0);
+        byte[] magic = new byte[MAGIC.length];
+        header.get(magic);
+        if (!Arrays.equals(magic, MAGIC)) {
+            throw new IOException("File " + path + " is not a packed reference");
+        }
+        int version = header.getInt();
+        if (version != VERSION) {
+            throw new IOException("Unsupported packed reference version " + version + " in file " + path);
+        }
+
+        ByteBuffer trailer = ByteBuffer.allocate(Long.BYTES);
+        readFully(trailer, fileSize - Long.BYTES);
+        long indexOffset = trailer.getLong();
+        long indexLength = fileSize - Long.BYTES - indexOffset;
+        if (indexOffset < header.capacity() || indexLength < Integer.BYTES || indexLength > Integer.MAX_VALUE) {
+            throw new IOException("Corrupted index in packed reference " + path);
+        }
+        ByteBuffer index = ByteBuffer.allocate((int) indexLength);
+        readFully(index, indexOffset);
+
+        DataInputStream input = new DataInputStream(new ByteArrayInputStream(index.array()));
+        int numberOfSequences = input.readInt();
+        Map<String, PackedSequence> sequences = new LinkedHashMap<>();
+        for (int i = 0; i < numberOfSequences; i++) {
+            String name = input.readUTF();
+            long length = input.readLong();
+            long dataOffset = input.readLong();
+            long packedLength = getPackedLength(length);
+            if (packedLength > Integer.MAX_VALUE || dataOffset + packedLength > indexOffset) {
+                throw new IOException("Sequence " + name + " cannot be mapped from packed reference " + path);
+            }
+            MappedByteBuffer bases = channel.map(FileChannel.MapMode.READ_ONLY, dataOffset, packedLength);
+            Runs exceptions = Runs.read(input, true);
+            Runs softMasks = Runs.read(input, false);
+            sequences.put(name, new PackedSequence(length, bases, exceptions, softMasks));
+        }
+        return Collections.unmodifiableMap(sequences);
+    }
+
+    private void readFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of packed reference " + path);
+            }
+        }
+        buffer.flip();
+    }
+
+    static long getPackedLength(long sequenceLength) {
+        return (sequenceLength + 3) / 4;
+    }
+
+    public boolean containsSequence(String contig) {
+        return sequences.containsKey(contig);
+    }
+
+    /**
+     * @param contig Sequence name
+     * @return Length of the sequence, or -1 if it is not present in the file
+     */
+    public long getSequenceLength(String contig) {
+        PackedSequence sequence = sequences.get(contig);
+        return sequence == null ? -1 : sequence.length;
+    }
+
+    /**
+     * Get the sequence delimited by the given 1-based, inclusive coordinates. Coordinates must be valid, it is
+     * responsibility of the caller to check them.
+     *
+     * @param contig Sequence contig or chromosome
+     * @param start  Sequence start coordinate in the contig
+     * @param end    Sequence end coordinate in the contig
+     * @return Sequence with the same bases and case as the original FASTA file
+     */
+    public String getSequence(String contig, long start, long end) {
+        PackedSequence sequence = sequences.get(contig);
+        if (sequence == null) {
+            throw new IllegalArgumentException("Sequence " + contig + " not found in packed reference " + path);
+        }
+        if (start < 1 || end < start || end > sequence.length) {
+            throw new IllegalArgumentException(
+                    "Coordinates " + start + "-" + end + " out of the bounds of sequence " + contig);
+        }
+        if (end - start + 1 > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Sequence of " + (end - start + 1) + " bases is too long to be read");
+        }
+        return sequence.getBases(start - 1, end);
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private static class PackedSequence {
+
+        private final long length;
+
+        private final MappedByteBuffer bases;
+
+        private final Runs exceptions;
+
+        private final Runs softMasks;
+
+        PackedSequence(long length, MappedByteBuffer bases, Runs exceptions, Runs softMasks) {
+            this.length = length;
+            this.bases = bases;
+            this.exceptions = exceptions;
+            this.softMasks = softMasks;
+        }
+
+        /**
+         * @param from 0-based, inclusive
+         * @param to   0-based, exclusive
+         */
+        String getBases(long from, long to) {
+            char[] decoded = new char[(int) (to - from)];
+            for (long position = from; position < to; position++) {
+                int packedByte = bases.get((int) (position >>> 2));
+                int shift = (3 - (int) (position & 3)) << 1;
+                decoded[(int) (position - from)] = BASES[(packedByte >>> shift) & 3];
+            }
+            exceptions.apply(decoded, from, to);
+            softMasks.apply(decoded, from, to);
+            return new String(decoded);
+        }
+    }
+
+    /**
+     * Sorted, non-overlapping runs of positions. When a base is associated to the runs they replace the decoded bases,
+     * otherwise the bases in the runs are converted to lowercase.
+     */
+    private static class Runs {
+
+        private final long[] starts;
+
+        private final long[] ends;
+
+        private final char[] bases;
+
+        private Runs(long[] starts, long[] ends, char[] bases) {
+            this.starts = starts;
+            this.ends = ends;
+            this.bases = bases;
+        }
+
+        static Runs read(DataInputStream input, boolean withBases) throws IOException {
+            int numberOfRuns = input.readInt();
+            long[] starts = new long[numberOfRuns];
+            long[] ends = new long[numberOfRuns];
+            char[] bases = withBases ? new char[numberOfRuns] : null;
+            for (int i = 0; i < numberOfRuns; i++) {
+                starts[i] = input.readLong();
+                ends[i] = starts[i] + input.readLong();
+                if (withBases) {
+                    bases[i] = (char) input.readUnsignedByte();
+                }
+            }
+            return new Runs(starts, ends, bases);
+        }
+
+        void apply(char[] decoded, long from, long to) {
+            int run = Arrays.binarySearch(starts, from);
+            if (run < 0) {
+                // the run before the insertion point may still span the first requested position
+                run = Math.max(0, -run - 2);
+            }
+            for (; run < starts.length && starts[run] < to; run++) {
+                long overlapStart = Math.max(starts[run], from);
+                long overlapEnd = Math.min(ends[run], to);
+                for (long position = overlapStart; position < overlapEnd; position++) {
+                    int i = (int) (position - from);
+                    decoded[i] = bases != null ? bases[run] : Character.toLowerCase(decoded[i]);
+                }
+            }
+        }
+    }
+}
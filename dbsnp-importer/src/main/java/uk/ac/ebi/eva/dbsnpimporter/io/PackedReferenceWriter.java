@@ -0,0 +1,228 @@
+/*
+ * Copyright 2018 EMBL - European Bioinformatics Institute
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.ac.ebi.eva.dbsnpimporter.io;
+
+import htsjdk.samtools.SAMSequenceDictionary;
+import htsjdk.samtools.SAMSequenceRecord;
+import htsjdk.samtools.reference.ReferenceSequence;
+import htsjdk.samtools.reference.ReferenceSequenceFile;
+import htsjdk.samtools.reference.ReferenceSequenceFileFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Generates the {@link PackedReferenceFile} associated to a FASTA file, so that {@link FastaSequenceReader} can read
+ * bases from a memory-mapped, 2-bit encoded copy of the reference instead of the FASTA file.
+ * <p>
+ * Usage: java -cp dbsnp-importer.jar -Dloader.main=uk.ac.ebi.eva.dbsnpimporter.io.PackedReferenceWriter
+ * org.springframework.boot.loader.PropertiesLauncher /path/to/reference.fa [/path/to/output.packed]
+ * <p>
+ * Layout of the generated file:
+ * <ul>
+ * <li>magic number and format version</li>
+ * <li>for each sequence, its bases packed 4 per byte (A=0, C=1, G=2, T=3), the first base in the highest bits</li>
+ * <li>index: for each sequence, its name, length, offset of the packed bases, runs of bases that are not A, C, G or T
+ * (start, length, base) and runs of lowercase bases (start, length)</li>
+ * <li>offset of the index</li>
+ * </ul>
+ */
+public class PackedReferenceWriter {
+
+    private static final Logger logger = LoggerFactory.getLogger(PackedReferenceWriter.class);
+
+    private static final int BUFFER_SIZE = 1 << 20;
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1 || args.length > 2) {
+            String usage = "Usage: " + PackedReferenceWriter.class.getName() + " <FASTA file> [<output file>]";
+            logger.error(usage);
+            throw new IllegalArgumentException(usage);
+        }
+        Path fastaPath = Paths.get(args[0]);
+        Path packedPath = args.length == 2 ? Paths.get(args[1]) : PackedReferenceFile.getPackedReferencePath(fastaPath);
+        write(fastaPath, packedPath);
+    }
+
+    /**
+     * Packs all the sequences of a FASTA file. The file is first written to a temporary location in the destination
+     * folder, so readers never see a partially written packed reference.
+     *
+     * @param fastaPath  FASTA file to pack
+     * @param packedPath Destination of the packed reference
+     */
+    public static void write(Path fastaPath, Path packedPath) throws IOException {
+        Path temporaryPath = packedPath.resolveSibling(packedPath.getFileName() + ".tmp");
+        try (ReferenceSequenceFile fastaFile = ReferenceSequenceFileFactory.getReferenceSequenceFile(fastaPath, true)) {
+            SAMSequenceDictionary dictionary = fastaFile.getSequenceDictionary();
+            try (DataOutputStream output = new DataOutputStream(
+                    new BufferedOutputStream(Files.newOutputStream(temporaryPath), BUFFER_SIZE))) {
+                writePackedSequences(fastaFile, dictionary, output);
+            }
+            Files.move(temporaryPath, packedPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temporaryPath);
+        }
+        logger.info("Packed reference {} written to {}", fastaPath, packedPath);
+    }
+
+    private static void writePackedSequences(ReferenceSequenceFile fastaFile, SAMSequenceDictionary dictionary,
+                                             DataOutputStream output) throws IOException {
+        output.write(PackedReferenceFile.MAGIC);
+        output.writeInt(PackedReferenceFile.VERSION);
+
+        ByteArrayOutputStream indexBytes = new ByteArrayOutputStream();
+        DataOutputStream index = new DataOutputStream(indexBytes);
+        Set<String> sequenceNames = new HashSet<>();
+        // DataOutputStream.size() is an int, and packed genomes can be larger than 2GB
+        long dataOffset = PackedReferenceFile.MAGIC.length + Integer.BYTES;
+        ReferenceSequence sequence;
+        while ((sequence = fastaFile.nextSequence()) != null) {
+            String name = sequence.getName();
+            if (!sequenceNames.add(name)) {
+                throw new IllegalArgumentException("Sequence name appears more than once in reference: " + name);
+            }
+            checkDictionary(dictionary, sequence);
+
+            byte[] bases = sequence.getBases();
+            writeBases(bases, output);
+
+            index.writeUTF(name);
+            index.writeLong(bases.length);
+            index.writeLong(dataOffset);
+            writeExceptionRuns(bases, index);
+            writeSoftMaskRuns(bases, index);
+            dataOffset += PackedReferenceFile.getPackedLength(bases.length);
+            logger.debug("Packed sequence {} ({} bases)", name, bases.length);
+        }
+
+        long indexOffset = dataOffset;
+        output.writeInt(sequenceNames.size());
+        indexBytes.writeTo(output);
+        output.writeLong(indexOffset);
+    }
+
+    private static void checkDictionary(SAMSequenceDictionary dictionary, ReferenceSequence sequence) {
+        if (dictionary != null) {
+            SAMSequenceRecord record = dictionary.getSequence(sequence.getName());
+            if (record == null || record.getSequenceLength() != sequence.length()) {
+                throw new IllegalArgumentException(
+                        "Sequence " + sequence.getName() + " does not match the dictionary of the FASTA file");
+            }
+        }
+    }
+
+    private static void writeBases(byte[] bases, OutputStream output) throws IOException {
+        int packedByte = 0;
+        for (int i = 0; i < bases.length; i++) {
+            packedByte = (packedByte << 2) | encode(bases[i]);
+            if ((i & 3) == 3) {
+                output.write(packedByte);
+                packedByte = 0;
+            }
+        }
+        int remainder = bases.length & 3;
+        if (remainder != 0) {
+            output.write(packedByte << ((4 - remainder) << 1));
+        }
+    }
+
+    private static int encode(byte base) {
+        switch (base) {
+            case 'C':
+            case 'c':
+                return 1;
+            case 'G':
+            case 'g':
+                return 2;
+            case 'T':
+            case 't':
+                return 3;
+            default:
+                // 'A' and any base that will be restored from the exception runs
+                return 0;
+        }
+    }
+
+    private static boolean isPackable(byte base) {
+        switch (Character.toUpperCase((char) base)) {
+            case 'A':
+            case 'C':
+            case 'G':
+            case 'T':
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private static void writeExceptionRuns(byte[] bases, DataOutputStream index) throws IOException {
+        ByteArrayOutputStream runBytes = new ByteArrayOutputStream();
+        DataOutputStream runs = new DataOutputStream(runBytes);
+        int numberOfRuns = 0;
+        int i = 0;
+        while (i < bases.length) {
+            if (isPackable(bases[i])) {
+                i++;
+                continue;
+            }
+            byte base = (byte) Character.toUpperCase((char) bases[i]);
+            int runStart = i;
+            while (i < bases.length && Character.toUpperCase((char) bases[i]) == base) {
+                i++;
+            }
+            runs.writeLong(runStart);
+            runs.writeLong(i - runStart);
+            runs.writeByte(base);
+            numberOfRuns++;
+        }
+        index.writeInt(numberOfRuns);
+        runBytes.writeTo(index);
+    }
+
+    private static void writeSoftMaskRuns(byte[] bases, DataOutputStream index) throws IOException {
+        ByteArrayOutputStream runBytes = new ByteArrayOutputStream();
+        DataOutputStream runs = new DataOutputStream(runBytes);
+        int numberOfRuns = 0;
+        int i = 0;
+        while (i < bases.length) {
+            if (!Character.isLowerCase((char) bases[i])) {
+                i++;
+                continue;
+            }
+            int runStart = i;
+            while (i < bases.length && Character.isLowerCase((char) bases[i])) {
+                i++;
+            }
+            runs.writeLong(runStart);
+            runs.writeLong(i - runStart);
+            numberOfRuns++;
+        }
+        index.writeInt(numberOfRuns);
+        runBytes.writeTo(index);
+    }
+}
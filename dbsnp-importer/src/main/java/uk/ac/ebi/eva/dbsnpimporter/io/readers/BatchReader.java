@@ -45,6 +45,10 @@ import java.util.List;
        batch
     WHERE
        batch.batch_id = ?
+
+ When the samples are streamed, they are not read here and the batch has no list of samples. They are written later
+ by a {@link uk.ac.ebi.eva.dbsnpimporter.io.writers.StreamingSamplesWriter} instead, so a batch with lots of samples
+ doesn't need to fit in memory.
  */
 public class BatchReader extends JdbcCursorItemReader<DbsnpBatch> {
 
@@ -57,6 +61,10 @@ public class BatchReader extends JdbcCursorItemReader<DbsnpBatch> {
     private boolean alreadyConsumed;
 
     public BatchReader(int batchId, DataSource dataSource, int pageSize) throws Exception {
+        this(batchId, dataSource, pageSize, false);
+    }
+
+    public BatchReader(int batchId, DataSource dataSource, int pageSize, boolean streamSamples) throws Exception {
         if (pageSize < 1) {
             throw new IllegalArgumentException("Page size must be greater than zero");
         }
@@ -71,9 +79,11 @@ public class BatchReader extends JdbcCursorItemReader<DbsnpBatch> {
         batchReader.setFetchSize(pageSize);
         batchReader.afterPropertiesSet();
 
-        SampleReader sampleReader = new SampleReader(batchId, dataSource, pageSize);
-        sampleReader.afterPropertiesSet();
-        samplesReader = new WindingItemStreamReader<>(sampleReader);
+        if (!streamSamples) {
+            SampleReader sampleReader = new SampleReader(batchId, dataSource, pageSize);
+            sampleReader.afterPropertiesSet();
+            samplesReader = new WindingItemStreamReader<>(sampleReader);
+        }
 
         alreadyConsumed = false;
     }
@@ -126,7 +136,9 @@ public class BatchReader extends JdbcCursorItemReader<DbsnpBatch> {
                 throw new IllegalArgumentException("Batch " + batchId + " does not exist");
             }
 
-            batch.setSamples(samplesReader.read());
+            if (samplesReader != null) {
+                batch.setSamples(samplesReader.read());
+            }
 
             return batch;
         }
@@ -135,18 +147,24 @@ public class BatchReader extends JdbcCursorItemReader<DbsnpBatch> {
     @Override
     public void open(ExecutionContext executionContext) throws ItemStreamException {
         batchReader.open(executionContext);
-        samplesReader.open(executionContext);
+        if (samplesReader != null) {
+            samplesReader.open(executionContext);
+        }
     }
 
     @Override
     public void close() throws ItemStreamException {
         batchReader.close();
-        samplesReader.close();
+        if (samplesReader != null) {
+            samplesReader.close();
+        }
     }
 
     @Override
     public void update(ExecutionContext executionContext) throws ItemStreamException {
         batchReader.update(executionContext);
-        samplesReader.update(executionContext);
+        if (samplesReader != null) {
+            samplesReader.update(executionContext);
+        }
     }
 }
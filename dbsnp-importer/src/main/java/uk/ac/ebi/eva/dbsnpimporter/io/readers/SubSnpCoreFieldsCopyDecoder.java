@@ -0,0 +1,228 @@
+/*
+ * Copyright 2018 EMBL - European Bioinformatics Institute
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.ac.ebi.eva.dbsnpimporter.io.readers;
+
+import uk.ac.ebi.eva.dbsnpimporter.models.LocusType;
+import uk.ac.ebi.eva.dbsnpimporter.models.Orientation;
+import uk.ac.ebi.eva.dbsnpimporter.models.SubSnpCoreFields;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static uk.ac.ebi.eva.dbsnpimporter.io.readers.SubSnpCoreFieldsRowMapper.ALLELES;
+import static uk.ac.ebi.eva.dbsnpimporter.io.readers.SubSnpCoreFieldsRowMapper.ALTERNATE;
+import static uk.ac.ebi.eva.dbsnpimporter.io.readers.SubSnpCoreFieldsRowMapper.BATCH_COLUMN;
+import static uk.ac.ebi.eva.dbsnpimporter.io.readers.SubSnpCoreFieldsRowMapper.CHROMOSOME_COLUMN;
+import static uk.ac.ebi.eva.dbsnpimporter.io.readers.SubSnpCoreFieldsRowMapper.CHROMOSOME_END_COLUMN;
+import static uk.ac.ebi.eva.dbsnpimporter.io.readers.SubSnpCoreFieldsRowMapper.CHROMOSOME_START_COLUMN;
+import static uk.ac.ebi.eva.dbsnpimporter.io.readers.SubSnpCoreFieldsRowMapper.CONTIG_END_COLUMN;
+import static uk.ac.ebi.eva.dbsnpimporter.io.readers.SubSnpCoreFieldsRowMapper.CONTIG_NAME_COLUMN;
+import static uk.ac.ebi.eva.dbsnpimporter.io.readers.SubSnpCoreFieldsRowMapper.CONTIG_ORIENTATION_COLUMN;
+import static uk.ac.ebi.eva.dbsnpimporter.io.readers.SubSnpCoreFieldsRowMapper.CONTIG_START_COLUMN;
+import static uk.ac.ebi.eva.dbsnpimporter.io.readers.SubSnpCoreFieldsRowMapper.FREQUENCIES_COLUMN;
+import static uk.ac.ebi.eva.dbsnpimporter.io.readers.SubSnpCoreFieldsRowMapper.GENOTYPES_COLUMN;
+import static uk.ac.ebi.eva.dbsnpimporter.io.readers.SubSnpCoreFieldsRowMapper.HGVS_C_ORIENTATION;
+import static uk.ac.ebi.eva.dbsnpimporter.io.readers.SubSnpCoreFieldsRowMapper.HGVS_C_START;
+import static uk.ac.ebi.eva.dbsnpimporter.io.readers.SubSnpCoreFieldsRowMapper.HGVS_C_STOP;
+import static uk.ac.ebi.eva.dbsnpimporter.io.readers.SubSnpCoreFieldsRowMapper.HGVS_C_STRING;
+import static uk.ac.ebi.eva.dbsnpimporter.io.readers.SubSnpCoreFieldsRowMapper.HGVS_T_ORIENTATION;
+import static uk.ac.ebi.eva.dbsnpimporter.io.readers.SubSnpCoreFieldsRowMapper.HGVS_T_START;
+import static uk.ac.ebi.eva.dbsnpimporter.io.readers.SubSnpCoreFieldsRowMapper.HGVS_T_STOP;
+import static uk.ac.ebi.eva.dbsnpimporter.io.readers.SubSnpCoreFieldsRowMapper.HGVS_T_STRING;
+import static uk.ac.ebi.eva.dbsnpimporter.io.readers.SubSnpCoreFieldsRowMapper.LOAD_ORDER_COLUMN;
+import static uk.ac.ebi.eva.dbsnpimporter.io.readers.SubSnpCoreFieldsRowMapper.LOC_TYPE_COLUMN;
+import static uk.ac.ebi.eva.dbsnpimporter.io.readers.SubSnpCoreFieldsRowMapper.REFERENCE_C;
+import static uk.ac.ebi.eva.dbsnpimporter.io.readers.SubSnpCoreFieldsRowMapper.REFERENCE_T;
+import static uk.ac.ebi.eva.dbsnpimporter.io.readers.SubSnpCoreFieldsRowMapper.REFSNP_ID_COLUMN;
+import static uk.ac.ebi.eva.dbsnpimporter.io.readers.SubSnpCoreFieldsRowMapper.SNP_ORIENTATION_COLUMN;
+import static uk.ac.ebi.eva.dbsnpimporter.io.readers.SubSnpCoreFieldsRowMapper.SUBSNP_ID_COLUMN;
+import static uk.ac.ebi.eva.dbsnpimporter.io.readers.SubSnpCoreFieldsRowMapper.SUBSNP_ORIENTATION_COLUMN;
+
+/**
+ * Decodes the rows of a dbsnp_variant_load table sent by PostgreSQL in the binary COPY format, straight into
+ * SubSnpCoreFields. The columns must be selected in the order of {@link #COLUMNS}.
+ * <p>
+ * Every row is a 16-bit field count followed by the fields, each of them a 32-bit length (-1 for NULL) and the value in
+ * network byte order. Integer columns are decoded according to their length, so smallint, integer and bigint columns
+ * are all supported. The stream ends with a field count of -1.
+ *
+ * @link https://www.postgresql.org/docs/current/static/sql-copy.html#AEN77663
+ */
+public class SubSnpCoreFieldsCopyDecoder implements AutoCloseable {
+
+    public static final String[] COLUMNS = {SUBSNP_ID_COLUMN, SUBSNP_ORIENTATION_COLUMN, REFSNP_ID_COLUMN,
+            SNP_ORIENTATION_COLUMN, CONTIG_NAME_COLUMN, CONTIG_START_COLUMN, CONTIG_END_COLUMN,
+            CONTIG_ORIENTATION_COLUMN, LOC_TYPE_COLUMN, CHROMOSOME_COLUMN, CHROMOSOME_START_COLUMN,
+            CHROMOSOME_END_COLUMN, REFERENCE_C, REFERENCE_T, ALTERNATE, ALLELES, HGVS_C_STRING, HGVS_C_START,
+            HGVS_C_STOP, HGVS_C_ORIENTATION, HGVS_T_STRING, HGVS_T_START, HGVS_T_STOP, HGVS_T_ORIENTATION,
+            GENOTYPES_COLUMN, FREQUENCIES_COLUMN, BATCH_COLUMN, LOAD_ORDER_COLUMN};
+
+    static final byte[] SIGNATURE = {'P', 'G', 'C', 'O', 'P', 'Y', '\n', (byte) 0xff, '\r', '\n', 0};
+
+    private static final int OIDS_INCLUDED_FLAG = 1 << 16;
+
+    private static final int NULL_LENGTH = -1;
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final DataInputStream input;
+
+    private boolean oidsIncluded;
+
+    private boolean finished;
+
+    private byte[] textBuffer;
+
+    public SubSnpCoreFieldsCopyDecoder(InputStream inputStream) throws IOException {
+        this.input = new DataInputStream(new BufferedInputStream(inputStream, BUFFER_SIZE));
+        this.textBuffer = new byte[256];
+        this.finished = false;
+        readHeader();
+    }
+
+    private void readHeader() throws IOException {
+        byte[] signature = new byte[SIGNATURE.length];
+        input.readFully(signature);
+        if (!Arrays.equals(signature, SIGNATURE)) {
+            throw new IllegalArgumentException("Stream is not in the PostgreSQL binary COPY format");
+        }
+        int flags = input.readInt();
+        oidsIncluded = (flags & OIDS_INCLUDED_FLAG) != 0;
+        int headerExtensionLength = input.readInt();
+        skipFully(headerExtensionLength);
+    }
+
+    /**
+     * @return The next row, or null if there are no more rows in the stream
+     */
+    public SubSnpCoreFields read() throws IOException {
+        if (finished) {
+            return null;
+        }
+        short numberOfFields = input.readShort();
+        if (numberOfFields == -1) {
+            finished = true;
+            return null;
+        }
+        if (numberOfFields != COLUMNS.length) {
+            throw new IllegalArgumentException(
+                    "Expected " + COLUMNS.length + " columns per row, but found " + numberOfFields);
+        }
+        if (oidsIncluded) {
+            skipField();
+        }
+
+        // the arguments are evaluated in order, so they must follow the order of COLUMNS
+        SubSnpCoreFields subSnpCoreFields = new SubSnpCoreFields(
+                readLong(),
+                Orientation.getOrientation(readInt()),
+                readNullableLong(),
+                Orientation.getOrientation(readInt()),
+                readText(),
+                readLong(),
+                readLong(),
+                Orientation.getOrientation(readInt()),
+                LocusType.getLocusType(readInt()),
+                readText(),
+                readNullableLong(),
+                readNullableLong(),
+                readText(),
+                readText(),
+                readText(),
+                readText(),
+                readText(),
+                readNullableLong(),
+                readNullableLong(),
+                Orientation.getOrientation(readInt()),
+                readText(),
+                readNullableLong(),
+                readNullableLong(),
+                Orientation.getOrientation(readInt()),
+                readText(),
+                readText(),
+                readText());
+        subSnpCoreFields.setLoadOrder(readNullableLong());
+        return subSnpCoreFields;
+    }
+
+    /**
+     * Reads an integer field, mapping NULL to 0 like {@link java.sql.ResultSet#getLong} does.
+     */
+    private long readLong() throws IOException {
+        Long value = readNullableLong();
+        return value == null ? 0 : value;
+    }
+
+    private int readInt() throws IOException {
+        return (int) readLong();
+    }
+
+    private Long readNullableLong() throws IOException {
+        int length = input.readInt();
+        switch (length) {
+            case NULL_LENGTH:
+                return null;
+            case Short.BYTES:
+                return (long) input.readShort();
+            case Integer.BYTES:
+                return (long) input.readInt();
+            case Long.BYTES:
+                return input.readLong();
+            default:
+                throw new IllegalArgumentException("Can not decode a field of " + length + " bytes as an integer");
+        }
+    }
+
+    private String readText() throws IOException {
+        int length = input.readInt();
+        if (length == NULL_LENGTH) {
+            return null;
+        }
+        if (length > textBuffer.length) {
+            textBuffer = new byte[Math.max(length, textBuffer.length * 2)];
+        }
+        input.readFully(textBuffer, 0, length);
+        return new String(textBuffer, 0, length, StandardCharsets.UTF_8);
+    }
+
+    private void skipField() throws IOException {
+        int length = input.readInt();
+        if (length != NULL_LENGTH) {
+            skipFully(length);
+        }
+    }
+
+    private void skipFully(int length) throws IOException {
+        int skipped = 0;
+        while (skipped < length) {
+            int skippedNow = input.skipBytes(length - skipped);
+            if (skippedNow <= 0) {
+                throw new EOFException("Unexpected end of COPY stream");
+            }
+            skipped += skippedNow;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        input.close();
+    }
+}
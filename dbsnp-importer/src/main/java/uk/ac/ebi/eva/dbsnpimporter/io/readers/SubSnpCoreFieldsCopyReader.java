@@ -0,0 +1,173 @@
+/*
+ * Copyright 2018 EMBL - European Bioinformatics Institute
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.ac.ebi.eva.dbsnpimporter.io.readers;
+
+import org.postgresql.PGConnection;
+import org.postgresql.copy.PGCopyInputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.item.ItemStreamException;
+import org.springframework.batch.item.support.AbstractItemCountingItemStreamItemReader;
+import org.springframework.util.ClassUtils;
+import org.springframework.util.DigestUtils;
+
+import uk.ac.ebi.eva.dbsnpimporter.models.SubSnpCoreFields;
+
+import javax.sql.DataSource;
+import java.io.InputStream;
+import java.sql.Connection;
+
+import static uk.ac.ebi.eva.dbsnpimporter.io.readers.SubSnpCoreFieldsRowMapper.LOAD_ORDER_COLUMN;
+
+/**
+ * Alternative to {@link SubSnpCoreFieldsReader} for PostgreSQL, that streams the same rows using
+ * <pre>
+    COPY (
+        SELECT
+            $columns
+        FROM
+            dbsnp_variant_load_$assembly_hash
+        WHERE
+            batch_id = $batch
+            [AND load_order > $last_load_order]
+        ORDER BY load_order
+    ) TO STDOUT (FORMAT binary);
+ * </pre>
+ * The binary rows are decoded by {@link SubSnpCoreFieldsCopyDecoder} using the column positions, which avoids the
+ * conversions to text and the lookups of columns by name of the JDBC cursor.
+ * <p>
+ * Like {@link SubSnpCoreFieldsReader}, a restarted reader resumes the COPY after the last load order saved in the
+ * execution context.
+ */
+public class SubSnpCoreFieldsCopyReader extends AbstractItemCountingItemStreamItemReader<SubSnpCoreFields> {
+
+    private static final Logger logger = LoggerFactory.getLogger(SubSnpCoreFieldsCopyReader.class);
+
+    private final int batch;
+
+    private final String assembly;
+
+    private final DataSource dataSource;
+
+    private String sql;
+
+    private Long lastLoadOrder;
+
+    private boolean resumed;
+
+    private Connection connection;
+
+    private SubSnpCoreFieldsCopyDecoder decoder;
+
+    public SubSnpCoreFieldsCopyReader(int batch, String assembly, DataSource dataSource) {
+        setName(ClassUtils.getShortName(SubSnpCoreFieldsCopyReader.class));
+        this.batch = batch;
+        this.assembly = assembly;
+        this.dataSource = dataSource;
+        this.sql = buildSql(batch, assembly);
+    }
+
+    /**
+     * COPY doesn't accept bind parameters, but the batch is an integer and the table name is a hash, so there is no
+     * risk of injection.
+     */
+    String buildSql(int batch, String assembly) {
+        return buildSql(batch, assembly, null);
+    }
+
+    String buildSql(int batch, String assembly, Long lastLoadOrder) {
+        String tableName = "dbsnp_variant_load_" + hash(assembly);
+        logger.debug("copying table {} for assembly {}", tableName, assembly);
+        return "COPY (SELECT " + String.join(",", SubSnpCoreFieldsCopyDecoder.COLUMNS) +
+                " FROM " + tableName +
+                " WHERE batch_id = " + batch +
+                (lastLoadOrder == null ? "" : " AND " + LOAD_ORDER_COLUMN + " > " + lastLoadOrder) +
+                " ORDER BY " + LOAD_ORDER_COLUMN +
+                ") TO STDOUT (FORMAT binary)";
+    }
+
+    String hash(String string) {
+        return DigestUtils.md5DigestAsHex(string.getBytes());
+    }
+
+    @Override
+    public void open(ExecutionContext executionContext) throws ItemStreamException {
+        String lastLoadOrderKey = getExecutionContextKey(SubSnpCoreFieldsReader.LAST_LOAD_ORDER_KEY);
+        lastLoadOrder = null;
+        resumed = isSaveState() && executionContext.containsKey(lastLoadOrderKey);
+        if (resumed) {
+            lastLoadOrder = executionContext.getLong(lastLoadOrderKey);
+            logger.info("Resuming batch {} after load order {}", batch, lastLoadOrder);
+        }
+        sql = buildSql(batch, assembly, lastLoadOrder);
+        super.open(executionContext);
+    }
+
+    /**
+     * The COPY of a resumed reader already starts after the last variant read, so the rows don't have to be skipped
+     */
+    @Override
+    protected void jumpToItem(int itemIndex) throws Exception {
+        if (!resumed) {
+            super.jumpToItem(itemIndex);
+        }
+    }
+
+    @Override
+    public void update(ExecutionContext executionContext) throws ItemStreamException {
+        super.update(executionContext);
+        if (isSaveState() && lastLoadOrder != null) {
+            executionContext.putLong(getExecutionContextKey(SubSnpCoreFieldsReader.LAST_LOAD_ORDER_KEY),
+                                     lastLoadOrder);
+        }
+    }
+
+    @Override
+    protected void doOpen() throws Exception {
+        decoder = new SubSnpCoreFieldsCopyDecoder(openCopyStream());
+    }
+
+    protected InputStream openCopyStream() throws Exception {
+        connection = dataSource.getConnection();
+        return new PGCopyInputStream(connection.unwrap(PGConnection.class), sql);
+    }
+
+    @Override
+    protected SubSnpCoreFields doRead() throws Exception {
+        SubSnpCoreFields subSnpCoreFields = decoder.read();
+        if (subSnpCoreFields != null) {
+            lastLoadOrder = subSnpCoreFields.getLoadOrder();
+        }
+        return subSnpCoreFields;
+    }
+
+    @Override
+    protected void doClose() throws Exception {
+        try {
+            if (decoder != null) {
+                // if the stream was not fully read, closing it cancels the COPY in the server
+                decoder.close();
+            }
+        } finally {
+            decoder = null;
+            if (connection != null) {
+                connection.close();
+                connection = null;
+            }
+        }
+    }
+}
@@ -17,6 +17,8 @@ package uk.ac.ebi.eva.dbsnpimporter.io.readers;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.item.ItemStreamException;
 import org.springframework.batch.item.database.JdbcCursorItemReader;
 import org.springframework.jdbc.core.ArgumentPreparedStatementSetter;
 import org.springframework.jdbc.core.PreparedStatementSetter;
@@ -63,20 +65,87 @@ import static uk.ac.ebi.eva.dbsnpimporter.io.readers.SubSnpCoreFieldsRowMapper.G
         dbsnp_variant_load_$assembly_hash
     WHERE
         batch_id = $batch
+        [AND load_order > $last_load_order]
     ORDER BY load_order;
+
+    The load order of the last variant read is saved in the execution context, so a restarted step resumes the query
+    after it, instead of reading again and skipping all the rows processed before the failure. The load order must be
+    unique within a batch.
+
+    The reader keeps the default name of JdbcCursorItemReader, so the keys of the execution contexts saved before
+    the load order was stored don't change, and those executions still restart by skipping the rows already read.
  */
 public class SubSnpCoreFieldsReader extends JdbcCursorItemReader<SubSnpCoreFields> {
 
     private static final Logger logger = LoggerFactory.getLogger(SubSnpCoreFieldsReader.class);
 
+    public static final String LAST_LOAD_ORDER_KEY = "last.load.order";
+
+    private final int batch;
+
+    private final String assembly;
+
+    private Long lastLoadOrder;
+
+    private boolean resumed;
+
     public SubSnpCoreFieldsReader(int batch, String assembly, DataSource dataSource, int pageSize) throws Exception {
+        this.batch = batch;
+        this.assembly = assembly;
         setDataSource(dataSource);
-        setSql(buildSql(assembly));
-        setPreparedStatementSetter(buildPreparedStatementSetter(batch));
+        setSql(buildSql(assembly, false));
+        setPreparedStatementSetter(buildPreparedStatementSetter(batch, null));
         setRowMapper(new SubSnpCoreFieldsRowMapper());
         setFetchSize(pageSize);
     }
 
+    @Override
+    public void open(ExecutionContext executionContext) throws ItemStreamException {
+        String lastLoadOrderKey = getExecutionContextKey(LAST_LOAD_ORDER_KEY);
+        lastLoadOrder = null;
+        resumed = isSaveState() && executionContext.containsKey(lastLoadOrderKey);
+        if (resumed) {
+            lastLoadOrder = executionContext.getLong(lastLoadOrderKey);
+            logger.info("Resuming batch {} after load order {}", batch, lastLoadOrder);
+        }
+        try {
+            setSql(buildSql(assembly, resumed));
+        } catch (Exception e) {
+            throw new ItemStreamException("Could not build the query for batch " + batch, e);
+        }
+        setPreparedStatementSetter(buildPreparedStatementSetter(batch, lastLoadOrder));
+        // the item count is restored, but the rows of the cursor start after the last load order
+        setVerifyCursorPosition(!resumed);
+        super.open(executionContext);
+    }
+
+    /**
+     * The query of a resumed reader already starts after the last variant read, so the rows don't have to be skipped
+     */
+    @Override
+    protected void jumpToItem(int itemIndex) throws Exception {
+        if (!resumed) {
+            super.jumpToItem(itemIndex);
+        }
+    }
+
+    @Override
+    protected SubSnpCoreFields doRead() throws Exception {
+        SubSnpCoreFields subSnpCoreFields = super.doRead();
+        if (subSnpCoreFields != null) {
+            lastLoadOrder = subSnpCoreFields.getLoadOrder();
+        }
+        return subSnpCoreFields;
+    }
+
+    @Override
+    public void update(ExecutionContext executionContext) throws ItemStreamException {
+        super.update(executionContext);
+        if (isSaveState() && lastLoadOrder != null) {
+            executionContext.putLong(getExecutionContextKey(LAST_LOAD_ORDER_KEY), lastLoadOrder);
+        }
+    }
+
     @Override
     protected void openCursor(Connection connection) {
         try {
@@ -87,7 +156,7 @@ public class SubSnpCoreFieldsReader extends JdbcCursorItemReader<SubSnpCoreField
         super.openCursor(connection);
     }
 
-    private String buildSql(String assembly) throws Exception {
+    String buildSql(String assembly, boolean resumed) throws Exception {
         String tableName = "dbsnp_variant_load_" + hash(assembly);
         logger.debug("querying table {} for assembly {}", tableName, assembly);
         String sql =
@@ -119,8 +188,10 @@ public class SubSnpCoreFieldsReader extends JdbcCursorItemReader<SubSnpCoreField
                         "," + GENOTYPES_COLUMN +
                         "," + FREQUENCIES_COLUMN +
                         "," + BATCH_COLUMN +
+                        "," + LOAD_ORDER_COLUMN +
                         " FROM " + tableName +
                         " WHERE batch_id = ? " +
+                        (resumed ? " AND " + LOAD_ORDER_COLUMN + " > ? " : "") +
                         " ORDER BY " + LOAD_ORDER_COLUMN;
 
         return sql;
@@ -130,10 +201,9 @@ public class SubSnpCoreFieldsReader extends JdbcCursorItemReader<SubSnpCoreField
         return DigestUtils.md5DigestAsHex(string.getBytes());
     }
 
-    private PreparedStatementSetter buildPreparedStatementSetter(int batch) {
-        PreparedStatementSetter preparedStatementSetter = new ArgumentPreparedStatementSetter(
-                new Object[]{batch}
-        );
+    private PreparedStatementSetter buildPreparedStatementSetter(int batch, Long lastLoadOrder) {
+        Object[] arguments = lastLoadOrder == null ? new Object[]{batch} : new Object[]{batch, lastLoadOrder};
+        PreparedStatementSetter preparedStatementSetter = new ArgumentPreparedStatementSetter(arguments);
         return preparedStatementSetter;
     }
 }
@@ -98,7 +98,7 @@ public class SubSnpCoreFieldsRowMapper implements RowMapper<SubSnpCoreFields> {
     @Override
     public SubSnpCoreFields mapRow(ResultSet resultSet, int rowNum) throws SQLException {
         this.resultSet = resultSet;
-        return new SubSnpCoreFields(
+        SubSnpCoreFields subSnpCoreFields = new SubSnpCoreFields(
                 resultSet.getLong(SUBSNP_ID_COLUMN),
                 Orientation.getOrientation(resultSet.getInt(SUBSNP_ORIENTATION_COLUMN)),
                 getAsLong(REFSNP_ID_COLUMN),
@@ -126,6 +126,8 @@ public class SubSnpCoreFieldsRowMapper implements RowMapper<SubSnpCoreFields> {
                 resultSet.getString(GENOTYPES_COLUMN),
                 resultSet.getString(FREQUENCIES_COLUMN),
                 resultSet.getString(BATCH_COLUMN));
+        subSnpCoreFields.setLoadOrder(getAsLong(LOAD_ORDER_COLUMN));
+        return subSnpCoreFields;
     }
 
     private Long getAsLong(String column) throws SQLException {
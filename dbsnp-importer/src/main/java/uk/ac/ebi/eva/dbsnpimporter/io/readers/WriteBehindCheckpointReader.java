@@ -0,0 +1,109 @@
+/*
+ * Copyright 2018 EMBL - European Bioinformatics Institute
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.ac.ebi.eva.dbsnpimporter.io.readers;
+
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.item.ItemStreamException;
+import org.springframework.batch.item.ItemStreamReader;
+
+import uk.ac.ebi.eva.dbsnpimporter.io.writers.WriteBehindItemWriter;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * Delays the restart point of a reader until the chunks read before it have been written by a
+ * {@link WriteBehindItemWriter}.
+ * <p>
+ * At the end of every chunk the state of the reader is saved aside, tagged with the number of chunks submitted to the
+ * writer, and only copied to the step execution context once the writer has acknowledged all those chunks. When the
+ * reader is exhausted, the last chunk waits for all the writes, so the step doesn't finish before they are done.
+ */
+public class WriteBehindCheckpointReader<T> implements ItemStreamReader<T> {
+
+    private final ItemStreamReader<T> delegate;
+
+    private final WriteBehindItemWriter<?> writer;
+
+    private final Deque<Checkpoint> pendingCheckpoints;
+
+    private boolean exhausted;
+
+    public WriteBehindCheckpointReader(ItemStreamReader<T> delegate, WriteBehindItemWriter<?> writer) {
+        this.delegate = delegate;
+        this.writer = writer;
+        this.pendingCheckpoints = new ArrayDeque<>();
+    }
+
+    @Override
+    public void open(ExecutionContext executionContext) throws ItemStreamException {
+        pendingCheckpoints.clear();
+        exhausted = false;
+        delegate.open(executionContext);
+    }
+
+    @Override
+    public T read() throws Exception {
+        T item = delegate.read();
+        if (item == null) {
+            exhausted = true;
+        }
+        return item;
+    }
+
+    @Override
+    public void update(ExecutionContext executionContext) throws ItemStreamException {
+        ExecutionContext readerState = new ExecutionContext();
+        delegate.update(readerState);
+        pendingCheckpoints.addLast(new Checkpoint(writer.getSubmittedWrites(), readerState));
+
+        if (exhausted) {
+            try {
+                writer.flush();
+            } catch (Exception e) {
+                throw new ItemStreamException("The last chunks could not be written", e);
+            }
+        }
+
+        long acknowledgedWrites = writer.getAcknowledgedWrites();
+        Checkpoint safeCheckpoint = null;
+        while (!pendingCheckpoints.isEmpty() && pendingCheckpoints.peekFirst().writes <= acknowledgedWrites) {
+            safeCheckpoint = pendingCheckpoints.pollFirst();
+        }
+        if (safeCheckpoint != null) {
+            safeCheckpoint.readerState.entrySet().forEach(
+                    entry -> executionContext.put(entry.getKey(), entry.getValue()));
+        }
+    }
+
+    @Override
+    public void close() throws ItemStreamException {
+        pendingCheckpoints.clear();
+        delegate.close();
+    }
+
+    private static class Checkpoint {
+
+        private final long writes;
+
+        private final ExecutionContext readerState;
+
+        Checkpoint(long writes, ExecutionContext readerState) {
+            this.writes = writes;
+            this.readerState = readerState;
+        }
+    }
+}
@@ -0,0 +1,31 @@
+/*
+ * Copyright 2018 EMBL - European Bioinformatics Institute
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.ac.ebi.eva.dbsnpimporter.io.writers;
+
+import org.springframework.batch.item.ItemWriter;
+
+import java.util.List;
+
+/**
+ * Discards the items, so a dry run can measure the throughput of the readers and processors without a database to
+ * write into. The written items are counted by {@link uk.ac.ebi.eva.dbsnpimporter.metrics.ImportMetrics}.
+ */
+public class DiscardingItemWriter<T> implements ItemWriter<T> {
+
+    @Override
+    public void write(List<? extends T> items) {
+    }
+}
@@ -0,0 +1,192 @@
+/*
+ * Copyright 2018 EMBL - European Bioinformatics Institute
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.ac.ebi.eva.dbsnpimporter.io.writers;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.batch.item.ItemWriter;
+
+import uk.ac.ebi.eva.commons.core.models.IVariant;
+import uk.ac.ebi.eva.commons.core.models.IVariantSourceEntry;
+import uk.ac.ebi.eva.commons.core.models.pipeline.Variant;
+import uk.ac.ebi.eva.commons.core.models.pipeline.VariantSourceEntry;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Merges the variants of a chunk that will be written to the same Mongo document, so each document gets a single
+ * upsert instead of one per dbSNP submitted variant.
+ * <p>
+ * Variants are merged when they have the same chromosome, start, reference and alternate. The merged variant has the
+ * union of their ids, dbSNP ids and source entries (with their statistics), which is the same result the upserts
+ * would produce one after the other. A source entry can't be merged with a different one of the same file and study,
+ * because the variant model only keeps one per file and study, so in that case the variant is written in a separate
+ * upsert as before.
+ */
+public class MergingVariantWriter implements ItemWriter<IVariant> {
+
+    private static final Logger logger = LoggerFactory.getLogger(MergingVariantWriter.class);
+
+    private final ItemWriter<IVariant> delegate;
+
+    private final AtomicLong receivedVariants;
+
+    private final AtomicLong writtenVariants;
+
+    public MergingVariantWriter(ItemWriter<IVariant> delegate) {
+        this.delegate = delegate;
+        this.receivedVariants = new AtomicLong();
+        this.writtenVariants = new AtomicLong();
+    }
+
+    @Override
+    public void write(List<? extends IVariant> variants) throws Exception {
+        List<IVariant> mergedVariants = merge(variants);
+        long received = receivedVariants.addAndGet(variants.size());
+        long written = writtenVariants.addAndGet(mergedVariants.size());
+        logger.debug("Merged {} variants into {} upserts ({} into {} so far)", variants.size(), mergedVariants.size(),
+                     received, written);
+        delegate.write(mergedVariants);
+    }
+
+    List<IVariant> merge(List<? extends IVariant> variants) {
+        Map<String, List<MergedVariant>> variantsByKey = new LinkedHashMap<>();
+        List<MergedVariant> mergedVariants = new ArrayList<>(variants.size());
+        for (IVariant variant : variants) {
+            List<MergedVariant> sameKey = variantsByKey.computeIfAbsent(buildKey(variant), key -> new ArrayList<>(1));
+            MergedVariant target = null;
+            for (MergedVariant candidate : sameKey) {
+                if (candidate.canMerge(variant)) {
+                    target = candidate;
+                    break;
+                }
+            }
+            if (target == null) {
+                target = new MergedVariant(variant);
+                sameKey.add(target);
+                mergedVariants.add(target);
+            } else {
+                target.merge(variant);
+            }
+        }
+
+        List<IVariant> result = new ArrayList<>(mergedVariants.size());
+        for (MergedVariant mergedVariant : mergedVariants) {
+            result.add(mergedVariant.toVariant());
+        }
+        return result;
+    }
+
+    private static String buildKey(IVariant variant) {
+        return variant.getChromosome() + "_" + variant.getStart() + "_" + variant.getReference() + "_"
+                + variant.getAlternate();
+    }
+
+    public long getReceivedVariants() {
+        return receivedVariants.get();
+    }
+
+    public long getWrittenVariants() {
+        return writtenVariants.get();
+    }
+
+    /**
+     * Accumulates the variants with the same key. The first variant is returned as is when nothing was merged into
+     * it, so the common case of no duplicates doesn't copy anything.
+     */
+    private static class MergedVariant {
+
+        private final IVariant first;
+
+        private final List<IVariant> merged;
+
+        private final Map<String, IVariantSourceEntry> sourceEntries;
+
+        MergedVariant(IVariant first) {
+            this.first = first;
+            this.merged = new ArrayList<>(1);
+            this.sourceEntries = new LinkedHashMap<>();
+            addSourceEntries(first);
+        }
+
+        boolean canMerge(IVariant variant) {
+            for (IVariantSourceEntry sourceEntry : variant.getSourceEntries()) {
+                IVariantSourceEntry existing = sourceEntries.get(buildSourceEntryKey(sourceEntry));
+                if (existing != null && !Objects.equals(existing, sourceEntry)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        void merge(IVariant variant) {
+            merged.add(variant);
+            addSourceEntries(variant);
+        }
+
+        private void addSourceEntries(IVariant variant) {
+            for (IVariantSourceEntry sourceEntry : variant.getSourceEntries()) {
+                sourceEntries.putIfAbsent(buildSourceEntryKey(sourceEntry), sourceEntry);
+            }
+        }
+
+        private static String buildSourceEntryKey(IVariantSourceEntry sourceEntry) {
+            return sourceEntry.getFileId() + "_" + sourceEntry.getStudyId();
+        }
+
+        IVariant toVariant() {
+            if (merged.isEmpty()) {
+                return first;
+            }
+            Variant variant = new Variant(first.getChromosome(), first.getStart(), first.getEnd(),
+                                          first.getReference(), first.getAlternate());
+            Set<String> ids = new HashSet<>(first.getIds());
+            Set<String> dbsnpIds = new HashSet<>(first.getDbsnpIds());
+            String mainId = first.getMainId();
+            for (IVariant other : merged) {
+                ids.addAll(other.getIds());
+                dbsnpIds.addAll(other.getDbsnpIds());
+                if (mainId == null) {
+                    mainId = other.getMainId();
+                }
+            }
+            variant.setMainId(mainId);
+            variant.setIds(ids);
+            variant.setDbsnpIds(dbsnpIds);
+            for (IVariantSourceEntry sourceEntry : sourceEntries.values()) {
+                variant.addSourceEntry(toVariantSourceEntry(sourceEntry));
+            }
+            return variant;
+        }
+
+        private static VariantSourceEntry toVariantSourceEntry(IVariantSourceEntry sourceEntry) {
+            if (sourceEntry instanceof VariantSourceEntry) {
+                return (VariantSourceEntry) sourceEntry;
+            }
+            return new VariantSourceEntry(sourceEntry.getFileId(), sourceEntry.getStudyId(),
+                                          sourceEntry.getSecondaryAlternates(), sourceEntry.getFormat(),
+                                          sourceEntry.getCohortStats(), sourceEntry.getAttributes(),
+                                          sourceEntry.getSamplesData());
+        }
+    }
+}
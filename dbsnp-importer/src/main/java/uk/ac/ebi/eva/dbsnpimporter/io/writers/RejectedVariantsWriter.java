@@ -0,0 +1,293 @@
+/*
+ * Copyright 2018 EMBL - European Bioinformatics Institute
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.ac.ebi.eva.dbsnpimporter.io.writers;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import uk.ac.ebi.eva.commons.core.models.Region;
+import uk.ac.ebi.eva.dbsnpimporter.jobs.steps.processors.RejectionReason;
+import uk.ac.ebi.eva.dbsnpimporter.models.SubSnpCoreFields;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Writes the variants filtered out by the processors into a gzipped JSON lines file, one object per variant with its
+ * ss and rs IDs, the reason why it was filtered out and the fields used by the filters.
+ * <p>
+ * The file is written in a background thread, so the step only pays for copying a few fields of each rejected
+ * variant into a queue. If the queue is full the step waits for the background thread, so no rejected variant is
+ * lost, and if that thread could not write the file the processor that rejected the variant fails.
+ * <p>
+ * The file is appended to, so the variants rejected before a restart are kept. Every run adds a new gzip member, and
+ * the concatenation of gzip members is still a valid gzip file.
+ * <p>
+ * A writer without a file is disabled: it ignores the rejected variants and doesn't start any thread.
+ */
+public class RejectedVariantsWriter implements BiConsumer<SubSnpCoreFields, RejectionReason> {
+
+    private static final Logger logger = LoggerFactory.getLogger(RejectedVariantsWriter.class);
+
+    public static final int DEFAULT_QUEUE_CAPACITY = 65536;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private static final int DRAIN_SIZE = 1024;
+
+    private static final long OFFER_TIMEOUT_MILLIS = 100;
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    private final Path file;
+
+    private final BlockingQueue<RejectedVariant> queue;
+
+    private final AtomicLong droppedVariants;
+
+    private long writtenVariants;
+
+    private volatile boolean closed;
+
+    private volatile IOException failure;
+
+    private Thread writerThread;
+
+    /**
+     * @param file File where the rejected variants are written, or null to disable the writer
+     */
+    public RejectedVariantsWriter(Path file) {
+        this(file, DEFAULT_QUEUE_CAPACITY);
+    }
+
+    public RejectedVariantsWriter(Path file, int queueCapacity) {
+        if (queueCapacity < 1) {
+            throw new IllegalArgumentException("Queue capacity must be greater than zero");
+        }
+        this.file = file;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.droppedVariants = new AtomicLong();
+        this.closed = true;
+    }
+
+    public boolean isEnabled() {
+        return file != null;
+    }
+
+    public void open() throws IOException {
+        if (!isEnabled()) {
+            return;
+        }
+        Path directory = file.toAbsolutePath().getParent();
+        if (directory != null) {
+            Files.createDirectories(directory);
+        }
+        OutputStream fileOutput = Files.newOutputStream(file, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        OutputStream output = new BufferedOutputStream(new GZIPOutputStream(fileOutput, BUFFER_SIZE), BUFFER_SIZE);
+        JsonGenerator generator = JSON_FACTORY.createGenerator(output, JsonEncoding.UTF8);
+        generator.setRootValueSeparator(null);
+
+        closed = false;
+        writtenVariants = 0;
+        droppedVariants.set(0);
+        writerThread = new Thread(() -> writeQueuedVariants(generator), "rejected-variants-writer");
+        writerThread.setDaemon(true);
+        writerThread.start();
+        logger.info("Writing rejected variants into {}", file);
+    }
+
+    @Override
+    public void accept(SubSnpCoreFields subSnpCoreFields, RejectionReason reason) {
+        if (!isEnabled()) {
+            return;
+        }
+        if (closed) {
+            droppedVariants.incrementAndGet();
+            return;
+        }
+        RejectedVariant variant = new RejectedVariant(subSnpCoreFields, reason);
+        try {
+            while (!queue.offer(variant, OFFER_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+                if (failure != null) {
+                    throw new UncheckedIOException("Could not write rejected variants into " + file, failure);
+                }
+                if (closed) {
+                    droppedVariants.incrementAndGet();
+                    return;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while queueing a rejected variant", e);
+        }
+    }
+
+    /**
+     * Writes the variants still in the queue, and closes the file
+     *
+     * @throws IOException if the file could not be written
+     */
+    public void close() throws IOException {
+        if (writerThread == null) {
+            return;
+        }
+        closed = true;
+        try {
+            writerThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while closing " + file, e);
+        } finally {
+            writerThread = null;
+        }
+        if (failure != null) {
+            throw failure;
+        }
+        if (droppedVariants.get() > 0) {
+            logger.warn("{} rejected variants written into {}, {} more could not be written because the writer was " +
+                                "closed", writtenVariants, file, droppedVariants.get());
+        } else {
+            logger.info("{} rejected variants written into {}", writtenVariants, file);
+        }
+    }
+
+    public long getWrittenVariants() {
+        return writtenVariants;
+    }
+
+    public long getDroppedVariants() {
+        return droppedVariants.get();
+    }
+
+    private void writeQueuedVariants(JsonGenerator generator) {
+        List<RejectedVariant> variants = new ArrayList<>(DRAIN_SIZE);
+        try (JsonGenerator jsonGenerator = generator) {
+            while (!closed || !queue.isEmpty()) {
+                RejectedVariant first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                variants.add(first);
+                queue.drainTo(variants, DRAIN_SIZE - 1);
+                for (RejectedVariant variant : variants) {
+                    variant.write(jsonGenerator);
+                    jsonGenerator.writeRaw('\n');
+                }
+                writtenVariants += variants.size();
+                variants.clear();
+            }
+        } catch (IOException e) {
+            logger.error("Could not write rejected variants into {}: {}", file, e.getMessage());
+            failure = e;
+            closed = true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Copy of the fields of a rejected variant, because the variants are mutable and may be changed by the following
+     * processors while the copy waits in the queue
+     */
+    private static class RejectedVariant {
+
+        private final long ssId;
+
+        private final Long rsId;
+
+        private final String batch;
+
+        private final RejectionReason reason;
+
+        private final Region contigRegion;
+
+        private final Region chromosomeRegion;
+
+        private final String alleles;
+
+        private final String reference;
+
+        private final String alternate;
+
+        RejectedVariant(SubSnpCoreFields subSnpCoreFields, RejectionReason reason) {
+            this.ssId = subSnpCoreFields.getSsId();
+            this.rsId = subSnpCoreFields.getRsId();
+            this.batch = subSnpCoreFields.getBatch();
+            this.reason = reason;
+            this.contigRegion = copy(subSnpCoreFields.getContigRegion());
+            this.chromosomeRegion = copy(subSnpCoreFields.getChromosomeRegion());
+            this.alleles = subSnpCoreFields.getAlleles();
+            this.reference = subSnpCoreFields.getHgvsCReference() != null ? subSnpCoreFields.getHgvsCReference()
+                    : subSnpCoreFields.getHgvsTReference();
+            this.alternate = subSnpCoreFields.getAlternate();
+        }
+
+        private static Region copy(Region region) {
+            return region == null ? null : new Region(region.getChromosome(), region.getStart(), region.getEnd());
+        }
+
+        void write(JsonGenerator generator) throws IOException {
+            generator.writeStartObject();
+            generator.writeStringField("ss", "ss" + ssId);
+            if (rsId != null) {
+                generator.writeStringField("rs", "rs" + rsId);
+            }
+            generator.writeStringField("batch", batch);
+            generator.writeStringField("reason", reason.name());
+            writeRegion(generator, "contig", contigRegion);
+            writeRegion(generator, "chromosome", chromosomeRegion);
+            writeStringField(generator, "alleles", alleles);
+            writeStringField(generator, "reference", reference);
+            writeStringField(generator, "alternate", alternate);
+            generator.writeEndObject();
+        }
+
+        private static void writeRegion(JsonGenerator generator, String name, Region region) throws IOException {
+            if (region == null) {
+                return;
+            }
+            writeStringField(generator, name, region.getChromosome());
+            if (region.getStart() != null) {
+                generator.writeNumberField(name + "Start", region.getStart());
+            }
+            if (region.getEnd() != null) {
+                generator.writeNumberField(name + "End", region.getEnd());
+            }
+        }
+
+        private static void writeStringField(JsonGenerator generator, String name, String value) throws IOException {
+            if (value != null) {
+                generator.writeStringField(name, value);
+            }
+        }
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright 2018 EMBL - European Bioinformatics Institute
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.ac.ebi.eva.dbsnpimporter.io.writers;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.item.ItemStreamReader;
+import org.springframework.batch.item.ItemWriter;
+import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+
+import uk.ac.ebi.eva.commons.core.models.IVariantSource;
+import uk.ac.ebi.eva.commons.mongodb.entities.VariantSourceMongo;
+import uk.ac.ebi.eva.dbsnpimporter.jobs.steps.processors.BatchSamplesChecker;
+import uk.ac.ebi.eva.dbsnpimporter.models.Sample;
+
+import java.util.List;
+
+/**
+ * Writes the variant sources and then streams the samples of the batch into them, instead of writing each source with
+ * the positions of all its samples in a single document.
+ * <p>
+ * The samples are read one by one from the sample reader, checked with a {@link BatchSamplesChecker}, and their
+ * positions are added to the source document with an update every pageSize samples, so neither the list of samples
+ * nor the whole document have to be built in memory. The dots in the sample names are replaced the same way the
+ * converter replaces them in the keys of a map. Setting the same positions again is harmless, so a restarted
+ * step just writes all the samples again. On the other hand, an invalid batch is only detected when the wrong sample is
+ * read, after the source and the previous samples were written.
+ */
+public class StreamingSamplesWriter implements ItemWriter<IVariantSource> {
+
+    private static final Logger logger = LoggerFactory.getLogger(StreamingSamplesWriter.class);
+
+    private final ItemWriter<IVariantSource> delegate;
+
+    private final MongoOperations mongoOperations;
+
+    private final String collection;
+
+    private final ItemStreamReader<Sample> sampleReader;
+
+    private final int pageSize;
+
+    private final String mapKeyDotReplacement;
+
+    public StreamingSamplesWriter(ItemWriter<IVariantSource> delegate, MongoOperations mongoOperations,
+                                  String collection, ItemStreamReader<Sample> sampleReader, int pageSize,
+                                  String mapKeyDotReplacement) {
+        if (pageSize < 1) {
+            throw new IllegalArgumentException("Page size must be greater than zero");
+        }
+        this.delegate = delegate;
+        this.mongoOperations = mongoOperations;
+        this.collection = collection;
+        this.sampleReader = sampleReader;
+        this.pageSize = pageSize;
+        this.mapKeyDotReplacement = mapKeyDotReplacement;
+    }
+
+    @Override
+    public void write(List<? extends IVariantSource> variantSources) throws Exception {
+        delegate.write(variantSources);
+        for (IVariantSource variantSource : variantSources) {
+            writeSamples(variantSource);
+        }
+    }
+
+    private void writeSamples(IVariantSource variantSource) throws Exception {
+        Query query = new Query(Criteria.where(VariantSourceMongo.FILEID_FIELD).is(variantSource.getFileId())
+                                        .and(VariantSourceMongo.STUDYID_FIELD).is(variantSource.getStudyId()));
+        BatchSamplesChecker checker = new BatchSamplesChecker();
+        Update update = new Update();
+        int samplesInUpdate = 0;
+
+        sampleReader.open(new ExecutionContext());
+        try {
+            Sample sample;
+            while ((sample = sampleReader.read()) != null) {
+                int position = checker.add(sample);
+                String key = sample.getName().replace(".", mapKeyDotReplacement);
+                update.set(VariantSourceMongo.SAMPLES_FIELD + "." + key, position);
+                samplesInUpdate++;
+                if (samplesInUpdate == pageSize) {
+                    mongoOperations.updateFirst(query, update, collection);
+                    update = new Update();
+                    samplesInUpdate = 0;
+                }
+            }
+            if (samplesInUpdate > 0) {
+                mongoOperations.updateFirst(query, update, collection);
+            }
+        } finally {
+            sampleReader.close();
+        }
+        logger.info("Wrote {} samples into file {} of study {}", checker.getSamplesCount(),
+                    variantSource.getFileId(), variantSource.getStudyId());
+    }
+}
@@ -0,0 +1,296 @@
+/*
+ * Copyright 2018 EMBL - European Bioinformatics Institute
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.ac.ebi.eva.dbsnpimporter.io.writers;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.item.ItemStreamException;
+import org.springframework.batch.item.ItemStreamWriter;
+import org.springframework.batch.item.ItemWriter;
+
+import uk.ac.ebi.eva.dbsnpimporter.metrics.ImportMetrics;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Writes the chunks in background threads, so the step can read and process the next chunks while the previous ones
+ * are being written. Up to maxWritesInFlight chunks are written at the same time, and when that limit is reached
+ * {@link #write(List)} blocks until one of them finishes. With maxWritesInFlight = 0 the chunks are written
+ * synchronously.
+ * <p>
+ * Chunks are numbered in the order they are written. The step must only save a restart point once all the chunks
+ * before it are acknowledged ({@link #getAcknowledgedWrites()}), which is what
+ * {@link uk.ac.ebi.eva.dbsnpimporter.io.readers.WriteBehindCheckpointReader} does. After a failure some chunks may be
+ * written again, so the delegate writes must be idempotent, like upserts. For the same reason a failed chunk is retried
+ * once before failing the step, which also covers two concurrent upserts of the same new document.
+ * <p>
+ * Errors in the background writes are thrown by the next call to write, update, {@link #flush()} or close.
+ * <p>
+ * If an {@link ImportMetrics} is provided, the time spent in the delegate writes is recorded into it, because the time
+ * spent in {@link #write(List)} only covers handing the chunk over to the background threads.
+ */
+public class WriteBehindItemWriter<T> implements ItemStreamWriter<T> {
+
+    private static final Logger logger = LoggerFactory.getLogger(WriteBehindItemWriter.class);
+
+    private static final int MAX_RETRIES = 1;
+
+    private final ItemWriter<T> delegate;
+
+    private final int maxWritesInFlight;
+
+    private ExecutorService executor;
+
+    private Semaphore writesInFlight;
+
+    private long submittedWrites;
+
+    private final AcknowledgedWrites acknowledgedWrites;
+
+    private final AtomicReference<Exception> failure;
+
+    private final WriteLatencies latencies;
+
+    private final ImportMetrics importMetrics;
+
+    public WriteBehindItemWriter(ItemWriter<T> delegate, int maxWritesInFlight) {
+        this(delegate, maxWritesInFlight, null);
+    }
+
+    /**
+     * @param importMetrics Metrics where the latency of each delegate write is recorded, or null to not record it
+     */
+    public WriteBehindItemWriter(ItemWriter<T> delegate, int maxWritesInFlight, ImportMetrics importMetrics) {
+        if (maxWritesInFlight < 0) {
+            throw new IllegalArgumentException("The number of writes in flight can not be negative");
+        }
+        this.delegate = delegate;
+        this.maxWritesInFlight = maxWritesInFlight;
+        this.acknowledgedWrites = new AcknowledgedWrites();
+        this.failure = new AtomicReference<>();
+        this.latencies = new WriteLatencies();
+        this.importMetrics = importMetrics;
+    }
+
+    @Override
+    public void open(ExecutionContext executionContext) throws ItemStreamException {
+        submittedWrites = 0;
+        acknowledgedWrites.reset();
+        failure.set(null);
+        latencies.reset();
+        if (maxWritesInFlight > 0) {
+            AtomicInteger threadNumber = new AtomicInteger();
+            executor = Executors.newFixedThreadPool(maxWritesInFlight, runnable -> {
+                Thread thread = new Thread(runnable, "write-behind-" + threadNumber.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+            writesInFlight = new Semaphore(maxWritesInFlight);
+        }
+    }
+
+    @Override
+    public void write(List<? extends T> items) throws Exception {
+        throwIfFailed();
+        long chunkNumber = ++submittedWrites;
+        // the list may be reused by the step after this method returns
+        List<T> chunk = new ArrayList<>(items);
+        if (executor == null) {
+            writeChunk(chunkNumber, chunk);
+            return;
+        }
+
+        writesInFlight.acquire();
+        try {
+            executor.execute(() -> {
+                try {
+                    writeChunk(chunkNumber, chunk);
+                } catch (Exception e) {
+                    logger.error("Write of chunk " + chunkNumber + " failed", e);
+                    failure.compareAndSet(null, e);
+                } finally {
+                    writesInFlight.release();
+                }
+            });
+        } catch (RuntimeException e) {
+            writesInFlight.release();
+            throw e;
+        }
+    }
+
+    private void writeChunk(long chunkNumber, List<T> chunk) throws Exception {
+        long start = System.nanoTime();
+        for (int attempt = 0; ; attempt++) {
+            try {
+                delegate.write(chunk);
+                break;
+            } catch (Exception e) {
+                if (attempt >= MAX_RETRIES) {
+                    throw e;
+                }
+                logger.warn("Write of chunk {} failed, retrying: {}", chunkNumber, e.getMessage());
+            }
+        }
+        long latency = System.nanoTime() - start;
+        latencies.add(latency);
+        if (importMetrics != null) {
+            importMetrics.recordWrite(latency, chunk.size());
+        }
+        acknowledgedWrites.acknowledge(chunkNumber);
+    }
+
+    /**
+     * Waits until all the submitted chunks are written
+     *
+     * @throws Exception if any of the writes failed
+     */
+    public void flush() throws Exception {
+        if (writesInFlight != null) {
+            writesInFlight.acquire(maxWritesInFlight);
+            writesInFlight.release(maxWritesInFlight);
+        }
+        throwIfFailed();
+    }
+
+    private void throwIfFailed() throws Exception {
+        Exception exception = failure.get();
+        if (exception != null) {
+            throw exception;
+        }
+    }
+
+    /**
+     * @return Number of chunks submitted so far
+     */
+    public long getSubmittedWrites() {
+        return submittedWrites;
+    }
+
+    /**
+     * @return Number of chunks such that this chunk and all the previous ones have been written
+     */
+    public long getAcknowledgedWrites() {
+        return acknowledgedWrites.get();
+    }
+
+    @Override
+    public void update(ExecutionContext executionContext) throws ItemStreamException {
+        try {
+            throwIfFailed();
+        } catch (Exception e) {
+            throw new ItemStreamException("A previous chunk could not be written", e);
+        }
+    }
+
+    @Override
+    public void close() throws ItemStreamException {
+        if (executor == null) {
+            latencies.log();
+            return;
+        }
+        executor.shutdown();
+        try {
+            executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+            latencies.log();
+            throwIfFailed();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ItemStreamException("Interrupted while waiting for the writes in flight", e);
+        } catch (Exception e) {
+            throw new ItemStreamException("A chunk could not be written", e);
+        } finally {
+            executor = null;
+            writesInFlight = null;
+        }
+    }
+
+    /**
+     * The chunks can finish in any order, so this keeps the highest chunk number with no gaps below it
+     */
+    private static class AcknowledgedWrites {
+
+        private long contiguous;
+
+        private final List<Long> pending = new ArrayList<>();
+
+        synchronized void reset() {
+            contiguous = 0;
+            pending.clear();
+        }
+
+        synchronized void acknowledge(long chunkNumber) {
+            pending.add(chunkNumber);
+            boolean advanced = true;
+            while (advanced) {
+                advanced = pending.remove(Long.valueOf(contiguous + 1));
+                if (advanced) {
+                    contiguous++;
+                }
+            }
+        }
+
+        synchronized long get() {
+            return contiguous;
+        }
+    }
+
+    private static class WriteLatencies {
+
+        private long[] nanos = new long[1024];
+
+        private int size;
+
+        synchronized void reset() {
+            size = 0;
+        }
+
+        synchronized void add(long latency) {
+            if (size == nanos.length) {
+                nanos = Arrays.copyOf(nanos, size * 2);
+            }
+            nanos[size++] = latency;
+        }
+
+        synchronized void log() {
+            if (size == 0) {
+                return;
+            }
+            long[] sorted = Arrays.copyOf(nanos, size);
+            Arrays.sort(sorted);
+            logger.info("Write latency of {} chunks in ms: p50 = {}, p90 = {}, p99 = {}, max = {}", size,
+                        toMillis(percentile(sorted, 50)), toMillis(percentile(sorted, 90)),
+                        toMillis(percentile(sorted, 99)), toMillis(sorted[sorted.length - 1]));
+        }
+
+        private static long percentile(long[] sorted, int percentile) {
+            int rank = (int) Math.ceil(percentile / 100.0 * sorted.length);
+            return sorted[Math.max(rank - 1, 0)];
+        }
+
+        private static double toMillis(long nanos) {
+            return nanos / 1_000_000.0;
+        }
+    }
+}
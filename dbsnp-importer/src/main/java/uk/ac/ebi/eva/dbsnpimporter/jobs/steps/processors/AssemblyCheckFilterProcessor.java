@@ -17,7 +17,6 @@ package uk.ac.ebi.eva.dbsnpimporter.jobs.steps.processors;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.batch.item.ItemProcessor;
 
 import uk.ac.ebi.eva.commons.core.models.Region;
 import uk.ac.ebi.eva.dbsnpimporter.exception.UndefinedHgvsAlleleException;
@@ -28,7 +27,7 @@ import uk.ac.ebi.eva.dbsnpimporter.io.FastaSequenceReader;
  * Spring batch processor that filter out variants whose reference allele does not match a fasta file containing a
  * sequence assembly for that species
  */
-public class AssemblyCheckFilterProcessor implements ItemProcessor<SubSnpCoreFields, SubSnpCoreFields> {
+public class AssemblyCheckFilterProcessor extends FilteringItemProcessor<SubSnpCoreFields, SubSnpCoreFields> {
 
     private static final Logger logger = LoggerFactory.getLogger(AssemblyCheckFilterProcessor.class);
 
@@ -52,11 +51,13 @@ public class AssemblyCheckFilterProcessor implements ItemProcessor<SubSnpCoreFie
         } catch (UndefinedHgvsAlleleException hgvsReferenceUndefined) {
             logger.debug("Variant filtered out because reference allele is not defined: {} ({})", subSnpCoreFields,
                          hgvsReferenceUndefined);
+            reject(subSnpCoreFields, RejectionReason.UNDEFINED_ALLELE);
             return null;
         }
         if (referenceAlleleIsCorrect(referenceAllele, subSnpCoreFields)) {
             return subSnpCoreFields;
         } else {
+            reject(subSnpCoreFields, RejectionReason.ASSEMBLY_MISMATCH);
             return null;
         }
     }
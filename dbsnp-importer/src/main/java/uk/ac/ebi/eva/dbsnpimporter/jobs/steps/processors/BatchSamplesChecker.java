@@ -0,0 +1,64 @@
+/*
+ * Copyright 2018 EMBL - European Bioinformatics Institute
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.ac.ebi.eva.dbsnpimporter.jobs.steps.processors;
+
+import uk.ac.ebi.eva.dbsnpimporter.models.Sample;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Checks the samples of a dbSNP batch as they are read, and assigns them their position in the batch. The samples must
+ * belong to a single batch and can't be duplicated.
+ * <p>
+ * The samples are checked one by one, so a batch doesn't need to be held in a list to be checked, and an invalid one
+ * fails at the first wrong sample. Only the names of the samples are kept to detect the duplicates.
+ */
+public class BatchSamplesChecker {
+
+    private String batchName;
+
+    private final Set<String> seenSampleNames;
+
+    private int samplesCount;
+
+    public BatchSamplesChecker() {
+        this.batchName = null;
+        this.seenSampleNames = new HashSet<>();
+        this.samplesCount = 0;
+    }
+
+    /**
+     * @return the position of the sample in the batch, following the order in which the samples were added
+     * @throws IllegalArgumentException if the sample belongs to another batch or it was already added
+     */
+    public int add(Sample sample) {
+        if (batchName == null) {
+            batchName = sample.getBatch();
+        } else if (!batchName.equals(sample.getBatch())) {
+            throw new IllegalArgumentException("Samples must belong to a single batch");
+        }
+
+        if (!seenSampleNames.add(sample.getName())) {
+            throw new IllegalArgumentException("The batch contains duplicate samples");
+        }
+        return samplesCount++;
+    }
+
+    public int getSamplesCount() {
+        return samplesCount;
+    }
+}
@@ -26,10 +26,8 @@ import uk.ac.ebi.eva.dbsnpimporter.models.Sample;
 
 import java.util.Date;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
 
 /**
  * Packs a set of {@link Sample} under a {@link uk.ac.ebi.eva.commons.core.models.IVariantSource} object, adding some
@@ -54,15 +52,6 @@ public class DbsnpBatchToVariantSourceProcessor implements ItemProcessor<DbsnpBa
 
     @Override
     public IVariantSource process(DbsnpBatch dbsnpBatch) throws Exception {
-        List<Sample> samples = dbsnpBatch.getSamples();
-        if (areSamplesFromMultipleBatches(samples)) {
-            throw new IllegalArgumentException("Samples must belong to a single batch");
-        }
-
-        if (isSampleDuplicated(samples)) {
-            throw new IllegalArgumentException("The batch contains duplicate samples");
-        }
-
         // Study ID, file ID, study name, file name
         String handle = dbsnpBatch.getHandle();
         String batchName = dbsnpBatch.getBatchName();
@@ -71,7 +60,7 @@ public class DbsnpBatchToVariantSourceProcessor implements ItemProcessor<DbsnpBa
         String fileId = batchName;
         String fileName = handle.toUpperCase() + DBSNP_BATCH_HANDLE_NAME_SEPARATOR + batchName;
 
-        Map<String, Integer> samplesPosition = getSamplesPosition(samples);
+        Map<String, Integer> samplesPosition = getSamplesPosition(dbsnpBatch.getSamples());
 
         Map<String, Object> metadata = getMetadata();
 
@@ -80,38 +69,24 @@ public class DbsnpBatchToVariantSourceProcessor implements ItemProcessor<DbsnpBa
                                  new Date(), samplesPosition, metadata, null);
     }
 
-    private boolean areSamplesFromMultipleBatches(List<Sample> samples) {
-        String batchName = null;
-
-        for (Sample s : samples) {
-            if (batchName == null) {
-                batchName = s.getBatch();
-            } else {
-                if (!batchName.equals(s.getBatch())) {
-                    return true;
-                }
-            }
-        }
-
-        return false;
-    }
-
-    private boolean isSampleDuplicated(List<Sample> samples) {
-        Set<Sample> sampleSet = new HashSet<>(samples);
-        return sampleSet.size() < samples.size();
-    }
-
     /**
      * Builds a mapping of samples to their position in a batch. The positions follow the order provided by the list.
+     * When the samples are streamed (see {@link uk.ac.ebi.eva.dbsnpimporter.io.writers.StreamingSamplesWriter}) the
+     * batch has no list of samples, and the mapping is left empty.
      *
-     * @param samples Samples in a batch
+     * @param samples Samples in a batch, or null if they are streamed
      * @return Mapping from samples to positions
+     * @throws IllegalArgumentException if the samples belong to several batches or are duplicated
      */
     private Map<String, Integer> getSamplesPosition(List<Sample> samples) {
         Map<String, Integer> samplePositions = new HashMap<>();
-        for (int i = 0; i < samples.size(); i++) {
-            Sample sample = samples.get(i);
-            samplePositions.put(sample.getName(), i);
+        if (samples == null) {
+            return samplePositions;
+        }
+
+        BatchSamplesChecker checker = new BatchSamplesChecker();
+        for (Sample sample : samples) {
+            samplePositions.put(sample.getName(), checker.add(sample));
         }
 
         return samplePositions;
@@ -0,0 +1,46 @@
+/*
+ * Copyright 2018 EMBL - European Bioinformatics Institute
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.ac.ebi.eva.dbsnpimporter.jobs.steps.processors;
+
+import org.springframework.batch.item.ItemProcessor;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.BiConsumer;
+
+/**
+ * Processor that can filter out items, telling its rejection listeners which items were filtered out and why.
+ *
+ * @param <I> Type of the input items
+ * @param <O> Type of the output items
+ */
+public abstract class FilteringItemProcessor<I, O> implements ItemProcessor<I, O> {
+
+    private final List<BiConsumer<? super I, RejectionReason>> rejectionListeners = new ArrayList<>();
+
+    public void addRejectionListener(BiConsumer<? super I, RejectionReason> rejectionListener) {
+        rejectionListeners.add(rejectionListener);
+    }
+
+    /**
+     * Notifies that an item is filtered out, before returning null
+     */
+    protected void reject(I item, RejectionReason reason) {
+        for (BiConsumer<? super I, RejectionReason> rejectionListener : rejectionListeners) {
+            rejectionListener.accept(item, reason);
+        }
+    }
+}
@@ -0,0 +1,195 @@
+/*
+ * Copyright 2018 EMBL - European Bioinformatics Institute
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.ac.ebi.eva.dbsnpimporter.jobs.steps.processors;
+
+import uk.ac.ebi.eva.dbsnpimporter.models.Orientation;
+import uk.ac.ebi.eva.dbsnpimporter.models.SubSnpCoreFields;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * Encodes the dbSNP genotypes of a variant, like "A/G,G|G,A/A", into the GT code of every sample, like "0/1", "1|1"
+ * and "0/0", in a single pass over the genotypes string.
+ * <p>
+ * Many samples share the same genotype, so each distinct genotype is only split and normalized the first time it is
+ * found in the variant, and the alleles indexes are memoized too. The sample data maps are immutable and interned
+ * across all variants, so every sample with the same GT code shares the same instance.
+ *
+ * An instance must be created for every variant, and it is not thread-safe.
+ */
+public class GenotypeEncoder {
+
+    public static final String GENOTYPE_KEY = "GT";
+
+    private static final char SAMPLE_SEPARATOR = ',';
+
+    private static final char UNPHASED_SEPARATOR = '/';
+
+    private static final char PHASED_SEPARATOR = '|';
+
+    private static final int UNKNOWN_ALLELE_INDEX = -1;
+
+    /**
+     * The distinct codes are only a handful per ploidy and number of alleles, but the cache is bounded in case of
+     * unusual data
+     */
+    private static final int MAX_INTERNED_SAMPLES_DATA = 4096;
+
+    private static final Map<String, Map<String, String>> internedSamplesData = new ConcurrentHashMap<>();
+
+    private final String reference;
+
+    private final String alternate;
+
+    private final String[] secondaryAlternates;
+
+    private final Orientation orientation;
+
+    private final Map<String, Integer> alleleIndexes;
+
+    private final List<String> distinctGenotypes;
+
+    private final List<Map<String, String>> distinctSamplesData;
+
+    public GenotypeEncoder(String reference, String alternate, String[] secondaryAlternates,
+                           Orientation orientation) {
+        this.reference = reference;
+        this.alternate = alternate;
+        this.secondaryAlternates = secondaryAlternates;
+        this.orientation = orientation;
+        this.alleleIndexes = new HashMap<>();
+        this.distinctGenotypes = new ArrayList<>();
+        this.distinctSamplesData = new ArrayList<>();
+    }
+
+    /**
+     * Equivalent to checking that the genotypes don't match
+     * {@link SubSnpCoreFieldsToVariantProcessor#INVALID_GENOTYPE_REGEX}, without a regular expression
+     */
+    public static boolean isValid(String genotypes) {
+        for (int i = 0; i < genotypes.length(); i++) {
+            switch (genotypes.charAt(i)) {
+                case 'A':
+                case 'T':
+                case 'C':
+                case 'G':
+                case 'N':
+                case SAMPLE_SEPARATOR:
+                case UNPHASED_SEPARATOR:
+                case PHASED_SEPARATOR:
+                case '.':
+                case ' ':
+                case '-':
+                    break;
+                default:
+                    return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Sends to the consumer the sample data of every genotype in the comma-separated string, in the same order
+     */
+    public void encode(String genotypes, Consumer<Map<String, String>> sampleDataConsumer) {
+        int genotypeStart = 0;
+        for (int i = 0; i <= genotypes.length(); i++) {
+            if (i == genotypes.length() || genotypes.charAt(i) == SAMPLE_SEPARATOR) {
+                sampleDataConsumer.accept(getSampleData(genotypes, genotypeStart, i));
+                genotypeStart = i + 1;
+            }
+        }
+    }
+
+    private Map<String, String> getSampleData(String genotypes, int start, int end) {
+        int length = end - start;
+        for (int i = 0; i < distinctGenotypes.size(); i++) {
+            String genotype = distinctGenotypes.get(i);
+            if (genotype.length() == length && genotypes.regionMatches(start, genotype, 0, length)) {
+                return distinctSamplesData.get(i);
+            }
+        }
+
+        String genotype = genotypes.substring(start, end);
+        Map<String, String> sampleData = intern(encodeGenotype(genotype));
+        distinctGenotypes.add(genotype);
+        distinctSamplesData.add(sampleData);
+        return sampleData;
+    }
+
+    private String encodeGenotype(String genotype) {
+        char alleleSeparator = genotype.indexOf(PHASED_SEPARATOR) >= 0 ? PHASED_SEPARATOR : UNPHASED_SEPARATOR;
+        StringBuilder code = new StringBuilder(genotype.length());
+        int alleleStart = 0;
+        for (int i = 0; i <= genotype.length(); i++) {
+            if (i == genotype.length()
+                    || genotype.charAt(i) == UNPHASED_SEPARATOR || genotype.charAt(i) == PHASED_SEPARATOR) {
+                if (alleleStart > 0) {
+                    code.append(alleleSeparator);
+                }
+                code.append(getAlleleIndex(genotype.substring(alleleStart, i)));
+                alleleStart = i + 1;
+            }
+        }
+        return code.toString();
+    }
+
+    private int getAlleleIndex(String allele) {
+        Integer index = alleleIndexes.get(allele);
+        if (index == null) {
+            index = computeAlleleIndex(SubSnpCoreFields.getNormalizedAllele(allele, orientation));
+            alleleIndexes.put(allele, index);
+        }
+        return index;
+    }
+
+    private int computeAlleleIndex(String allele) {
+        if (allele.equals(reference)) {
+            return 0;
+        } else if (allele.equals(alternate)) {
+            return 1;
+        } else {
+            int index = 2;
+            for (String secondaryAlternate : secondaryAlternates) {
+                if (allele.equals(secondaryAlternate)) {
+                    return index;
+                }
+                ++index;
+            }
+            return UNKNOWN_ALLELE_INDEX;
+        }
+    }
+
+    private static Map<String, String> intern(String genotypeCode) {
+        Map<String, String> sampleData = internedSamplesData.get(genotypeCode);
+        if (sampleData == null) {
+            sampleData = Collections.singletonMap(GENOTYPE_KEY, genotypeCode);
+            if (internedSamplesData.size() < MAX_INTERNED_SAMPLES_DATA) {
+                Map<String, String> previous = internedSamplesData.putIfAbsent(genotypeCode, sampleData);
+                if (previous != null) {
+                    sampleData = previous;
+                }
+            }
+        }
+        return sampleData;
+    }
+}
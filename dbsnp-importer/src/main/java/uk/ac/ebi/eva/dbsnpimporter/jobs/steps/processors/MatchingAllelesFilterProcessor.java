@@ -17,12 +17,11 @@ package uk.ac.ebi.eva.dbsnpimporter.jobs.steps.processors;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.batch.item.ItemProcessor;
 
 import uk.ac.ebi.eva.dbsnpimporter.exception.UndefinedHgvsAlleleException;
 import uk.ac.ebi.eva.dbsnpimporter.models.SubSnpCoreFields;
 
-public class MatchingAllelesFilterProcessor implements ItemProcessor<SubSnpCoreFields, SubSnpCoreFields> {
+public class MatchingAllelesFilterProcessor extends FilteringItemProcessor<SubSnpCoreFields, SubSnpCoreFields> {
 
     private static final Logger logger = LoggerFactory.getLogger(MatchingAllelesFilterProcessor.class);
 
@@ -35,6 +34,7 @@ public class MatchingAllelesFilterProcessor implements ItemProcessor<SubSnpCoreF
         } catch (UndefinedHgvsAlleleException hgvsReferenceUndefined) {
             logger.debug("Variant filtered out because reference allele is not defined: {} ({})", subSnpCoreFields,
                          hgvsReferenceUndefined);
+            reject(subSnpCoreFields, RejectionReason.UNDEFINED_ALLELE);
             return null;
         }
         boolean referenceMatches = false;
@@ -48,6 +48,7 @@ public class MatchingAllelesFilterProcessor implements ItemProcessor<SubSnpCoreF
         }
         if (!referenceMatches) {
             logger.debug("Variant filtered out because reference allele is not in alleles list: {}", subSnpCoreFields);
+            reject(subSnpCoreFields, RejectionReason.NON_MATCHING_ALLELES);
             return null;
         }
 
@@ -57,6 +58,7 @@ public class MatchingAllelesFilterProcessor implements ItemProcessor<SubSnpCoreF
         } catch (UndefinedHgvsAlleleException hgvsAlternateUndefined) {
             logger.debug("Variant filtered out because alternate allele is not defined: {} ({})", subSnpCoreFields,
                          hgvsAlternateUndefined);
+            reject(subSnpCoreFields, RejectionReason.UNDEFINED_ALLELE);
             return null;
         }
         boolean alternateMatches = false;
@@ -68,6 +70,7 @@ public class MatchingAllelesFilterProcessor implements ItemProcessor<SubSnpCoreF
         }
         if (!alternateMatches) {
             logger.debug("Variant filtered out because alternate allele is not in alleles list: {}", subSnpCoreFields);
+            reject(subSnpCoreFields, RejectionReason.NON_MATCHING_ALLELES);
             return null;
         }
 
@@ -17,14 +17,13 @@ package uk.ac.ebi.eva.dbsnpimporter.jobs.steps.processors;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.batch.item.ItemProcessor;
 
 import uk.ac.ebi.eva.dbsnpimporter.models.SubSnpCoreFields;
 
 /**
  * Filters out those variants without coordinates in a chromosome *or* contig.
  */
-public class MissingCoordinatesFilterProcessor implements ItemProcessor<SubSnpCoreFields, SubSnpCoreFields> {
+public class MissingCoordinatesFilterProcessor extends FilteringItemProcessor<SubSnpCoreFields, SubSnpCoreFields> {
 
     private static final Logger logger = LoggerFactory.getLogger(MissingCoordinatesFilterProcessor.class);
 
@@ -32,6 +31,7 @@ public class MissingCoordinatesFilterProcessor implements ItemProcessor<SubSnpCo
     public SubSnpCoreFields process(SubSnpCoreFields subSnpCoreFields) {
         if (subSnpCoreFields.getVariantCoordinates() == null) {
             logger.debug("Variant filtered out because it does not have a genomic location: {}", subSnpCoreFields);
+            reject(subSnpCoreFields, RejectionReason.MISSING_COORDINATES);
             return null;
         }
 
@@ -0,0 +1,38 @@
+/*
+ * Copyright 2018 EMBL - European Bioinformatics Institute
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.ac.ebi.eva.dbsnpimporter.jobs.steps.processors;
+
+/**
+ * Reasons why the processors of the import variants step filter out a dbSNP submitted variant
+ */
+public enum RejectionReason {
+
+    MISSING_COORDINATES,
+
+    UNDEFINED_ALLELE,
+
+    AMBIGUOUS_ALLELES,
+
+    NON_MATCHING_ALLELES,
+
+    ASSEMBLY_MISMATCH,
+
+    MISSING_GENOTYPES_AND_FREQUENCIES,
+
+    INVALID_GENOTYPES,
+
+    BAD_FREQUENCIES
+}
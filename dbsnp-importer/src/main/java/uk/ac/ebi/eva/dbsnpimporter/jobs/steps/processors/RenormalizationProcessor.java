@@ -28,13 +28,23 @@ import uk.ac.ebi.eva.commons.core.models.pipeline.VariantSourceEntry;
 import uk.ac.ebi.eva.commons.mongodb.entities.VariantMongo;
 import uk.ac.ebi.eva.dbsnpimporter.io.FastaSequenceReader;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.stream.Collectors;
 
 /**
  * Normalizes the reference and alternate alleles of a dbSNP ambiguous INDEL to make it follow the same
  * normalization process as EVA ones.
+ * <p>
+ * The context bases needed to detect ambiguous variants are read from the reference in small windows of consecutive
+ * bases, so the INDELs that are close to each other, which come together because the variants are sorted by position,
+ * share a read of the FASTA file instead of reading it once each. The window is replaced when a variant falls out of
+ * it, so the reads sweep the reference in the same order as the variants.
+ * <p>
+ * Only the coordinates and alleles of a renormalized variant change, so its source entries are updated in place when
+ * possible instead of being copied with their samples data and attributes. This makes the input source entries part of
+ * the output; processing the same variant again (e.g. when a chunk is retried) yields the same result.
  */
 public class RenormalizationProcessor implements ItemProcessor<IVariant, IVariant> {
 
@@ -44,10 +54,28 @@ public class RenormalizationProcessor implements ItemProcessor<IVariant, IVarian
 
     public static final String AMBIGUOUS_VARIANT_VALUE = "true";
 
-    private FastaSequenceReader fastaSequenceReader;
+    public static final int DEFAULT_CONTEXT_WINDOW_SIZE = 256;
+
+    private final FastaSequenceReader fastaSequenceReader;
+
+    private final int contextWindowSize;
+
+    /**
+     * Last window read from the reference. Threads that share the processor may replace it concurrently, which only
+     * costs an extra read, as every window is immutable.
+     */
+    private volatile ContextWindow contextWindow;
 
     public RenormalizationProcessor(FastaSequenceReader fastaSequenceReader) {
+        this(fastaSequenceReader, DEFAULT_CONTEXT_WINDOW_SIZE);
+    }
+
+    public RenormalizationProcessor(FastaSequenceReader fastaSequenceReader, int contextWindowSize) {
+        if (contextWindowSize < 1) {
+            throw new IllegalArgumentException("The context window size must be a positive number");
+        }
         this.fastaSequenceReader = fastaSequenceReader;
+        this.contextWindowSize = contextWindowSize;
     }
 
     @Override
@@ -97,16 +125,29 @@ public class RenormalizationProcessor implements ItemProcessor<IVariant, IVarian
     }
 
     private char getContextBaseInAssembly(IVariant variant) {
+        String chromosome = variant.getChromosome();
         long contextPosition = variant.getStart() - 1;
-        String sequence = fastaSequenceReader.getSequence(variant.getChromosome(), contextPosition,
-                                                          contextPosition);
-        if (sequence == null || sequence.length() != 1) {
+        ContextWindow window = contextWindow;
+        if (window == null || !window.contains(chromosome, contextPosition)) {
+            window = readContextWindow(chromosome, contextPosition);
+            contextWindow = window;
+        }
+        return window.getBase(contextPosition);
+    }
+
+    private ContextWindow readContextWindow(String chromosome, long start) {
+        long end = start;
+        if (start >= 1 && fastaSequenceReader.doesContigExist(chromosome)) {
+            end = Math.max(start, Math.min(start + contextWindowSize - 1,
+                                           fastaSequenceReader.getSequenceLength(chromosome)));
+        }
+        String sequence = fastaSequenceReader.getSequence(chromosome, start, end);
+        if (sequence == null || sequence.length() != end - start + 1) {
             throw new RuntimeException(
-                    "Reference sequence could not be retrieved correctly for chromosome=\"" + variant.getChromosome()
-                            + "\", position=" + contextPosition);
+                    "Reference sequence could not be retrieved correctly for chromosome=\"" + chromosome
+                            + "\", position=" + start);
         }
-        char contextBaseInAssembly = sequence.charAt(0);
-        return contextBaseInAssembly;
+        return new ContextWindow(chromosome, start, sequence);
     }
 
     /**
@@ -128,28 +169,51 @@ public class RenormalizationProcessor implements ItemProcessor<IVariant, IVarian
         } else {
             throw new AssertionError("Can not re-normalize due to non-standard INDEL: " + variant);
         }
-        Variant renormalized = createNormalizedVariant(variant, renormalizedAlternate, renormalizedReference, renormalizedStart,
-                                                       renormalizedEnd);
+        Variant renormalized = createNormalizedVariant(variant, renormalizedAlternate, renormalizedReference,
+                                                       renormalizedStart, renormalizedEnd);
         return renormalized;
     }
 
-    private Variant createNormalizedVariant(IVariant variant, String renormalizedAlternate, String renormalizedReference,
-                                            long renormalizedStart, long renormalizedEnd) {
-        Variant copied = new Variant(variant.getChromosome(), renormalizedStart, renormalizedEnd, renormalizedReference,
-                                     renormalizedAlternate);
-        copied.setIds(variant.getIds());
-        copied.setMainId(variant.getMainId());
-        copied.setDbsnpIds(variant.getDbsnpIds());
+    private Variant createNormalizedVariant(IVariant variant, String renormalizedAlternate,
+                                            String renormalizedReference, long renormalizedStart,
+                                            long renormalizedEnd) {
+        Variant renormalized = new Variant(variant.getChromosome(), renormalizedStart, renormalizedEnd,
+                                           renormalizedReference, renormalizedAlternate);
+        renormalized.setIds(variant.getIds());
+        renormalized.setMainId(variant.getMainId());
+        renormalized.setDbsnpIds(variant.getDbsnpIds());
 
-        copied.addSourceEntries(variant.getSourceEntries()
-                                       .stream()
-                                       .map(variantSourceEntry ->
-                                                    createRenormalizedVariantSourceEntry(variantSourceEntry,
-                                                                                         variant,
-                                                                                         renormalizedReference,
-                                                                                         renormalizedAlternate))
-                                       .collect(Collectors.toList()));
-        return copied;
+        List<VariantSourceEntry> sourceEntries = new ArrayList<>(variant.getSourceEntries().size());
+        for (IVariantSourceEntry variantSourceEntry : variant.getSourceEntries()) {
+            sourceEntries.add(renormalizeVariantSourceEntry(variantSourceEntry, variant, renormalizedReference,
+                                                            renormalizedAlternate));
+        }
+        renormalized.addSourceEntries(sourceEntries);
+        return renormalized;
+    }
+
+    /**
+     * Updates the attributes and statistics of the source entry, which are the only fields that depend on the alleles.
+     * Source entries of other implementations are copied.
+     */
+    private VariantSourceEntry renormalizeVariantSourceEntry(IVariantSourceEntry variantSourceEntry,
+                                                             IVariant variant,
+                                                             String renormalizedReference,
+                                                             String renormalizedAlternate) {
+        if (!(variantSourceEntry instanceof VariantSourceEntry)) {
+            return createRenormalizedVariantSourceEntry(variantSourceEntry, variant, renormalizedReference,
+                                                        renormalizedAlternate);
+        }
+        VariantSourceEntry sourceEntry = (VariantSourceEntry) variantSourceEntry;
+        sourceEntry.addAttribute(AMBIGUOUS_VARIANT_KEY, AMBIGUOUS_VARIANT_VALUE);
+        sourceEntry.addAttribute(VariantMongo.START_FIELD, Long.toString(variant.getStart()));
+        sourceEntry.addAttribute(VariantMongo.REFERENCE_FIELD, variant.getReference());
+        sourceEntry.addAttribute(VariantMongo.ALTERNATE_FIELD, variant.getAlternate());
+        if (!sourceEntry.getCohortStats().isEmpty()) {
+            sourceEntry.setCohortStats(createRenormalizedStatistics(sourceEntry, renormalizedReference,
+                                                                    renormalizedAlternate));
+        }
+        return sourceEntry;
     }
 
     private VariantSourceEntry createRenormalizedVariantSourceEntry(IVariantSourceEntry variantSourceEntry,
@@ -162,8 +226,7 @@ public class RenormalizationProcessor implements ItemProcessor<IVariant, IVarian
                 variantSourceEntry.getSecondaryAlternates(),
                 variantSourceEntry.getFormat(),
                 createRenormalizedStatistics(variantSourceEntry, renormalizedReference, renormalizedAlternate),
-                createRenormalizedAttributes(variantSourceEntry.getAttributes(), variant, renormalizedReference,
-                                             renormalizedAlternate),
+                createRenormalizedAttributes(variantSourceEntry.getAttributes(), variant),
                 variantSourceEntry.getSamplesData()
         );
     }
@@ -171,8 +234,9 @@ public class RenormalizationProcessor implements ItemProcessor<IVariant, IVarian
     private Map<String, VariantStatistics> createRenormalizedStatistics(IVariantSourceEntry variantSourceEntry,
                                                                         String renormalizedReference,
                                                                         String renormalizedAlternate) {
-        Map<String, VariantStatistics> renormalizedStatistics = new HashMap<>();
-        for (Map.Entry<String, VariantStatistics> statisticsEntry : variantSourceEntry.getCohortStats().entrySet()) {
+        Map<String, VariantStatistics> cohortStats = variantSourceEntry.getCohortStats();
+        Map<String, VariantStatistics> renormalizedStatistics = new HashMap<>(cohortStats.size() * 4 / 3 + 1);
+        for (Map.Entry<String, VariantStatistics> statisticsEntry : cohortStats.entrySet()) {
             VariantStatistics stats = statisticsEntry.getValue();
             String renormalizedMafAllele = renormalizeMafAllele(stats, renormalizedReference, renormalizedAlternate);
             VariantStatistics variantStatistics = new VariantStatistics(renormalizedReference,
@@ -206,10 +270,7 @@ public class RenormalizationProcessor implements ItemProcessor<IVariant, IVarian
         }
     }
 
-    private Map<String, String> createRenormalizedAttributes(Map<String, String> attributes,
-                                                             IVariant variant,
-                                                             String renormalizedReference,
-                                                             String renormalizedAlternate) {
+    private Map<String, String> createRenormalizedAttributes(Map<String, String> attributes, IVariant variant) {
         HashMap<String, String> renormalizedAttributes = new HashMap<>(attributes);
         renormalizedAttributes.put(AMBIGUOUS_VARIANT_KEY, AMBIGUOUS_VARIANT_VALUE);
         renormalizedAttributes.put(VariantMongo.START_FIELD, Long.toString(variant.getStart()));
@@ -228,4 +289,30 @@ public class RenormalizationProcessor implements ItemProcessor<IVariant, IVarian
         String renormalizedAllele = nucleotideThatShouldBeAtTheBeginning + alleleWithoutLastNucleotide;
         return renormalizedAllele;
     }
+
+    /**
+     * Consecutive bases of a chromosome, starting at a given position
+     */
+    private static class ContextWindow {
+
+        private final String chromosome;
+
+        private final long start;
+
+        private final String bases;
+
+        ContextWindow(String chromosome, long start, String bases) {
+            this.chromosome = chromosome;
+            this.start = start;
+            this.bases = bases;
+        }
+
+        boolean contains(String chromosome, long position) {
+            return this.chromosome.equals(chromosome) && position >= start && position < start + bases.length();
+        }
+
+        char getBase(long position) {
+            return bases.charAt((int) (position - start));
+        }
+    }
 }
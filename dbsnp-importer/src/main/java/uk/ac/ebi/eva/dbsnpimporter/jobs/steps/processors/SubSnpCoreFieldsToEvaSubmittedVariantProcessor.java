@@ -17,7 +17,6 @@ package uk.ac.ebi.eva.dbsnpimporter.jobs.steps.processors;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.batch.item.ItemProcessor;
 
 import uk.ac.ebi.eva.commons.core.models.IVariant;
 import uk.ac.ebi.eva.commons.core.models.VariantCoreFields;
@@ -28,7 +27,7 @@ import uk.ac.ebi.eva.dbsnpimporter.models.SubSnpCoreFields;
 /**
  * The variant returned doesn't have VariantSourceEntries because it will be used for variants already submitted to EVA.
  */
-public class SubSnpCoreFieldsToEvaSubmittedVariantProcessor implements ItemProcessor<SubSnpCoreFields, IVariant> {
+public class SubSnpCoreFieldsToEvaSubmittedVariantProcessor extends FilteringItemProcessor<SubSnpCoreFields, IVariant> {
 
     private static final Logger logger = LoggerFactory.getLogger(SubSnpCoreFieldsToEvaSubmittedVariantProcessor.class);
 
@@ -40,6 +39,7 @@ public class SubSnpCoreFieldsToEvaSubmittedVariantProcessor implements ItemProce
         } catch (UndefinedHgvsAlleleException undefinedRegion) {
             logger.debug("Variant filtered out because region is not defined: {} ({})", subSnpCoreFields,
                          undefinedRegion);
+            reject(subSnpCoreFields, RejectionReason.UNDEFINED_ALLELE);
             return null;
         }
 
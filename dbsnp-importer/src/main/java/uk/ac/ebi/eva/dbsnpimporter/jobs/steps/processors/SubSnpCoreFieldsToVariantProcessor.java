@@ -23,16 +23,10 @@ import uk.ac.ebi.eva.commons.core.models.pipeline.Variant;
 import uk.ac.ebi.eva.commons.core.models.pipeline.VariantSourceEntry;
 import uk.ac.ebi.eva.commons.mongodb.entities.subdocuments.VariantStatisticsMongo;
 import uk.ac.ebi.eva.dbsnpimporter.exception.UndefinedHgvsAlleleException;
-import uk.ac.ebi.eva.dbsnpimporter.models.Orientation;
 import uk.ac.ebi.eva.dbsnpimporter.models.SubSnpCoreFields;
 
 import java.io.IOException;
-import java.util.Arrays;
-import java.util.Collections;
-import java.util.List;
 import java.util.Map;
-import java.util.regex.Pattern;
-import java.util.stream.Collectors;
 
 /**
  * Maps {@link SubSnpCoreFields} to {@link uk.ac.ebi.eva.commons.core.models.IVariant},
@@ -45,10 +39,6 @@ public class SubSnpCoreFieldsToVariantProcessor extends SubSnpCoreFieldsToEvaSub
 
     public static final String INVALID_GENOTYPE_REGEX = ".*[^,./|ATCGN -].*";
 
-    private static final Pattern invalidGenotypePattern = Pattern.compile(INVALID_GENOTYPE_REGEX);
-
-    private static final Pattern genotypePattern = Pattern.compile("/|\\|");
-
     private static final Logger logger = LoggerFactory.getLogger(SubSnpCoreFieldsToVariantProcessor.class);
 
     private final String dbsnpBuild;
@@ -65,12 +55,14 @@ public class SubSnpCoreFieldsToVariantProcessor extends SubSnpCoreFieldsToEvaSub
         if (areGenotypesEmpty(subSnpCoreFields) && areFrequenciesEmpty(subSnpCoreFields)) {
             logger.debug("Variant filtered out because neither genotype(s) or frequencies are specified {}",
                          subSnpCoreFields);
+            reject(subSnpCoreFields, RejectionReason.MISSING_GENOTYPES_AND_FREQUENCIES);
             return null;
         }
 
         if (!areGenotypesEmpty(subSnpCoreFields) && areGenotypesInvalid(subSnpCoreFields)) {
             logger.debug("Variant filtered out because genotype(s) contained bases different from A,C,G,T,N: " +
                                  "genotypes are {} in {}", subSnpCoreFields.getRawGenotypesString(), subSnpCoreFields);
+            reject(subSnpCoreFields, RejectionReason.INVALID_GENOTYPES);
             return null;
         }
 
@@ -89,12 +81,14 @@ public class SubSnpCoreFieldsToVariantProcessor extends SubSnpCoreFieldsToEvaSub
         } catch (UndefinedHgvsAlleleException hgvsAlleleUndefined) {
             logger.debug("Variant filtered out because allele is not defined: {} ({})", subSnpCoreFields,
                          hgvsAlleleUndefined);
+            reject(subSnpCoreFields, RejectionReason.UNDEFINED_ALLELE);
             return null;
         }
         try {
             addFrequenciesToVariantSourceEntry(subSnpCoreFields, variant, variantSourceEntry);
         } catch (Exception e) {
             logger.warn("Variant filtered out because: {}. {}", e.getMessage(), subSnpCoreFields);
+            reject(subSnpCoreFields, RejectionReason.BAD_FREQUENCIES);
             return null;
         }
 
@@ -114,8 +108,7 @@ public class SubSnpCoreFieldsToVariantProcessor extends SubSnpCoreFieldsToEvaSub
     }
 
     private boolean areGenotypesInvalid(SubSnpCoreFields subSnpCoreFields) {
-        String genotypesString = subSnpCoreFields.getRawGenotypesString();
-        return invalidGenotypePattern.matcher(genotypesString).matches();
+        return !GenotypeEncoder.isValid(subSnpCoreFields.getRawGenotypesString());
     }
 
     private void addGenotypesToVariantSourceEntry(SubSnpCoreFields subSnpCoreFields,
@@ -124,57 +117,12 @@ public class SubSnpCoreFieldsToVariantProcessor extends SubSnpCoreFieldsToEvaSub
             return;
         }
 
-        variantSourceEntry.setFormat("GT");
-        getSamplesData(subSnpCoreFields).forEach(variantSourceEntry::addSampleData);
-    }
-
-    private List<Map<String, String>> getSamplesData(SubSnpCoreFields subSnpCoreFields) {
-        return getSamplesDataFromGenotypes(subSnpCoreFields.getRawGenotypesString(),
-                                           subSnpCoreFields.getReferenceInForwardStrand(),
-                                           subSnpCoreFields.getAlternateInForwardStrand(),
-                                           subSnpCoreFields.getSecondaryAlternatesInForwardStrand(),
-                                           subSnpCoreFields.getAlleleOrientation());
-    }
-
-    private List<Map<String, String>> getSamplesDataFromGenotypes(String genotypes, String ref, String alt,
-                                                                  String[] secondaryAlternates,
-                                                                  Orientation orientation) {
-        return Arrays.stream(genotypes.split(",", -1))
-                     .map(genotype -> getForwardOrientedGenotypeCode(genotype, ref, alt, secondaryAlternates,
-                                                                     orientation))
-                     .map(this::getSampleDataFromGenotypeCode)
-                     .collect(Collectors.toList());
-    }
-
-    private String getForwardOrientedGenotypeCode(String genotype, String ref, String alt,
-                                                  String[] secondaryAlternates, Orientation orientation) {
-        String alleleDelimiter = genotype.contains("|") ? "|" : "/";
-        return Arrays.stream(genotypePattern.split(genotype, -1))
-                     .map(allele -> SubSnpCoreFields.getNormalizedAllele(allele, orientation))
-                     .map(allele -> getAlleleIndex(allele, ref, alt, secondaryAlternates))
-                     .map(String::valueOf)
-                     .collect(Collectors.joining(alleleDelimiter));
-    }
-
-    private int getAlleleIndex(String allele, String ref, String alt, String[] secondaryAlternates) {
-        if (allele.equals(ref)) {
-            return 0;
-        } else if (allele.equals(alt)) {
-            return 1;
-        } else {
-            int index = 2;
-            for (String secondaryAlternate : secondaryAlternates) {
-                if (allele.equals(secondaryAlternate)) {
-                    return index;
-                }
-                ++index;
-            }
-            return -1;
-        }
-    }
-
-    private Map<String, String> getSampleDataFromGenotypeCode(String genotypeCode) {
-        return Collections.singletonMap("GT", genotypeCode);
+        variantSourceEntry.setFormat(GenotypeEncoder.GENOTYPE_KEY);
+        GenotypeEncoder genotypeEncoder = new GenotypeEncoder(subSnpCoreFields.getReferenceInForwardStrand(),
+                                                              subSnpCoreFields.getAlternateInForwardStrand(),
+                                                              subSnpCoreFields.getSecondaryAlternatesInForwardStrand(),
+                                                              subSnpCoreFields.getAlleleOrientation());
+        genotypeEncoder.encode(subSnpCoreFields.getRawGenotypesString(), variantSourceEntry::addSampleData);
     }
 
     private void addFrequenciesToVariantSourceEntry(SubSnpCoreFields subSnpCoreFields, Variant variant,
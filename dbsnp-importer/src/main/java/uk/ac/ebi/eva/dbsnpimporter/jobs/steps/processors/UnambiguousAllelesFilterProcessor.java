@@ -17,7 +17,6 @@ package uk.ac.ebi.eva.dbsnpimporter.jobs.steps.processors;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.batch.item.ItemProcessor;
 
 import uk.ac.ebi.eva.dbsnpimporter.exception.UndefinedHgvsAlleleException;
 import uk.ac.ebi.eva.dbsnpimporter.models.SubSnpCoreFields;
@@ -28,7 +27,7 @@ import java.util.regex.Pattern;
 /**
  * Filters out all those variants with IUPAC ambiguity codes in the reference or alternate alleles.
  */
-public class UnambiguousAllelesFilterProcessor implements ItemProcessor<SubSnpCoreFields, SubSnpCoreFields> {
+public class UnambiguousAllelesFilterProcessor extends FilteringItemProcessor<SubSnpCoreFields, SubSnpCoreFields> {
 
     private static final Logger logger = LoggerFactory.getLogger(UnambiguousAllelesFilterProcessor.class);
 
@@ -46,12 +45,14 @@ public class UnambiguousAllelesFilterProcessor implements ItemProcessor<SubSnpCo
         } catch (UndefinedHgvsAlleleException hgvsReferenceUndefined) {
             logger.debug("Variant filtered out because reference allele is not defined: {} ({})", subSnpCoreFields,
                          hgvsReferenceUndefined);
+            reject(subSnpCoreFields, RejectionReason.UNDEFINED_ALLELE);
             return null;
         }
 
         Matcher referenceMatcher = pattern.matcher(referenceInForwardStrand);
         if (!referenceMatcher.matches()) {
             logger.debug("Variant filtered out because reference allele is ambiguous: {}", subSnpCoreFields);
+            reject(subSnpCoreFields, RejectionReason.AMBIGUOUS_ALLELES);
             return null;
         }
 
@@ -61,12 +62,14 @@ public class UnambiguousAllelesFilterProcessor implements ItemProcessor<SubSnpCo
         } catch (UndefinedHgvsAlleleException hgvsAlternateUndefined) {
             logger.debug("Variant filtered out because alternate allele is not defined: {} ({})", subSnpCoreFields,
                          hgvsAlternateUndefined);
+            reject(subSnpCoreFields, RejectionReason.UNDEFINED_ALLELE);
             return null;
         }
 
         Matcher alternateMatcher = pattern.matcher(alternateInForwardStrand);
         if (!alternateMatcher.matches()) {
             logger.debug("Variant filtered out because alternate allele is ambiguous: {}", subSnpCoreFields);
+            reject(subSnpCoreFields, RejectionReason.AMBIGUOUS_ALLELES);
             return null;
         }
 
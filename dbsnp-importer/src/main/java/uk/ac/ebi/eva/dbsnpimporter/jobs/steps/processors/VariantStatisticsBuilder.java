@@ -15,33 +15,47 @@
  */
 package uk.ac.ebi.eva.dbsnpimporter.jobs.steps.processors;
 
-import com.fasterxml.jackson.core.type.TypeReference;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
 
 import uk.ac.ebi.eva.commons.core.models.IVariant;
 import uk.ac.ebi.eva.commons.core.models.IVariantSourceEntry;
 import uk.ac.ebi.eva.commons.core.models.VariantStatistics;
-import uk.ac.ebi.eva.dbsnpimporter.models.AlleleFrequency;
 import uk.ac.ebi.eva.dbsnpimporter.models.Orientation;
-import uk.ac.ebi.eva.dbsnpimporter.models.PopulationFrequencies;
 import uk.ac.ebi.eva.dbsnpimporter.models.SubSnpCoreFields;
 
 import java.io.IOException;
-import java.util.Comparator;
+import java.util.Collections;
 import java.util.HashMap;
-import java.util.List;
+import java.util.HashSet;
 import java.util.Map;
-
+import java.util.Set;
+
+/**
+ * Builds the statistics of a variant from the dbSNP frequencies, which are a JSON array like:
+ * <pre>
+ * [{"pop_id" : 1324, "pop_name" : "RBLS", "freq_info" : [{"allele" : "G", "cnt" : 2.0, "freq" : 0.5}, ...]}, ...]
+ * </pre>
+ * The JSON is parsed in a single pass with a streaming parser, keeping only the allele with the minimum frequency of
+ * each population instead of mapping the whole document to {@link uk.ac.ebi.eva.dbsnpimporter.models
+ * .PopulationFrequencies} objects. Unknown fields are skipped.
+ */
 public class VariantStatisticsBuilder {
 
-    private final ObjectMapper objectMapper;
+    private static final String POPULATION_NAME_FIELD = "pop_name";
 
-    private final TypeReference<List<PopulationFrequencies>> typeReference;
+    private static final String FREQUENCIES_FIELD = "freq_info";
 
-    public VariantStatisticsBuilder() {
-        objectMapper = new ObjectMapper();
-        typeReference = new TypeReference<List<PopulationFrequencies>>() { };
-    }
+    private static final String ALLELE_FIELD = "allele";
+
+    private static final String FREQUENCY_FIELD = "freq";
+
+    /**
+     * Thread-safe, and expensive to create, so it is shared by all the builders
+     */
+    private static final JsonFactory jsonFactory = new JsonFactory();
 
     public Map<String, VariantStatistics> build(IVariant variant, String frequenciesInfo, Orientation orientation)
             throws IOException {
@@ -49,44 +63,118 @@ public class VariantStatisticsBuilder {
             return null;
         } else {
             Map<String, VariantStatistics> statistics = new HashMap<>();
-            List<PopulationFrequencies> frequencies = objectMapper.readValue(frequenciesInfo, typeReference);
-
-            for (PopulationFrequencies freq : frequencies) {
-                AlleleFrequency maf = freq.getAlleleFrequencies().stream().min(Comparator.naturalOrder()).get();
-                maf.setAllele(SubSnpCoreFields.getNormalizedAllele(maf.getAllele(), orientation));
-
-                if (!allelesMatch(variant, maf.getAllele())) {
-                    throw new IllegalArgumentException("Variant and frequencies alleles do not match");
+            Set<String> variantAlleles = null;
+
+            try (JsonParser parser = jsonFactory.createParser(frequenciesInfo)) {
+                expectToken(parser, JsonToken.START_ARRAY);
+                while (parser.nextToken() == JsonToken.START_OBJECT) {
+                    MinorAlleleFrequency maf = parsePopulation(parser);
+                    maf.allele = SubSnpCoreFields.getNormalizedAllele(maf.allele, orientation);
+
+                    if (variantAlleles == null) {
+                        variantAlleles = getAlleles(variant);
+                    }
+                    if (!variantAlleles.contains(maf.allele)) {
+                        throw new IllegalArgumentException("Variant and frequencies alleles do not match");
+                    }
+
+                    VariantStatistics stats = new VariantStatistics(variant.getReference(), variant.getAlternate(),
+                                                                    variant.getType(), (float) maf.frequency, -1,
+                                                                    maf.allele, null, 0, -1, -1, -1, -1, -1, -1);
+                    statistics.put(maf.populationName, stats);
+                }
+                if (parser.currentToken() != JsonToken.END_ARRAY) {
+                    throw new JsonParseException(parser, "Expected a population object, found "
+                            + parser.currentToken());
                 }
-
-                VariantStatistics stats = new VariantStatistics(variant.getReference(), variant.getAlternate(),
-                                                                variant.getType(), (float) maf.getFrequency(), -1,
-                                                                maf.getAllele(), null, 0, -1, -1, -1, -1, -1, -1);
-                statistics.put(freq.getPopulationName(), stats);
             }
 
             return statistics;
         }
     }
 
-    private boolean allelesMatch(IVariant variant, String mafAllele) {
-        if(mafAllele.equals(variant.getReference())) {
-            return true;
+    /**
+     * Reads a population object, from its START_OBJECT to its END_OBJECT, keeping the first allele with the minimum
+     * frequency
+     */
+    private MinorAlleleFrequency parsePopulation(JsonParser parser) throws IOException {
+        MinorAlleleFrequency maf = null;
+        String populationName = null;
+
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String fieldName = parser.getCurrentName();
+            parser.nextToken();
+            if (POPULATION_NAME_FIELD.equals(fieldName)) {
+                populationName = parser.getValueAsString();
+            } else if (FREQUENCIES_FIELD.equals(fieldName)) {
+                maf = parseMinorAlleleFrequency(parser);
+            } else {
+                parser.skipChildren();
+            }
         }
 
-        if(mafAllele.equals(variant.getAlternate())) {
-            return true;
+        if (maf == null) {
+            throw new IllegalArgumentException("No allele frequencies found for population " + populationName);
         }
+        maf.populationName = populationName;
+        return maf;
+    }
 
-        for (IVariantSourceEntry sourceEntry : variant.getSourceEntries()) {
-            for (String secondaryAlternate : sourceEntry.getSecondaryAlternates()) {
-                if (mafAllele.equals(secondaryAlternate)) {
-                    return true;
+    private MinorAlleleFrequency parseMinorAlleleFrequency(JsonParser parser) throws IOException {
+        if (parser.currentToken() != JsonToken.START_ARRAY) {
+            throw new JsonParseException(parser, "Expected an array of allele frequencies");
+        }
+        MinorAlleleFrequency maf = null;
+        while (parser.nextToken() == JsonToken.START_OBJECT) {
+            String allele = null;
+            double frequency = 0;
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String fieldName = parser.getCurrentName();
+                parser.nextToken();
+                if (ALLELE_FIELD.equals(fieldName)) {
+                    allele = parser.getValueAsString();
+                } else if (FREQUENCY_FIELD.equals(fieldName)) {
+                    frequency = parser.getValueAsDouble();
+                } else {
+                    parser.skipChildren();
                 }
             }
+            if (maf == null || frequency < maf.frequency) {
+                maf = new MinorAlleleFrequency(allele, frequency);
+            }
         }
+        return maf;
+    }
+
+    private static void expectToken(JsonParser parser, JsonToken expected) throws IOException {
+        JsonToken token = parser.nextToken();
+        if (token != expected) {
+            throw new JsonParseException(parser, "Expected " + expected + ", found " + token);
+        }
+    }
 
-        return false;
+    private Set<String> getAlleles(IVariant variant) {
+        Set<String> alleles = new HashSet<>();
+        alleles.add(variant.getReference());
+        alleles.add(variant.getAlternate());
+        for (IVariantSourceEntry sourceEntry : variant.getSourceEntries()) {
+            Collections.addAll(alleles, sourceEntry.getSecondaryAlternates());
+        }
+        return alleles;
+    }
+
+    private static class MinorAlleleFrequency {
+
+        private String populationName;
+
+        private String allele;
+
+        private final double frequency;
+
+        MinorAlleleFrequency(String allele, double frequency) {
+            this.allele = allele;
+            this.frequency = frequency;
+        }
     }
 
 }
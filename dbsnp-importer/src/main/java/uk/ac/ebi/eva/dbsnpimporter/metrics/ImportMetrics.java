@@ -0,0 +1,270 @@
+/*
+ * Copyright 2018 EMBL - European Bioinformatics Institute
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.ac.ebi.eva.dbsnpimporter.metrics;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.batch.item.ItemProcessor;
+
+import uk.ac.ebi.eva.dbsnpimporter.jobs.steps.processors.FilteringItemProcessor;
+import uk.ac.ebi.eva.dbsnpimporter.jobs.steps.processors.RejectionReason;
+
+import java.io.IOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryUsage;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Meters of the import variants step: a timer and pass/reject counters for each processor, and timers for the reads
+ * and writes of the step.
+ * <p>
+ * The meters are kept in a Micrometer registry, so they can be published to any monitoring system, and they are
+ * summarized in a JSON document at the end of the step. Given the duration of the step, the summary also includes the
+ * overall throughput, the share of the step spent reading and writing, and the heap and garbage collection figures of
+ * the JVM, which make up the report of a dry run.
+ */
+public class ImportMetrics {
+
+    public static final String PROCESSOR_TIMER = "dbsnp.import.processor";
+
+    public static final String PROCESSOR_ITEMS = "dbsnp.import.processor.items";
+
+    public static final String READ_TIMER = "dbsnp.import.read";
+
+    public static final String WRITE_TIMER = "dbsnp.import.write";
+
+    public static final String WRITE_ITEMS = "dbsnp.import.write.items";
+
+    public static final String STAGE_TAG = "stage";
+
+    public static final String RESULT_TAG = "result";
+
+    public static final String REASON_TAG = "reason";
+
+    public static final String PASSED = "passed";
+
+    public static final String REJECTED = "rejected";
+
+    private static final double[] PERCENTILES = {0.5, 0.9, 0.99};
+
+    /**
+     * The percentiles are summarized at the end of the step, so they must cover the whole step instead of the default
+     * window of a couple of minutes
+     */
+    private static final Duration PERCENTILES_EXPIRY = Duration.ofDays(7);
+
+    private final MeterRegistry registry;
+
+    private final List<Stage> stages;
+
+    private final Timer readTimer;
+
+    private final Timer writeTimer;
+
+    private final Counter writtenItems;
+
+    public ImportMetrics(MeterRegistry registry) {
+        this.registry = registry;
+        this.stages = new ArrayList<>();
+        this.readTimer = buildLatencyTimer(READ_TIMER);
+        this.writeTimer = buildLatencyTimer(WRITE_TIMER);
+        this.writtenItems = Counter.builder(WRITE_ITEMS).register(registry);
+    }
+
+    /**
+     * Wraps a processor so its time and results are metered. If the processor is a {@link FilteringItemProcessor}, the
+     * items it rejects are counted by reason.
+     *
+     * @param stageName Name of the processor in the meters
+     */
+    public <I, O> ItemProcessor<I, O> meter(String stageName, ItemProcessor<I, O> processor) {
+        Stage stage = new Stage(stageName);
+        stages.add(stage);
+        if (processor instanceof FilteringItemProcessor) {
+            ((FilteringItemProcessor<I, O>) processor).addRejectionListener(
+                    (item, reason) -> stage.countRejection(reason));
+        }
+        return new MeteredItemProcessor<>(processor, stage.timer, stage.passed, stage.rejected);
+    }
+
+    public void recordRead(long nanos) {
+        readTimer.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Records a chunk write. This is called from the write-behind threads, so with several writes in flight their
+     * times add up and the write share of the step can be greater than 1.
+     *
+     * @param items Number of items in the written chunk
+     */
+    public void recordWrite(long nanos, int items) {
+        writeTimer.record(nanos, TimeUnit.NANOSECONDS);
+        writtenItems.increment(items);
+    }
+
+    public MeterRegistry getRegistry() {
+        return registry;
+    }
+
+    public Map<String, Object> getSummary() {
+        Map<String, Object> summary = new LinkedHashMap<>();
+        Map<String, Object> processors = new LinkedHashMap<>();
+        for (Stage stage : stages) {
+            processors.put(stage.name, stage.getSummary());
+        }
+        summary.put("processors", processors);
+        Map<String, Object> read = summarizeLatency(readTimer);
+        read.put("itemsPerSecond", perSecond(readTimer.count(), readTimer.totalTime(TimeUnit.NANOSECONDS)));
+        summary.put("read", read);
+        Map<String, Object> write = summarizeLatency(writeTimer);
+        write.put("items", (long) writtenItems.count());
+        write.put("itemsPerSecond", perSecond(writtenItems.count(), writeTimer.totalTime(TimeUnit.NANOSECONDS)));
+        summary.put("write", write);
+        return summary;
+    }
+
+    /**
+     * @param elapsed Wall time of the step
+     */
+    public Map<String, Object> getSummary(Duration elapsed) {
+        Map<String, Object> summary = getSummary();
+        Map<String, Object> step = new LinkedHashMap<>();
+        long elapsedNanos = Math.max(elapsed.toNanos(), 1);
+        step.put("elapsedMillis", elapsed.toMillis());
+        step.put("readItemsPerSecond", perSecond(readTimer.count(), elapsedNanos));
+        step.put("writtenItemsPerSecond", perSecond(writtenItems.count(), elapsedNanos));
+        step.put("readShare", readTimer.totalTime(TimeUnit.NANOSECONDS) / elapsedNanos);
+        step.put("writeShare", writeTimer.totalTime(TimeUnit.NANOSECONDS) / elapsedNanos);
+        summary.put("step", step);
+        summary.put("jvm", summarizeJvm());
+        return summary;
+    }
+
+    public void writeSummary(Path file) throws IOException {
+        writeSummary(file, getSummary());
+    }
+
+    public void writeSummary(Path file, Duration elapsed) throws IOException {
+        writeSummary(file, getSummary(elapsed));
+    }
+
+    private static void writeSummary(Path file, Map<String, Object> summary) throws IOException {
+        ObjectMapper objectMapper = new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT);
+        Files.write(file, objectMapper.writeValueAsBytes(summary));
+    }
+
+    /**
+     * The garbage collection figures are accumulated since the JVM started, which for a job is close to the step
+     */
+    private static Map<String, Object> summarizeJvm() {
+        Map<String, Object> summary = new LinkedHashMap<>();
+        MemoryUsage heap = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage();
+        summary.put("heapUsedBytes", heap.getUsed());
+        summary.put("heapCommittedBytes", heap.getCommitted());
+        summary.put("heapMaxBytes", heap.getMax());
+        Map<String, Object> collectors = new LinkedHashMap<>();
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            Map<String, Object> collections = new LinkedHashMap<>();
+            collections.put("count", collector.getCollectionCount());
+            collections.put("totalMillis", collector.getCollectionTime());
+            collectors.put(collector.getName(), collections);
+        }
+        summary.put("garbageCollectors", collectors);
+        return summary;
+    }
+
+    private static double perSecond(double count, double nanos) {
+        return nanos > 0 ? count * TimeUnit.SECONDS.toNanos(1) / nanos : 0;
+    }
+
+    private Timer buildLatencyTimer(String name) {
+        return Timer.builder(name)
+                    .publishPercentiles(PERCENTILES)
+                    .distributionStatisticExpiry(PERCENTILES_EXPIRY)
+                    .register(registry);
+    }
+
+    private static Map<String, Object> summarizeLatency(Timer timer) {
+        Map<String, Object> summary = new LinkedHashMap<>();
+        summary.put("count", timer.count());
+        summary.put("totalMillis", timer.totalTime(TimeUnit.MILLISECONDS));
+        summary.put("meanMicros", timer.mean(TimeUnit.MICROSECONDS));
+        for (double percentile : PERCENTILES) {
+            summary.put("p" + Math.round(percentile * 100) + "Micros",
+                        timer.percentile(percentile, TimeUnit.MICROSECONDS));
+        }
+        summary.put("maxMicros", timer.max(TimeUnit.MICROSECONDS));
+        return summary;
+    }
+
+    private class Stage {
+
+        private final String name;
+
+        private final Timer timer;
+
+        private final Counter passed;
+
+        private final Counter rejected;
+
+        private final Map<RejectionReason, Counter> rejectedByReason;
+
+        Stage(String name) {
+            this.name = name;
+            this.timer = Timer.builder(PROCESSOR_TIMER).tag(STAGE_TAG, name).register(registry);
+            this.passed = Counter.builder(PROCESSOR_ITEMS).tags(STAGE_TAG, name, RESULT_TAG, PASSED)
+                                 .register(registry);
+            this.rejected = Counter.builder(PROCESSOR_ITEMS).tags(STAGE_TAG, name, RESULT_TAG, REJECTED)
+                                   .register(registry);
+            this.rejectedByReason = new EnumMap<>(RejectionReason.class);
+        }
+
+        void countRejection(RejectionReason reason) {
+            rejectedByReason.computeIfAbsent(reason, key -> Counter.builder(PROCESSOR_ITEMS + ".reason")
+                                                                   .tags(STAGE_TAG, name, REASON_TAG, key.name())
+                                                                   .register(registry))
+                            .increment();
+        }
+
+        Map<String, Object> getSummary() {
+            Map<String, Object> summary = new LinkedHashMap<>();
+            summary.put("passed", (long) passed.count());
+            summary.put("rejected", (long) rejected.count());
+            Map<String, Long> reasons = new LinkedHashMap<>();
+            for (Map.Entry<RejectionReason, Counter> reason : rejectedByReason.entrySet()) {
+                reasons.put(reason.getKey().name(), (long) reason.getValue().count());
+            }
+            summary.put("rejectionReasons", reasons);
+            summary.put("totalMillis", timer.totalTime(TimeUnit.MILLISECONDS));
+            summary.put("itemsPerSecond", perSecond(timer.count(), timer.totalTime(TimeUnit.NANOSECONDS)));
+            summary.put("meanMicros", timer.mean(TimeUnit.MICROSECONDS));
+            summary.put("maxMicros", timer.max(TimeUnit.MICROSECONDS));
+            return summary;
+        }
+    }
+}
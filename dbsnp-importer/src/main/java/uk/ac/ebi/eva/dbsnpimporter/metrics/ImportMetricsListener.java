@@ -0,0 +1,91 @@
+/*
+ * Copyright 2018 EMBL - European Bioinformatics Institute
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.ac.ebi.eva.dbsnpimporter.metrics;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.batch.core.ExitStatus;
+import org.springframework.batch.core.ItemReadListener;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.StepExecutionListener;
+
+import uk.ac.ebi.eva.dbsnpimporter.models.SubSnpCoreFields;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.time.Duration;
+
+/**
+ * Times the reads of the import variants step, and summarizes the {@link ImportMetrics} at the end of the step,
+ * including its throughput. The summary is logged, and written as JSON into a file if one is provided.
+ * <p>
+ * The writes are timed by {@link uk.ac.ebi.eva.dbsnpimporter.io.writers.WriteBehindItemWriter}, because the step
+ * only sees the chunks being handed over to the background writes.
+ */
+public class ImportMetricsListener implements StepExecutionListener, ItemReadListener<SubSnpCoreFields> {
+
+    private static final Logger logger = LoggerFactory.getLogger(ImportMetricsListener.class);
+
+    private final ImportMetrics importMetrics;
+
+    private final String summaryFile;
+
+    private long readStart;
+
+    /**
+     * @param summaryFile File where the summary is written at the end of the step, or null to only log it
+     */
+    public ImportMetricsListener(ImportMetrics importMetrics, String summaryFile) {
+        this.importMetrics = importMetrics;
+        this.summaryFile = summaryFile;
+    }
+
+    @Override
+    public void beforeStep(StepExecution stepExecution) {
+    }
+
+    @Override
+    public ExitStatus afterStep(StepExecution stepExecution) {
+        Duration elapsed = stepExecution.getStartTime() == null ? Duration.ZERO : Duration.ofMillis(
+                System.currentTimeMillis() - stepExecution.getStartTime().getTime());
+        try {
+            logger.info("{}: metrics = {}", stepExecution.getStepName(),
+                        new ObjectMapper().writeValueAsString(importMetrics.getSummary(elapsed)));
+            if (summaryFile != null) {
+                importMetrics.writeSummary(Paths.get(summaryFile), elapsed);
+                logger.info("{}: metrics summary written into {}", stepExecution.getStepName(), summaryFile);
+            }
+        } catch (IOException e) {
+            logger.warn("Could not write the metrics summary: {}", e.getMessage());
+        }
+        return stepExecution.getExitStatus();
+    }
+
+    @Override
+    public void beforeRead() {
+        readStart = System.nanoTime();
+    }
+
+    @Override
+    public void afterRead(SubSnpCoreFields item) {
+        importMetrics.recordRead(System.nanoTime() - readStart);
+    }
+
+    @Override
+    public void onReadError(Exception ex) {
+    }
+}
@@ -0,0 +1,59 @@
+/*
+ * Copyright 2018 EMBL - European Bioinformatics Institute
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.ac.ebi.eva.dbsnpimporter.metrics;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.batch.item.ItemProcessor;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Times a processor and counts the items it passes and the ones it filters out
+ */
+public class MeteredItemProcessor<I, O> implements ItemProcessor<I, O> {
+
+    private final ItemProcessor<I, O> delegate;
+
+    private final Timer timer;
+
+    private final Counter passed;
+
+    private final Counter rejected;
+
+    public MeteredItemProcessor(ItemProcessor<I, O> delegate, Timer timer, Counter passed, Counter rejected) {
+        this.delegate = delegate;
+        this.timer = timer;
+        this.passed = passed;
+        this.rejected = rejected;
+    }
+
+    @Override
+    public O process(I item) throws Exception {
+        long start = System.nanoTime();
+        try {
+            O result = delegate.process(item);
+            if (result == null) {
+                rejected.increment();
+            } else {
+                passed.increment();
+            }
+            return result;
+        } finally {
+            timer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+}
@@ -76,6 +76,11 @@ public class SubSnpCoreFields {
 
     private String rawFrequenciesInfo;
 
+    /**
+     * Position of the row in the load table, which is not part of the variant
+     */
+    private Long loadOrder;
+
     /**
      * @param subSnpId          Unique SS ID identifier
      * @param subSnpOrientation Orientation of the ssid to the rsid (1 for forward, -1 for reverse)
@@ -260,6 +265,14 @@ public class SubSnpCoreFields {
         this.rawFrequenciesInfo = rawFrequenciesInfo;
     }
 
+    public Long getLoadOrder() {
+        return loadOrder;
+    }
+
+    public void setLoadOrder(Long loadOrder) {
+        this.loadOrder = loadOrder;
+    }
+
     public String getBatch() {
         return batch;
     }
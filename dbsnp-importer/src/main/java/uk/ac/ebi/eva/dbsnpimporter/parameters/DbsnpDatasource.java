@@ -15,20 +15,35 @@
  */
 package uk.ac.ebi.eva.dbsnpimporter.parameters;
 
+import org.apache.tomcat.jdbc.pool.ConnectionPool;
+import org.apache.tomcat.jdbc.pool.PoolProperties;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.beans.factory.InitializingBean;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.data.mongodb.core.mapping.Field;
-import org.springframework.jdbc.datasource.DriverManagerDataSource;
 
 import javax.sql.DataSource;
-
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Connection details of the dbSNP database, and the pool of connections shared by all the readers that query it.
+ * <p>
+ * The pool is created the first time {@link #getDatasource()} is called. Prepared statements are cached per connection,
+ * and for PostgreSQL the default fetch size and the size of the socket receive buffer can be configured too, which
+ * helps cursors that stream large result sets.
+ */
 @ConfigurationProperties(prefix = "dbsnp.datasource")
-public class DbsnpDatasource implements InitializingBean {
+public class DbsnpDatasource implements InitializingBean, DisposableBean {
 
     private static final Logger logger = LoggerFactory.getLogger(DbsnpDatasource.class);
 
+    private static final String POSTGRES_URL_PREFIX = "jdbc:postgresql:";
+
+    private static final String POOL_INTERCEPTORS_TEMPLATE = "ConnectionState;StatementCache(max=%d)";
+
     private String url;
 
     @Field("driver-class-name")
@@ -38,20 +53,98 @@ public class DbsnpDatasource implements InitializingBean {
 
     private String password;
 
+    private int poolSize = 4;
+
+    private int poolMaxWaitMillis = 30000;
+
+    private int statementCacheSize = 50;
+
+    private Integer defaultRowFetchSize;
+
+    private Integer receiveBufferSize;
+
+    private org.apache.tomcat.jdbc.pool.DataSource dataSource;
+
     @Override
     public void afterPropertiesSet() throws Exception {
         logger.debug("Properties were set to: {}", this);
     }
 
-    public DataSource getDatasource() {
-        DriverManagerDataSource dataSource = new DriverManagerDataSource();
-        dataSource.setDriverClassName(driverClassName);
-        dataSource.setUrl(url);
-        dataSource.setUsername(username);
-        dataSource.setPassword(password);
+    @Override
+    public void destroy() throws Exception {
+        if (dataSource != null) {
+            logger.info("Closing dbSNP connection pool, statistics: {}", getPoolStatistics());
+            dataSource.close();
+        }
+    }
+
+    /**
+     * @return Pooled data source, which is the same instance for all the callers
+     */
+    public synchronized DataSource getDatasource() {
+        if (dataSource == null) {
+            dataSource = new org.apache.tomcat.jdbc.pool.DataSource(buildPoolProperties());
+        }
         return dataSource;
     }
 
+    private PoolProperties buildPoolProperties() {
+        PoolProperties poolProperties = new PoolProperties();
+        poolProperties.setDriverClassName(driverClassName);
+        poolProperties.setUrl(url);
+        poolProperties.setUsername(username);
+        poolProperties.setPassword(password);
+
+        poolProperties.setInitialSize(0);
+        poolProperties.setMinIdle(0);
+        poolProperties.setMaxIdle(poolSize);
+        poolProperties.setMaxActive(poolSize);
+        poolProperties.setMaxWait(poolMaxWaitMillis);
+        poolProperties.setTestOnBorrow(true);
+        poolProperties.setValidationInterval(30000);
+
+        // readers disable autocommit to stream with cursors; reset the connections before they are reused
+        poolProperties.setDefaultAutoCommit(true);
+        poolProperties.setRollbackOnReturn(true);
+        poolProperties.setJdbcInterceptors(String.format(POOL_INTERCEPTORS_TEMPLATE, statementCacheSize));
+
+        if (url != null && url.startsWith(POSTGRES_URL_PREFIX)) {
+            poolProperties.setConnectionProperties(buildPostgresConnectionProperties());
+        }
+        return poolProperties;
+    }
+
+    private String buildPostgresConnectionProperties() {
+        StringBuilder connectionProperties = new StringBuilder();
+        if (defaultRowFetchSize != null) {
+            connectionProperties.append("defaultRowFetchSize=").append(defaultRowFetchSize).append(';');
+        }
+        if (receiveBufferSize != null) {
+            connectionProperties.append("receiveBufferSize=").append(receiveBufferSize).append(';');
+        }
+        return connectionProperties.toString();
+    }
+
+    /**
+     * @return Current usage of the connection pool, or an empty map if the pool was not created yet
+     */
+    public synchronized Map<String, Number> getPoolStatistics() {
+        Map<String, Number> statistics = new LinkedHashMap<>();
+        if (dataSource != null) {
+            ConnectionPool pool = dataSource.getPool();
+            if (pool != null) {
+                statistics.put("size", pool.getSize());
+                statistics.put("active", pool.getActive());
+                statistics.put("idle", pool.getIdle());
+                statistics.put("waiting", pool.getWaitCount());
+                statistics.put("borrowed", pool.getBorrowedCount());
+                statistics.put("created", pool.getCreatedCount());
+                statistics.put("released", pool.getReleasedCount());
+            }
+        }
+        return statistics;
+    }
+
     public String getUrl() {
         return url;
     }
@@ -84,11 +177,56 @@ public class DbsnpDatasource implements InitializingBean {
         this.password = password;
     }
 
+    public int getPoolSize() {
+        return poolSize;
+    }
+
+    public void setPoolSize(int poolSize) {
+        this.poolSize = poolSize;
+    }
+
+    public int getPoolMaxWaitMillis() {
+        return poolMaxWaitMillis;
+    }
+
+    public void setPoolMaxWaitMillis(int poolMaxWaitMillis) {
+        this.poolMaxWaitMillis = poolMaxWaitMillis;
+    }
+
+    public int getStatementCacheSize() {
+        return statementCacheSize;
+    }
+
+    public void setStatementCacheSize(int statementCacheSize) {
+        this.statementCacheSize = statementCacheSize;
+    }
+
+    public Integer getDefaultRowFetchSize() {
+        return defaultRowFetchSize;
+    }
+
+    public void setDefaultRowFetchSize(Integer defaultRowFetchSize) {
+        this.defaultRowFetchSize = defaultRowFetchSize;
+    }
+
+    public Integer getReceiveBufferSize() {
+        return receiveBufferSize;
+    }
+
+    public void setReceiveBufferSize(Integer receiveBufferSize) {
+        this.receiveBufferSize = receiveBufferSize;
+    }
+
     @Override
     public String toString() {
         return "DbsnpDatasource{" +
                 "url='" + url + '\'' +
                 ", driverClassName='" + driverClassName + '\'' +
+                ", poolSize=" + poolSize +
+                ", poolMaxWaitMillis=" + poolMaxWaitMillis +
+                ", statementCacheSize=" + statementCacheSize +
+                ", defaultRowFetchSize=" + defaultRowFetchSize +
+                ", receiveBufferSize=" + receiveBufferSize +
                 '}';
     }
 }
@@ -47,8 +47,24 @@ public class Parameters implements InitializingBean {
 
     private String contigMappingUrl;
 
+    private String contigMappingCache;
+
     private String referenceFastaFile;
 
+    private boolean copyReader;
+
+    private int writesInFlight;
+
+    private String writeConcern;
+
+    private boolean streamSamples;
+
+    private String metricsSummary;
+
+    private String rejectedVariantsDirectory;
+
+    private boolean dryRun;
+
     @Override
     public void afterPropertiesSet() throws Exception {
         logger.debug("Properties were set to: {}", this);
@@ -126,6 +142,14 @@ public class Parameters implements InitializingBean {
         this.contigMappingUrl = contigMappingUrl;
     }
 
+    public String getContigMappingCache() {
+        return contigMappingCache;
+    }
+
+    public void setContigMappingCache(String contigMappingCache) {
+        this.contigMappingCache = contigMappingCache;
+    }
+
     public String getReferenceFastaFile() {
         return referenceFastaFile;
     }
@@ -134,6 +158,62 @@ public class Parameters implements InitializingBean {
         this.referenceFastaFile = referenceFastaFile;
     }
 
+    public boolean isCopyReader() {
+        return copyReader;
+    }
+
+    public void setCopyReader(boolean copyReader) {
+        this.copyReader = copyReader;
+    }
+
+    public int getWritesInFlight() {
+        return writesInFlight;
+    }
+
+    public void setWritesInFlight(int writesInFlight) {
+        this.writesInFlight = writesInFlight;
+    }
+
+    public String getWriteConcern() {
+        return writeConcern;
+    }
+
+    public void setWriteConcern(String writeConcern) {
+        this.writeConcern = writeConcern;
+    }
+
+    public boolean isStreamSamples() {
+        return streamSamples;
+    }
+
+    public void setStreamSamples(boolean streamSamples) {
+        this.streamSamples = streamSamples;
+    }
+
+    public String getMetricsSummary() {
+        return metricsSummary;
+    }
+
+    public void setMetricsSummary(String metricsSummary) {
+        this.metricsSummary = metricsSummary;
+    }
+
+    public String getRejectedVariantsDirectory() {
+        return rejectedVariantsDirectory;
+    }
+
+    public void setRejectedVariantsDirectory(String rejectedVariantsDirectory) {
+        this.rejectedVariantsDirectory = rejectedVariantsDirectory;
+    }
+
+    public boolean isDryRun() {
+        return dryRun;
+    }
+
+    public void setDryRun(boolean dryRun) {
+        this.dryRun = dryRun;
+    }
+
     @Override
     public String toString() {
         return "Parameters{" +
@@ -146,7 +226,15 @@ public class Parameters implements InitializingBean {
                 ", filesCollection='" + filesCollection + '\'' +
                 ", chunkSize=" + chunkSize +
                 ", contigMappingUrl='" + contigMappingUrl + '\'' +
+                ", contigMappingCache='" + contigMappingCache + '\'' +
                 ", referenceFastaFile='" + referenceFastaFile + '\'' +
+                ", copyReader=" + copyReader +
+                ", writesInFlight=" + writesInFlight +
+                ", writeConcern='" + writeConcern + '\'' +
+                ", streamSamples=" + streamSamples +
+                ", metricsSummary='" + metricsSummary + '\'' +
+                ", rejectedVariantsDirectory='" + rejectedVariantsDirectory + '\'' +
+                ", dryRun=" + dryRun +
                 '}';
     }
 }
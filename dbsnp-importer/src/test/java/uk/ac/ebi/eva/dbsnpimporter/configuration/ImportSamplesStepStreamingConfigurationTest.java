@@ -0,0 +1,112 @@
+/*
+ * Copyright 2018 EMBL - European Bioinformatics Institute
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.ac.ebi.eva.dbsnpimporter.configuration;
+
+import com.mongodb.DBCollection;
+import com.mongodb.DBObject;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.JobParameters;
+import org.springframework.batch.core.explore.JobExplorer;
+import org.springframework.batch.test.JobLauncherTestUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import uk.ac.ebi.eva.commons.mongodb.entities.VariantSourceMongo;
+import uk.ac.ebi.eva.dbsnpimporter.jobs.steps.processors.DbsnpBatchToVariantSourceProcessor;
+import uk.ac.ebi.eva.dbsnpimporter.parameters.Parameters;
+import uk.ac.ebi.eva.dbsnpimporter.test.DbsnpTestDatasource;
+import uk.ac.ebi.eva.dbsnpimporter.test.configuration.JobTestConfiguration;
+import uk.ac.ebi.eva.dbsnpimporter.test.configuration.MongoTestConfiguration;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static uk.ac.ebi.eva.dbsnpimporter.jobs.steps.processors.DbsnpBatchToVariantSourceProcessorTest.DBSNP_BUILD;
+
+@RunWith(SpringRunner.class)
+@TestPropertySource(value = {"classpath:application.properties"},
+        properties = {"stream-samples=true", "page-size=2"})
+@DirtiesContext
+@ContextConfiguration(classes = {ImportVariantsJobConfiguration.class, MongoTestConfiguration.class,
+        JobTestConfiguration.class})
+public class ImportSamplesStepStreamingConfigurationTest {
+
+    private static final String DBSNP_BATCH_ID = "11825";
+
+    private static final String DBSNP_BATCH_HANDLE = "BGI";
+
+    private static final String DBSNP_BATCH_NAME = "CHICKEN_SNPS_BROILER";
+
+    private static final String FIRST_SAMPLE = "R£JF";
+
+    private static final String SECOND_SAMPLE = "BROILER";
+
+    private static final String THIRD_SAMPLE = "UNKSEX";
+
+    @Autowired
+    private DbsnpTestDatasource dbsnpTestDatasource;
+
+    @Autowired
+    private JobLauncherTestUtils jobLauncherTestUtils;
+
+    @Autowired
+    private JobExplorer jobExplorer;
+
+    @Autowired
+    private Parameters parameters;
+
+    @Autowired
+    private MongoOperations mongoOperations;
+
+    @Test
+    public void streamSamples() throws Exception {
+        assertEquals(0, mongoOperations.getCollection(parameters.getFilesCollection()).count());
+
+        JobExecution jobExecution = jobLauncherTestUtils.launchStep(ImportSamplesStepConfiguration.IMPORT_SAMPLES_STEP);
+        ImportSamplesStepConfigurationTest.assertCompleted(jobExecution);
+
+        DBCollection collection = mongoOperations.getCollection(parameters.getFilesCollection());
+        List<DBObject> dbObjects = collection.find().toArray();
+
+        assertEquals(1, dbObjects.size());
+
+        DBObject dbObject = dbObjects.get(0);
+
+        assertEquals(DBSNP_BATCH_NAME, dbObject.get(VariantSourceMongo.FILEID_FIELD));
+        assertEquals(DBSNP_BATCH_HANDLE + " - " + DBSNP_BATCH_NAME, dbObject.get(VariantSourceMongo.FILENAME_FIELD));
+        assertEquals(DBSNP_BATCH_NAME, dbObject.get(VariantSourceMongo.STUDYID_FIELD));
+        assertEquals(DBSNP_BATCH_HANDLE + " - " + DBSNP_BATCH_NAME, dbObject.get(VariantSourceMongo.STUDYNAME_FIELD));
+
+        Map<String, Integer> expectedSamplesPosition = new HashMap<>();
+        expectedSamplesPosition.put(FIRST_SAMPLE, 0);
+        expectedSamplesPosition.put(SECOND_SAMPLE, 1);
+        expectedSamplesPosition.put(THIRD_SAMPLE, 2);
+        assertEquals(expectedSamplesPosition, dbObject.get(VariantSourceMongo.SAMPLES_FIELD));
+
+        Map<String, Object> expectedMetadata = new HashMap<>();
+        expectedMetadata.put(DbsnpBatchToVariantSourceProcessor.DBSNP_BUILD_KEY, String.valueOf(DBSNP_BUILD));
+        expectedMetadata.put(DbsnpBatchToVariantSourceProcessor.DBSNP_BATCH_KEY, String.valueOf(DBSNP_BATCH_ID));
+        assertEquals(expectedMetadata, dbObject.get(VariantSourceMongo.METADATA_FIELD));
+    }
+}
@@ -0,0 +1,140 @@
+/*
+ * Copyright 2018 EMBL - European Bioinformatics Institute
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.ac.ebi.eva.dbsnpimporter.contig;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+public class ContigMappingCacheTest {
+
+    private static final String GENBANK_CONTIG = "GL456213.1";
+
+    private static final String REFSEQ_CONTIG = "NT_166283.1";
+
+    private static final String NEW_REFSEQ_CONTIG = "NT_new_contig.1";
+
+    private static final String NEW_GENBANK_CONTIG = "GL_new_contig.1";
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Rule
+    public ExpectedException thrown = ExpectedException.none();
+
+    private Path remoteReport;
+
+    private Path cacheDirectory;
+
+    private String mappingUrl;
+
+    @Before
+    public void setUp() throws Exception {
+        remoteReport = temporaryFolder.newFolder("remote").toPath().resolve("assembly_report.txt");
+        Files.copy(Paths.get("src/test/resources/AssemblyReport.txt"), remoteReport);
+        cacheDirectory = temporaryFolder.getRoot().toPath().resolve("cache");
+        mappingUrl = remoteReport.toUri().toString();
+    }
+
+    @Test
+    public void sameMappingAsParser() throws Exception {
+        Map<String, String> contigMap = new ContigMappingCache(cacheDirectory).getContigMap(mappingUrl);
+        assertEquals(new RefseqAssemblyReportParser(mappingUrl).getContigMap(), contigMap);
+        assertEquals(GENBANK_CONTIG, contigMap.get(REFSEQ_CONTIG));
+
+        assertEquals(contigMap, new ContigMappingCache(cacheDirectory).getContigMap(mappingUrl));
+        assertEquals(1, countFiles(".assembly_report.txt"));
+        assertEquals(1, countFiles(".contig_map"));
+        assertEquals(1, countFiles(".url"));
+    }
+
+    @Test
+    public void cachedMappingIsUsedOffline() throws Exception {
+        Map<String, String> contigMap = new ContigMappingCache(cacheDirectory).getContigMap(mappingUrl);
+        Files.delete(remoteReport);
+
+        assertEquals(contigMap, new ContigMappingCache(cacheDirectory).getContigMap(mappingUrl));
+    }
+
+    @Test
+    public void failOfflineWithoutCachedMapping() throws Exception {
+        Files.delete(remoteReport);
+        thrown.expect(IOException.class);
+        new ContigMappingCache(cacheDirectory).getContigMap(mappingUrl);
+    }
+
+    @Test
+    public void modifiedReportIsDownloadedAgain() throws Exception {
+        new ContigMappingCache(cacheDirectory).getContigMap(mappingUrl);
+
+        FileTime lastModified = Files.getLastModifiedTime(remoteReport);
+        String newLine = "new_contig\tunlocalized-scaffold\t1\tChromosome\t" + NEW_GENBANK_CONTIG + "\t=\t"
+                + NEW_REFSEQ_CONTIG + "\tC57BL/6J\t1000\tna\n";
+        Files.write(remoteReport, newLine.getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+        Files.setLastModifiedTime(remoteReport, FileTime.fromMillis(lastModified.toMillis() + 10000));
+
+        Map<String, String> contigMap = new ContigMappingCache(cacheDirectory).getContigMap(mappingUrl);
+        assertEquals(NEW_GENBANK_CONTIG, contigMap.get(NEW_REFSEQ_CONTIG));
+        assertEquals(GENBANK_CONTIG, contigMap.get(REFSEQ_CONTIG));
+        assertEquals(2, countFiles(".assembly_report.txt"));
+    }
+
+    @Test
+    public void corruptedMappingIsDownloadedAgain() throws Exception {
+        Map<String, String> contigMap = new ContigMappingCache(cacheDirectory).getContigMap(mappingUrl);
+        Path contigMapFile = findFile(".contig_map");
+        byte[] bytes = Files.readAllBytes(contigMapFile);
+        bytes[bytes.length / 2] ^= 0x7f;
+        Files.write(contigMapFile, bytes);
+
+        assertEquals(contigMap, new ContigMappingCache(cacheDirectory).getContigMap(mappingUrl));
+        assertEquals(contigMap, new ContigMappingCache(cacheDirectory).getContigMap(mappingUrl));
+    }
+
+    @Test
+    public void contigMappingWithCache() throws Exception {
+        ContigMapping contigMapping = new ContigMapping(mappingUrl, cacheDirectory.toString());
+        assertEquals(GENBANK_CONTIG, contigMapping.getGenbankOrDefault(REFSEQ_CONTIG));
+        assertNotNull(findFile(".contig_map"));
+    }
+
+    private long countFiles(String suffix) throws IOException {
+        try (Stream<Path> files = Files.list(cacheDirectory)) {
+            return files.filter(file -> file.toString().endsWith(suffix)).count();
+        }
+    }
+
+    private Path findFile(String suffix) throws IOException {
+        try (Stream<Path> files = Files.list(cacheDirectory)) {
+            return files.filter(file -> file.toString().endsWith(suffix)).findFirst().orElse(null);
+        }
+    }
+}
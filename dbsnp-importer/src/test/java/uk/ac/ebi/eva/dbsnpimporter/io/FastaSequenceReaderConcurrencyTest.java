@@ -0,0 +1,182 @@
+/*
+ * Copyright 2018 EMBL - European Bioinformatics Institute
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.ac.ebi.eva.dbsnpimporter.io;
+
+import htsjdk.samtools.reference.FastaSequenceIndexCreator;
+import htsjdk.samtools.reference.ReferenceSequenceFile;
+import htsjdk.samtools.reference.ReferenceSequenceFileFactory;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Reads random regions from many threads sharing a single {@link FastaSequenceReader}, and compares them with the
+ * regions read sequentially by htsjdk.
+ */
+public class FastaSequenceReaderConcurrencyTest {
+
+    private static final String[] CONTIGS = {"1", "2", "3"};
+
+    private static final int[] CONTIG_LENGTHS = {20000, 7001, 1};
+
+    private static final int[] LINE_LENGTHS = {60, 80, 70};
+
+    private static final String ALPHABET = "ACGTACGTACGTacgtNNRY";
+
+    private static final int THREADS = 16;
+
+    private static final int QUERIES = 20000;
+
+    private static final int MAX_REGION_LENGTH = 500;
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private Path fasta;
+
+    private List<Query> queries;
+
+    @Before
+    public void setUp() throws Exception {
+        Random random = new Random(42);
+        fasta = temporaryFolder.getRoot().toPath().resolve("random.fa");
+        StringBuilder fastaContents = new StringBuilder();
+        for (int i = 0; i < CONTIGS.length; i++) {
+            fastaContents.append('>').append(CONTIGS[i]).append('\n');
+            for (int position = 0; position < CONTIG_LENGTHS[i]; position++) {
+                fastaContents.append(ALPHABET.charAt(random.nextInt(ALPHABET.length())));
+                if ((position + 1) % LINE_LENGTHS[i] == 0 || position + 1 == CONTIG_LENGTHS[i]) {
+                    fastaContents.append('\n');
+                }
+            }
+        }
+        Files.write(fasta, fastaContents.toString().getBytes(StandardCharsets.US_ASCII));
+        FastaSequenceIndexCreator.create(fasta, true);
+
+        queries = new ArrayList<>(QUERIES);
+        try (ReferenceSequenceFile fastaFile = ReferenceSequenceFileFactory.getReferenceSequenceFile(fasta, true)) {
+            for (int i = 0; i < QUERIES; i++) {
+                int contig = random.nextInt(CONTIGS.length);
+                long start = 1 + random.nextInt(CONTIG_LENGTHS[contig]);
+                long end = Math.min(CONTIG_LENGTHS[contig], start + random.nextInt(MAX_REGION_LENGTH));
+                String expected = fastaFile.getSubsequenceAt(CONTIGS[contig], start, end).getBaseString();
+                queries.add(new Query(CONTIGS[contig], start, end, expected));
+            }
+        }
+    }
+
+    @Test
+    public void concurrentReadsFromFasta() throws Exception {
+        assertConcurrentReads();
+    }
+
+    @Test
+    public void concurrentReadsFromPackedReference() throws Exception {
+        PackedReferenceWriter.write(fasta, PackedReferenceFile.getPackedReferencePath(fasta));
+        assertConcurrentReads();
+    }
+
+    @Test
+    public void interruptedReadDoesNotBreakTheOtherThreads() throws Exception {
+        FastaSequenceReader reader = new FastaSequenceReader(fasta);
+        try {
+            Query query = queries.get(0);
+            Thread.currentThread().interrupt();
+            try {
+                reader.getSequence(query.contig, query.start, query.end);
+                fail("An interrupted read should fail");
+            } catch (UncheckedIOException e) {
+                assertTrue(Thread.interrupted());
+            }
+            assertEquals(query.expected, reader.getSequence(query.contig, query.start, query.end));
+        } finally {
+            reader.close();
+        }
+        assertConcurrentReads();
+    }
+
+    private void assertConcurrentReads() throws Exception {
+        FastaSequenceReader reader = new FastaSequenceReader(fasta);
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            List<Future<Integer>> results = new ArrayList<>();
+            for (int thread = 0; thread < THREADS; thread++) {
+                results.add(executor.submit(readQueries(reader, thread)));
+            }
+            int totalQueries = 0;
+            for (Future<Integer> result : results) {
+                totalQueries += result.get();
+            }
+            assertEquals(QUERIES, totalQueries);
+        } finally {
+            executor.shutdownNow();
+            reader.close();
+        }
+    }
+
+    private Callable<Integer> readQueries(FastaSequenceReader reader, int thread) {
+        return () -> {
+            int queriesRead = 0;
+            for (int i = thread; i < queries.size(); i += THREADS) {
+                Query query = queries.get(i);
+                assertEquals(query.toString(), query.expected,
+                             reader.getSequence(query.contig, query.start, query.end));
+                queriesRead++;
+            }
+            return queriesRead;
+        };
+    }
+
+    private static class Query {
+
+        private final String contig;
+
+        private final long start;
+
+        private final long end;
+
+        private final String expected;
+
+        Query(String contig, long start, long end, String expected) {
+            this.contig = contig;
+            this.start = start;
+            this.end = end;
+            this.expected = expected;
+        }
+
+        @Override
+        public String toString() {
+            return contig + ":" + start + "-" + end;
+        }
+    }
+}
@@ -0,0 +1,169 @@
+/*
+ * Copyright 2018 EMBL - European Bioinformatics Institute
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.ac.ebi.eva.dbsnpimporter.io;
+
+import htsjdk.samtools.reference.FastaSequenceIndexCreator;
+import htsjdk.samtools.reference.ReferenceSequenceFile;
+import htsjdk.samtools.reference.ReferenceSequenceFileFactory;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class PackedReferenceFileTest {
+
+    private static final String FIRST_SEQUENCE = "NNNNACGTacgtRYKMACGTNNNNnnnnACGTTGCAaaaaCCCCggggTTTTSWBDHVNacgtA";
+
+    private static final String SECOND_SEQUENCE = "GATTACAgattacaNN";
+
+    private static final String THIRD_SEQUENCE = "ACG";
+
+    @Rule
+    public final ExpectedException thrown = ExpectedException.none();
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private Path fasta;
+
+    @Before
+    public void setUp() throws Exception {
+        fasta = temporaryFolder.getRoot().toPath().resolve("reference.fa");
+        String fastaContents = ">1 first contig\n" + wrap(FIRST_SEQUENCE, 10)
+                + ">2\n" + wrap(SECOND_SEQUENCE, 10)
+                + ">MT\n" + wrap(THIRD_SEQUENCE, 10);
+        Files.write(fasta, fastaContents.getBytes(StandardCharsets.US_ASCII));
+        FastaSequenceIndexCreator.create(fasta, true);
+    }
+
+    private static String wrap(String sequence, int lineLength) {
+        StringBuilder wrapped = new StringBuilder();
+        for (int i = 0; i < sequence.length(); i += lineLength) {
+            wrapped.append(sequence, i, Math.min(sequence.length(), i + lineLength)).append('\n');
+        }
+        return wrapped.toString();
+    }
+
+    private Path writePackedReference() throws IOException {
+        Path packedReference = PackedReferenceFile.getPackedReferencePath(fasta);
+        PackedReferenceWriter.write(fasta, packedReference);
+        return packedReference;
+    }
+
+    @Test
+    public void allSubsequencesMatchFasta() throws Exception {
+        try (PackedReferenceFile packedReference = new PackedReferenceFile(writePackedReference());
+             ReferenceSequenceFile fastaFile = ReferenceSequenceFileFactory.getReferenceSequenceFile(fasta, true)) {
+            for (String contig : Arrays.asList("1", "2", "MT")) {
+                long length = packedReference.getSequenceLength(contig);
+                assertEquals(fastaFile.getSequence(contig).length(), length);
+                for (long start = 1; start <= length; start++) {
+                    for (long end = start; end <= length; end++) {
+                        assertEquals(fastaFile.getSubsequenceAt(contig, start, end).getBaseString(),
+                                     packedReference.getSequence(contig, start, end));
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void caseAndAmbiguousBasesArePreserved() throws Exception {
+        try (PackedReferenceFile packedReference = new PackedReferenceFile(writePackedReference())) {
+            assertEquals(FIRST_SEQUENCE, packedReference.getSequence("1", 1, FIRST_SEQUENCE.length()));
+            assertEquals(SECOND_SEQUENCE, packedReference.getSequence("2", 1, SECOND_SEQUENCE.length()));
+            assertEquals(THIRD_SEQUENCE, packedReference.getSequence("MT", 1, THIRD_SEQUENCE.length()));
+        }
+    }
+
+    @Test
+    public void missingContig() throws Exception {
+        try (PackedReferenceFile packedReference = new PackedReferenceFile(writePackedReference())) {
+            assertFalse(packedReference.containsSequence("3"));
+            assertEquals(-1, packedReference.getSequenceLength("3"));
+            thrown.expect(IllegalArgumentException.class);
+            packedReference.getSequence("3", 1, 1);
+        }
+    }
+
+    @Test
+    public void coordinatesOutOfBounds() throws Exception {
+        try (PackedReferenceFile packedReference = new PackedReferenceFile(writePackedReference())) {
+            thrown.expect(IllegalArgumentException.class);
+            packedReference.getSequence("MT", 2, 4);
+        }
+    }
+
+    @Test
+    public void notAPackedReference() throws Exception {
+        thrown.expect(IOException.class);
+        new PackedReferenceFile(fasta);
+    }
+
+    @Test
+    public void fastaSequenceReaderUsesPackedReference() throws Exception {
+        writePackedReference();
+        FastaSequenceReader fastaSequenceReader = new FastaSequenceReader(fasta);
+        try {
+            assertTrue(fastaSequenceReader.doesContigExist("2"));
+            assertEquals("acaNN", fastaSequenceReader.getSequence("2", 12, 16));
+
+            thrown.expect(IllegalArgumentException.class);
+            fastaSequenceReader.getSequence("2", 12, 17);
+        } finally {
+            fastaSequenceReader.close();
+        }
+    }
+
+    @Test
+    public void stalePackedReferenceIsIgnored() throws Exception {
+        Path packedReference = writePackedReference();
+        assertTrue(PackedReferenceFile.isUpToDate(packedReference, fasta));
+
+        Files.setLastModifiedTime(packedReference, FileTime.fromMillis(
+                Files.getLastModifiedTime(fasta).toMillis() - 1000));
+        assertFalse(PackedReferenceFile.isUpToDate(packedReference, fasta));
+    }
+
+    @Test
+    public void packedReferenceOfTestFasta() throws Exception {
+        String fastaFilename = "fastaWithNoDictionary.fa";
+        Path fastaCopy = Files.copy(Paths.get("src/test/resources/" + fastaFilename),
+                                    temporaryFolder.getRoot().toPath().resolve(fastaFilename));
+        PackedReferenceWriter.write(fastaCopy, PackedReferenceFile.getPackedReferencePath(fastaCopy));
+
+        FastaSequenceReader fastaSequenceReader = new FastaSequenceReader(fastaCopy);
+        try {
+            assertEquals("CAGCCGCAGTCCGGACAGCGCATGCGCCAGCCGCGAGACCGCACAGCGCATGCGCCAGCGCGAGTGACAGCG",
+                         fastaSequenceReader.getSequence("22", 174, 245));
+        } finally {
+            fastaSequenceReader.close();
+        }
+    }
+}
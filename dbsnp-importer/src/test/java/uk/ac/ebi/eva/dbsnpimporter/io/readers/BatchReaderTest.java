@@ -35,6 +35,7 @@ import javax.sql.DataSource;
 import java.util.List;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
 
 @RunWith(SpringRunner.class)
 @TestPropertySource({"classpath:application.properties"})
@@ -75,6 +76,17 @@ public class BatchReaderTest extends ReaderTest {
         assertEquals(3, batch.getSamples().size());
     }
 
+    @Test
+    public void testQueryWithStreamedSamples() throws Exception {
+        reader = new BatchReader(BATCH, dbsnpTestDatasource.getDatasource(), PAGE_SIZE, true);
+        reader.open(new ExecutionContext());
+        List<DbsnpBatch> batches = readAll(reader);
+
+        assertEquals(1, batches.size());
+        assertEquals(BATCH_NAME, batches.get(0).getBatchName());
+        assertNull(batches.get(0).getSamples());
+    }
+
     @Test
     public void testNotExistingBatch() throws Exception {
         int batchidNotExistingInDB = -9999;
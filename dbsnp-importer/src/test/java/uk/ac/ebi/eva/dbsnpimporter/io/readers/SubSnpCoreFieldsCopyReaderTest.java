@@ -0,0 +1,222 @@
+/*
+ * Copyright 2018 EMBL - European Bioinformatics Institute
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.ac.ebi.eva.dbsnpimporter.io.readers;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.junit.runner.RunWith;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.util.DigestUtils;
+
+import uk.ac.ebi.eva.dbsnpimporter.models.SubSnpCoreFields;
+import uk.ac.ebi.eva.dbsnpimporter.test.DbsnpTestDatasource;
+import uk.ac.ebi.eva.dbsnpimporter.test.configuration.TestConfiguration;
+
+import javax.sql.DataSource;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+/**
+ * The COPY streams are recorded from the rows of the test database, encoding every column in the binary format that
+ * PostgreSQL uses for its type, and the decoded rows are compared with the ones read by {@link SubSnpCoreFieldsReader}.
+ */
+@RunWith(SpringRunner.class)
+@TestPropertySource({"classpath:application.properties"})
+@ContextConfiguration(classes = {TestConfiguration.class})
+public class SubSnpCoreFieldsCopyReaderTest extends ReaderTest {
+
+    private static final String CHICKEN_ASSEMBLY_5 = "Gallus_gallus-5.0";
+
+    private static final int BATCH_1 = 11825;
+
+    private static final int BATCH_2 = 11828;
+
+    private static final int BATCH_3 = 11831;
+
+    private static final int BATCH_4 = 1061908;
+
+    private DataSource dataSource;
+
+    @Autowired
+    private DbsnpTestDatasource dbsnpTestDatasource;
+
+    private SubSnpCoreFieldsCopyReader reader;
+
+    @Rule
+    public ExpectedException exception = ExpectedException.none();
+
+    @Before
+    public void setUp() {
+        dataSource = dbsnpTestDatasource.getDatasource();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (reader != null) {
+            reader.close();
+        }
+    }
+
+    @Test
+    public void testSql() throws Exception {
+        reader = new SubSnpCoreFieldsCopyReader(BATCH_1, CHICKEN_ASSEMBLY_5, dataSource);
+        assertEquals("COPY (SELECT " + String.join(",", SubSnpCoreFieldsCopyDecoder.COLUMNS) +
+                             " FROM dbsnp_variant_load_d8c757988871529f37061fa9c79477a5 WHERE batch_id = 11825" +
+                             " ORDER BY load_order) TO STDOUT (FORMAT binary)",
+                     reader.buildSql(BATCH_1, CHICKEN_ASSEMBLY_5));
+    }
+
+    @Test
+    public void testResumedSql() throws Exception {
+        ExecutionContext executionContext = new ExecutionContext();
+        reader = buildReader(BATCH_2, CHICKEN_ASSEMBLY_5, recordCopyStream(BATCH_2, CHICKEN_ASSEMBLY_5));
+        SubSnpCoreFields first = reader.read();
+        reader.update(executionContext);
+        reader.close();
+
+        assertEquals("COPY (SELECT " + String.join(",", SubSnpCoreFieldsCopyDecoder.COLUMNS) +
+                             " FROM dbsnp_variant_load_d8c757988871529f37061fa9c79477a5 WHERE batch_id = 11828" +
+                             " AND load_order > " + first.getLoadOrder() +
+                             " ORDER BY load_order) TO STDOUT (FORMAT binary)",
+                     reader.buildSql(BATCH_2, CHICKEN_ASSEMBLY_5, executionContext.getLong(
+                             reader.getExecutionContextKey(SubSnpCoreFieldsReader.LAST_LOAD_ORDER_KEY))));
+    }
+
+    @Test
+    public void readsSameRowsAsCursorReader() throws Exception {
+        assertSameRowsAsCursorReader(BATCH_1, CHICKEN_ASSEMBLY_5);
+        assertSameRowsAsCursorReader(BATCH_2, CHICKEN_ASSEMBLY_5);
+        assertSameRowsAsCursorReader(BATCH_3, CHICKEN_ASSEMBLY_5);
+        assertSameRowsAsCursorReader(BATCH_4, CHICKEN_ASSEMBLY_5);
+    }
+
+    private void assertSameRowsAsCursorReader(int batch, String assembly) throws Exception {
+        SubSnpCoreFieldsReader cursorReader = new SubSnpCoreFieldsReader(batch, assembly, dataSource, 100);
+        cursorReader.afterPropertiesSet();
+        cursorReader.open(new ExecutionContext());
+        List<SubSnpCoreFields> expected = readAll(cursorReader);
+        cursorReader.close();
+        assertFalse(expected.isEmpty());
+
+        reader = buildReader(batch, assembly, recordCopyStream(batch, assembly));
+        assertEquals(expected, readAll(reader));
+        reader.close();
+    }
+
+    @Test
+    public void emptyBatch() throws Exception {
+        int batchNotInDatabase = 1;
+        reader = buildReader(batchNotInDatabase, CHICKEN_ASSEMBLY_5,
+                             recordCopyStream(batchNotInDatabase, CHICKEN_ASSEMBLY_5));
+        assertNull(reader.read());
+    }
+
+    @Test
+    public void textFormatIsRejected() throws Exception {
+        byte[] textCopy = "26201546\t1\t13677177\n\\.\n".getBytes(StandardCharsets.UTF_8);
+        exception.expect(IllegalArgumentException.class);
+        new SubSnpCoreFieldsCopyDecoder(new ByteArrayInputStream(textCopy));
+    }
+
+    private SubSnpCoreFieldsCopyReader buildReader(int batch, String assembly, byte[] copyStream) {
+        SubSnpCoreFieldsCopyReader copyReader = new SubSnpCoreFieldsCopyReader(batch, assembly, dataSource) {
+            @Override
+            protected InputStream openCopyStream() {
+                return new ByteArrayInputStream(copyStream);
+            }
+        };
+        copyReader.open(new ExecutionContext());
+        return copyReader;
+    }
+
+    /**
+     * Encodes the rows of a batch as PostgreSQL sends them with COPY ... TO STDOUT (FORMAT binary)
+     */
+    private byte[] recordCopyStream(int batch, String assembly) throws SQLException, IOException {
+        String sql = "SELECT " + String.join(",", SubSnpCoreFieldsCopyDecoder.COLUMNS) +
+                " FROM dbsnp_variant_load_" + DigestUtils.md5DigestAsHex(assembly.getBytes()) +
+                " WHERE batch_id = ? ORDER BY load_order";
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream output = new DataOutputStream(bytes);
+        output.write(SubSnpCoreFieldsCopyDecoder.SIGNATURE);
+        output.writeInt(0);
+        output.writeInt(0);
+
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement statement = connection.prepareStatement(sql)) {
+            statement.setInt(1, batch);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                ResultSetMetaData metaData = resultSet.getMetaData();
+                while (resultSet.next()) {
+                    output.writeShort(metaData.getColumnCount());
+                    for (int column = 1; column <= metaData.getColumnCount(); column++) {
+                        writeField(output, resultSet, column, metaData.getColumnType(column));
+                    }
+                }
+            }
+        }
+        output.writeShort(-1);
+        return bytes.toByteArray();
+    }
+
+    private void writeField(DataOutputStream output, ResultSet resultSet, int column, int type)
+            throws SQLException, IOException {
+        if (resultSet.getObject(column) == null) {
+            output.writeInt(-1);
+            return;
+        }
+        switch (type) {
+            case Types.SMALLINT:
+                output.writeInt(Short.BYTES);
+                output.writeShort(resultSet.getShort(column));
+                break;
+            case Types.INTEGER:
+                output.writeInt(Integer.BYTES);
+                output.writeInt(resultSet.getInt(column));
+                break;
+            case Types.BIGINT:
+                output.writeInt(Long.BYTES);
+                output.writeLong(resultSet.getLong(column));
+                break;
+            default:
+                byte[] text = resultSet.getString(column).getBytes(StandardCharsets.UTF_8);
+                output.writeInt(text.length);
+                output.write(text);
+        }
+    }
+}
@@ -319,4 +319,42 @@ public class SubSnpCoreFieldsReaderTest extends ReaderTest {
         List<SubSnpCoreFields> list = readAll(reader);
         assertEquals(0, list.size());
     }
+
+    @Test
+    public void restartResumesAfterLastLoadOrder() throws Exception {
+        reader = buildReader(BATCH_2, CHICKEN_ASSEMBLY_5, 100);
+        List<SubSnpCoreFields> allSnps = readAll(reader);
+        reader.close();
+
+        ExecutionContext executionContext = new ExecutionContext();
+        reader = new SubSnpCoreFieldsReader(BATCH_2, CHICKEN_ASSEMBLY_5, dataSource, 100);
+        reader.afterPropertiesSet();
+        reader.open(executionContext);
+        reader.read();
+        reader.read();
+        reader.update(executionContext);
+        reader.close();
+        String lastLoadOrderKey = reader.getExecutionContextKey(SubSnpCoreFieldsReader.LAST_LOAD_ORDER_KEY);
+        assertEquals(allSnps.get(1).getLoadOrder().longValue(), executionContext.getLong(lastLoadOrderKey));
+
+        reader = new SubSnpCoreFieldsReader(BATCH_2, CHICKEN_ASSEMBLY_5, dataSource, 100);
+        reader.afterPropertiesSet();
+        reader.open(executionContext);
+        assertEquals(allSnps.subList(2, allSnps.size()), readAll(reader));
+    }
+
+    @Test
+    public void restartFromLegacyExecutionContextSkipsReadItems() throws Exception {
+        reader = buildReader(BATCH_2, CHICKEN_ASSEMBLY_5, 100);
+        List<SubSnpCoreFields> allSnps = readAll(reader);
+        reader.close();
+
+        ExecutionContext executionContext = new ExecutionContext();
+        executionContext.putInt("JdbcCursorItemReader.read.count", 2);
+
+        reader = new SubSnpCoreFieldsReader(BATCH_2, CHICKEN_ASSEMBLY_5, dataSource, 100);
+        reader.afterPropertiesSet();
+        reader.open(executionContext);
+        assertEquals(allSnps.subList(2, allSnps.size()), readAll(reader));
+    }
 }
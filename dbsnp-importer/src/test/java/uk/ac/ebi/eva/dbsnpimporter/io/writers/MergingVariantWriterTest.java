@@ -0,0 +1,131 @@
+/*
+ * Copyright 2018 EMBL - European Bioinformatics Institute
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.ac.ebi.eva.dbsnpimporter.io.writers;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import uk.ac.ebi.eva.commons.core.models.IVariant;
+import uk.ac.ebi.eva.commons.core.models.pipeline.Variant;
+import uk.ac.ebi.eva.commons.core.models.pipeline.VariantSourceEntry;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+public class MergingVariantWriterTest {
+
+    private static final String BATCH = "11825";
+
+    private static final String OTHER_BATCH = "11828";
+
+    private List<IVariant> written;
+
+    private MergingVariantWriter writer;
+
+    @Before
+    public void setUp() {
+        written = new ArrayList<>();
+        writer = new MergingVariantWriter(written::addAll);
+    }
+
+    @Test
+    public void variantsWithoutDuplicatesAreWrittenAsTheyAre() throws Exception {
+        Variant first = buildVariant(100, "A", "T", "rs1", "ss1", BATCH, "0/1");
+        Variant second = buildVariant(100, "A", "G", "rs2", "ss2", BATCH, "0/1");
+        Variant third = buildVariant(200, "A", "T", "rs3", "ss3", BATCH, "0/1");
+
+        writer.write(Arrays.asList(first, second, third));
+
+        assertEquals(3, written.size());
+        assertSame(first, written.get(0));
+        assertSame(second, written.get(1));
+        assertSame(third, written.get(2));
+    }
+
+    @Test
+    public void duplicatesWithEqualSourceEntriesAreMerged() throws Exception {
+        Variant first = buildVariant(100, "A", "T", "rs1", "ss1", BATCH, "0/1");
+        Variant other = buildVariant(300, "C", "T", "rs5", "ss5", BATCH, "0/1");
+        Variant duplicate = buildVariant(100, "A", "T", "rs1", "ss2", BATCH, "0/1");
+
+        writer.write(Arrays.asList(first, other, duplicate));
+
+        assertEquals(2, written.size());
+        IVariant merged = written.get(0);
+        assertEquals(first.getStart(), merged.getStart());
+        assertEquals(new HashSet<>(Arrays.asList("rs1", "ss1", "ss2")), merged.getDbsnpIds());
+        assertEquals(first.getMainId(), merged.getMainId());
+        assertEquals(new HashSet<>(first.getSourceEntries()), new HashSet<>(merged.getSourceEntries()));
+        assertSame(other, written.get(1));
+        assertEquals(3, writer.getReceivedVariants());
+        assertEquals(2, writer.getWrittenVariants());
+    }
+
+    @Test
+    public void sourceEntriesOfDifferentBatchesAreMerged() throws Exception {
+        Variant first = buildVariant(100, "A", "T", "rs1", "ss1", BATCH, "0/1");
+        Variant duplicate = buildVariant(100, "A", "T", "rs1", "ss2", OTHER_BATCH, "1/1");
+
+        writer.write(Arrays.asList(first, duplicate));
+
+        assertEquals(1, written.size());
+        assertEquals(new HashSet<>(Arrays.asList("rs1", "ss1", "ss2")), written.get(0).getDbsnpIds());
+        assertEquals(2, written.get(0).getSourceEntries().size());
+    }
+
+    @Test
+    public void differentSourceEntriesOfTheSameBatchAreNotMerged() throws Exception {
+        Variant first = buildVariant(100, "A", "T", "rs1", "ss1", BATCH, "0/1");
+        Variant duplicate = buildVariant(100, "A", "T", "rs1", "ss2", BATCH, "1/1");
+        Variant third = buildVariant(100, "A", "T", "rs1", "ss3", BATCH, "1/1");
+
+        writer.write(Arrays.asList(first, duplicate, third));
+
+        assertEquals(2, written.size());
+        assertSame(first, written.get(0));
+        assertEquals(new HashSet<>(Arrays.asList("rs1", "ss2", "ss3")), written.get(1).getDbsnpIds());
+    }
+
+    @Test
+    public void mainIdIsTakenFromTheFirstDuplicateThatHasOne() throws Exception {
+        Variant first = buildVariant(100, "A", "T", "rs1", "ss1", BATCH, "0/1");
+        first.setMainId(null);
+        Variant duplicate = buildVariant(100, "A", "T", "rs1", "ss2", OTHER_BATCH, "1/1");
+
+        writer.write(Arrays.asList(first, duplicate));
+
+        assertEquals(1, written.size());
+        assertEquals("rs1", written.get(0).getMainId());
+    }
+
+    private Variant buildVariant(long start, String reference, String alternate, String rsId, String ssId,
+                                 String batch, String genotype) {
+        Variant variant = new Variant("1", start, start + reference.length() - 1, reference, alternate);
+        variant.setMainId(rsId);
+        variant.setDbsnpIds(new HashSet<>(Arrays.asList(rsId, ssId)));
+        VariantSourceEntry sourceEntry = new VariantSourceEntry(batch, batch, new String[0], "GT", null, null,
+                                                                new ArrayList<>());
+        sourceEntry.addSampleData(Collections.singletonMap("GT", genotype));
+        variant.addSourceEntry(sourceEntry);
+        return variant;
+    }
+}
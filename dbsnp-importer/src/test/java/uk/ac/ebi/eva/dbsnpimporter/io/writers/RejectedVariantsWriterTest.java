@@ -0,0 +1,183 @@
+/*
+ * Copyright 2018 EMBL - European Bioinformatics Institute
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.ac.ebi.eva.dbsnpimporter.io.writers;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import uk.ac.ebi.eva.dbsnpimporter.jobs.steps.processors.MissingCoordinatesFilterProcessor;
+import uk.ac.ebi.eva.dbsnpimporter.jobs.steps.processors.RejectionReason;
+import uk.ac.ebi.eva.dbsnpimporter.models.LocusType;
+import uk.ac.ebi.eva.dbsnpimporter.models.Orientation;
+import uk.ac.ebi.eva.dbsnpimporter.models.SubSnpCoreFields;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+public class RejectedVariantsWriterTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void rejectedVariantsAreWrittenAsJsonLines() throws Exception {
+        Path file = temporaryFolder.getRoot().toPath().resolve("rejected").resolve("batch.jsonl.gz");
+        RejectedVariantsWriter writer = new RejectedVariantsWriter(file);
+        writer.open();
+
+        writer.accept(buildSubSnpCoreFields(1L, 10L, 100L), RejectionReason.AMBIGUOUS_ALLELES);
+        for (long ssId = 2; ssId <= 1000; ssId++) {
+            writer.accept(buildSubSnpCoreFields(ssId, null, 100L + ssId), RejectionReason.ASSEMBLY_MISMATCH);
+        }
+        writer.close();
+
+        assertEquals(1000, writer.getWrittenVariants());
+        assertEquals(0, writer.getDroppedVariants());
+        List<JsonNode> lines = readLines(file);
+        assertEquals(1000, lines.size());
+
+        JsonNode first = lines.get(0);
+        assertEquals("ss1", first.get("ss").asText());
+        assertEquals("rs10", first.get("rs").asText());
+        assertEquals("batch", first.get("batch").asText());
+        assertEquals(RejectionReason.AMBIGUOUS_ALLELES.name(), first.get("reason").asText());
+        assertEquals("NT_455866.1", first.get("contig").asText());
+        assertEquals(1, first.get("contigStart").asLong());
+        assertEquals("4", first.get("chromosome").asText());
+        assertEquals(100, first.get("chromosomeStart").asLong());
+        assertEquals("T/A", first.get("alleles").asText());
+        assertEquals("T", first.get("reference").asText());
+        assertEquals("A", first.get("alternate").asText());
+
+        JsonNode last = lines.get(999);
+        assertEquals("ss1000", last.get("ss").asText());
+        assertFalse(last.has("rs"));
+        assertEquals(RejectionReason.ASSEMBLY_MISMATCH.name(), last.get("reason").asText());
+    }
+
+    @Test
+    public void filtersFeedTheWriter() throws Exception {
+        Path file = temporaryFolder.getRoot().toPath().resolve("batch.jsonl.gz");
+        RejectedVariantsWriter writer = new RejectedVariantsWriter(file);
+        MissingCoordinatesFilterProcessor filter = new MissingCoordinatesFilterProcessor();
+        filter.addRejectionListener(writer);
+        writer.open();
+
+        SubSnpCoreFields withoutCoordinates = new SubSnpCoreFields(
+                5L, Orientation.FORWARD, null, Orientation.FORWARD, "NT_455866.1", null, null, Orientation.FORWARD,
+                LocusType.SNP, "4", null, null, "T", "T", "A", "T/A", "", null, null, Orientation.FORWARD, null,
+                null, null, Orientation.FORWARD, null, null, "batch");
+        assertNull(filter.process(withoutCoordinates));
+        writer.close();
+
+        List<JsonNode> lines = readLines(file);
+        assertEquals(1, lines.size());
+        assertEquals("ss5", lines.get(0).get("ss").asText());
+        assertEquals(RejectionReason.MISSING_COORDINATES.name(), lines.get(0).get("reason").asText());
+        assertFalse(lines.get(0).has("contigStart"));
+    }
+
+    @Test
+    public void fullQueueMakesTheStepWait() throws Exception {
+        Path file = temporaryFolder.getRoot().toPath().resolve("batch.jsonl.gz");
+        RejectedVariantsWriter writer = new RejectedVariantsWriter(file, 1);
+        writer.open();
+
+        for (long ssId = 1; ssId <= 1000; ssId++) {
+            writer.accept(buildSubSnpCoreFields(ssId, null, 100L + ssId), RejectionReason.ASSEMBLY_MISMATCH);
+        }
+        writer.close();
+
+        assertEquals(1000, writer.getWrittenVariants());
+        assertEquals(0, writer.getDroppedVariants());
+        assertEquals(1000, readLines(file).size());
+    }
+
+    @Test
+    public void restartedWriterAppendsToTheFile() throws Exception {
+        Path file = temporaryFolder.getRoot().toPath().resolve("batch.jsonl.gz");
+        RejectedVariantsWriter writer = new RejectedVariantsWriter(file);
+        writer.open();
+        writer.accept(buildSubSnpCoreFields(1L, 10L, 100L), RejectionReason.AMBIGUOUS_ALLELES);
+        writer.close();
+
+        writer.open();
+        writer.accept(buildSubSnpCoreFields(2L, 20L, 200L), RejectionReason.ASSEMBLY_MISMATCH);
+        writer.close();
+
+        List<JsonNode> lines = readLines(file);
+        assertEquals(2, lines.size());
+        assertEquals("ss1", lines.get(0).get("ss").asText());
+        assertEquals("ss2", lines.get(1).get("ss").asText());
+    }
+
+    @Test
+    public void variantsRejectedWhileClosedAreCountedAsDropped() throws Exception {
+        Path file = temporaryFolder.getRoot().toPath().resolve("batch.jsonl.gz");
+        RejectedVariantsWriter writer = new RejectedVariantsWriter(file, 1);
+
+        writer.accept(buildSubSnpCoreFields(1L, 10L, 100L), RejectionReason.AMBIGUOUS_ALLELES);
+
+        assertEquals(1, writer.getDroppedVariants());
+        assertFalse(Files.exists(file));
+    }
+
+    @Test
+    public void disabledWriterIgnoresTheVariants() throws Exception {
+        RejectedVariantsWriter writer = new RejectedVariantsWriter(null);
+        writer.open();
+        writer.accept(buildSubSnpCoreFields(1L, 10L, 100L), RejectionReason.AMBIGUOUS_ALLELES);
+        writer.close();
+
+        assertFalse(writer.isEnabled());
+        assertEquals(0, writer.getWrittenVariants());
+        assertEquals(0, writer.getDroppedVariants());
+    }
+
+    private SubSnpCoreFields buildSubSnpCoreFields(long ssId, Long rsId, long chromosomeStart) {
+        return new SubSnpCoreFields(ssId, Orientation.FORWARD, rsId, Orientation.FORWARD, "NT_455866.1", 1L, 1L,
+                                    Orientation.FORWARD, LocusType.SNP, "4", chromosomeStart, chromosomeStart, "T",
+                                    "T", "A", "T/A", "", null, null, Orientation.FORWARD, null, null, null,
+                                    Orientation.FORWARD, null, null, "batch");
+    }
+
+    private List<JsonNode> readLines(Path file) throws IOException {
+        ObjectMapper objectMapper = new ObjectMapper();
+        List<JsonNode> lines = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new GZIPInputStream(Files.newInputStream(file)), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lines.add(objectMapper.readTree(line));
+            }
+        }
+        return lines;
+    }
+}
@@ -0,0 +1,151 @@
+/*
+ * Copyright 2018 EMBL - European Bioinformatics Institute
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.ac.ebi.eva.dbsnpimporter.io.writers;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.mockito.ArgumentCaptor;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.item.ItemStreamReader;
+import org.springframework.batch.item.support.ListItemReader;
+import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+
+import uk.ac.ebi.eva.commons.core.models.Aggregation;
+import uk.ac.ebi.eva.commons.core.models.IVariantSource;
+import uk.ac.ebi.eva.commons.core.models.StudyType;
+import uk.ac.ebi.eva.commons.core.models.VariantSource;
+import uk.ac.ebi.eva.commons.core.models.pedigree.Sex;
+import uk.ac.ebi.eva.commons.mongodb.entities.VariantSourceMongo;
+import uk.ac.ebi.eva.dbsnpimporter.models.Sample;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+public class StreamingSamplesWriterTest {
+
+    private static final String BATCH_NAME = "CHICKEN_SNPS_BROILER";
+
+    private static final String COLLECTION = "files";
+
+    @Rule
+    public ExpectedException thrown = ExpectedException.none();
+
+    private MongoOperations mongoOperations;
+
+    private List<IVariantSource> writtenSources;
+
+    private IVariantSource variantSource;
+
+    @Before
+    public void setUp() {
+        mongoOperations = mock(MongoOperations.class);
+        writtenSources = new ArrayList<>();
+        variantSource = new VariantSource(BATCH_NAME, BATCH_NAME, BATCH_NAME, BATCH_NAME, StudyType.COLLECTION,
+                                          Aggregation.NONE, new Date(), new HashMap<>(), new HashMap<>(), null);
+    }
+
+    @Test
+    public void samplesAreWrittenInPages() throws Exception {
+        StreamingSamplesWriter writer = buildWriter(2, new Sample(BATCH_NAME, "R.JF", Sex.FEMALE, null, null, null),
+                                                    new Sample(BATCH_NAME, "BROILER", Sex.MALE, null, null, null),
+                                                    new Sample(BATCH_NAME, "UNKSEX", null, null, null, null));
+
+        writer.write(Collections.singletonList(variantSource));
+
+        assertEquals(Collections.singletonList(variantSource), writtenSources);
+        ArgumentCaptor<Update> updates = ArgumentCaptor.forClass(Update.class);
+        verify(mongoOperations, times(2)).updateFirst(any(Query.class), updates.capture(), eq(COLLECTION));
+
+        Map<String, Object> samplesPosition = new HashMap<>();
+        for (Update update : updates.getAllValues()) {
+            samplesPosition.putAll((Map<String, Object>) update.getUpdateObject().get("$set"));
+        }
+        Map<String, Object> expectedSamplesPosition = new HashMap<>();
+        expectedSamplesPosition.put(VariantSourceMongo.SAMPLES_FIELD + ".R£JF", 0);
+        expectedSamplesPosition.put(VariantSourceMongo.SAMPLES_FIELD + ".BROILER", 1);
+        expectedSamplesPosition.put(VariantSourceMongo.SAMPLES_FIELD + ".UNKSEX", 2);
+        assertEquals(expectedSamplesPosition, samplesPosition);
+    }
+
+    @Test
+    public void batchWithoutSamples() throws Exception {
+        StreamingSamplesWriter writer = buildWriter(2);
+
+        writer.write(Collections.singletonList(variantSource));
+
+        assertEquals(Collections.singletonList(variantSource), writtenSources);
+        verify(mongoOperations, never()).updateFirst(any(Query.class), any(Update.class), eq(COLLECTION));
+    }
+
+    @Test
+    public void failWithDuplicateSamples() throws Exception {
+        Sample sample = new Sample(BATCH_NAME, "sample1", Sex.MALE, null, null, null);
+        StreamingSamplesWriter writer = buildWriter(10, sample, sample);
+
+        thrown.expect(IllegalArgumentException.class);
+        writer.write(Collections.singletonList(variantSource));
+    }
+
+    @Test
+    public void failWithMultipleBatches() throws Exception {
+        StreamingSamplesWriter writer = buildWriter(10, new Sample(BATCH_NAME, "sample1", Sex.MALE, null, null, null),
+                                                    new Sample("another_study", "sample2", Sex.MALE, null, null, null));
+
+        thrown.expect(IllegalArgumentException.class);
+        writer.write(Collections.singletonList(variantSource));
+    }
+
+    private StreamingSamplesWriter buildWriter(int pageSize, Sample... samples) {
+        return new StreamingSamplesWriter(writtenSources::addAll, mongoOperations, COLLECTION,
+                                          new SampleListReader(Arrays.asList(samples)), pageSize, "£");
+    }
+
+    private static class SampleListReader extends ListItemReader<Sample> implements ItemStreamReader<Sample> {
+
+        SampleListReader(List<Sample> samples) {
+            super(new ArrayList<>(samples));
+        }
+
+        @Override
+        public void open(ExecutionContext executionContext) {
+        }
+
+        @Override
+        public void update(ExecutionContext executionContext) {
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,241 @@
+/*
+ * Copyright 2018 EMBL - European Bioinformatics Institute
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.ac.ebi.eva.dbsnpimporter.io.writers;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.item.ItemStreamException;
+import org.springframework.batch.item.ItemStreamReader;
+import org.springframework.batch.item.support.ListItemReader;
+
+import uk.ac.ebi.eva.dbsnpimporter.io.readers.WriteBehindCheckpointReader;
+import uk.ac.ebi.eva.dbsnpimporter.metrics.ImportMetrics;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class WriteBehindItemWriterTest {
+
+    @Rule
+    public ExpectedException thrown = ExpectedException.none();
+
+    private WriteBehindItemWriter<Integer> writer;
+
+    @After
+    public void tearDown() {
+        if (writer != null) {
+            writer.close();
+        }
+    }
+
+    @Test
+    public void synchronousWrites() throws Exception {
+        List<Integer> written = new ArrayList<>();
+        writer = new WriteBehindItemWriter<>(written::addAll, 0);
+        writer.open(new ExecutionContext());
+
+        writer.write(Arrays.asList(1, 2));
+        writer.write(Collections.singletonList(3));
+
+        assertEquals(Arrays.asList(1, 2, 3), written);
+        assertEquals(2, writer.getSubmittedWrites());
+        assertEquals(2, writer.getAcknowledgedWrites());
+    }
+
+    @Test
+    public void allChunksAreWrittenWithWritesInFlight() throws Exception {
+        List<Integer> written = Collections.synchronizedList(new ArrayList<>());
+        writer = new WriteBehindItemWriter<>(written::addAll, 4);
+        writer.open(new ExecutionContext());
+
+        List<Integer> expected = new ArrayList<>();
+        List<Integer> chunk = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            chunk.add(i);
+            expected.add(i);
+            if (chunk.size() == 10) {
+                writer.write(chunk);
+                // the step reuses the list for the next chunk
+                chunk.clear();
+            }
+        }
+        writer.flush();
+
+        assertEquals(100, writer.getAcknowledgedWrites());
+        Collections.sort(written);
+        assertEquals(expected, written);
+    }
+
+    @Test
+    public void acknowledgedWritesHaveNoGaps() throws Exception {
+        CountDownLatch firstChunkReleased = new CountDownLatch(1);
+        CountDownLatch secondChunkWritten = new CountDownLatch(1);
+        writer = new WriteBehindItemWriter<>(items -> {
+            if (items.contains(1)) {
+                firstChunkReleased.await();
+            } else {
+                secondChunkWritten.countDown();
+            }
+        }, 2);
+        writer.open(new ExecutionContext());
+
+        writer.write(Collections.singletonList(1));
+        writer.write(Collections.singletonList(2));
+        assertTrue(secondChunkWritten.await(10, TimeUnit.SECONDS));
+        assertEquals(0, writer.getAcknowledgedWrites());
+
+        firstChunkReleased.countDown();
+        writer.flush();
+        assertEquals(2, writer.getAcknowledgedWrites());
+    }
+
+    @Test
+    public void failedChunkIsRetriedOnce() throws Exception {
+        AtomicInteger attempts = new AtomicInteger();
+        writer = new WriteBehindItemWriter<>(items -> {
+            if (attempts.incrementAndGet() == 1) {
+                throw new IllegalStateException("duplicate key");
+            }
+        }, 1);
+        writer.open(new ExecutionContext());
+
+        writer.write(Collections.singletonList(1));
+        writer.flush();
+        assertEquals(2, attempts.get());
+        assertEquals(1, writer.getAcknowledgedWrites());
+    }
+
+    @Test
+    public void failureIsThrownByNextCall() throws Exception {
+        writer = new WriteBehindItemWriter<>(items -> {
+            throw new IllegalStateException("Mongo is down");
+        }, 2);
+        writer.open(new ExecutionContext());
+
+        writer.write(Collections.singletonList(1));
+        WriteBehindItemWriter<Integer> failingWriter = writer;
+        writer = null;
+        thrown.expect(IllegalStateException.class);
+        failingWriter.flush();
+    }
+
+    @Test
+    public void failureIsThrownByClose() throws Exception {
+        writer = new WriteBehindItemWriter<>(items -> {
+            throw new IllegalStateException("Mongo is down");
+        }, 2);
+        writer.open(new ExecutionContext());
+
+        writer.write(Collections.singletonList(1));
+        WriteBehindItemWriter<Integer> failingWriter = writer;
+        writer = null;
+        thrown.expect(ItemStreamException.class);
+        failingWriter.close();
+    }
+
+    @Test
+    public void checkpointWaitsForTheWrites() throws Exception {
+        CountDownLatch writesReleased = new CountDownLatch(1);
+        writer = new WriteBehindItemWriter<>(items -> writesReleased.await(), 2);
+        writer.open(new ExecutionContext());
+        ExecutionContext stepContext = new ExecutionContext();
+        WriteBehindCheckpointReader<Integer> reader = new WriteBehindCheckpointReader<>(
+                new CountingReader(Arrays.asList(1, 2, 3)), writer);
+        reader.open(stepContext);
+
+        writer.write(Collections.singletonList(reader.read()));
+        reader.update(stepContext);
+        assertFalse(stepContext.containsKey(CountingReader.COUNT_KEY));
+
+        writesReleased.countDown();
+        writer.write(Collections.singletonList(reader.read()));
+        writer.flush();
+        reader.update(stepContext);
+        assertEquals(2, stepContext.getInt(CountingReader.COUNT_KEY));
+
+        writer.write(Collections.singletonList(reader.read()));
+        assertNull(reader.read());
+        reader.update(stepContext);
+        assertEquals(3, stepContext.getInt(CountingReader.COUNT_KEY));
+        assertEquals(3, writer.getAcknowledgedWrites());
+    }
+
+    @Test
+    public void writeLatencyIsRecordedAroundTheDelegate() throws Exception {
+        ImportMetrics importMetrics = new ImportMetrics(new SimpleMeterRegistry());
+        writer = new WriteBehindItemWriter<>(items -> Thread.sleep(50), 2, importMetrics);
+        writer.open(new ExecutionContext());
+
+        writer.write(Arrays.asList(1, 2));
+        writer.write(Collections.singletonList(3));
+        writer.flush();
+
+        Map<String, Object> write = (Map<String, Object>) importMetrics.getSummary().get("write");
+        assertEquals(2L, write.get("count"));
+        assertEquals(3L, write.get("items"));
+        // 3 items in 2 writes of at least 50 ms each, instead of the time taken to hand them over to the executor
+        assertTrue((double) write.get("itemsPerSecond") <= 30.0);
+    }
+
+    private static class CountingReader extends ListItemReader<Integer> implements ItemStreamReader<Integer> {
+
+        static final String COUNT_KEY = "count";
+
+        private int count;
+
+        CountingReader(List<Integer> items) {
+            super(new ArrayList<>(items));
+        }
+
+        @Override
+        public Integer read() {
+            Integer item = super.read();
+            if (item != null) {
+                count++;
+            }
+            return item;
+        }
+
+        @Override
+        public void open(ExecutionContext executionContext) {
+            count = 0;
+        }
+
+        @Override
+        public void update(ExecutionContext executionContext) {
+            executionContext.putInt(COUNT_KEY, count);
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -31,6 +31,7 @@ import java.util.List;
 import java.util.Map;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 public class DbsnpBatchToVariantSourceProcessorTest {
 
@@ -112,4 +113,14 @@ public class DbsnpBatchToVariantSourceProcessorTest {
         expectedMetadata.put(DbsnpBatchToVariantSourceProcessor.DBSNP_BATCH_KEY, String.valueOf(DBSNP_BATCH_ID));
         assertEquals(expectedMetadata, variantSource.getMetadata());
     }
-}
\ No newline at end of file
+
+    @Test
+    public void streamedSamplesAreNotInTheSource() throws Exception {
+        DbsnpBatch dbsnpBatch = new DbsnpBatch(DBSNP_BATCH_ID, DBSNP_BATCH_HANDLE, DBSNP_BATCH_NAME);
+
+        IVariantSource variantSource = processor.process(dbsnpBatch);
+
+        assertEquals(DBSNP_BATCH_NAME, variantSource.getFileId());
+        assertTrue(variantSource.getSamplesPosition().isEmpty());
+    }
+}
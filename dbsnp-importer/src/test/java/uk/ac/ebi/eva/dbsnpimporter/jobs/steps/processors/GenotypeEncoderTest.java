@@ -0,0 +1,91 @@
+/*
+ * Copyright 2018 EMBL - European Bioinformatics Institute
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.ac.ebi.eva.dbsnpimporter.jobs.steps.processors;
+
+import org.junit.Test;
+
+import uk.ac.ebi.eva.dbsnpimporter.models.Orientation;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class GenotypeEncoderTest {
+
+    @Test
+    public void validGenotypes() {
+        assertTrue(GenotypeEncoder.isValid("A/G,G|G, ./.,N/-,"));
+        assertTrue(GenotypeEncoder.isValid(""));
+        assertFalse(GenotypeEncoder.isValid("A/G,U/G"));
+        assertFalse(GenotypeEncoder.isValid("a/g"));
+        assertFalse(GenotypeEncoder.isValid("A/R"));
+    }
+
+    @Test
+    public void encodeForward() {
+        List<Map<String, String>> samplesData = encode("C/T,T/T,C/C,A/A,T/C,C,T,C|T,A/G/T,,C/T",
+                                                       new GenotypeEncoder("C", "T", new String[]{"G"},
+                                                                           Orientation.FORWARD));
+        assertGenotypes(samplesData, "0/1", "1/1", "0/0", "-1/-1", "1/0", "0", "1", "0|1", "-1/2/1", "-1", "0/1");
+    }
+
+    @Test
+    public void encodeReverse() {
+        List<Map<String, String>> samplesData = encode("G/G,A/A, G / A ,A|G,-/-",
+                                                       new GenotypeEncoder("C", "T", new String[0],
+                                                                           Orientation.REVERSE));
+        assertGenotypes(samplesData, "0/0", "1/1", "0/1", "1|0", "-1/-1");
+    }
+
+    @Test
+    public void encodeDeletion() {
+        List<Map<String, String>> samplesData = encode("-/-,A/-,A/A",
+                                                       new GenotypeEncoder("A", "", new String[0],
+                                                                           Orientation.FORWARD));
+        assertGenotypes(samplesData, "1/1", "0/1", "0/0");
+    }
+
+    @Test
+    public void samplesDataAreShared() {
+        List<Map<String, String>> firstVariant = encode("C/T,C/T,T/T", new GenotypeEncoder(
+                "C", "T", new String[0], Orientation.FORWARD));
+        List<Map<String, String>> secondVariant = encode("A/G,G/G", new GenotypeEncoder(
+                "A", "G", new String[0], Orientation.FORWARD));
+
+        assertSame(firstVariant.get(0), firstVariant.get(1));
+        assertSame(firstVariant.get(0), secondVariant.get(0));
+        assertSame(firstVariant.get(2), secondVariant.get(1));
+    }
+
+    private List<Map<String, String>> encode(String genotypes, GenotypeEncoder genotypeEncoder) {
+        List<Map<String, String>> samplesData = new ArrayList<>();
+        genotypeEncoder.encode(genotypes, samplesData::add);
+        return samplesData;
+    }
+
+    private void assertGenotypes(List<Map<String, String>> samplesData, String... expectedGenotypes) {
+        assertEquals(expectedGenotypes.length, samplesData.size());
+        for (int i = 0; i < expectedGenotypes.length; i++) {
+            assertEquals(1, samplesData.get(i).size());
+            assertEquals(expectedGenotypes[i], samplesData.get(i).get(GenotypeEncoder.GENOTYPE_KEY));
+        }
+    }
+}
@@ -41,6 +41,7 @@ import java.util.Map;
 import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
 import static uk.ac.ebi.eva.dbsnpimporter.jobs.steps.processors.RenormalizationProcessor.AMBIGUOUS_VARIANT_KEY;
 import static uk.ac.ebi.eva.dbsnpimporter.jobs.steps.processors.RenormalizationProcessor.AMBIGUOUS_VARIANT_VALUE;
 import static uk.ac.ebi.eva.dbsnpimporter.jobs.steps.processors.SubSnpCoreFieldsToVariantProcessor.DBSNP_BUILD_KEY;
@@ -194,6 +195,55 @@ public class RenormalizationProcessorTest {
         }
     }
 
+    @Test
+    public void sourceEntriesAreRenormalizedInPlace() throws Exception {
+        Variant variant = new Variant("22", 3, 4, "", "CG");
+        Map<String, String> attributes = new HashMap<>();
+        attributes.put(DBSNP_BUILD_KEY, "test_release");
+        VariantSourceEntry variantSourceEntry = new VariantSourceEntry("fileId", "studyId", new String[0], "GT",
+                                                                       null, attributes, null);
+        variant.addSourceEntry(variantSourceEntry);
+
+        IVariant renormalized = renormalizer.process(variant);
+        IVariant renormalizedAgain = renormalizer.process(variant);
+
+        assertSame(variantSourceEntry, renormalized.getSourceEntries().iterator().next());
+        assertEquals(AMBIGUOUS_VARIANT_VALUE, variantSourceEntry.getAttributes().get(AMBIGUOUS_VARIANT_KEY));
+        assertEquals("3", variantSourceEntry.getAttributes().get(VariantMongo.START_FIELD));
+        assertEquals(renormalized.getStart(), renormalizedAgain.getStart());
+        assertEquals(renormalized.getAlternate(), renormalizedAgain.getAlternate());
+        assertEquals(renormalized.getSourceEntries(), renormalizedAgain.getSourceEntries());
+    }
+
+    @Test
+    public void contextBasesAreReadAcrossWindows() throws Exception {
+        RenormalizationProcessor smallWindowRenormalizer = new RenormalizationProcessor(fastaSequenceReader, 2);
+        List<Variant> variants = Arrays.asList(new Variant("22", 7, 7, "", "C"),
+                                               new Variant("22", 3, 3, "", "G"),
+                                               new Variant("22", 5, 6, "", "CG"),
+                                               new Variant("22", 3, 3, "C", ""),
+                                               new Variant("22", 6, 6, "C", ""),
+                                               new Variant("22", 5, 7, "", "CGC"));
+        for (Variant variant : variants) {
+            IVariant expected = renormalizer.process(variant);
+            IVariant renormalized = smallWindowRenormalizer.process(variant);
+            assertEquals(expected.getStart(), renormalized.getStart());
+            assertEquals(expected.getReference(), renormalized.getReference());
+            assertEquals(expected.getAlternate(), renormalized.getAlternate());
+        }
+    }
+
+    @Test
+    public void contextWindowIsClippedAtTheEndOfTheChromosome() throws Exception {
+        long lastPosition = fastaSequenceReader.getSequenceLength("22");
+        String lastBases = fastaSequenceReader.getSequence("22", lastPosition - 1, lastPosition);
+
+        Variant variant = new Variant("22", lastPosition, lastPosition, "", lastBases.substring(0, 1));
+        IVariant renormalized = renormalizer.process(variant);
+
+        assertEquals(lastPosition - 1, renormalized.getStart());
+    }
+
     private void checkExpectedVariantStatistics(VariantSourceEntry sourceEntry,
                                                 IVariantSourceEntry renormalizedSourceEntry,
                                                 String renormalizedReference,
@@ -170,4 +170,19 @@ public class VariantStatisticsBuilderTest {
         assertEquals(0.5, statisticsPop1.getMaf(), 0.01);
         assertEquals("CTGT", statisticsPop1.getMafAllele());
     }
+
+    @Test
+    public void unknownFieldsAreSkipped() throws IOException {
+        IVariant variant = new Variant("1", 1000, 1000, "A", "G");
+        String populationWithExtraFields = "[{\"pop_id\" : 1326, \"extra\" : {\"pop_name\" : \"NESTED\", " +
+                "\"freq_info\" : []}, \"pop_name\" : \"POP3\", \"freq_info\" : " +
+                "[{\"allele\" : \"A\", \"cnt\" : 6.0, \"freq\" : 0.6, \"tags\" : [\"x\", {\"freq\" : 0.0}]}, " +
+                "{\"allele\" : \"G\", \"cnt\" : 4.0, \"freq\" : 0.4}]}]";
+
+        Map<String, VariantStatistics> stats = new VariantStatisticsBuilder().build(variant, populationWithExtraFields,
+                                                                                    Orientation.FORWARD);
+        assertEquals(1, stats.size());
+        assertEquals(0.4, stats.get("POP3").getMaf(), 0.01);
+        assertEquals("G", stats.get("POP3").getMafAllele());
+    }
 }
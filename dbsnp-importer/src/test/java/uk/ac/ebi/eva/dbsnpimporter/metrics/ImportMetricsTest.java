@@ -0,0 +1,157 @@
+/*
+ * Copyright 2018 EMBL - European Bioinformatics Institute
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.ac.ebi.eva.dbsnpimporter.metrics;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.batch.item.ItemProcessor;
+
+import uk.ac.ebi.eva.dbsnpimporter.jobs.steps.processors.FilteringItemProcessor;
+import uk.ac.ebi.eva.dbsnpimporter.jobs.steps.processors.RejectionReason;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ImportMetricsTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private SimpleMeterRegistry registry;
+
+    private ImportMetrics importMetrics;
+
+    @Before
+    public void setUp() {
+        registry = new SimpleMeterRegistry();
+        importMetrics = new ImportMetrics(registry);
+    }
+
+    @Test
+    public void rejectionsAreCountedByReason() throws Exception {
+        ItemProcessor<String, String> processor = importMetrics.meter("allelesCheck", new AllelesFilter());
+
+        assertEquals("A", processor.process("A"));
+        assertEquals("C", processor.process("C"));
+        assertNull(processor.process("R"));
+        assertNull(processor.process("Y"));
+        assertNull(processor.process(""));
+
+        assertEquals(2, registry.get(ImportMetrics.PROCESSOR_ITEMS)
+                                .tags(ImportMetrics.STAGE_TAG, "allelesCheck", ImportMetrics.RESULT_TAG,
+                                      ImportMetrics.PASSED)
+                                .counter().count(), 0);
+        assertEquals(3, registry.get(ImportMetrics.PROCESSOR_ITEMS)
+                                .tags(ImportMetrics.STAGE_TAG, "allelesCheck", ImportMetrics.RESULT_TAG,
+                                      ImportMetrics.REJECTED)
+                                .counter().count(), 0);
+        assertEquals(5, registry.get(ImportMetrics.PROCESSOR_TIMER).tags(ImportMetrics.STAGE_TAG, "allelesCheck")
+                                .timer().count());
+
+        Map<String, Object> stage = getStageSummary("allelesCheck");
+        assertEquals(2L, stage.get("passed"));
+        assertEquals(3L, stage.get("rejected"));
+        Map<String, Long> reasons = (Map<String, Long>) stage.get("rejectionReasons");
+        assertEquals(2L, (long) reasons.get(RejectionReason.AMBIGUOUS_ALLELES.name()));
+        assertEquals(1L, (long) reasons.get(RejectionReason.UNDEFINED_ALLELE.name()));
+    }
+
+    @Test
+    public void processorsThatAreNotFiltersAreMetered() throws Exception {
+        ItemProcessor<String, String> processor = importMetrics.meter("lowerCase", String::toLowerCase);
+
+        assertEquals("a", processor.process("A"));
+
+        Map<String, Object> stage = getStageSummary("lowerCase");
+        assertEquals(1L, stage.get("passed"));
+        assertEquals(0L, stage.get("rejected"));
+        assertTrue(((Map<?, ?>) stage.get("rejectionReasons")).isEmpty());
+    }
+
+    @Test
+    public void summaryIsWrittenAsJson() throws Exception {
+        ItemProcessor<String, String> processor = importMetrics.meter("allelesCheck", new AllelesFilter());
+        processor.process("R");
+        importMetrics.recordRead(2000);
+        importMetrics.recordRead(4000);
+        importMetrics.recordWrite(1000000, 10);
+
+        Path summaryFile = temporaryFolder.getRoot().toPath().resolve("metrics.json");
+        importMetrics.writeSummary(summaryFile);
+
+        JsonNode summary = new ObjectMapper().readTree(summaryFile.toFile());
+        assertEquals(1, summary.path("processors").path("allelesCheck").path("rejectionReasons")
+                               .path(RejectionReason.AMBIGUOUS_ALLELES.name()).asInt());
+        assertEquals(2, summary.path("read").path("count").asInt());
+        assertEquals(4, summary.path("read").path("maxMicros").asDouble(), 0.001);
+        assertEquals(1, summary.path("write").path("count").asInt());
+        assertTrue(summary.path("write").has("p99Micros"));
+        assertEquals(10, summary.path("write").path("items").asInt());
+    }
+
+    @Test
+    public void throughputIsReportedForTheStep() throws Exception {
+        ItemProcessor<String, String> processor = importMetrics.meter("allelesCheck", new AllelesFilter());
+        processor.process("A");
+        importMetrics.recordRead(500000000);
+        importMetrics.recordRead(500000000);
+        importMetrics.recordWrite(250000000, 2);
+
+        Map<String, Object> summary = importMetrics.getSummary(Duration.ofSeconds(2));
+
+        Map<String, Object> step = (Map<String, Object>) summary.get("step");
+        assertEquals(2000L, step.get("elapsedMillis"));
+        assertEquals(1.0, (double) step.get("readItemsPerSecond"), 0.001);
+        assertEquals(0.5, (double) step.get("readShare"), 0.001);
+        assertEquals(0.125, (double) step.get("writeShare"), 0.001);
+        assertEquals(2.0, (double) ((Map<String, Object>) summary.get("read")).get("itemsPerSecond"), 0.001);
+        assertEquals(8.0, (double) ((Map<String, Object>) summary.get("write")).get("itemsPerSecond"), 0.001);
+        Map<String, Object> jvm = (Map<String, Object>) summary.get("jvm");
+        assertTrue((long) jvm.get("heapUsedBytes") > 0);
+        assertTrue(jvm.containsKey("garbageCollectors"));
+    }
+
+    private Map<String, Object> getStageSummary(String stage) {
+        Map<String, Object> processors = (Map<String, Object>) importMetrics.getSummary().get("processors");
+        return (Map<String, Object>) processors.get(stage);
+    }
+
+    private static class AllelesFilter extends FilteringItemProcessor<String, String> {
+
+        @Override
+        public String process(String allele) {
+            if (allele.isEmpty()) {
+                reject(allele, RejectionReason.UNDEFINED_ALLELE);
+                return null;
+            }
+            if (!allele.matches("[ACGT]+")) {
+                reject(allele, RejectionReason.AMBIGUOUS_ALLELES);
+                return null;
+            }
+            return allele;
+        }
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright 2018 EMBL - European Bioinformatics Institute
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.ac.ebi.eva.dbsnpimporter.parameters;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class DbsnpDatasourceTest {
+
+    private DbsnpDatasource dbsnpDatasource;
+
+    @Before
+    public void setUp() throws Exception {
+        dbsnpDatasource = new DbsnpDatasource();
+        dbsnpDatasource.setDriverClassName("org.hsqldb.jdbcDriver");
+        dbsnpDatasource.setUrl("jdbc:hsqldb:mem:poolTestDb");
+        dbsnpDatasource.setUsername("SA");
+        dbsnpDatasource.setPassword("");
+        dbsnpDatasource.setPoolSize(2);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        dbsnpDatasource.destroy();
+    }
+
+    @Test
+    public void datasourceIsShared() throws Exception {
+        assertSame(dbsnpDatasource.getDatasource(), dbsnpDatasource.getDatasource());
+    }
+
+    @Test
+    public void connectionsAreReused() throws Exception {
+        DataSource dataSource = dbsnpDatasource.getDatasource();
+        for (int i = 0; i < 10; i++) {
+            try (Connection connection = dataSource.getConnection()) {
+                assertTrue(connection.isValid(1));
+            }
+        }
+
+        Map<String, Number> statistics = dbsnpDatasource.getPoolStatistics();
+        assertEquals(1, statistics.get("created").intValue());
+        assertEquals(0, statistics.get("active").intValue());
+    }
+
+    @Test
+    public void autocommitIsRestoredWhenConnectionIsReused() throws Exception {
+        DataSource dataSource = dbsnpDatasource.getDatasource();
+        try (Connection connection = dataSource.getConnection()) {
+            connection.setAutoCommit(false);
+        }
+        try (Connection connection = dataSource.getConnection()) {
+            assertTrue(connection.getAutoCommit());
+        }
+    }
+
+    @Test
+    public void noStatisticsBeforeThePoolIsCreated() throws Exception {
+        assertTrue(dbsnpDatasource.getPoolStatistics().isEmpty());
+    }
+}
@@ -1,5 +1,6 @@
 import argparse
 import os
+import tempfile
 
 parser = argparse.ArgumentParser(description='Run benchmarking for VCF release')
 parser.add_argument('-u', '--mongo-user', help='MongoDB username', required=True)
@@ -9,7 +10,25 @@ parser.add_argument('-d', '--authdb', default='admin', help='MongoDB authenticat
 parser.add_argument('-a', '--assembly', help='Assembly of the species to be used for benchmarking', required=True)
 parser.add_argument('-s', '--strategy', help='Lookup strategy to be used for benchmarking', required=True)
 parser.add_argument('-n', '--num-runs', type=int, default=5, help='Number of script runs')
+parser.add_argument('-j', '--release-jar', default='../vcf-release/target/vcf-release-0.3-SNAPSHOT-jar-with-dependencies.jar',
+                    help='Release dump jar, used by strategy 5 (merge-join)')
+parser.add_argument('-o', '--output', default='release.vcf', help='Release file written by strategy 5 (merge-join)')
 
 args=parser.parse_args()
-command_to_run = """module load mongo && perf stat -r %d mongo -u %s -p %s --authenticationDatabase %s --host %s --eval "var assemblyToUse='%s'; var strategyToUse='%s'" benchmarking_strategies.js 2>&1""" % (args.num_runs, args.mongo_user, args.mongo_password, args.authdb, args.mongo_host, args.assembly, args.strategy)
-os.system(command_to_run)
+if args.strategy == '5':
+    # the release dump reads its parameters from a properties file, which is kept private as it has the password
+    with tempfile.NamedTemporaryFile(mode='w', suffix='.properties', delete=False) as properties_file:
+        properties_file.write("""db.name=eva_testing
+db.hosts=%s
+db.authentication-database=%s
+db.username=%s
+db.password=%s
+release.assembly=%s
+release.output=%s
+""" % (args.mongo_host, args.authdb, args.mongo_user, args.mongo_password, args.assembly, args.output))
+    command_to_run = """perf stat -r %d java -jar %s %s 2>&1""" % (args.num_runs, args.release_jar, properties_file.name)
+    os.system(command_to_run)
+    os.remove(properties_file.name)
+else:
+    command_to_run = """module load mongo && perf stat -r %d mongo -u %s -p %s --authenticationDatabase %s --host %s --eval "var assemblyToUse='%s'; var strategyToUse='%s'" benchmarking_strategies.js 2>&1""" % (args.num_runs, args.mongo_user, args.mongo_password, args.authdb, args.mongo_host, args.assembly, args.strategy)
+    os.system(command_to_run)
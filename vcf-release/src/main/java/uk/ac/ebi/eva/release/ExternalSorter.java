@@ -0,0 +1,236 @@
+/*
+ * Copyright 2018 EMBL - European Bioinformatics Institute
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.ac.ebi.eva.release;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Sorts the lines of a release by their first two columns, contig (as text, like the $sort of strategy 4.1) and start.
+ * <p>
+ * At most bufferSize lines are kept in memory. When the buffer is full, it is sorted and written to a temporary file,
+ * and the sorted files are merged at the end. The sort is stable, so the lines with the same contig and start keep the
+ * order in which they were added.
+ * <p>
+ * At most maxMergeFanIn sorted files are open at the same time. If there are more, consecutive groups of them are
+ * merged into bigger temporary files, in as many passes as needed, before the final merge into the output.
+ */
+public class ExternalSorter implements Closeable {
+
+    private static final Logger logger = LoggerFactory.getLogger(ExternalSorter.class);
+
+    private static final Comparator<SortedLine> BY_POSITION = Comparator.comparing((SortedLine line) -> line.contig)
+                                                                        .thenComparingLong(line -> line.start);
+
+    static final int DEFAULT_MAX_MERGE_FAN_IN = 100;
+
+    private final Path temporaryDirectory;
+
+    private final int bufferSize;
+
+    private final int maxMergeFanIn;
+
+    private final List<SortedLine> buffer;
+
+    private final List<Path> runs;
+
+    public ExternalSorter(Path temporaryDirectory, int bufferSize) {
+        this(temporaryDirectory, bufferSize, DEFAULT_MAX_MERGE_FAN_IN);
+    }
+
+    ExternalSorter(Path temporaryDirectory, int bufferSize, int maxMergeFanIn) {
+        if (bufferSize < 1) {
+            throw new IllegalArgumentException("The buffer size must be a positive number");
+        }
+        if (maxMergeFanIn < 2) {
+            throw new IllegalArgumentException("At least two sorted files must be merged at a time");
+        }
+        this.temporaryDirectory = temporaryDirectory;
+        this.bufferSize = bufferSize;
+        this.maxMergeFanIn = maxMergeFanIn;
+        this.buffer = new ArrayList<>();
+        this.runs = new ArrayList<>();
+    }
+
+    public void add(String line) throws IOException {
+        buffer.add(new SortedLine(line));
+        if (buffer.size() >= bufferSize) {
+            spill();
+        }
+    }
+
+    private void spill() throws IOException {
+        buffer.sort(BY_POSITION);
+        Path run = Files.createTempFile(temporaryDirectory, "release", ".run");
+        runs.add(run);
+        try (BufferedWriter writer = Files.newBufferedWriter(run, StandardCharsets.UTF_8)) {
+            for (SortedLine line : buffer) {
+                writer.write(line.line);
+                writer.newLine();
+            }
+        }
+        logger.debug("Sorted {} lines into {}", buffer.size(), run);
+        buffer.clear();
+    }
+
+    /**
+     * Writes all the lines added, sorted
+     */
+    public void writeSorted(Writer output) throws IOException {
+        if (runs.isEmpty()) {
+            buffer.sort(BY_POSITION);
+            for (SortedLine line : buffer) {
+                output.write(line.line);
+                output.write('\n');
+            }
+            buffer.clear();
+            return;
+        }
+        if (!buffer.isEmpty()) {
+            spill();
+        }
+        while (runs.size() > maxMergeFanIn) {
+            mergePass();
+        }
+        logger.info("Merging {} sorted files", runs.size());
+        merge(runs, output);
+    }
+
+    /**
+     * Merges each group of maxMergeFanIn consecutive runs into a new run. The groups are kept in order, so the lines
+     * with the same position still come out in the order in which they were added.
+     */
+    private void mergePass() throws IOException {
+        logger.info("Merging {} sorted files in groups of {}", runs.size(), maxMergeFanIn);
+        List<Path> previousRuns = new ArrayList<>(runs);
+        List<Path> mergedRuns = new ArrayList<>();
+        for (int from = 0; from < previousRuns.size(); from += maxMergeFanIn) {
+            List<Path> group = previousRuns.subList(from, Math.min(from + maxMergeFanIn, previousRuns.size()));
+            if (group.size() == 1) {
+                mergedRuns.add(group.get(0));
+                continue;
+            }
+            Path mergedRun = Files.createTempFile(temporaryDirectory, "release", ".run");
+            // registered straight away, so close deletes it even if the merge fails
+            runs.add(mergedRun);
+            mergedRuns.add(mergedRun);
+            try (BufferedWriter writer = Files.newBufferedWriter(mergedRun, StandardCharsets.UTF_8)) {
+                merge(group, writer);
+            }
+            for (Path run : group) {
+                Files.delete(run);
+            }
+        }
+        runs.clear();
+        runs.addAll(mergedRuns);
+    }
+
+    private void merge(List<Path> sortedRuns, Writer output) throws IOException {
+        List<BufferedReader> readers = new ArrayList<>(sortedRuns.size());
+        try {
+            // lines of earlier runs go first when their position is the same, to keep the sort stable
+            PriorityQueue<RunHead> heads = new PriorityQueue<>(
+                    Comparator.comparing((RunHead head) -> head.line, BY_POSITION)
+                              .thenComparingInt(head -> head.run));
+            for (Path run : sortedRuns) {
+                BufferedReader reader = Files.newBufferedReader(run, StandardCharsets.UTF_8);
+                readers.add(reader);
+                RunHead head = new RunHead(readers.size() - 1, reader);
+                if (head.advance()) {
+                    heads.add(head);
+                }
+            }
+            while (!heads.isEmpty()) {
+                RunHead head = heads.poll();
+                output.write(head.line.line);
+                output.write('\n');
+                if (head.advance()) {
+                    heads.add(head);
+                }
+            }
+        } finally {
+            for (BufferedReader reader : readers) {
+                reader.close();
+            }
+        }
+    }
+
+    int getRuns() {
+        return runs.size();
+    }
+
+    @Override
+    public void close() throws IOException {
+        for (Path run : runs) {
+            Files.deleteIfExists(run);
+        }
+        runs.clear();
+        buffer.clear();
+    }
+
+    private static class SortedLine {
+
+        private final String contig;
+
+        private final long start;
+
+        private final String line;
+
+        SortedLine(String line) {
+            int contigEnd = line.indexOf('\t');
+            int startEnd = contigEnd < 0 ? -1 : line.indexOf('\t', contigEnd + 1);
+            if (startEnd < 0) {
+                throw new IllegalArgumentException("Line without contig and start columns: " + line);
+            }
+            this.contig = line.substring(0, contigEnd);
+            this.start = Long.parseLong(line.substring(contigEnd + 1, startEnd));
+            this.line = line;
+        }
+    }
+
+    private static class RunHead {
+
+        private final int run;
+
+        private final BufferedReader reader;
+
+        private SortedLine line;
+
+        RunHead(int run, BufferedReader reader) {
+            this.run = run;
+            this.reader = reader;
+        }
+
+        boolean advance() throws IOException {
+            String next = reader.readLine();
+            line = next == null ? null : new SortedLine(next);
+            return line != null;
+        }
+    }
+}
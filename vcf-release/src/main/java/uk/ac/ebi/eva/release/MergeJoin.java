@@ -0,0 +1,152 @@
+/*
+ * Copyright 2018 EMBL - European Bioinformatics Institute
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.ac.ebi.eva.release;
+
+import org.bson.Document;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Queue;
+
+/**
+ * Joins the clustered variants sorted by accession with the submitted variants sorted by RS, reading each of them
+ * once, instead of finding the submitted variants of every RS (strategy 3.1 of the benchmark) or using $lookup
+ * (strategies 4 and 4.1).
+ * <p>
+ * The submitted variants of each RS are grouped by contig and start, in the order they are read, as
+ * multipleSSLookupPerRS does. Submitted variants of an RS that is not in the clustered variants (for instance, of
+ * another assembly) are skipped, and so are the clustered variants without submitted variants. An RS that appears
+ * more than once is only joined the first time, as its submitted variants were already consumed.
+ */
+public class MergeJoin implements Iterator<ReleaseVariant> {
+
+    static final String ACCESSION_FIELD = "accession";
+
+    private final Iterator<Document> clusteredVariants;
+
+    private final Iterator<Document> submittedVariants;
+
+    private final Queue<ReleaseVariant> pending;
+
+    private SubmittedVariant nextSubmittedVariant;
+
+    private Long lastClusteredVariant;
+
+    private long clusteredVariantsRead;
+
+    private long submittedVariantsRead;
+
+    private long submittedVariantsJoined;
+
+    private long clusteredVariantsWithoutSubmitted;
+
+    private long duplicatedClusteredVariants;
+
+    public MergeJoin(Iterator<Document> clusteredVariants, Iterator<Document> submittedVariants) {
+        this.clusteredVariants = clusteredVariants;
+        this.submittedVariants = submittedVariants;
+        this.pending = new ArrayDeque<>();
+        this.nextSubmittedVariant = readSubmittedVariant();
+    }
+
+    @Override
+    public boolean hasNext() {
+        while (pending.isEmpty() && clusteredVariants.hasNext()) {
+            join(clusteredVariants.next());
+        }
+        return !pending.isEmpty();
+    }
+
+    @Override
+    public ReleaseVariant next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        return pending.poll();
+    }
+
+    private void join(Document clusteredVariant) {
+        clusteredVariantsRead++;
+        long accession = SubmittedVariant.getLong(clusteredVariant, ACCESSION_FIELD);
+        if (lastClusteredVariant != null) {
+            if (accession < lastClusteredVariant) {
+                throw new IllegalStateException("Clustered variants are not sorted by accession: rs" + accession
+                                                        + " was read after rs" + lastClusteredVariant);
+            }
+            if (accession == lastClusteredVariant) {
+                duplicatedClusteredVariants++;
+                return;
+            }
+        }
+        lastClusteredVariant = accession;
+
+        while (nextSubmittedVariant != null && nextSubmittedVariant.getClusteredVariantAccession() < accession) {
+            nextSubmittedVariant = readSubmittedVariant();
+        }
+        Map<String, ReleaseVariant> variantsByPosition = new LinkedHashMap<>();
+        while (nextSubmittedVariant != null && nextSubmittedVariant.getClusteredVariantAccession() == accession) {
+            String position = nextSubmittedVariant.getContig() + ":" + nextSubmittedVariant.getStart();
+            variantsByPosition.computeIfAbsent(position, key -> new ReleaseVariant(
+                    accession, nextSubmittedVariant.getContig(), nextSubmittedVariant.getStart()))
+                              .addSubmittedVariant(nextSubmittedVariant);
+            submittedVariantsJoined++;
+            nextSubmittedVariant = readSubmittedVariant();
+        }
+        if (variantsByPosition.isEmpty()) {
+            clusteredVariantsWithoutSubmitted++;
+        }
+        pending.addAll(variantsByPosition.values());
+    }
+
+    private SubmittedVariant readSubmittedVariant() {
+        if (!submittedVariants.hasNext()) {
+            return null;
+        }
+        SubmittedVariant submittedVariant = SubmittedVariant.fromDocument(submittedVariants.next());
+        submittedVariantsRead++;
+        if (nextSubmittedVariant != null && submittedVariant.getClusteredVariantAccession()
+                < nextSubmittedVariant.getClusteredVariantAccession()) {
+            throw new IllegalStateException(
+                    "Submitted variants are not sorted by RS: ss" + submittedVariant.getAccession() + " of rs"
+                            + submittedVariant.getClusteredVariantAccession() + " was read after rs"
+                            + nextSubmittedVariant.getClusteredVariantAccession());
+        }
+        return submittedVariant;
+    }
+
+    public long getClusteredVariantsRead() {
+        return clusteredVariantsRead;
+    }
+
+    public long getSubmittedVariantsRead() {
+        return submittedVariantsRead;
+    }
+
+    public long getSubmittedVariantsJoined() {
+        return submittedVariantsJoined;
+    }
+
+    public long getClusteredVariantsWithoutSubmitted() {
+        return clusteredVariantsWithoutSubmitted;
+    }
+
+    public long getDuplicatedClusteredVariants() {
+        return duplicatedClusteredVariants;
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright 2018 EMBL - European Bioinformatics Institute
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.ac.ebi.eva.release;
+
+import com.mongodb.MongoClient;
+import com.mongodb.MongoClientOptions;
+import com.mongodb.MongoCredential;
+import com.mongodb.ReadPreference;
+import com.mongodb.ServerAddress;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+public class MongoClientHelper {
+
+    public static MongoClient buildMongoClient(ReleaseParameters releaseParameters) {
+        List<ServerAddress> servers = getServers(releaseParameters);
+        List<MongoCredential> credentials = getCredentials(releaseParameters);
+        MongoClientOptions options = getOptions(releaseParameters);
+        return new MongoClient(servers, credentials, options);
+    }
+
+    private static List<ServerAddress> getServers(ReleaseParameters releaseParameters) {
+        List<ServerAddress> addresses = new ArrayList<>();
+
+        int port = ServerAddress.defaultPort();
+        if (hasText(releaseParameters.getDbPort())) {
+            port = Integer.parseInt(releaseParameters.getDbPort());
+        }
+
+        String hosts = releaseParameters.getDbHosts();
+        if (!hasText(hosts)) {
+            hosts = ServerAddress.defaultHost();
+        }
+
+        for (String host : hosts.split(",")) {
+            addresses.add(new ServerAddress(host, port));
+        }
+
+        return addresses;
+    }
+
+    private static List<MongoCredential> getCredentials(ReleaseParameters releaseParameters) {
+        if (hasText(releaseParameters.getDbUsername()) && hasText(releaseParameters.getDbPassword())) {
+            String authenticationDatabase = releaseParameters.getDbAuthenticationDatabase();
+            if (!hasText(authenticationDatabase)) {
+                authenticationDatabase = releaseParameters.getDbName();
+            }
+
+            MongoCredential mongoCredential = MongoCredential.createCredential(
+                    releaseParameters.getDbUsername(),
+                    authenticationDatabase,
+                    releaseParameters.getDbPassword().toCharArray());
+
+            return Collections.singletonList(mongoCredential);
+        } else {
+            return Collections.emptyList();
+        }
+    }
+
+    private static MongoClientOptions getOptions(ReleaseParameters releaseParameters) {
+        MongoClientOptions.Builder builder = new MongoClientOptions.Builder();
+        builder.readPreference(ReadPreference.valueOf(releaseParameters.getDbReadPreference()));
+        return builder.build();
+    }
+
+    private static boolean hasText(String value) {
+        return value != null && !value.trim().isEmpty();
+    }
+}
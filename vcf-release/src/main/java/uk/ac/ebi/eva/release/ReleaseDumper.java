@@ -0,0 +1,257 @@
+/*
+ * Copyright 2018 EMBL - European Bioinformatics Institute
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.ac.ebi.eva.release;
+
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoCursor;
+import com.mongodb.client.MongoDatabase;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.Projections;
+import com.mongodb.client.model.Sorts;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+import static uk.ac.ebi.eva.release.SubmittedVariant.ACCESSION_FIELD;
+import static uk.ac.ebi.eva.release.SubmittedVariant.ALTERNATE_FIELD;
+import static uk.ac.ebi.eva.release.SubmittedVariant.CLUSTERED_VARIANT_FIELD;
+import static uk.ac.ebi.eva.release.SubmittedVariant.CONTIG_FIELD;
+import static uk.ac.ebi.eva.release.SubmittedVariant.REFERENCE_FIELD;
+import static uk.ac.ebi.eva.release.SubmittedVariant.START_FIELD;
+import static uk.ac.ebi.eva.release.SubmittedVariant.STUDY_FIELD;
+
+/**
+ * Writes the release of an assembly: the clustered variants of the assembly, sorted by accession, are joined with the
+ * submitted variants sorted by RS (see {@link MergeJoin}), and the lines of the release are sorted by contig and start
+ * (see {@link ExternalSorter}).
+ * <p>
+ * Both cursors should be backed by an index, {asm: 1, accession: 1} (or {accession: 1}) in the clustered variants and
+ * {rs: 1} in the submitted variants, otherwise the server has to sort the whole collections in memory. A warning is
+ * logged if they are missing. The submitted variants are only read in the range of accessions of the clustered ones.
+ */
+public class ReleaseDumper {
+
+    private static final Logger logger = LoggerFactory.getLogger(ReleaseDumper.class);
+
+    static final String ASSEMBLY_FIELD = "asm";
+
+    private static final String INDEX_KEY_FIELD = "key";
+
+    private static final int PROGRESS_INTERVAL = 100000;
+
+    private final ReleaseParameters releaseParameters;
+
+    public ReleaseDumper(ReleaseParameters releaseParameters) {
+        this.releaseParameters = releaseParameters;
+    }
+
+    public ReleaseReport dump(MongoDatabase database) throws IOException {
+        long startTime = System.nanoTime();
+        MongoCollection<Document> clusteredVariants = database.getCollection(
+                releaseParameters.getDbCollectionsClusteredVariantsName());
+        MongoCollection<Document> submittedVariants = database.getCollection(
+                releaseParameters.getDbCollectionsSubmittedVariantsName());
+        checkSortIsIndexed(clusteredVariants, ASSEMBLY_FIELD, MergeJoin.ACCESSION_FIELD);
+        checkSortIsIndexed(submittedVariants, null, CLUSTERED_VARIANT_FIELD);
+
+        Path output = Paths.get(releaseParameters.getReleaseOutput()).toAbsolutePath();
+        Path temporaryDirectory = releaseParameters.getReleaseTemporaryDirectory() != null
+                ? Paths.get(releaseParameters.getReleaseTemporaryDirectory()) : output.getParent();
+        ReleaseFormat format = releaseParameters.getReleaseFormat();
+        ReleaseReport report = new ReleaseReport();
+        try (ExternalSorter sorter = new ExternalSorter(temporaryDirectory,
+                                                        releaseParameters.getReleaseSortBufferSize())) {
+            joinVariants(clusteredVariants, submittedVariants, format, sorter, report);
+            report.sortedFiles = sorter.getRuns();
+            try (BufferedWriter writer = Files.newBufferedWriter(output, StandardCharsets.UTF_8)) {
+                for (String headerLine : format.getHeader(releaseParameters.getReleaseAssembly())) {
+                    writer.write(headerLine);
+                    writer.write('\n');
+                }
+                sorter.writeSorted(writer);
+            }
+        }
+        report.seconds = (System.nanoTime() - startTime) / 1e9;
+        logger.info("Release of assembly {} written to {}: {}", releaseParameters.getReleaseAssembly(), output,
+                    report);
+        return report;
+    }
+
+    private void joinVariants(MongoCollection<Document> clusteredVariants,
+                              MongoCollection<Document> submittedVariants, ReleaseFormat format, ExternalSorter sorter,
+                              ReleaseReport report) throws IOException {
+        Bson assemblyFilter = Filters.eq(ASSEMBLY_FIELD, releaseParameters.getReleaseAssembly());
+        Bson accessionOnly = Projections.include(MergeJoin.ACCESSION_FIELD);
+        Document first = clusteredVariants.find(assemblyFilter).sort(Sorts.ascending(MergeJoin.ACCESSION_FIELD))
+                                          .projection(accessionOnly).first();
+        if (first == null) {
+            logger.warn("No clustered variants found for assembly {}", releaseParameters.getReleaseAssembly());
+            return;
+        }
+        Document last = clusteredVariants.find(assemblyFilter).sort(Sorts.descending(MergeJoin.ACCESSION_FIELD))
+                                         .projection(accessionOnly).first();
+        Bson submittedVariantsInRange = Filters.and(
+                Filters.gte(CLUSTERED_VARIANT_FIELD, SubmittedVariant.getLong(first, MergeJoin.ACCESSION_FIELD)),
+                Filters.lte(CLUSTERED_VARIANT_FIELD, SubmittedVariant.getLong(last, MergeJoin.ACCESSION_FIELD)));
+
+        int batchSize = releaseParameters.getReleaseCursorBatchSize();
+        try (MongoCursor<Document> clusteredCursor = clusteredVariants
+                .find(assemblyFilter)
+                .sort(Sorts.ascending(MergeJoin.ACCESSION_FIELD))
+                .projection(accessionOnly)
+                .batchSize(batchSize)
+                .iterator();
+             MongoCursor<Document> submittedCursor = submittedVariants
+                     .find(submittedVariantsInRange)
+                     .sort(Sorts.ascending(CLUSTERED_VARIANT_FIELD))
+                     .projection(Projections.include(ACCESSION_FIELD, CLUSTERED_VARIANT_FIELD, STUDY_FIELD,
+                                                     CONTIG_FIELD, START_FIELD, REFERENCE_FIELD, ALTERNATE_FIELD))
+                     .batchSize(batchSize)
+                     .iterator()) {
+            MergeJoin join = new MergeJoin(clusteredCursor, submittedCursor);
+            List<String> lines = new ArrayList<>();
+            while (join.hasNext()) {
+                lines.clear();
+                report.submittedVariantsLeftOut += format.format(join.next(), lines);
+                for (String line : lines) {
+                    sorter.add(line);
+                }
+                report.variants++;
+                report.lines += lines.size();
+                if (report.variants % PROGRESS_INTERVAL == 0) {
+                    logger.info("Processed {} variants", report.variants);
+                }
+            }
+            report.clusteredVariantsRead = join.getClusteredVariantsRead();
+            report.submittedVariantsRead = join.getSubmittedVariantsRead();
+            report.submittedVariantsJoined = join.getSubmittedVariantsJoined();
+            report.clusteredVariantsWithoutSubmitted = join.getClusteredVariantsWithoutSubmitted();
+            report.duplicatedClusteredVariants = join.getDuplicatedClusteredVariants();
+        }
+    }
+
+    private void checkSortIsIndexed(MongoCollection<Document> collection, String filterField, String sortField) {
+        List<Document> indexes = collection.listIndexes().into(new ArrayList<>());
+        if (!isSortIndexed(indexes, filterField, sortField)) {
+            logger.warn("No index of {} starts with '{}', so it will be sorted in memory by the server",
+                        collection.getNamespace(), sortField);
+        }
+    }
+
+    /**
+     * @return Whether one of the indexes can return the documents sorted by sortField, after filtering by filterField
+     * if it's not null
+     */
+    static boolean isSortIndexed(List<Document> indexes, String filterField, String sortField) {
+        for (Document index : indexes) {
+            List<String> keys = new ArrayList<>(((Document) index.get(INDEX_KEY_FIELD)).keySet());
+            if (keys.get(0).equals(sortField)) {
+                return true;
+            }
+            if (filterField != null && keys.size() > 1 && keys.get(0).equals(filterField)
+                    && keys.get(1).equals(sortField)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public static class ReleaseReport {
+
+        private long clusteredVariantsRead;
+
+        private long submittedVariantsRead;
+
+        private long submittedVariantsJoined;
+
+        private long clusteredVariantsWithoutSubmitted;
+
+        private long duplicatedClusteredVariants;
+
+        private long submittedVariantsLeftOut;
+
+        private long variants;
+
+        private long lines;
+
+        private int sortedFiles;
+
+        private double seconds;
+
+        public long getClusteredVariantsRead() {
+            return clusteredVariantsRead;
+        }
+
+        public long getSubmittedVariantsRead() {
+            return submittedVariantsRead;
+        }
+
+        public long getSubmittedVariantsJoined() {
+            return submittedVariantsJoined;
+        }
+
+        public long getClusteredVariantsWithoutSubmitted() {
+            return clusteredVariantsWithoutSubmitted;
+        }
+
+        public long getDuplicatedClusteredVariants() {
+            return duplicatedClusteredVariants;
+        }
+
+        /**
+         * @return Number of SS that could not be written in the release format, like those with empty alleles in VCF
+         */
+        public long getSubmittedVariantsLeftOut() {
+            return submittedVariantsLeftOut;
+        }
+
+        public long getVariants() {
+            return variants;
+        }
+
+        public long getLines() {
+            return lines;
+        }
+
+        public int getSortedFiles() {
+            return sortedFiles;
+        }
+
+        public double getSeconds() {
+            return seconds;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d RS and %d SS read, %d SS joined into %d variants and %d lines (%d RS without SS, "
+                                         + "%d duplicated RS skipped, %d SS left out of the format), sorted in %d "
+                                         + "files, in %.1f s",
+                                 clusteredVariantsRead, submittedVariantsRead, submittedVariantsJoined, variants,
+                                 lines, clusteredVariantsWithoutSubmitted, duplicatedClusteredVariants,
+                                 submittedVariantsLeftOut, sortedFiles, seconds);
+        }
+    }
+}
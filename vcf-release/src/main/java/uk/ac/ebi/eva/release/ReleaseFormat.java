@@ -0,0 +1,118 @@
+/*
+ * Copyright 2018 EMBL - European Bioinformatics Institute
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.ac.ebi.eva.release;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Lines of the release files. VCF requires a context base in the alleles of insertions and deletions, and there is no
+ * reference sequence here to add it, so the submitted variants with an empty allele are left out of the VCF. In TSV
+ * empty alleles are written as "-".
+ */
+public enum ReleaseFormat {
+
+    /**
+     * One line per RS, position and reference allele, with the alternate alleles, submitted variants and studies of
+     * the SS clustered there. SS with an empty allele are left out.
+     */
+    VCF {
+        @Override
+        List<String> getHeader(String assembly) {
+            List<String> header = new ArrayList<>();
+            header.add("##fileformat=VCFv4.2");
+            header.add("##reference=" + assembly);
+            header.add("##INFO=<ID=SS,Number=.,Type=String,Description=\"Submitted variants clustered in the RS\">");
+            header.add("##INFO=<ID=SID,Number=.,Type=String,Description=\"Studies of the submitted variants\">");
+            header.add("#CHROM\tPOS\tID\tREF\tALT\tQUAL\tFILTER\tINFO");
+            return header;
+        }
+
+        @Override
+        int format(ReleaseVariant variant, List<String> lines) {
+            Map<String, List<SubmittedVariant>> variantsByReference = new LinkedHashMap<>();
+            int leftOut = 0;
+            for (SubmittedVariant submittedVariant : variant.getSubmittedVariants()) {
+                if (isEmpty(submittedVariant.getReference()) || isEmpty(submittedVariant.getAlternate())) {
+                    leftOut++;
+                    continue;
+                }
+                variantsByReference.computeIfAbsent(submittedVariant.getReference(), key -> new ArrayList<>())
+                                   .add(submittedVariant);
+            }
+            for (Map.Entry<String, List<SubmittedVariant>> entry : variantsByReference.entrySet()) {
+                Set<String> alternates = new LinkedHashSet<>();
+                Set<String> submittedVariants = new LinkedHashSet<>();
+                Set<String> studies = new LinkedHashSet<>();
+                for (SubmittedVariant submittedVariant : entry.getValue()) {
+                    alternates.add(submittedVariant.getAlternate());
+                    submittedVariants.add("ss" + submittedVariant.getAccession());
+                    studies.add(submittedVariant.getStudy());
+                }
+                lines.add(variant.getContig() + "\t" + variant.getStart() + "\trs" + variant.getAccession() + "\t"
+                                  + entry.getKey() + "\t" + String.join(",", alternates) + "\t.\t.\t"
+                                  + "SS=" + String.join(",", submittedVariants) + ";SID=" + String.join(",", studies));
+            }
+            return leftOut;
+        }
+    },
+
+    /**
+     * One line per submitted variant, like the lines multipleSSLookupPerRS builds
+     */
+    TSV {
+        @Override
+        List<String> getHeader(String assembly) {
+            List<String> header = new ArrayList<>();
+            header.add("#CONTIG\tSTART\tRS\tSS\tSTUDY\tREF\tALT");
+            return header;
+        }
+
+        @Override
+        int format(ReleaseVariant variant, List<String> lines) {
+            for (SubmittedVariant submittedVariant : variant.getSubmittedVariants()) {
+                lines.add(variant.getContig() + "\t" + variant.getStart() + "\trs" + variant.getAccession() + "\tss"
+                                  + submittedVariant.getAccession() + "\t" + submittedVariant.getStudy() + "\t"
+                                  + formatAllele(submittedVariant.getReference()) + "\t"
+                                  + formatAllele(submittedVariant.getAlternate()));
+            }
+            return 0;
+        }
+    };
+
+    private static final String EMPTY_ALLELE = "-";
+
+    abstract List<String> getHeader(String assembly);
+
+    /**
+     * Adds the lines of a variant, which all have its contig and start as first columns
+     *
+     * @return The number of submitted variants of the variant that are left out of the lines
+     */
+    abstract int format(ReleaseVariant variant, List<String> lines);
+
+    private static boolean isEmpty(String allele) {
+        return allele == null || allele.isEmpty();
+    }
+
+    private static String formatAllele(String allele) {
+        return isEmpty(allele) ? EMPTY_ALLELE : allele;
+    }
+}
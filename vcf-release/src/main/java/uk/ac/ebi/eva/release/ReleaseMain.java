@@ -0,0 +1,67 @@
+/*
+ * Copyright 2018 EMBL - European Bioinformatics Institute
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.ac.ebi.eva.release;
+
+import com.mongodb.MongoClient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.FileInputStream;
+import java.util.Properties;
+
+import static java.lang.System.exit;
+
+/**
+ * Writes the release of the variants of an assembly, joining the clustered and submitted variants with a streaming
+ * merge-join.
+ * <p>
+ * ================
+ * Usage:
+ * java -jar vcf-release-0.3-SNAPSHOT-jar-with-dependencies.jar your_release.properties
+ *
+ * In src/main/resources/example-release.properties there's an example of how to fill this properties file. The run
+ * time can be compared with the other strategies using vcf-release-benchmarking/run_benchmarking.py with strategy 5.
+ */
+public class ReleaseMain {
+
+    private static final Logger logger = LoggerFactory.getLogger(ReleaseMain.class);
+
+    public static void main(String[] args) {
+        if (args.length != 1) {
+            logger.error("Please provide the path to a properties file with the MongoDB connection details");
+            exit(1);
+        }
+        ReleaseParameters releaseParameters = new ReleaseParameters();
+        try {
+            Properties properties = new Properties();
+            properties.load(new FileInputStream(args[0]));
+            releaseParameters.load(properties);
+        } catch (Exception exception) {
+            logger.error("Error reading properties: ", exception);
+            exit(1);
+        }
+        MongoClient mongoClient = MongoClientHelper.buildMongoClient(releaseParameters);
+        try {
+            new ReleaseDumper(releaseParameters).dump(mongoClient.getDatabase(releaseParameters.getDbName()));
+        } catch (Exception exception) {
+            logger.error("Error writing the release: ", exception);
+            exit(1);
+        } finally {
+            mongoClient.close();
+        }
+    }
+
+}
@@ -0,0 +1,204 @@
+/*
+ * Copyright 2018 EMBL - European Bioinformatics Institute
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.ac.ebi.eva.release;
+
+import java.util.Properties;
+
+/**
+ * Connection to mongo and options of the release dump.
+ */
+public class ReleaseParameters {
+
+    static final String DB_HOSTS = "db.hosts";
+    private String dbHosts;
+
+    static final String DB_PORT = "db.port";
+    private String dbPort;
+
+    static final String DB_AUTHENTICATION_DATABASE = "db.authentication-database";
+    private String dbAuthenticationDatabase;
+
+    static final String DB_USERNAME = "db.username";
+    private String dbUsername;
+
+    static final String DB_PASSWORD = "db.password";
+    private String dbPassword;
+
+    static final String DB_READ_PREFERENCE = "db.read-preference";
+    private String dbReadPreference;
+
+    static final String DB_NAME = "db.name";
+    private String dbName;
+
+    static final String DB_COLLECTIONS_CLUSTERED_VARIANTS_NAME = "db.collections.clustered-variants.name";
+    private String dbCollectionsClusteredVariantsName;
+
+    static final String DB_COLLECTIONS_SUBMITTED_VARIANTS_NAME = "db.collections.submitted-variants.name";
+    private String dbCollectionsSubmittedVariantsName;
+
+    static final String RELEASE_ASSEMBLY = "release.assembly";
+    private String releaseAssembly;
+
+    static final String RELEASE_OUTPUT = "release.output";
+    private String releaseOutput;
+
+    static final String RELEASE_FORMAT = "release.format";
+    private ReleaseFormat releaseFormat;
+
+    static final String RELEASE_CURSOR_BATCH_SIZE = "release.cursor-batch-size";
+    private int releaseCursorBatchSize;
+
+    static final String RELEASE_SORT_BUFFER_SIZE = "release.sort-buffer-size";
+    private int releaseSortBufferSize;
+
+    static final String RELEASE_TEMPORARY_DIRECTORY = "release.temporary-directory";
+    private String releaseTemporaryDirectory;
+
+    private static final String DEFAULT_READ_PREFERENCE = "primary";
+
+    private static final String DEFAULT_CLUSTERED_VARIANTS_NAME = "dbsnpClusteredVariantEntity";
+
+    private static final String DEFAULT_SUBMITTED_VARIANTS_NAME = "dbsnpSubmittedVariantEntity";
+
+    private static final int DEFAULT_CURSOR_BATCH_SIZE = 1000;
+
+    private static final int DEFAULT_SORT_BUFFER_SIZE = 1000000;
+
+    public void load(Properties properties) {
+        getRequiredProperties(properties);
+        getOptionalProperties(properties);
+    }
+
+    private void getRequiredProperties(Properties properties) {
+        dbName = getRequiredProperty(properties, DB_NAME);
+        releaseAssembly = getRequiredProperty(properties, RELEASE_ASSEMBLY);
+        releaseOutput = getRequiredProperty(properties, RELEASE_OUTPUT);
+    }
+
+    private void getOptionalProperties(Properties properties) {
+        dbHosts = properties.getProperty(DB_HOSTS);
+        dbPort = properties.getProperty(DB_PORT);
+        dbAuthenticationDatabase = properties.getProperty(DB_AUTHENTICATION_DATABASE);
+        dbUsername = properties.getProperty(DB_USERNAME);
+        dbPassword = properties.getProperty(DB_PASSWORD);
+        dbReadPreference = properties.getProperty(DB_READ_PREFERENCE, DEFAULT_READ_PREFERENCE);
+        dbCollectionsClusteredVariantsName = properties.getProperty(DB_COLLECTIONS_CLUSTERED_VARIANTS_NAME,
+                                                                    DEFAULT_CLUSTERED_VARIANTS_NAME);
+        dbCollectionsSubmittedVariantsName = properties.getProperty(DB_COLLECTIONS_SUBMITTED_VARIANTS_NAME,
+                                                                    DEFAULT_SUBMITTED_VARIANTS_NAME);
+        releaseFormat = getFormatProperty(properties);
+        releaseCursorBatchSize = getPositiveIntProperty(properties, RELEASE_CURSOR_BATCH_SIZE,
+                                                        DEFAULT_CURSOR_BATCH_SIZE);
+        releaseSortBufferSize = getPositiveIntProperty(properties, RELEASE_SORT_BUFFER_SIZE, DEFAULT_SORT_BUFFER_SIZE);
+        releaseTemporaryDirectory = properties.getProperty(RELEASE_TEMPORARY_DIRECTORY);
+    }
+
+    private String getRequiredProperty(Properties properties, String propertyKey) {
+        String property = properties.getProperty(propertyKey);
+        if (property == null || property.isEmpty()) {
+            throw new IllegalArgumentException("Parameter " + propertyKey + " is required");
+        }
+        return property;
+    }
+
+    private int getPositiveIntProperty(Properties properties, String propertyKey, int defaultValue) {
+        String property = properties.getProperty(propertyKey);
+        if (property == null || property.isEmpty()) {
+            return defaultValue;
+        }
+        try {
+            int value = Integer.parseInt(property.trim());
+            if (value > 0) {
+                return value;
+            }
+        } catch (NumberFormatException e) {
+            // reported below
+        }
+        throw new IllegalArgumentException("Parameter " + propertyKey + " must be a positive integer");
+    }
+
+    private ReleaseFormat getFormatProperty(Properties properties) {
+        String property = properties.getProperty(RELEASE_FORMAT);
+        if (property == null || property.isEmpty()) {
+            return ReleaseFormat.VCF;
+        }
+        try {
+            return ReleaseFormat.valueOf(property.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Parameter " + RELEASE_FORMAT + " must be vcf or tsv", e);
+        }
+    }
+
+    public String getDbHosts() {
+        return dbHosts;
+    }
+
+    public String getDbPort() {
+        return dbPort;
+    }
+
+    public String getDbAuthenticationDatabase() {
+        return dbAuthenticationDatabase;
+    }
+
+    public String getDbUsername() {
+        return dbUsername;
+    }
+
+    public String getDbPassword() {
+        return dbPassword;
+    }
+
+    public String getDbReadPreference() {
+        return dbReadPreference;
+    }
+
+    public String getDbName() {
+        return dbName;
+    }
+
+    public String getDbCollectionsClusteredVariantsName() {
+        return dbCollectionsClusteredVariantsName;
+    }
+
+    public String getDbCollectionsSubmittedVariantsName() {
+        return dbCollectionsSubmittedVariantsName;
+    }
+
+    public String getReleaseAssembly() {
+        return releaseAssembly;
+    }
+
+    public String getReleaseOutput() {
+        return releaseOutput;
+    }
+
+    public ReleaseFormat getReleaseFormat() {
+        return releaseFormat;
+    }
+
+    public int getReleaseCursorBatchSize() {
+        return releaseCursorBatchSize;
+    }
+
+    public int getReleaseSortBufferSize() {
+        return releaseSortBufferSize;
+    }
+
+    public String getReleaseTemporaryDirectory() {
+        return releaseTemporaryDirectory;
+    }
+}
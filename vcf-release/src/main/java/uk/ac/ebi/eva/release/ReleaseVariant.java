@@ -0,0 +1,60 @@
+/*
+ * Copyright 2018 EMBL - European Bioinformatics Institute
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.ac.ebi.eva.release;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A clustered variant (RS) at one position, with the submitted variants (SS) clustered into it at that position
+ */
+public class ReleaseVariant {
+
+    private final long accession;
+
+    private final String contig;
+
+    private final long start;
+
+    private final List<SubmittedVariant> submittedVariants;
+
+    public ReleaseVariant(long accession, String contig, long start) {
+        this.accession = accession;
+        this.contig = contig;
+        this.start = start;
+        this.submittedVariants = new ArrayList<>();
+    }
+
+    void addSubmittedVariant(SubmittedVariant submittedVariant) {
+        submittedVariants.add(submittedVariant);
+    }
+
+    public long getAccession() {
+        return accession;
+    }
+
+    public String getContig() {
+        return contig;
+    }
+
+    public long getStart() {
+        return start;
+    }
+
+    public List<SubmittedVariant> getSubmittedVariants() {
+        return submittedVariants;
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright 2018 EMBL - European Bioinformatics Institute
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.ac.ebi.eva.release;
+
+import org.bson.Document;
+
+/**
+ * The fields of a dbsnpSubmittedVariantEntity document that go into the release
+ */
+public class SubmittedVariant {
+
+    static final String ACCESSION_FIELD = "accession";
+
+    static final String CLUSTERED_VARIANT_FIELD = "rs";
+
+    static final String STUDY_FIELD = "study";
+
+    static final String CONTIG_FIELD = "contig";
+
+    static final String START_FIELD = "start";
+
+    static final String REFERENCE_FIELD = "ref";
+
+    static final String ALTERNATE_FIELD = "alt";
+
+    private final long accession;
+
+    private final long clusteredVariantAccession;
+
+    private final String study;
+
+    private final String contig;
+
+    private final long start;
+
+    private final String reference;
+
+    private final String alternate;
+
+    public SubmittedVariant(long accession, long clusteredVariantAccession, String study, String contig, long start,
+                            String reference, String alternate) {
+        this.accession = accession;
+        this.clusteredVariantAccession = clusteredVariantAccession;
+        this.study = study;
+        this.contig = contig;
+        this.start = start;
+        this.reference = reference;
+        this.alternate = alternate;
+    }
+
+    static SubmittedVariant fromDocument(Document document) {
+        return new SubmittedVariant(getLong(document, ACCESSION_FIELD), getLong(document, CLUSTERED_VARIANT_FIELD),
+                                    document.getString(STUDY_FIELD), document.getString(CONTIG_FIELD),
+                                    getLong(document, START_FIELD), document.getString(REFERENCE_FIELD),
+                                    document.getString(ALTERNATE_FIELD));
+    }
+
+    /**
+     * Accessions and positions may be stored as int or long, depending on their value and on who wrote them
+     */
+    static long getLong(Document document, String field) {
+        Object value = document.get(field);
+        if (!(value instanceof Number)) {
+            throw new IllegalArgumentException("Field '" + field + "' of document " + document.get("_id")
+                                                       + " is not a number: " + value);
+        }
+        return ((Number) value).longValue();
+    }
+
+    public long getAccession() {
+        return accession;
+    }
+
+    public long getClusteredVariantAccession() {
+        return clusteredVariantAccession;
+    }
+
+    public String getStudy() {
+        return study;
+    }
+
+    public String getContig() {
+        return contig;
+    }
+
+    public long getStart() {
+        return start;
+    }
+
+    public String getReference() {
+        return reference;
+    }
+
+    public String getAlternate() {
+        return alternate;
+    }
+}
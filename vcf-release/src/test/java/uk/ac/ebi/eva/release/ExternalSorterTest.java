@@ -0,0 +1,62 @@
+/*
+ * Copyright 2018 EMBL - European Bioinformatics Institute
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.ac.ebi.eva.release;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.StringWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Test {@link ExternalSorter}
+ */
+public class ExternalSorterTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void runsAboveTheFanInAreMergedInSeveralPasses() throws Exception {
+        Path temporaryDirectory = temporaryFolder.newFolder().toPath();
+        StringWriter output = new StringWriter();
+        try (ExternalSorter sorter = new ExternalSorter(temporaryDirectory, 2, 3)) {
+            for (int start = 20; start > 0; start--) {
+                sorter.add("1\t" + (start / 2) + "\t" + start);
+            }
+            assertEquals(10, sorter.getRuns());
+            sorter.writeSorted(output);
+            assertEquals(2, sorter.getRuns());
+        }
+
+        StringBuilder expected = new StringBuilder("1\t0\t1\n");
+        for (int start = 1; start < 10; start++) {
+            // the line added first goes first among those with the same position
+            expected.append("1\t").append(start).append('\t').append(start * 2 + 1).append('\n');
+            expected.append("1\t").append(start).append('\t').append(start * 2).append('\n');
+        }
+        expected.append("1\t10\t20\n");
+        assertEquals(expected.toString(), output.toString());
+        try (Stream<Path> files = Files.list(temporaryDirectory)) {
+            assertEquals(0, files.count());
+        }
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright 2018 EMBL - European Bioinformatics Institute
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.ac.ebi.eva.release;
+
+import org.bson.Document;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Test {@link MergeJoin}
+ */
+public class MergeJoinTest {
+
+    @Rule
+    public final ExpectedException exception = ExpectedException.none();
+
+    @Test
+    public void submittedVariantsAreGroupedByPosition() {
+        List<Document> clusteredVariants = Arrays.asList(buildClusteredVariant(1), buildClusteredVariant(2),
+                                                         buildClusteredVariant(5));
+        List<Document> submittedVariants = Arrays.asList(buildSubmittedVariant(10, 1, "1", 100),
+                                                         buildSubmittedVariant(11, 2, "2", 200),
+                                                         buildSubmittedVariant(12, 2, "1", 150),
+                                                         buildSubmittedVariant(13, 2, "2", 200),
+                                                         buildSubmittedVariant(14, 5, "3", 300));
+
+        List<ReleaseVariant> variants = join(clusteredVariants, submittedVariants);
+
+        assertEquals(4, variants.size());
+        assertVariant(variants.get(0), 1, "1", 100, 10);
+        assertVariant(variants.get(1), 2, "2", 200, 11, 13);
+        assertVariant(variants.get(2), 2, "1", 150, 12);
+        assertVariant(variants.get(3), 5, "3", 300, 14);
+    }
+
+    @Test
+    public void unmatchedVariantsAreSkipped() {
+        List<Document> clusteredVariants = Arrays.asList(buildClusteredVariant(2), buildClusteredVariant(3),
+                                                         buildClusteredVariant(3), buildClusteredVariant(6));
+        List<Document> submittedVariants = Arrays.asList(buildSubmittedVariant(10, 1, "1", 100),
+                                                         buildSubmittedVariant(11, 3, "1", 200),
+                                                         buildSubmittedVariant(12, 4, "1", 300),
+                                                         buildSubmittedVariant(13, 6, "1", 400),
+                                                         buildSubmittedVariant(14, 7, "1", 500));
+
+        MergeJoin join = new MergeJoin(clusteredVariants.iterator(), submittedVariants.iterator());
+        List<ReleaseVariant> variants = new ArrayList<>();
+        join.forEachRemaining(variants::add);
+
+        assertEquals(2, variants.size());
+        assertVariant(variants.get(0), 3, "1", 200, 11);
+        assertVariant(variants.get(1), 6, "1", 400, 13);
+        assertEquals(4, join.getClusteredVariantsRead());
+        assertEquals(1, join.getClusteredVariantsWithoutSubmitted());
+        assertEquals(1, join.getDuplicatedClusteredVariants());
+        assertEquals(2, join.getSubmittedVariantsJoined());
+    }
+
+    @Test
+    public void unsortedSubmittedVariantsAreRejected() {
+        List<Document> clusteredVariants = Arrays.asList(buildClusteredVariant(1), buildClusteredVariant(2));
+        List<Document> submittedVariants = Arrays.asList(buildSubmittedVariant(10, 2, "1", 100),
+                                                         buildSubmittedVariant(11, 1, "1", 200));
+
+        exception.expect(IllegalStateException.class);
+        join(clusteredVariants, submittedVariants);
+    }
+
+    private List<ReleaseVariant> join(List<Document> clusteredVariants, List<Document> submittedVariants) {
+        List<ReleaseVariant> variants = new ArrayList<>();
+        new MergeJoin(clusteredVariants.iterator(), submittedVariants.iterator()).forEachRemaining(variants::add);
+        return variants;
+    }
+
+    private void assertVariant(ReleaseVariant variant, long accession, String contig, long start,
+                               long... submittedVariantAccessions) {
+        assertEquals(accession, variant.getAccession());
+        assertEquals(contig, variant.getContig());
+        assertEquals(start, variant.getStart());
+        assertEquals(submittedVariantAccessions.length, variant.getSubmittedVariants().size());
+        for (int i = 0; i < submittedVariantAccessions.length; i++) {
+            assertEquals(submittedVariantAccessions[i], variant.getSubmittedVariants().get(i).getAccession());
+        }
+    }
+
+    static Document buildClusteredVariant(long accession) {
+        return new Document(MergeJoin.ACCESSION_FIELD, accession);
+    }
+
+    static Document buildSubmittedVariant(long accession, long clusteredVariant, String contig, long start) {
+        return new Document(SubmittedVariant.ACCESSION_FIELD, accession)
+                .append(SubmittedVariant.CLUSTERED_VARIANT_FIELD, clusteredVariant)
+                .append(SubmittedVariant.STUDY_FIELD, "PRJEB" + (accession % 2))
+                .append(SubmittedVariant.CONTIG_FIELD, contig)
+                .append(SubmittedVariant.START_FIELD, start)
+                .append(SubmittedVariant.REFERENCE_FIELD, "A")
+                .append(SubmittedVariant.ALTERNATE_FIELD, accession % 2 == 0 ? "T" : "");
+    }
+}
@@ -0,0 +1,170 @@
+/*
+ * Copyright 2018 EMBL - European Bioinformatics Institute
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.ac.ebi.eva.release;
+
+import com.github.fakemongo.Fongo;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoDatabase;
+import org.bson.Document;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import uk.ac.ebi.eva.release.ReleaseDumper.ReleaseReport;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static uk.ac.ebi.eva.release.MergeJoinTest.buildClusteredVariant;
+import static uk.ac.ebi.eva.release.MergeJoinTest.buildSubmittedVariant;
+
+/**
+ * Test {@link ReleaseDumper}
+ */
+public class ReleaseDumperTest {
+
+    private static final String ASSEMBLY = "GCA_000001405.1";
+
+    private static final String OTHER_ASSEMBLY = "GCA_000001405.2";
+
+    private static final String CLUSTERED_VARIANTS_NAME = "dbsnpClusteredVariantEntity";
+
+    private static final String SUBMITTED_VARIANTS_NAME = "dbsnpSubmittedVariantEntity";
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private MongoDatabase database;
+
+    @Before
+    public void setUp() {
+        database = new Fongo("testServer").getMongo().getDatabase("releaseDumper");
+        MongoCollection<Document> clusteredVariants = database.getCollection(CLUSTERED_VARIANTS_NAME);
+        MongoCollection<Document> submittedVariants = database.getCollection(SUBMITTED_VARIANTS_NAME);
+        clusteredVariants.drop();
+        submittedVariants.drop();
+
+        // inserted out of order, the cursors have to sort them
+        clusteredVariants.insertOne(buildClusteredVariant(3).append(ReleaseDumper.ASSEMBLY_FIELD, ASSEMBLY));
+        clusteredVariants.insertOne(buildClusteredVariant(1).append(ReleaseDumper.ASSEMBLY_FIELD, ASSEMBLY));
+        clusteredVariants.insertOne(buildClusteredVariant(2).append(ReleaseDumper.ASSEMBLY_FIELD, OTHER_ASSEMBLY));
+        clusteredVariants.insertOne(buildClusteredVariant(4).append(ReleaseDumper.ASSEMBLY_FIELD, ASSEMBLY));
+
+        submittedVariants.insertOne(buildSubmittedVariant(15, 4, "2", 50));
+        submittedVariants.insertOne(buildSubmittedVariant(10, 1, "1", 300));
+        submittedVariants.insertOne(buildSubmittedVariant(11, 1, "1", 300));
+        submittedVariants.insertOne(buildSubmittedVariant(12, 2, "1", 200));
+        submittedVariants.insertOne(buildSubmittedVariant(13, 3, "1", 100));
+        submittedVariants.insertOne(buildSubmittedVariant(14, 3, "10", 100));
+    }
+
+    @Test
+    public void vcfIsSortedByPositionWithoutEmptyAlleles() throws Exception {
+        Path output = temporaryFolder.getRoot().toPath().resolve("release.vcf");
+
+        ReleaseReport report = new ReleaseDumper(buildParameters(output, "vcf", 1)).dump(database);
+
+        assertEquals(Arrays.asList(
+                "1\t300\trs1\tA\tT\t.\t.\tSS=ss10;SID=PRJEB0",
+                "10\t100\trs3\tA\tT\t.\t.\tSS=ss14;SID=PRJEB0"), readVariantLines(output));
+        assertEquals(3, report.getClusteredVariantsRead());
+        assertEquals(4, report.getVariants());
+        assertEquals(5, report.getSubmittedVariantsJoined());
+        assertEquals(3, report.getSubmittedVariantsLeftOut());
+        assertEquals(2, report.getSortedFiles());
+        assertNoTemporaryFiles();
+    }
+
+    @Test
+    public void tsvHasOneLinePerSubmittedVariant() throws Exception {
+        Path output = temporaryFolder.getRoot().toPath().resolve("release.tsv");
+
+        ReleaseReport report = new ReleaseDumper(buildParameters(output, "tsv", 100)).dump(database);
+
+        assertEquals(Arrays.asList(
+                "1\t100\trs3\tss13\tPRJEB1\tA\t-",
+                "1\t300\trs1\tss10\tPRJEB0\tA\tT",
+                "1\t300\trs1\tss11\tPRJEB1\tA\t-",
+                "10\t100\trs3\tss14\tPRJEB0\tA\tT",
+                "2\t50\trs4\tss15\tPRJEB1\tA\t-"), readVariantLines(output));
+        assertEquals(0, report.getSubmittedVariantsLeftOut());
+    }
+
+    @Test
+    public void missingAssemblyWritesOnlyTheHeader() throws Exception {
+        Path output = temporaryFolder.getRoot().toPath().resolve("release.vcf");
+        Properties properties = buildProperties(output, "vcf", 100);
+        properties.put(ReleaseParameters.RELEASE_ASSEMBLY, "GCA_000000000.1");
+        ReleaseParameters releaseParameters = new ReleaseParameters();
+        releaseParameters.load(properties);
+
+        new ReleaseDumper(releaseParameters).dump(database);
+
+        assertEquals(Collections.emptyList(), readVariantLines(output));
+        assertFalse(Files.readAllLines(output, StandardCharsets.UTF_8).isEmpty());
+    }
+
+    @Test
+    public void sortIndexesAreRecognised() {
+        List<Document> indexes = Arrays.asList(
+                new Document("key", new Document("_id", 1)),
+                new Document("key", new Document(ReleaseDumper.ASSEMBLY_FIELD, 1)
+                        .append(MergeJoin.ACCESSION_FIELD, 1)));
+
+        assertTrue(ReleaseDumper.isSortIndexed(indexes, ReleaseDumper.ASSEMBLY_FIELD, MergeJoin.ACCESSION_FIELD));
+        assertFalse(ReleaseDumper.isSortIndexed(indexes, null, SubmittedVariant.CLUSTERED_VARIANT_FIELD));
+    }
+
+    private ReleaseParameters buildParameters(Path output, String format, int sortBufferSize) {
+        ReleaseParameters releaseParameters = new ReleaseParameters();
+        releaseParameters.load(buildProperties(output, format, sortBufferSize));
+        return releaseParameters;
+    }
+
+    private Properties buildProperties(Path output, String format, int sortBufferSize) {
+        Properties properties = new Properties();
+        properties.put(ReleaseParameters.DB_NAME, "releaseDumper");
+        properties.put(ReleaseParameters.RELEASE_ASSEMBLY, ASSEMBLY);
+        properties.put(ReleaseParameters.RELEASE_OUTPUT, output.toString());
+        properties.put(ReleaseParameters.RELEASE_FORMAT, format);
+        properties.put(ReleaseParameters.RELEASE_SORT_BUFFER_SIZE, Integer.toString(sortBufferSize));
+        return properties;
+    }
+
+    private List<String> readVariantLines(Path output) throws IOException {
+        return Files.readAllLines(output, StandardCharsets.UTF_8).stream()
+                    .filter(line -> !line.startsWith("#"))
+                    .collect(Collectors.toList());
+    }
+
+    private void assertNoTemporaryFiles() throws IOException {
+        try (Stream<Path> files = Files.list(temporaryFolder.getRoot().toPath())) {
+            assertEquals(1, files.count());
+        }
+    }
+}